@@ -703,7 +703,10 @@ public abstract class UIComponentBase extends UIComponent
             return null;
         }
 
-        char separatorChar = getFacesContext().getNamingContainerSeparatorChar();
+        FacesContext facesContext = getFacesContext();
+        char separatorChar = facesContext.getNamingContainerSeparatorChar();
+        UIViewRoot viewRoot = facesContext.getViewRoot();
+        _ComponentIndex index = viewRoot == null ? null : viewRoot._getComponentIndex(facesContext);
         UIComponent findBase;
         if (expr.charAt(0) == separatorChar)
         {
@@ -725,11 +728,15 @@ public abstract class UIComponentBase extends UIComponent
         int separator = expr.indexOf(separatorChar);
         if (separator == -1)
         {
-            return _ComponentUtils.findComponent(findBase, expr, separatorChar);
+            return index == null
+                    ? _ComponentUtils.findComponent(findBase, expr, separatorChar)
+                    : index.findComponent(findBase, expr, separatorChar);
         }
 
         String id = expr.substring(0, separator);
-        findBase = _ComponentUtils.findComponent(findBase, id, separatorChar);
+        findBase = index == null
+                ? _ComponentUtils.findComponent(findBase, id, separatorChar)
+                : index.findComponent(findBase, id, separatorChar);
         if (findBase == null)
         {
             return null;
@@ -2330,6 +2330,11 @@ public class UIData extends UIComponentBase implements NamingContainer, UniqueId
                                 {
                                     return true;
                                 }
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    // everything inside this component has been visited
+                                    return false;
+                                }
                             }
                         }
 
@@ -2344,6 +2349,10 @@ public class UIData extends UIComponentBase implements NamingContainer, UniqueId
                                 {
                                     return true;
                                 }
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    return false;
+                                }
                             }
                         }
                         else
@@ -2405,6 +2414,11 @@ public class UIData extends UIComponentBase implements NamingContainer, UniqueId
                                         }
                                     }
                                 }
+                                // do not iterate over the remaining rows once nothing is left to visit
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    return false;
+                                }
                             }
                         }
                     }
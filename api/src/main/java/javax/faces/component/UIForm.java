@@ -333,6 +333,11 @@ public class UIForm extends UIComponentBase implements NamingContainer, UniqueId
                                 {
                                     return true;
                                 }
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    // everything inside this container has been visited
+                                    return false;
+                                }
                             }
                         }
                         for (int i = 0, childCount = getChildCount(); i < childCount; i++)
@@ -342,6 +347,10 @@ public class UIForm extends UIComponentBase implements NamingContainer, UniqueId
                             {
                                 return true;
                             }
+                            if (subtreeIdsToVisit.isEmpty())
+                            {
+                                return false;
+                            }
                         }
                     }
                     return false;
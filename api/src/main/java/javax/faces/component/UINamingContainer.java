@@ -176,6 +176,11 @@ public class UINamingContainer extends UIComponentBase implements NamingContaine
                                 {
                                     return true;
                                 }
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    // everything inside this container has been visited
+                                    return false;
+                                }
                             }
                         }
                         for (int i = 0, childCount = getChildCount(); i < childCount; i++)
@@ -185,6 +190,10 @@ public class UINamingContainer extends UIComponentBase implements NamingContaine
                             {
                                 return true;
                             }
+                            if (subtreeIdsToVisit.isEmpty())
+                            {
+                                return false;
+                            }
                         }
                     }
                     return false;
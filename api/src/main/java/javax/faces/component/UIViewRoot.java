@@ -35,6 +35,7 @@ import java.util.logging.Logger;
 
 import javax.el.MethodExpression;
 import javax.el.ValueExpression;
+import javax.faces.FacesException;
 import javax.faces.FactoryFinder;
 import javax.faces.application.ProjectStage;
 import javax.faces.application.StateManager;
@@ -93,6 +94,13 @@ public class UIViewRoot extends UIComponentBase implements UniqueIdVendor
     public static final String VIEWROOT_PHASE_LISTENER_QUEUES_EXCEPTIONS_PARAM_NAME
             = "javax.faces.VIEWROOT_PHASE_LISTENER_QUEUES_EXCEPTIONS";
 
+    /**
+     * Index the components of the view by clientId, and by id inside each NamingContainer, when they are
+     * first looked up by findComponent or invokeOnComponent, so later lookups do not walk the tree.
+     */
+    @JSFWebConfigParam(defaultValue="false", expectedValues="true, false", since="3.0.0", tags="performance")
+    private static final String COMPONENT_INDEX_ENABLED_PARAM_NAME = "org.apache.myfaces.COMPONENT_INDEX_ENABLED";
+
     private transient Logger logger = null;
 
     private static final PhaseProcessor APPLY_REQUEST_VALUES_PROCESSOR = new ApplyRequestValuesPhaseProcessor();
@@ -170,6 +178,8 @@ public class UIViewRoot extends UIComponentBase implements UniqueIdVendor
     private transient int _resetSaveStateMode = 0;
     private transient boolean _resourceDependencyUniqueId;
     private transient Map<String,Object> _attributesMap;
+    private transient Boolean _componentIndexEnabled;
+    private transient _ComponentIndex _componentIndex;
     
     /**
      * Construct an instance of the UIViewRoot.
@@ -1352,6 +1362,65 @@ public class UIViewRoot extends UIComponentBase implements UniqueIdVendor
         super.setId(id);
     }
     
+    @Override
+    public boolean invokeOnComponent(FacesContext context, String clientId, ContextCallback callback)
+            throws FacesException
+    {
+        if (context == null || clientId == null || callback == null)
+        {
+            throw new NullPointerException();
+        }
+
+        _ComponentIndex index = _getComponentIndex(context);
+        if (index == null || _ComponentIndex.overridesInvokeOnComponent(this))
+        {
+            return super.invokeOnComponent(context, clientId, callback);
+        }
+
+        UIComponent component = index.getComponentByClientId(context, clientId);
+        if (component != null)
+        {
+            _ComponentIndex.invokeOnComponent(context, component, callback);
+            return true;
+        }
+
+        final ContextCallback delegate = callback;
+        final UIComponent[] found = new UIComponent[1];
+        boolean result = super.invokeOnComponent(context, clientId, new ContextCallback()
+        {
+            @Override
+            public void invokeContextCallback(FacesContext facesContext, UIComponent target)
+            {
+                found[0] = target;
+                delegate.invokeContextCallback(facesContext, target);
+            }
+        });
+        if (found[0] != null)
+        {
+            index.putComponentByClientId(context, clientId, found[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the components of this view, or null if it is not enabled.
+     */
+    _ComponentIndex _getComponentIndex(FacesContext context)
+    {
+        if (_componentIndex == null)
+        {
+            if (_componentIndexEnabled == null)
+            {
+                _componentIndexEnabled = isComponentIndexEnabled(context);
+            }
+            if (_componentIndexEnabled)
+            {
+                _componentIndex = new _ComponentIndex(this);
+            }
+        }
+        return _componentIndex;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -2031,4 +2100,19 @@ public class UIViewRoot extends UIComponentBase implements UniqueIdVendor
 
         return alwaysPerformValidationWhenRequiredTrue;
     }    
+
+    private boolean isComponentIndexEnabled(FacesContext context)
+    {
+        ExternalContext ec = context.getExternalContext();
+        Boolean componentIndexEnabled = (Boolean) ec.getApplicationMap().get(COMPONENT_INDEX_ENABLED_PARAM_NAME);
+        if (componentIndexEnabled == null)
+        {
+            String param = ec.getInitParameter(COMPONENT_INDEX_ENABLED_PARAM_NAME);
+            componentIndexEnabled = param != null && "true".equalsIgnoreCase(param.trim());
+
+            // cache the parsed value
+            ec.getApplicationMap().put(COMPONENT_INDEX_ENABLED_PARAM_NAME, componentIndexEnabled);
+        }
+        return componentIndexEnabled;
+    }
 }
@@ -26,10 +26,9 @@ import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.el.ValueExpression;
 import javax.faces.FacesException;
@@ -60,8 +59,6 @@ class _ComponentAttributesMap implements Map<String, Object>, Serializable
 {
     private static final long serialVersionUID = -9106832179394257866L;
 
-    private static final Object[] EMPTY_ARGS = new Object[0];
-    
     private final static String MARK_CREATED = "oam.vf.MARK_ID";
     
     private final static String FACET_NAME_KEY = "facelets.FACET_NAME";
@@ -88,9 +85,17 @@ class _ComponentAttributesMap implements Map<String, Object>, Serializable
     // it can always be recreated when needed.
     private transient Map<String, _PropertyDescriptorHolder> _propertyDescriptorMap = null;
 
-    // Cache for component property descriptors
-    private static Map<Class<?>, Map<String, _PropertyDescriptorHolder>> propertyDescriptorCache =
-        new WeakHashMap<Class<?>, Map<String, _PropertyDescriptorHolder>>();
+    // Cache for component property descriptors. The map of a component class is built once and kept
+    // by the class itself, so it is read without locking and does not keep the class alive.
+    private static final ClassValue<Map<String, _PropertyDescriptorHolder>> propertyDescriptorCache =
+        new ClassValue<Map<String, _PropertyDescriptorHolder>>()
+    {
+        @Override
+        protected Map<String, _PropertyDescriptorHolder> computeValue(Class<?> type)
+        {
+            return createPropertyDescriptorMap(type);
+        }
+    };
     
     private boolean _isCompositeComponent;
     private boolean _isCompositeComponentSet;
@@ -589,7 +594,7 @@ class _ComponentAttributesMap implements Map<String, Object>, Serializable
         }
         else
         {
-            if (propertyDescriptor.getReadMethod() != null)
+            if (propertyDescriptor.isReadable())
             {
                 Object oldValue = getComponentProperty(propertyDescriptor);
                 setComponentProperty(propertyDescriptor, value);
@@ -620,58 +625,43 @@ class _ComponentAttributesMap implements Map<String, Object>, Serializable
      * <p/>
      * This method optimises access to javabean properties of the underlying
      * UIComponent by maintaining a cache of ProperyDescriptor objects for
-     * that class.
-     * <p/>
-     * TODO: Consider making the cache shared between component instances;
-     * currently 100 UIInputText components means performing introspection
-     * on the UIInputText component 100 times.
+     * that class, shared between all the instances of the class.
      */
     private _PropertyDescriptorHolder getPropertyDescriptor(String key)
     {
         if (_propertyDescriptorMap == null)
         {
-            // Try to get descriptor map from cache
             _propertyDescriptorMap = propertyDescriptorCache.get(_component.getClass());
-            // Cache miss: create descriptor map and put it in cache
-            if (_propertyDescriptorMap == null)
-            {
-                // Create descriptor map...
-                BeanInfo beanInfo;
-                try
-                {
-                    beanInfo = Introspector.getBeanInfo(_component.getClass());
-                }
-                catch (IntrospectionException e)
-                {
-                    throw new FacesException(e);
-                }
-                PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
-                _propertyDescriptorMap = new ConcurrentHashMap<String, _PropertyDescriptorHolder>();
-                for (int i = 0; i < propertyDescriptors.length; i++)
-                {
-                    PropertyDescriptor propertyDescriptor = propertyDescriptors[i];
-                    Method readMethod = propertyDescriptor.getReadMethod();
-                    if (readMethod != null)
-                    {
-                        _propertyDescriptorMap.put(propertyDescriptor.getName(),
-                                new _PropertyDescriptorHolder(propertyDescriptor, readMethod));
-                    }
-                }
-                // ... and put it in cache
-                synchronized(propertyDescriptorCache)
-                {
-                    // Use a synchronized block to ensure proper operation on concurrent use cases.
-                    // This is a racy single check, because initialization over the same class could happen
-                    // multiple times, but the same result is always calculated. The synchronized block 
-                    // just ensure thread-safety, because only one thread will modify the cache map
-                    // at the same time.
-                    propertyDescriptorCache.put(_component.getClass(), _propertyDescriptorMap);
-                }
-            }
         }
         return _propertyDescriptorMap.get(key);
     }
 
+    private static Map<String, _PropertyDescriptorHolder> createPropertyDescriptorMap(Class<?> type)
+    {
+        BeanInfo beanInfo;
+        try
+        {
+            beanInfo = Introspector.getBeanInfo(type);
+        }
+        catch (IntrospectionException e)
+        {
+            throw new FacesException(e);
+        }
+        PropertyDescriptor[] propertyDescriptors = beanInfo.getPropertyDescriptors();
+        Map<String, _PropertyDescriptorHolder> propertyDescriptorMap
+                = new HashMap<String, _PropertyDescriptorHolder>(propertyDescriptors.length * 2);
+        for (int i = 0; i < propertyDescriptors.length; i++)
+        {
+            PropertyDescriptor propertyDescriptor = propertyDescriptors[i];
+            Method readMethod = propertyDescriptor.getReadMethod();
+            if (readMethod != null)
+            {
+                propertyDescriptorMap.put(propertyDescriptor.getName(), new _PropertyDescriptorHolder(
+                        propertyDescriptor.getName(), readMethod, propertyDescriptor.getWriteMethod()));
+            }
+        }
+        return propertyDescriptorMap;
+    }
 
     /**
      * Execute the getter method of the specified property on the underlying
@@ -685,15 +675,14 @@ class _ComponentAttributesMap implements Map<String, Object>, Serializable
      */
     private Object getComponentProperty(_PropertyDescriptorHolder propertyDescriptor)
     {
-        Method readMethod = propertyDescriptor.getReadMethod();
-        if (readMethod == null)
+        if (!propertyDescriptor.isReadable())
         {
             throw new IllegalArgumentException("Component property " + propertyDescriptor.getName()
                                                + " is not readable");
         }
         try
         {
-            return readMethod.invoke(_component, EMPTY_ARGS);
+            return propertyDescriptor.read(_component);
         }
         catch (Exception e)
         {
@@ -714,15 +703,14 @@ class _ComponentAttributesMap implements Map<String, Object>, Serializable
      */
     private void setComponentProperty(_PropertyDescriptorHolder propertyDescriptor, Object value)
     {
-        Method writeMethod = propertyDescriptor.getWriteMethod();
-        if (writeMethod == null)
+        if (!propertyDescriptor.isWritable())
         {
             throw new IllegalArgumentException("Component property " + propertyDescriptor.getName()
                                                + " is not writable");
         }
         try
         {
-            writeMethod.invoke(_component, new Object[]{value});
+            propertyDescriptor.write(_component, value);
         }
         catch (Exception e)
         {
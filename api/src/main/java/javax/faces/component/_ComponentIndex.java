@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.faces.component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.faces.FacesException;
+import javax.faces.context.FacesContext;
+
+/**
+ * Index of the components of a view by clientId, and by id inside each NamingContainer searched by
+ * findComponent. It is kept by the UIViewRoot when <code>org.apache.myfaces.COMPONENT_INDEX_ENABLED</code>
+ * is set, so resolving many ids over a large view does not walk the tree for every id.
+ * <p>
+ * The index is built with one walk over the tree the first time it is used, and entries found later by
+ * a regular search are added to it. It does not listen to changes of the tree: an entry is only returned
+ * after checking it against the current id, clientId and parents of the component, and a stale entry
+ * falls back to the regular search. Components whose invokeOnComponent is overridden, like UIData that
+ * sets its row before looking into its children, are never indexed by clientId, nor is anything below them.
+ * </p>
+ */
+class _ComponentIndex
+{
+    private static final ClassValue<Boolean> OVERRIDES_INVOKE_ON_COMPONENT = new ClassValue<Boolean>()
+    {
+        @Override
+        protected Boolean computeValue(Class<?> type)
+        {
+            try
+            {
+                Class<?> declaringClass = type.getMethod("invokeOnComponent",
+                        FacesContext.class, String.class, ContextCallback.class).getDeclaringClass();
+                return declaringClass != UIComponent.class && declaringClass != UIComponentBase.class
+                        && declaringClass != UIViewRoot.class;
+            }
+            catch (NoSuchMethodException e)
+            {
+                return Boolean.TRUE;
+            }
+        }
+    };
+
+    private final UIViewRoot _viewRoot;
+
+    private Map<String, UIComponent> _clientIds;
+
+    private final Map<UIComponent, Map<String, UIComponent>> _ids
+            = new IdentityHashMap<UIComponent, Map<String, UIComponent>>();
+
+    _ComponentIndex(UIViewRoot viewRoot)
+    {
+        _viewRoot = viewRoot;
+    }
+
+    static boolean overridesInvokeOnComponent(UIComponent component)
+    {
+        return OVERRIDES_INVOKE_ON_COMPONENT.get(component.getClass());
+    }
+
+    /**
+     * Same as _ComponentUtils.findComponent(findBase, id, separatorChar).
+     */
+    UIComponent findComponent(UIComponent findBase, String id, char separatorChar)
+    {
+        Map<String, UIComponent> ids = _ids.get(findBase);
+        if (ids == null)
+        {
+            ids = new HashMap<String, UIComponent>();
+            if (!(findBase instanceof NamingContainer))
+            {
+                _putId(ids, findBase);
+            }
+            _indexIds(findBase, ids);
+            if (findBase instanceof NamingContainer)
+            {
+                _putId(ids, findBase);
+            }
+            _ids.put(findBase, ids);
+        }
+
+        UIComponent component = ids.get(id);
+        if (component != null && _isInNamingContainer(component, findBase, id))
+        {
+            return component;
+        }
+
+        component = _ComponentUtils.findComponent(findBase, id, separatorChar);
+        if (component != null)
+        {
+            ids.put(id, component);
+        }
+        else
+        {
+            ids.remove(id);
+        }
+        return component;
+    }
+
+    /**
+     * Returns the component of the view with the given clientId, if it can be called without going
+     * through the invokeOnComponent of its parents.
+     */
+    UIComponent getComponentByClientId(FacesContext context, String clientId)
+    {
+        if (_clientIds == null)
+        {
+            _clientIds = new HashMap<String, UIComponent>();
+            _indexClientIds(context, _viewRoot);
+        }
+
+        UIComponent component = _clientIds.get(clientId);
+        if (component != null && !_isIndexable(context, component, clientId))
+        {
+            _clientIds.remove(clientId);
+            return null;
+        }
+        return component;
+    }
+
+    void putComponentByClientId(FacesContext context, String clientId, UIComponent component)
+    {
+        if (_clientIds != null && _isIndexable(context, component, clientId))
+        {
+            _clientIds.put(clientId, component);
+        }
+    }
+
+    /**
+     * Calls the callback on the given component of the view the way invokeOnComponent does when it
+     * finds it, with the component and its parents pushed to EL.
+     */
+    static void invokeOnComponent(FacesContext context, UIComponent component, ContextCallback callback)
+    {
+        List<UIComponent> path = new ArrayList<UIComponent>();
+        for (UIComponent c = component; c != null; c = c.getParent())
+        {
+            path.add(c);
+        }
+
+        int pushed = 0;
+        try
+        {
+            for (int i = path.size() - 1; i >= 0; i--)
+            {
+                UIComponent c = path.get(i);
+                c.pushComponentToEL(context, c);
+                pushed++;
+            }
+            try
+            {
+                callback.invokeContextCallback(context, component);
+            }
+            catch (Exception e)
+            {
+                throw new FacesException(e);
+            }
+        }
+        finally
+        {
+            for (int i = path.size() - pushed; i < path.size(); i++)
+            {
+                path.get(i).popComponentFromEL(context);
+            }
+        }
+    }
+
+    private static void _indexIds(UIComponent component, Map<String, UIComponent> ids)
+    {
+        // same order as _ComponentUtils.findComponent, so the first match wins as there
+        if (component.getFacetCount() > 0)
+        {
+            for (UIComponent facet : component.getFacets().values())
+            {
+                _putId(ids, facet);
+                if (!(facet instanceof NamingContainer))
+                {
+                    _indexIds(facet, ids);
+                }
+            }
+        }
+        for (int i = 0, childCount = component.getChildCount(); i < childCount; i++)
+        {
+            UIComponent child = component.getChildren().get(i);
+            _putId(ids, child);
+            if (!(child instanceof NamingContainer))
+            {
+                _indexIds(child, ids);
+            }
+        }
+    }
+
+    private static void _putId(Map<String, UIComponent> ids, UIComponent component)
+    {
+        String id = component.getId();
+        if (id != null && !ids.containsKey(id))
+        {
+            ids.put(id, component);
+        }
+    }
+
+    private static boolean _isInNamingContainer(UIComponent component, UIComponent findBase, String id)
+    {
+        if (!id.equals(component.getId()))
+        {
+            return false;
+        }
+        if (component == findBase)
+        {
+            return true;
+        }
+        UIComponent parent = component.getParent();
+        while (parent != null && parent != findBase)
+        {
+            if (parent instanceof NamingContainer)
+            {
+                return false;
+            }
+            parent = parent.getParent();
+        }
+        return parent != null;
+    }
+
+    private void _indexClientIds(FacesContext context, UIComponent component)
+    {
+        if (overridesInvokeOnComponent(component))
+        {
+            return;
+        }
+        // same order as UIComponent.invokeOnComponent
+        String clientId = component.getClientId(context);
+        if (!_clientIds.containsKey(clientId))
+        {
+            _clientIds.put(clientId, component);
+        }
+        if (component.getFacetCount() > 0)
+        {
+            for (UIComponent facet : component.getFacets().values())
+            {
+                _indexClientIds(context, facet);
+            }
+        }
+        for (int i = 0, childCount = component.getChildCount(); i < childCount; i++)
+        {
+            _indexClientIds(context, component.getChildren().get(i));
+        }
+    }
+
+    private boolean _isIndexable(FacesContext context, UIComponent component, String clientId)
+    {
+        if (!clientId.equals(component.getClientId(context)))
+        {
+            return false;
+        }
+        UIComponent c = component;
+        while (c != _viewRoot)
+        {
+            if (c == null || overridesInvokeOnComponent(c))
+            {
+                return false;
+            }
+            c = c.getParent();
+        }
+        return true;
+    }
+}
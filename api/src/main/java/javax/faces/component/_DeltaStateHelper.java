@@ -22,7 +22,6 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -147,12 +146,12 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
     /**
      * This map holds the full current state
      */
-    private Map<Serializable, Object> _fullState;
+    private _StateMap _fullState;
 
     /**
      * This map only keep track of delta changes to be saved
      */
-    private Map<Serializable, Object> _deltas;
+    private _StateMap _deltas;
     
     private Map<Object, Object> _transientState;
 
@@ -167,7 +166,7 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
      * The intention is allow to reset the StateHelper when copyFullInitialState
      * is set to true.
      */
-    private Map<Serializable, Object> _initialFullState;
+    private _StateMap _initialFullState;
     
     /**
      * Indicates if a copy-on-write map is created to allow reset the state
@@ -179,7 +178,7 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
     {
         super();
         this._component = component;
-        _fullState = new HashMap<Serializable, Object>();
+        _fullState = new _StateMap();
         _deltas = null;
         _transientState = null;
         _initialFullState = null;
@@ -201,7 +200,7 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
                 if (_initialState == null)
                 {
                     // Copy it directly
-                    _initialFullState = new HashMap<Serializable, Object>();
+                    _initialFullState = new _StateMap(_fullState.size());
                     copyMap(_component.getFacesContext(), _fullState, _initialFullState);
                 }
                 else
@@ -223,7 +222,7 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
                         // contains some key already defined in initialState, this key must be
                         // overriden. It is better to do in that way, because it is possible
                         // to skip resetState() if the view cannot be recycled.
-                        _initialFullState = new HashMap<Serializable, Object>();
+                        _initialFullState = new _StateMap(_fullState.size());
                         copyMap(_component.getFacesContext(), _fullState, _initialFullState);
                         /*
                         for (int i = 0; i < _initialState.length; i+=2)
@@ -237,7 +236,7 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
             }
             if (_deltas == null)
             {
-                _deltas = new HashMap<Serializable, Object>(2);
+                _deltas = new _StateMap(2);
             }
             return true;
         }
@@ -251,18 +250,17 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
     }
     
     private static void copyMap(FacesContext context, 
-            Map<Serializable, Object> sourceMap, 
-            Map<Serializable, Object> targetMap)
+            _StateMap sourceMap, 
+            _StateMap targetMap)
     {
-        Map serializableMap = sourceMap;
-        Map.Entry<Serializable, Object> entry;
-
-        Iterator<Map.Entry<Serializable, Object>> it = serializableMap.entrySet().iterator();
-        while (it.hasNext())
+        for (int i = 0, capacity = sourceMap.getCapacity(); i < capacity; i++)
         {
-            entry = it.next();
-            Serializable key = entry.getKey();
-            Object value = entry.getValue();
+            Serializable key = sourceMap.getKey(i);
+            if (key == null)
+            {
+                continue;
+            }
+            Object value = sourceMap.getValue(i);
 
             // The condition in which the call to saveAttachedState
             // is to handle List, StateHolder or non Serializable instances.
@@ -280,12 +278,12 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
                 Object newInstance;
                 try
                 {
-                    newInstance = entry.getValue().getClass().newInstance();
+                    newInstance = value.getClass().newInstance();
                 }
                 catch (InstantiationException e)
                 {
                     throw new RuntimeException("Could not restore StateHolder of type " + 
-                            entry.getValue().getClass().getName()
+                            value.getClass().getName()
                             + " (missing no-args constructor?)", e);
                 }
                 catch (IllegalAccessException e)
@@ -600,7 +598,7 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
     @Override
     public Object saveState(FacesContext context)
     {
-        Map serializableMap = (isInitialStateMarked()) ? _deltas : _fullState;
+        _StateMap serializableMap = (isInitialStateMarked()) ? _deltas : _fullState;
 
         if (_initialState != null && _deltas != null && !_deltas.isEmpty()
             && isInitialStateMarked())
@@ -663,19 +661,21 @@ class _DeltaStateHelper implements StateHelper, TransientStateHelper, TransientS
             }
         }*/
         
-        Map.Entry<Serializable, Object> entry;
         //entry == key, value, key, value
-        Object[] retArr = new Object[serializableMap.entrySet().size() * 2];
-        //Object[] retArr = new Object[serializableMap.entrySet().size() * 2 + stateHolderKeyCount]; 
+        Object[] retArr = new Object[serializableMap.size() * 2];
+        //Object[] retArr = new Object[serializableMap.size() * 2 + stateHolderKeyCount]; 
 
-        Iterator<Map.Entry<Serializable, Object>> it = serializableMap.entrySet().iterator();
         int cnt = 0;
-        while (it.hasNext())
+        for (int i = 0, capacity = serializableMap.getCapacity(); i < capacity; i++)
         {
-            entry = it.next();
-            retArr[cnt] = entry.getKey();
+            Serializable key = serializableMap.getKey(i);
+            if (key == null)
+            {
+                continue;
+            }
+            retArr[cnt] = key;
 
-            Object value = entry.getValue();
+            Object value = serializableMap.getValue(i);
             
             // The condition in which the call to saveAttachedState
             // is to handle List, StateHolder or non Serializable instances.
@@ -18,62 +18,117 @@
  */
 package javax.faces.component;
 
-import java.beans.PropertyDescriptor;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+/**
+ * The accessors of a javabean property of a component class. The getter and setter are
+ * unreflected once into MethodHandles of type (Object)Object and (Object,Object)void, so
+ * reading or writing the property through the attributes map does not go through the access
+ * checks and argument array of a reflective call. A method that can't be unreflected, like
+ * a public method declared by a package-private class, is still invoked reflectively, and so
+ * is the setter when the value does not have exactly its parameter type. As with
+ * Method.invoke, whatever the accessor throws is wrapped in an InvocationTargetException.
+ */
 class _PropertyDescriptorHolder
 {
-    private final PropertyDescriptor _descriptor;
-    private Reference<Method> _readMethodRef;
-    private Reference<Method> _writeMethodRef;
+    private static final MethodType READER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType WRITER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final String _name;
+    private final Method _readMethod;
+    private final Method _writeMethod;
+    private final MethodHandle _reader;
+    private final MethodHandle _writer;
+    private final Class<?> _writeType;
+    private final boolean _writePrimitive;
 
-    public _PropertyDescriptorHolder(PropertyDescriptor descriptor)
+    public _PropertyDescriptorHolder(String name, Method readMethod, Method writeMethod)
     {
-        _descriptor = descriptor;
-        _readMethodRef = new SoftReference<Method>(_descriptor.getReadMethod());
+        _name = name;
+        _readMethod = readMethod;
+        _writeMethod = writeMethod;
+        _reader = unreflect(readMethod, READER_TYPE);
+        _writer = unreflect(writeMethod, WRITER_TYPE);
+        if (writeMethod != null)
+        {
+            Class<?> parameterType = writeMethod.getParameterTypes()[0];
+            _writeType = MethodType.methodType(parameterType).wrap().returnType();
+            _writePrimitive = parameterType.isPrimitive();
+        }
+        else
+        {
+            _writeType = null;
+            _writePrimitive = false;
+        }
     }
 
-    public _PropertyDescriptorHolder(PropertyDescriptor descriptor, Method readMethod)
+    public String getName()
     {
-        _descriptor = descriptor;
-        _readMethodRef = new SoftReference<Method>(readMethod);
+        return _name;
     }
-    
-    public String getName()
+
+    public boolean isReadable()
     {
-        return _descriptor.getName();
+        return _readMethod != null;
     }
-    
-    public Method getReadMethod()
+
+    public boolean isWritable()
     {
-        Method readMethod = _readMethodRef.get();
-        if (readMethod == null)
+        return _writeMethod != null;
+    }
+
+    public Object read(Object component) throws Exception
+    {
+        if (_reader == null)
+        {
+            return _readMethod.invoke(component);
+        }
+        try
         {
-            readMethod = _descriptor.getReadMethod();
-            _readMethodRef = new SoftReference<Method>(readMethod);
+            return (Object) _reader.invokeExact(component);
+        }
+        catch (Throwable e)
+        {
+            throw new InvocationTargetException(e);
         }
-        return readMethod;
     }
-    
-    public Method getWriteMethod()
+
+    public void write(Object component, Object value) throws Exception
     {
-        if (_writeMethodRef == null || _writeMethodRef.get() == null)
+        if (_writer == null || (value == null ? _writePrimitive : !_writeType.isInstance(value)))
+        {
+            // the reflective call rejects a null for a primitive or a value of another type with
+            // an IllegalArgumentException, and widens a primitive value when it can
+            _writeMethod.invoke(component, value);
+            return;
+        }
+        try
+        {
+            _writer.invokeExact(component, value);
+        }
+        catch (Throwable e)
         {
-            // In facelets, the Method instance used to write the variable is stored
-            // in a variable (see org.apache.myfaces.view.facelets.tag.BeanPropertyTagRule),
-            // so the impact of this synchronized call at the end is minimal compared with 
-            // getReadMethod. That's the reason why cache it here in a lazy way is enough
-            // instead retrieve it as soon as this holder is created.
-            Method writeMethod = _descriptor.getWriteMethod();
-            _writeMethodRef = new SoftReference<Method>(writeMethod);
+            throw new InvocationTargetException(e);
         }
-        return _writeMethodRef.get();
     }
-    
-    public PropertyDescriptor getPropertyDescriptor()
+
+    private static MethodHandle unreflect(Method method, MethodType type)
     {
-        return _descriptor;
+        if (method == null)
+        {
+            return null;
+        }
+        try
+        {
+            return MethodHandles.publicLookup().unreflect(method).asType(type);
+        }
+        catch (IllegalAccessException e)
+        {
+            return null;
+        }
     }
 }
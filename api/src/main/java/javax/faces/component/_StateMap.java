@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.faces.component;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact map used by _DeltaStateHelper to hold the property values of a component.
+ * <p>
+ * Keys and values are stored next to each other in a single open-addressed array,
+ * so there is no entry object per property. Most keys are PropertyKeys enum constants,
+ * they are hashed by their ordinal, which puts the properties of a component in
+ * consecutive slots and avoids identity hash code calls.
+ * </p>
+ * <p>
+ * Null keys are not supported and the iterators of this map do not support remove().
+ * Besides the Map interface, the slots can be read directly through getCapacity(),
+ * getKey(int) and getValue(int) to iterate without allocations.
+ * </p>
+ */
+final class _StateMap extends AbstractMap<Serializable, Object>
+{
+    private static final int DEFAULT_EXPECTED_SIZE = 4;
+
+    /**
+     * Keys on even positions, the value of each key on the next position.
+     * The number of slots is always a power of two.
+     */
+    private Object[] _table;
+
+    private int _size;
+
+    public _StateMap()
+    {
+        this(DEFAULT_EXPECTED_SIZE);
+    }
+
+    public _StateMap(int expectedSize)
+    {
+        _table = new Object[_slotsFor(expectedSize) * 2];
+    }
+
+    // The smallest power of two that holds expectedSize entries without exceeding the max load of 2/3
+    private static int _slotsFor(int expectedSize)
+    {
+        int slots = 2;
+        while (slots * 2 < expectedSize * 3)
+        {
+            slots <<= 1;
+        }
+        return slots;
+    }
+
+    private static int _hash(Object key, int mask)
+    {
+        int h;
+        if (key instanceof Enum)
+        {
+            h = ((Enum<?>) key).ordinal();
+        }
+        else
+        {
+            h = key.hashCode();
+            h ^= (h >>> 16);
+        }
+        return h & mask;
+    }
+
+    private int _indexOf(Object key)
+    {
+        if (key == null)
+        {
+            return -1;
+        }
+        Object[] table = _table;
+        int mask = (table.length >> 1) - 1;
+        int i = _hash(key, mask);
+        while (true)
+        {
+            Object k = table[i << 1];
+            if (k == null)
+            {
+                return -1;
+            }
+            if (k == key || key.equals(k))
+            {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return _indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key)
+    {
+        int i = _indexOf(key);
+        return i < 0 ? null : _table[(i << 1) + 1];
+    }
+
+    @Override
+    public Object put(Serializable key, Object value)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException("key");
+        }
+        int i = _indexOf(key);
+        if (i >= 0)
+        {
+            Object oldValue = _table[(i << 1) + 1];
+            _table[(i << 1) + 1] = value;
+            return oldValue;
+        }
+        if ((_size + 1) * 3 > _table.length)
+        {
+            _resize(getCapacity() * 2);
+        }
+        _insert(_table, key, value);
+        _size++;
+        return null;
+    }
+
+    private static void _insert(Object[] table, Object key, Object value)
+    {
+        int mask = (table.length >> 1) - 1;
+        int i = _hash(key, mask);
+        while (table[i << 1] != null)
+        {
+            i = (i + 1) & mask;
+        }
+        table[i << 1] = key;
+        table[(i << 1) + 1] = value;
+    }
+
+    private void _resize(int slots)
+    {
+        Object[] oldTable = _table;
+        Object[] table = new Object[slots * 2];
+        for (int i = 0; i < oldTable.length; i += 2)
+        {
+            if (oldTable[i] != null)
+            {
+                _insert(table, oldTable[i], oldTable[i + 1]);
+            }
+        }
+        _table = table;
+    }
+
+    @Override
+    public Object remove(Object key)
+    {
+        int i = _indexOf(key);
+        if (i < 0)
+        {
+            return null;
+        }
+        Object[] table = _table;
+        Object oldValue = table[(i << 1) + 1];
+
+        // Shift back the following entries of the probe sequence, so lookups
+        // never stop at the slot that has been freed.
+        int mask = (table.length >> 1) - 1;
+        int j = i;
+        while (true)
+        {
+            j = (j + 1) & mask;
+            Object k = table[j << 1];
+            if (k == null)
+            {
+                break;
+            }
+            int h = _hash(k, mask);
+            if (j > i ? (h <= i || h > j) : (h <= i && h > j))
+            {
+                table[i << 1] = k;
+                table[(i << 1) + 1] = table[(j << 1) + 1];
+                i = j;
+            }
+        }
+        table[i << 1] = null;
+        table[(i << 1) + 1] = null;
+        _size--;
+        return oldValue;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (_size > 0)
+        {
+            Arrays.fill(_table, null);
+            _size = 0;
+        }
+    }
+
+    /**
+     * @return the number of slots, valid indexes for getKey(int) and getValue(int)
+     */
+    int getCapacity()
+    {
+        return _table.length >> 1;
+    }
+
+    /**
+     * @return the key stored in the slot, or null if the slot is empty
+     */
+    Serializable getKey(int index)
+    {
+        return (Serializable) _table[index << 1];
+    }
+
+    Object getValue(int index)
+    {
+        return _table[(index << 1) + 1];
+    }
+
+    @Override
+    public Set<Map.Entry<Serializable, Object>> entrySet()
+    {
+        return new EntrySet();
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<Serializable, Object>>
+    {
+        @Override
+        public int size()
+        {
+            return _size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<Serializable, Object>> iterator()
+        {
+            return new EntryIterator();
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<Serializable, Object>>
+    {
+        private int _next = _advance(0);
+
+        private int _advance(int index)
+        {
+            int capacity = getCapacity();
+            while (index < capacity && _table[index << 1] == null)
+            {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return _next < getCapacity();
+        }
+
+        @Override
+        public Map.Entry<Serializable, Object> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<Serializable, Object> entry = new Entry(_next);
+            _next = _advance(_next + 1);
+            return entry;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private class Entry implements Map.Entry<Serializable, Object>
+    {
+        private final Serializable _key;
+
+        private Entry(int index)
+        {
+            _key = _StateMap.this.getKey(index);
+        }
+
+        @Override
+        public Serializable getKey()
+        {
+            return _key;
+        }
+
+        @Override
+        public Object getValue()
+        {
+            return _StateMap.this.get(_key);
+        }
+
+        @Override
+        public Object setValue(Object value)
+        {
+            return put(_key, value);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Map.Entry))
+            {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object value = getValue();
+            return _key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            Object value = getValue();
+            return _key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString()
+        {
+            return _key + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.el;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.el.ELContext;
+import javax.el.ExpressionFactory;
+import javax.el.StandardELContext;
+
+import org.apache.myfaces.benchmarks.lifecycle.BenchmarkRow;
+import org.apache.myfaces.view.facelets.el.ELText;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmark for <code>ELText</code>, which the facelets compiler uses for every text
+ * node and attribute: parsing literal and mixed text, and writing mixed text at render time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ELTextBenchmark
+{
+    private static final String LITERAL = "<div class=\"item\"><span>Some static markup without any"
+            + " expression, as found in most of the text nodes of a page</span></div>";
+
+    private static final String MIXED = "<div class=\"item\" id=\"item-#{row.id}\"><span>#{row.label}</span>"
+            + " costs #{row.amount} \\#{not.an.expression}</div>";
+
+    private ExpressionFactory expressionFactory;
+    private ELContext elContext;
+    private ELText mixedText;
+    private CharArrayWriter output;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        expressionFactory = new org.apache.el.ExpressionFactoryImpl();
+        elContext = new StandardELContext(expressionFactory);
+        elContext.getVariableMapper().setVariable("row",
+                expressionFactory.createValueExpression(new BenchmarkRow(42), BenchmarkRow.class));
+        mixedText = ELText.parse(expressionFactory, elContext, MIXED);
+        output = new CharArrayWriter(256);
+    }
+
+    @Benchmark
+    public boolean isLiteral()
+    {
+        return ELText.isLiteral(LITERAL);
+    }
+
+    @Benchmark
+    public ELText parseLiteral()
+    {
+        return ELText.parse(expressionFactory, elContext, LITERAL);
+    }
+
+    @Benchmark
+    public ELText parseMixed()
+    {
+        return ELText.parse(expressionFactory, elContext, MIXED);
+    }
+
+    @Benchmark
+    public int writeMixed() throws IOException
+    {
+        output.reset();
+        mixedText.write(output, elContext);
+        return output.size();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.lifecycle;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import javax.el.ExpressionFactory;
+import javax.faces.application.ProjectStage;
+import javax.faces.application.StateManager;
+
+import org.apache.myfaces.test.core.AbstractMyFacesRequestTestCase;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>Base class for the JMH states that drive <code>LifecycleImpl.execute</code> and
+ * <code>LifecycleImpl.render</code>. It reuses the MyFaces mock container (the same one
+ * used by the impl test suite), so a whole application is started once per trial and
+ * every benchmark invocation is a complete request against it.</p>
+ */
+@State(Scope.Thread)
+public abstract class AbstractLifecycleState extends AbstractMyFacesRequestTestCase
+{
+    public static final String TABLE_VIEW = "/table.xhtml";
+
+    private static final String[] WEBAPP_RESOURCES = {"template.xhtml", "table.xhtml"};
+
+    /**
+     * Number of rows rendered by the table and the ui:repeat of the view.
+     */
+    @Param({"20", "200"})
+    public int rows;
+
+    @Param({StateManager.STATE_SAVING_METHOD_SERVER, StateManager.STATE_SAVING_METHOD_CLIENT})
+    public String stateSavingMethod;
+
+    private Path webappDirectory;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception
+    {
+        setUp();
+        servletContext.setAttribute("benchmarkBean", new BenchmarkBean(rows));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws Exception
+    {
+        tearDown();
+        tearDownClass();
+        if (webappDirectory != null)
+        {
+            for (String resource : WEBAPP_RESOURCES)
+            {
+                Files.deleteIfExists(webappDirectory.resolve(resource));
+            }
+            Files.deleteIfExists(webappDirectory);
+            webappDirectory = null;
+        }
+    }
+
+    @Override
+    protected void setUpWebConfigParams() throws Exception
+    {
+        super.setUpWebConfigParams();
+        servletContext.addInitParameter(ProjectStage.PROJECT_STAGE_PARAM_NAME, ProjectStage.Production.name());
+        servletContext.addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME, stateSavingMethod);
+    }
+
+    @Override
+    protected ExpressionFactory createExpressionFactory()
+    {
+        return new org.apache.el.ExpressionFactoryImpl();
+    }
+
+    /**
+     * The mock servlet context needs a directory as document root, but the views are packaged
+     * inside benchmarks.jar, so they are copied to a temporary directory first.
+     */
+    @Override
+    protected URI getWebappContextURI()
+    {
+        try
+        {
+            webappDirectory = Files.createTempDirectory("myfaces-benchmarks");
+            for (String resource : WEBAPP_RESOURCES)
+            {
+                InputStream is = AbstractLifecycleState.class.getResourceAsStream(resource);
+                if (is == null)
+                {
+                    throw new FileNotFoundException(resource);
+                }
+                try
+                {
+                    Files.copy(is, webappDirectory.resolve(resource));
+                }
+                finally
+                {
+                    is.close();
+                }
+            }
+            return webappDirectory.toUri();
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Error Initializing Context", e);
+        }
+    }
+
+    @Override
+    protected Class<?> getTestJavaClass()
+    {
+        return AbstractLifecycleState.class;
+    }
+
+    /**
+     * Render the view once with a GET request, so the next request can be a postback.
+     */
+    protected void renderInitialView()
+    {
+        startViewRequest(TABLE_VIEW);
+        processLifecycleExecuteAndRender();
+    }
+}
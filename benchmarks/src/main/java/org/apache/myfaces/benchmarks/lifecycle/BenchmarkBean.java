@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.lifecycle;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application scoped bean referenced by the lifecycle benchmark views. It is registered
+ * directly as an application attribute, so no managed bean or CDI configuration is required.
+ */
+public class BenchmarkBean implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private String name = "benchmark";
+    private String category = "a";
+    private List<BenchmarkRow> rows;
+
+    public BenchmarkBean(int rowCount)
+    {
+        rows = new ArrayList<BenchmarkRow>(rowCount);
+        for (int i = 0; i < rowCount; i++)
+        {
+            rows.add(new BenchmarkRow(i));
+        }
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    public String getCategory()
+    {
+        return category;
+    }
+
+    public void setCategory(String category)
+    {
+        this.category = category;
+    }
+
+    public List<BenchmarkRow> getRows()
+    {
+        return rows;
+    }
+
+    public String submit()
+    {
+        return null;
+    }
+}
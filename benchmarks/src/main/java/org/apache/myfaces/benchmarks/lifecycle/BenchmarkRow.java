@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.lifecycle;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * A row of the table rendered by the lifecycle benchmark views.
+ */
+public class BenchmarkRow implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private int id;
+    private String label;
+    private BigDecimal amount;
+    private boolean active;
+
+    public BenchmarkRow(int id)
+    {
+        this.id = id;
+        this.label = "Item " + id;
+        this.amount = BigDecimal.valueOf(id * 1234L, 2);
+        this.active = id % 2 == 0;
+    }
+
+    public int getId()
+    {
+        return id;
+    }
+
+    public String getLabel()
+    {
+        return label;
+    }
+
+    public void setLabel(String label)
+    {
+        this.label = label;
+    }
+
+    public BigDecimal getAmount()
+    {
+        return amount;
+    }
+
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    public void setActive(boolean active)
+    {
+        this.active = active;
+    }
+
+    public String getHref()
+    {
+        return "/items/" + id + "?view=detail&lang=en";
+    }
+}
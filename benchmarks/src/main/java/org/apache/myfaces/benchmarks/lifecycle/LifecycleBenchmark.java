@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.lifecycle;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Benchmarks a whole request through <code>Lifecycle.execute</code> and
+ * <code>Lifecycle.render</code> for the three request kinds that matter in production:</p>
+ *
+ * <ul>
+ * <li>an initial GET, which builds and renders the view and saves its state,</li>
+ * <li>a full POST, which restores the view and runs all phases,</li>
+ * <li>an Ajax partial request, which executes and renders a subset of the view.</li>
+ * </ul>
+ *
+ * <p>The postback states prepare the request to submit (including the view state of a
+ * previous GET) outside of the measured code.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LifecycleBenchmark
+{
+    @State(Scope.Thread)
+    public static class GetState extends AbstractLifecycleState
+    {
+    }
+
+    @State(Scope.Thread)
+    public static class PostState extends AbstractLifecycleState
+    {
+        @Setup(Level.Invocation)
+        public void prepareRequest()
+        {
+            renderInitialView();
+            client.inputText("form:name", "posted name");
+            client.submit("form:submit");
+        }
+
+        @TearDown(Level.Invocation)
+        public void finishRequest()
+        {
+            endRequest();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AjaxState extends AbstractLifecycleState
+    {
+        @Setup(Level.Invocation)
+        public void prepareRequest() throws Exception
+        {
+            renderInitialView();
+            client.inputText("form:name", "ajax name");
+            client.ajax("form:ajax", "action", "form:ajax form:name", "form:table form:messages", true);
+        }
+
+        @TearDown(Level.Invocation)
+        public void finishRequest()
+        {
+            endRequest();
+        }
+    }
+
+    @Benchmark
+    public String get(GetState state) throws IOException
+    {
+        state.startViewRequest(AbstractLifecycleState.TABLE_VIEW);
+        state.processLifecycleExecuteAndRender();
+        String content = state.getRenderedContent();
+        state.endRequest();
+        return content;
+    }
+
+    @Benchmark
+    public String post(PostState state) throws IOException
+    {
+        state.processLifecycleExecuteAndRender();
+        return state.getRenderedContent();
+    }
+
+    @Benchmark
+    public String ajax(AjaxState state) throws IOException
+    {
+        state.processLifecycleExecuteAndRender();
+        return state.getRenderedContent();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.renderkit;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.myfaces.shared.renderkit.html.util.HTMLEncoder;
+import org.apache.myfaces.shared.renderkit.html.util.UnicodeEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmark for <code>HTMLEncoder</code> and <code>UnicodeEncoder</code>. Each
+ * benchmark encodes the same text and URL, which need no escaping at all, a few escapes or
+ * mostly escapes. Run it with -prof gc to compare the allocation rate as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HTMLEncoderBenchmark
+{
+    @Param({"plain", "sparse", "dense"})
+    public String text;
+
+    private CharArrayWriter output;
+    private String value;
+    private char[] chars;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        output = new CharArrayWriter(4096);
+        if ("dense".equals(text))
+        {
+            value = "<b>\"caf\u00e9\"</b> & <i>cr\u00e8me br\u00fbl\u00e9e</i> <script>alert('x')</script>";
+            url = "/shop/caf\u00e9 cr\u00e8me/item?name=<b>caf\u00e9</b>&q=\"x y\"&lang=fr";
+        }
+        else if ("sparse".equals(text))
+        {
+            value = "The quick brown fox jumps over the lazy dog & keeps running until the end of the line.";
+            url = "/app/faces/items/detail.xhtml?id=42&view=full&lang=en#section-2";
+        }
+        else
+        {
+            value = "The quick brown fox jumps over the lazy dog and keeps running until the end of the line.";
+            url = "/app/faces/items/detail.xhtml;jsessionid=0123456789ABCDEF";
+        }
+        chars = value.toCharArray();
+    }
+
+    @Benchmark
+    public int encodeToWriter() throws IOException
+    {
+        output.reset();
+        HTMLEncoder.encode(output, value, false, false, false);
+        return output.size();
+    }
+
+    @Benchmark
+    public int encodeCharsToWriter() throws IOException
+    {
+        output.reset();
+        HTMLEncoder.encode(chars, 0, chars.length, true, true, true, output);
+        return output.size();
+    }
+
+    @Benchmark
+    public String encodeToString()
+    {
+        return HTMLEncoder.encode(value, false, false, true);
+    }
+
+    @Benchmark
+    public int encodeUnicodeToWriter() throws IOException
+    {
+        output.reset();
+        UnicodeEncoder.encode(output, value);
+        return output.size();
+    }
+
+    @Benchmark
+    public int encodeURIAttributeToWriter() throws IOException
+    {
+        output.reset();
+        HTMLEncoder.encodeURIAttribute(output, url, "UTF-8");
+        return output.size();
+    }
+
+    @Benchmark
+    public String encodeURIAttributeToString() throws IOException
+    {
+        return HTMLEncoder.encodeURIAttribute(url, "UTF-8");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.renderkit;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.faces.context.ResponseWriter;
+
+import org.apache.myfaces.shared.renderkit.html.HtmlResponseWriterImpl;
+import org.apache.myfaces.test.mock.MockedJsfTestContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmark for <code>HtmlResponseWriterImpl</code>. It writes a table the way the
+ * standard renderers do (elements, attributes, URI attributes and escaped text), once with
+ * text that needs no escaping and once with text full of markup characters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HtmlResponseWriterBenchmark
+{
+    @Param({"100"})
+    public int rows;
+
+    @Param({"plain", "escaped"})
+    public String text;
+
+    private MockedJsfTestContainer container;
+    private CharArrayWriter output;
+    private String[] cellText;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        container = new MockedJsfTestContainer();
+        container.setUpAll();
+        output = new CharArrayWriter(64 * 1024);
+        cellText = new String[rows];
+        for (int i = 0; i < rows; i++)
+        {
+            cellText[i] = "escaped".equals(text)
+                    ? "<b>Item</b> \"" + i + "\" & caf\u00e9 <script>alert('x')</script>"
+                    : "Item number " + i + " with some plain descriptive text";
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        container.tearDownAll();
+        container.tearDown();
+    }
+
+    @Benchmark
+    public int writeTable() throws IOException
+    {
+        output.reset();
+        ResponseWriter writer = new HtmlResponseWriterImpl(output, "text/html", "UTF-8");
+        writer.startDocument();
+        writer.startElement("table", null);
+        writer.writeAttribute("id", "form:table", null);
+        writer.writeAttribute("class", "data", null);
+        writer.startElement("tbody", null);
+        for (int i = 0; i < rows; i++)
+        {
+            writer.startElement("tr", null);
+            writer.writeAttribute("class", (i & 1) == 0 ? "odd" : "even", null);
+
+            writer.startElement("td", null);
+            writer.writeText(cellText[i], null);
+            writer.endElement("td");
+
+            writer.startElement("td", null);
+            writer.startElement("a", null);
+            writer.writeURIAttribute("href", "/items/" + i + "?view=detail&lang=en", null);
+            writer.writeText(cellText[i], null);
+            writer.endElement("a");
+            writer.endElement("td");
+
+            writer.startElement("td", null);
+            writer.startElement("input", null);
+            writer.writeAttribute("type", "text", null);
+            writer.writeAttribute("name", "form:table:" + i + ":label", null);
+            writer.writeAttribute("value", cellText[i], null);
+            writer.writeAttribute("disabled", Boolean.FALSE, null);
+            writer.endElement("input");
+            writer.endElement("td");
+
+            writer.endElement("tr");
+        }
+        writer.endElement("tbody");
+        writer.endElement("table");
+        writer.endDocument();
+        writer.flush();
+        return output.size();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.state;
+
+import javax.faces.component.UIColumn;
+import javax.faces.component.UIViewRoot;
+import javax.faces.component.html.HtmlCommandButton;
+import javax.faces.component.html.HtmlDataTable;
+import javax.faces.component.html.HtmlForm;
+import javax.faces.component.html.HtmlInputText;
+import javax.faces.component.html.HtmlOutputText;
+import javax.faces.context.FacesContext;
+import javax.faces.convert.NumberConverter;
+import javax.faces.validator.LengthValidator;
+
+import org.apache.myfaces.application.TreeStructureManager;
+
+/**
+ * Builds a representative view state, in the same shape <code>StateManagerImpl</code> hands
+ * to the <code>StateCache</code>: an array with the tree structure and the component state.
+ */
+final class BenchmarkViewState
+{
+    private BenchmarkViewState()
+    {
+    }
+
+    static Object[] create(FacesContext facesContext, int columns)
+    {
+        UIViewRoot root = facesContext.getViewRoot();
+        root.getChildren().clear();
+
+        HtmlForm form = new HtmlForm();
+        form.setId("form");
+        root.getChildren().add(form);
+
+        HtmlDataTable table = new HtmlDataTable();
+        table.setId("table");
+        table.setVar("row");
+        table.setStyleClass("data");
+        table.setRowClasses("odd,even");
+        form.getChildren().add(table);
+
+        for (int i = 0; i < columns; i++)
+        {
+            UIColumn column = new UIColumn();
+            column.setId("col" + i);
+            table.getChildren().add(column);
+
+            HtmlOutputText header = new HtmlOutputText();
+            header.setValue("Column " + i);
+            column.getFacets().put("header", header);
+
+            HtmlInputText input = new HtmlInputText();
+            input.setId("input" + i);
+            input.setValue("value " + i);
+            input.setMaxlength(40);
+            input.setStyleClass("cell");
+            input.setRequired(i % 3 == 0);
+            input.addValidator(new LengthValidator(40, 1));
+            column.getChildren().add(input);
+
+            HtmlOutputText output = new HtmlOutputText();
+            output.setId("output" + i);
+            output.setValue(Integer.valueOf(i * 100));
+            output.setConverter(new NumberConverter());
+            column.getChildren().add(output);
+        }
+
+        HtmlCommandButton button = new HtmlCommandButton();
+        button.setId("submit");
+        button.setValue("Submit");
+        form.getChildren().add(button);
+
+        Object treeStructure = new TreeStructureManager().buildTreeStructureToSave(root);
+        Object componentState = root.processSaveState(facesContext);
+        return new Object[] {treeStructure, componentState};
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.state;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.faces.application.StateManager;
+import javax.faces.context.FacesContext;
+
+import org.apache.myfaces.application.StateCache;
+import org.apache.myfaces.application.viewstate.StateCacheFactoryImpl;
+import org.apache.myfaces.shared.util.StateUtils;
+import org.apache.myfaces.shared.util.serial.DefaultSerialFactory;
+import org.apache.myfaces.test.mock.MockedJsfTestContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmark for <code>ServerSideStateCacheImpl</code>, storing a view state in the
+ * session and restoring it again, with and without serializing the state in session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerSideStateCacheBenchmark
+{
+    private static final String VIEW_ID = "/viewId";
+
+    private static final String COMPRESS_STATE_IN_SESSION_PARAM = "org.apache.myfaces.COMPRESS_STATE_IN_SESSION";
+
+    @Param({"10", "100"})
+    public int columns;
+
+    @Param({"true", "false"})
+    public boolean serializeStateInSession;
+
+    @Param({"true", "false"})
+    public boolean compressStateInSession;
+
+    private MockedJsfTestContainer container;
+    private StateCache stateCache;
+    private Object state;
+    private Object token;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        container = new MockedJsfTestContainer();
+        container.setUp();
+        container.getServletContext().addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME,
+                StateManager.STATE_SAVING_METHOD_SERVER);
+        container.getServletContext().addInitParameter(StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME,
+                String.valueOf(serializeStateInSession));
+        container.getServletContext().addInitParameter(COMPRESS_STATE_IN_SESSION_PARAM,
+                String.valueOf(compressStateInSession));
+        container.startRequest();
+        container.startSession();
+
+        FacesContext facesContext = container.getFacesContext();
+        facesContext.getExternalContext().getApplicationMap().put(StateUtils.SERIAL_FACTORY,
+                new DefaultSerialFactory());
+        // server side state saving is configured above, so the factory hands out ServerSideStateCacheImpl
+        stateCache = new StateCacheFactoryImpl().getStateCache(facesContext);
+        state = BenchmarkViewState.create(facesContext, columns);
+        token = stateCache.saveSerializedView(facesContext, state);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        container.tearDownAll();
+        container.tearDown();
+    }
+
+    @Benchmark
+    public Object save()
+    {
+        FacesContext facesContext = container.getFacesContext();
+        // the cache keeps per request information in the context attributes, so start clean
+        // every time as a new request would
+        facesContext.getAttributes().clear();
+        return stateCache.saveSerializedView(facesContext, state);
+    }
+
+    @Benchmark
+    public Object restore()
+    {
+        FacesContext facesContext = container.getFacesContext();
+        facesContext.getAttributes().clear();
+        return stateCache.restoreSerializedView(facesContext, VIEW_ID, token);
+    }
+}
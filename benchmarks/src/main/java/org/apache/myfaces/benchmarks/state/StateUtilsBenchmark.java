@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.benchmarks.state;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.faces.context.ExternalContext;
+
+import org.apache.myfaces.shared.util.StateUtils;
+import org.apache.myfaces.shared.util.serial.DefaultSerialFactory;
+import org.apache.myfaces.test.mock.MockedJsfTestContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmark for the client side state encoding done by <code>StateUtils</code>:
+ * serialization, compression, encryption and base64 encoding, and the reverse path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateUtilsBenchmark
+{
+    @Param({"10", "100"})
+    public int columns;
+
+    @Param({"true", "false"})
+    public boolean encryption;
+
+    private MockedJsfTestContainer container;
+    private ExternalContext externalContext;
+    private Object state;
+    private String constructed;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        container = new MockedJsfTestContainer();
+        container.setUp();
+        container.getServletContext().addInitParameter(StateUtils.USE_ENCRYPTION, String.valueOf(encryption));
+        // 7654321076543210, same keys as used by the StateUtils tests
+        container.getServletContext().addInitParameter(StateUtils.INIT_SECRET, "NzY1NDMyMTA3NjU0MzIxMA==");
+        container.getServletContext().addInitParameter(StateUtils.INIT_ALGORITHM, "AES");
+        container.getServletContext().addInitParameter(StateUtils.INIT_MAC_SECRET, "NzY1NDMyMTA=");
+        StateUtils.initSecret(container.getServletContext());
+        container.startRequest();
+
+        externalContext = container.getExternalContext();
+        externalContext.getApplicationMap().put(StateUtils.SERIAL_FACTORY, new DefaultSerialFactory());
+        state = BenchmarkViewState.create(container.getFacesContext(), columns);
+        constructed = StateUtils.construct(state, externalContext);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        container.tearDownAll();
+        container.tearDown();
+    }
+
+    @Benchmark
+    public byte[] serialize()
+    {
+        return StateUtils.getAsByteArray(state, externalContext);
+    }
+
+    @Benchmark
+    public String construct()
+    {
+        return StateUtils.construct(state, externalContext);
+    }
+
+    @Benchmark
+    public Object reconstruct()
+    {
+        return StateUtils.reconstruct(constructed, externalContext);
+    }
+}
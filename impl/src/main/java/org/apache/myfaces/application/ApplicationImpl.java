@@ -20,7 +20,6 @@ package org.apache.myfaces.application;
 
 import java.beans.BeanDescriptor;
 import java.beans.BeanInfo;
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -34,6 +33,7 @@ import java.util.MissingResourceException;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -123,6 +123,7 @@ import org.apache.myfaces.flow.FlowHandlerImpl;
 import org.apache.myfaces.lifecycle.LifecycleImpl;
 import org.apache.myfaces.config.MyfacesConfig;
 import org.apache.myfaces.shared.util.ClassUtils;
+import org.apache.myfaces.shared.util.InstanceFactory;
 import org.apache.myfaces.view.facelets.FaceletCompositionContext;
 import org.apache.myfaces.view.facelets.el.ELText;
 
@@ -1164,7 +1165,7 @@ public class ApplicationImpl extends Application
             }
             else
             {
-                behavior = behaviorClass.newInstance();
+                behavior = InstanceFactory.newInstance(behaviorClass);
                 FacesContext facesContext = FacesContext.getCurrentInstance();
                 _handleAttachedResourceDependencyAnnotations(facesContext, behavior);
 
@@ -1303,7 +1304,7 @@ public class ApplicationImpl extends Application
                 {
                     try
                     {
-                        component = componentClass.newInstance();
+                        component = InstanceFactory.newInstance(componentClass);
                     }
                     catch (InstantiationException e)
                     {
@@ -1410,7 +1411,7 @@ public class ApplicationImpl extends Application
 
         try
         {
-            UIComponent component = componentClass.newInstance();
+            UIComponent component = InstanceFactory.newInstance(componentClass);
             _handleAnnotations(facesContext, component, component);
             return component;
         }
@@ -1437,7 +1438,7 @@ public class ApplicationImpl extends Application
 
         try
         {
-            UIComponent component = componentClass.newInstance();
+            UIComponent component = InstanceFactory.newInstance(componentClass);
             _handleAnnotations(FacesContext.getCurrentInstance(), component, component);
             return component;
         }
@@ -1532,7 +1533,7 @@ public class ApplicationImpl extends Application
     private Converter createConverterInstance(Class<? extends Converter> converterClass)
             throws InstantiationException, IllegalAccessException
     {
-        return converterClass.newInstance();
+        return InstanceFactory.newInstance(converterClass);
     }
 
     @Override
@@ -1621,23 +1622,20 @@ public class ApplicationImpl extends Application
                 }
                 else
                 {
-                    // check cached constructor information
-                    if (!_noArgConstructorConverterClasses.contains(converterClass))
+                    // look for a constructor that takes a single Class object
+                    // See JSF 1.2 javadoc for Converter
+                    Function<Class<?>, ? extends Converter> factory
+                            = _noArgConstructorConverterClasses.contains(converterClass)
+                            ? null : InstanceFactory.getClassArgumentFactory(converterClass);
+                    if (factory != null)
                     {
-                        // the converter class either supports the one-arg constructor
-                        // or has never been processed before
                         try
                         {
-                            // look for a constructor that takes a single Class object
-                            // See JSF 1.2 javadoc for Converter
-                            Constructor<? extends Converter> constructor = converterClass
-                                    .getConstructor(new Class[] { Class.class });
-
-                            converter = constructor.newInstance(new Object[] { targetClass });
+                            converter = factory.apply(targetClass);
                         }
                         catch (Exception e)
                         {
-                            // the constructor does not exist
+                            // the constructor failed
                             // add the class to the no-arg constructor classes cache
                             _noArgConstructorConverterClasses.add(converterClass);
 
@@ -2019,7 +2017,7 @@ public class ApplicationImpl extends Application
     private Validator createValidatorInstance(Class<? extends Validator> validatorClass)
             throws InstantiationException, IllegalAccessException
     {
-        return validatorClass.newInstance();
+        return InstanceFactory.newInstance(validatorClass);
     }
 
 
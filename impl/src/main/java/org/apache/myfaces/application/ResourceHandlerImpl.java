@@ -20,11 +20,14 @@ package org.apache.myfaces.application;
 
 import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
 import org.apache.myfaces.shared.renderkit.html.util.ResourceUtils;
+import org.apache.myfaces.shared.resource.BundleResource;
+import org.apache.myfaces.shared.resource.BundleResourceCache;
 import org.apache.myfaces.shared.resource.ResourceHandlerCache;
 import org.apache.myfaces.shared.resource.ResourceHandlerCache.ResourceValue;
 import org.apache.myfaces.shared.resource.ResourceHandlerSupport;
 import org.apache.myfaces.shared.resource.ResourceImpl;
 import org.apache.myfaces.shared.resource.ResourceLoader;
+import org.apache.myfaces.shared.resource.ResourceLoaderUtils;
 import org.apache.myfaces.shared.resource.ResourceMeta;
 import org.apache.myfaces.shared.resource.ResourceValidationUtils;
 import org.apache.myfaces.shared.util.ClassUtils;
@@ -37,10 +40,16 @@ import javax.faces.application.ResourceHandler;
 import javax.faces.application.ResourceWrapper;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
+import javax.servlet.ServletResponseWrapper;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -65,6 +74,8 @@ import org.apache.myfaces.shared.renderkit.html.util.SharedStringBuilder;
 import org.apache.myfaces.shared.resource.ContractResource;
 import org.apache.myfaces.shared.resource.ContractResourceLoader;
 import org.apache.myfaces.shared.resource.ResourceCachedInfo;
+import org.apache.myfaces.resource.EncodedResourceCache;
+import org.apache.myfaces.resource.ResourceContentEncoder;
 import org.apache.myfaces.util.SkipMatchIterator;
 
 /**
@@ -102,12 +113,30 @@ public class ResourceHandlerImpl extends ResourceHandler
     @JSFWebConfigParam(since="2.1.10, 2.0.16", defaultValue="2048", group="resources")
     public static final String INIT_PARAM_RESOURCE_BUFFER_SIZE = "org.apache.myfaces.RESOURCE_BUFFER_SIZE";
     public static final int INIT_PARAM_RESOURCE_BUFFER_SIZE_DEFAULT = 2048;
+
+    /**
+     * Let the container send the resources that are read from a file with sendfile, when it
+     * announces the support with the request attribute org.apache.tomcat.sendfile.support.
+     * Otherwise these resources are transferred from a FileChannel.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="resources", tags="performance")
+    public static final String INIT_PARAM_RESOURCE_SENDFILE_ENABLED = "org.apache.myfaces.RESOURCE_SENDFILE_ENABLED";
+    public static final boolean INIT_PARAM_RESOURCE_SENDFILE_ENABLED_DEFAULT = false;
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
     
     public static final Pattern LIBRARY_VERSION_CHECKER = Pattern.compile("\\p{Digit}+(_\\p{Digit}*)*");
     public static final Pattern RESOURCE_VERSION_CHECKER = Pattern.compile("\\p{Digit}+(_\\p{Digit}*)*\\..*");    
     
     private Boolean _allowSlashLibraryName;
     private int _resourceBufferSize = -1;
+    private Boolean _sendfileEnabled;
+    private volatile EncodedResourceCache _encodedResourceCache;
+    private volatile boolean _encodedResourceCacheInitialized;
     
     private String[] _excludedResourceExtensions;
     
@@ -216,7 +245,14 @@ public class ResourceHandlerImpl extends ResourceHandler
             resource = new ResourceImpl(resourceValue.getResourceMeta(), resourceValue.getResourceLoader(),
                     getResourceHandlerSupport(), contentType, 
                     resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getURL() : null, 
-                    resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getRequestPath() : null);
+                    resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getRequestPath() : null,
+                    resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getContentHash() : null);
+        }
+        else if (contractPreferred == null && contracts.isEmpty()
+                && getResourceLoaderCache().isResourceNotFound(resourceName, libraryName, contentType, localePrefix))
+        {
+            // It was looked up recently and not found
+            return null;
         }
         else
         {
@@ -236,7 +272,7 @@ public class ResourceHandlerImpl extends ResourceHandler
                         // cache it
                         getResourceLoaderCache().putResource(resourceName, libraryName, contentType,
                                 localePrefix, contractPreferred, resourceMeta, loader, 
-                                new ResourceCachedInfo(resource.getURL(), resource.getRequestPath()));
+                                createCachedInfo((ResourceImpl) resource));
                         resolved = true;
                         break;
                     }
@@ -261,7 +297,7 @@ public class ResourceHandlerImpl extends ResourceHandler
                             getResourceLoaderCache().putResource(
                                     resourceName, libraryName, contentType,
                                     localePrefix, contract, resourceMeta, loader,
-                                    new ResourceCachedInfo(resource.getURL(), resource.getRequestPath()));
+                                    createCachedInfo((ResourceImpl) resource));
                             resolved = true;
                             break;
                         }
@@ -283,15 +319,24 @@ public class ResourceHandlerImpl extends ResourceHandler
                         // cache it
                         getResourceLoaderCache().putResource(resourceName, libraryName, contentType,
                                 localePrefix, null, resourceMeta, loader, 
-                                new ResourceCachedInfo(resource.getURL(), resource.getRequestPath()));
+                                createCachedInfo((ResourceImpl) resource));
                         break;
                     }
                 }
+                if (resource == null && contractPreferred == null && contracts.isEmpty())
+                {
+                    getResourceLoaderCache().putResourceNotFound(resourceName, libraryName, contentType, localePrefix);
+                }
             }
         }
         return resource;
     }
 
+    private static ResourceCachedInfo createCachedInfo(ResourceImpl resource)
+    {
+        return new ResourceCachedInfo(resource.getURL(), resource.getRequestPath(), resource.getContentHash());
+    }
+
     protected ResourceMeta deriveResourceMeta(ContractResourceLoader resourceLoader,
             String resourceName, String libraryName, String localePrefix, String contractName)
     {
@@ -587,7 +632,16 @@ public class ResourceHandlerImpl extends ResourceHandler
         }
 
         Resource resource = null;
-        if (libraryName != null)
+        if (BundleResourceCache.BUNDLE_LIBRARY_NAME.equals(libraryName))
+        {
+            BundleResourceCache bundleResourceCache = BundleResourceCache.getInstance(facesContext);
+            if (bundleResourceCache.isEnabled())
+            {
+                resource = bundleResourceCache.getBundle(facesContext, resourceName,
+                        extContext.getRequestParameterMap().get(BundleResourceCache.MEMBERS_PARAM));
+            }
+        }
+        else if (libraryName != null)
         {
             //log.info("libraryName=" + libraryName);
             resource = facesContext.getApplication().getResourceHandler().createResource(resourceName, libraryName);
@@ -603,13 +657,59 @@ public class ResourceHandlerImpl extends ResourceHandler
             return;
         }
 
-        if (!resource.userAgentNeedsUpdate(facesContext))
+        String contentType = _getContentType(resource, extContext);
+
+        // Text resources can be sent encoded, compressed once and kept in memory
+        EncodedResourceCache encodedResourceCache = getEncodedResourceCache(facesContext);
+        boolean encodable = encodedResourceCache != null && encodedResourceCache.isEncoded(contentType);
+        ResourceContentEncoder encoder = encodable
+                ? encodedResourceCache.getEncoder(extContext.getRequestHeaderMap().get("Accept-Encoding"))
+                : null;
+        String encodedKey = null;
+        if (encoder != null)
+        {
+            encodedKey = resourceName + '/' + libraryName + '/' + extContext.getRequestParameterMap().get("loc")
+                    + '/' + extContext.getRequestParameterMap().get("con");
+            if (!encodedResourceCache.isEncodable(encodedKey, encoder))
+            {
+                // too big to be kept encoded, send it as it is rather than encoding it on every request
+                encoder = null;
+            }
+        }
+
+        // Resources read as they are from a file are sent without copying them through
+        // a buffer, with validation by entity tag and byte ranges
+        File file = resource instanceof ResourceImpl ? ((ResourceImpl) resource).getFile() : null;
+        String etag = null;
+        if (file != null)
+        {
+            etag = ResourceLoaderUtils.formatETag(file.length(), file.lastModified(),
+                    encoder != null ? encoder.getContentEncoding() : null);
+        }
+        else if (resource instanceof BundleResource)
+        {
+            etag = ((BundleResource) resource).getETag(encoder != null ? encoder.getContentEncoding() : null);
+        }
+        String ifNoneMatch = etag != null ? extContext.getRequestHeaderMap().get("If-None-Match") : null;
+
+        if (encodable)
+        {
+            httpServletResponse.setHeader("Vary", "Accept-Encoding");
+        }
+
+        // If-None-Match takes precedence over If-Modified-Since (RFC 7232)
+        if (ifNoneMatch != null ? ResourceLoaderUtils.isETagMatching(ifNoneMatch, etag)
+                : !resource.userAgentNeedsUpdate(facesContext))
         {
+            if (etag != null)
+            {
+                httpServletResponse.setHeader("ETag", etag);
+            }
             httpServletResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
             return;
         }
 
-        httpServletResponse.setContentType(_getContentType(resource, facesContext.getExternalContext()));
+        httpServletResponse.setContentType(contentType);
 
         Map<String, String> headers = resource.getResponseHeaders();
 
@@ -624,6 +724,39 @@ public class ResourceHandlerImpl extends ResourceHandler
         //serve up the bytes (taken from trinidad ResourceServlet)
         try
         {
+            if (encoder != null)
+            {
+                byte[] content = encodedResourceCache.getEncodedContent(encodedKey, encoder, resource);
+                if (etag != null)
+                {
+                    httpServletResponse.setHeader("ETag", etag);
+                }
+                httpServletResponse.setHeader("Content-Encoding", encoder.getContentEncoding());
+                httpServletResponse.setContentLength(content.length);
+                OutputStream out = httpServletResponse.getOutputStream();
+                try
+                {
+                    out.write(content);
+                }
+                finally
+                {
+                    out.close();
+                }
+                return;
+            }
+
+            if (file != null)
+            {
+                httpServletResponse.setHeader("ETag", etag);
+                httpServletResponse.setHeader("Accept-Ranges", "bytes");
+                sendFile(extContext, httpServletResponse, file, etag);
+                return;
+            }
+
+            if (etag != null)
+            {
+                httpServletResponse.setHeader("ETag", etag);
+            }
             InputStream in = resource.getInputStream();
             OutputStream out = httpServletResponse.getOutputStream();
             //byte[] buffer = new byte[_BUFFER_SIZE];
@@ -670,6 +803,92 @@ public class ResourceHandlerImpl extends ResourceHandler
         }
     }
 
+    /**
+     * Sends the requested range of a file, with the sendfile support of the container if enabled or
+     * by transferring it from a FileChannel to the response.
+     */
+    private void sendFile(ExternalContext extContext, HttpServletResponse httpServletResponse, File file,
+            String etag) throws IOException
+    {
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+
+        String range = extContext.getRequestHeaderMap().get("Range");
+        if (range != null && isIfRangeMatching(extContext, etag, file.lastModified()))
+        {
+            long[] byteRange = ResourceLoaderUtils.parseByteRange(range, length);
+            if (byteRange == ResourceLoaderUtils.UNSATISFIABLE_BYTE_RANGE)
+            {
+                httpServletResponse.setHeader("Content-Range", "bytes */" + length);
+                httpServletResponse.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (byteRange != null)
+            {
+                start = byteRange[0];
+                end = byteRange[1];
+                httpServletResponse.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                httpServletResponse.setHeader("Content-Range", "bytes " + start + '-' + end + '/' + length);
+            }
+        }
+
+        long count = end - start + 1;
+        httpServletResponse.setContentLengthLong(count);
+
+        // The container can only send the file when nothing wraps the response
+        Map<String, Object> requestMap = extContext.getRequestMap();
+        if (count > 0 && isSendfileEnabled() && Boolean.TRUE.equals(requestMap.get(SENDFILE_SUPPORT_ATTR))
+                && !(extContext.getResponse() instanceof ServletResponseWrapper))
+        {
+            requestMap.put(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+            requestMap.put(SENDFILE_START_ATTR, start);
+            requestMap.put(SENDFILE_END_ATTR, end + 1);
+            return;
+        }
+
+        OutputStream out = httpServletResponse.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            WritableByteChannel target = Channels.newChannel(out);
+            while (count > 0)
+            {
+                long transferred = channel.transferTo(start, count, target);
+                if (transferred <= 0)
+                {
+                    // the file was truncated meanwhile
+                    break;
+                }
+                start += transferred;
+                count -= transferred;
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * @return true if there is no If-Range header or it matches the current version of the file
+     */
+    private static boolean isIfRangeMatching(ExternalContext extContext, String etag, long lastModified)
+    {
+        String ifRange = extContext.getRequestHeaderMap().get("If-Range");
+        if (ifRange == null)
+        {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+        {
+            // strong comparison
+            return ifRange.equals(etag);
+        }
+        // the date only matches if it is exactly the last modification time, HTTP dates have no millis
+        Long date = ResourceLoaderUtils.parseDateHeader(ifRange);
+        return date != null && lastModified / 1000 == date / 1000;
+    }
+
     private static boolean isConnectionAbort(IOException e)
     {
         return e.getClass().getCanonicalName().equals("org.apache.catalina.connector.ClientAbortException");
@@ -1007,6 +1226,28 @@ public class ResourceHandlerImpl extends ResourceHandler
         return _allowSlashLibraryName;
     }
 
+    protected EncodedResourceCache getEncodedResourceCache(FacesContext facesContext)
+    {
+        if (!_encodedResourceCacheInitialized)
+        {
+            _encodedResourceCache = EncodedResourceCache.create(facesContext);
+            _encodedResourceCacheInitialized = true;
+        }
+        return _encodedResourceCache;
+    }
+
+    protected boolean isSendfileEnabled()
+    {
+        if (_sendfileEnabled == null)
+        {
+            _sendfileEnabled = WebConfigParamUtils.getBooleanInitParameter(
+                    FacesContext.getCurrentInstance().getExternalContext(),
+                    INIT_PARAM_RESOURCE_SENDFILE_ENABLED,
+                    INIT_PARAM_RESOURCE_SENDFILE_ENABLED_DEFAULT);
+        }
+        return _sendfileEnabled;
+    }
+
     protected int getResourceBufferSize()
     {
         if (_resourceBufferSize == -1)
@@ -1080,7 +1321,14 @@ public class ResourceHandlerImpl extends ResourceHandler
             resource = new ResourceImpl(resourceValue.getResourceMeta(), resourceValue.getResourceLoader(),
                     getResourceHandlerSupport(), contentType,
                     resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getURL() : null, 
-                    resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getRequestPath() : null);
+                    resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getRequestPath() : null,
+                    resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getContentHash() : null);
+        }
+        else if (contractPreferred == null && contracts.isEmpty()
+                && getResourceLoaderCache().isResourceNotFound(resourceId))
+        {
+            // It was looked up recently and not found
+            return null;
         }
         else
         {
@@ -1101,7 +1349,7 @@ public class ResourceHandlerImpl extends ResourceHandler
 
                         // cache it
                         getResourceLoaderCache().putResource(resourceId, resourceMeta, loader, 
-                            new ResourceCachedInfo(resource.getURL(), resource.getRequestPath()));
+                            createCachedInfo((ResourceImpl) resource));
                         
                         resolved = true;
                         break;
@@ -1127,7 +1375,7 @@ public class ResourceHandlerImpl extends ResourceHandler
 
                             // cache it
                             getResourceLoaderCache().putResource(resourceId, resourceMeta, loader, 
-                                new ResourceCachedInfo(resource.getURL(), resource.getRequestPath()));
+                                createCachedInfo((ResourceImpl) resource));
 
                             resolved = true;
                             break;
@@ -1150,10 +1398,14 @@ public class ResourceHandlerImpl extends ResourceHandler
 
                         // cache it
                         getResourceLoaderCache().putResource(resourceId, resourceMeta, loader, 
-                            new ResourceCachedInfo(resource.getURL(), resource.getRequestPath()));
+                            createCachedInfo((ResourceImpl) resource));
                         break;
                     }
                 }
+                if (resource == null && contractPreferred == null && contracts.isEmpty())
+                {
+                    getResourceLoaderCache().putResourceNotFound(resourceId);
+                }
             }
         }
         return resource;
@@ -1683,6 +1935,12 @@ public class ResourceHandlerImpl extends ResourceHandler
                     getResourceHandlerSupport(), contentType, 
                     resourceValue.getCachedInfo() != null ? resourceValue.getCachedInfo().getURL() : null, null);
         }
+        else if (contractPreferred == null && contracts.isEmpty()
+                && getResourceLoaderCache().isViewResourceNotFound(resourceName, contentType, localePrefix))
+        {
+            // It was looked up recently and not found
+            return null;
+        }
         else
         {
             boolean resolved = false;
@@ -1754,6 +2012,10 @@ public class ResourceHandlerImpl extends ResourceHandler
                         break;
                     }
                 }
+                if (resource == null && contractPreferred == null && contracts.isEmpty())
+                {
+                    getResourceLoaderCache().putViewResourceNotFound(resourceName, contentType, localePrefix);
+                }
             }
         }
         return resource;
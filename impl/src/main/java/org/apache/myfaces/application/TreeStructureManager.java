@@ -157,7 +157,7 @@ public class TreeStructureManager
         private TreeStructComponent[] _children = null;    // Array of children
         private Object[] _facets = null;            // Array of Array-tuples with Facetname and TreeStructComponent
 
-        TreeStructComponent(String componentClass, String componentId)
+        public TreeStructComponent(String componentClass, String componentId)
         {
             _componentClass = componentClass;
             _componentId = componentId;
@@ -173,22 +173,22 @@ public class TreeStructureManager
             return _componentId;
         }
 
-        void setChildren(TreeStructComponent[] children)
+        public void setChildren(TreeStructComponent[] children)
         {
             _children = children;
         }
 
-        TreeStructComponent[] getChildren()
+        public TreeStructComponent[] getChildren()
         {
             return _children;
         }
 
-        Object[] getFacets()
+        public Object[] getFacets()
         {
             return _facets;
         }
 
-        void setFacets(Object[] facets)
+        public void setFacets(Object[] facets)
         {
             _facets = facets;
         }
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * What the session keeps for a view that is being compressed in the background. The view itself was
+ * already serialized by the request that saved it. Restoring the view waits for the compression to
+ * finish. If the session itself is serialized (passivation, replication), the pending view is replaced
+ * by its compressed state.
+ */
+class AsyncSerializedView implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final transient FutureTask<Object> task;
+
+    AsyncSerializedView(Callable<Object> serialization)
+    {
+        this.task = new FutureTask<Object>(serialization);
+    }
+
+    Runnable getTask()
+    {
+        return task;
+    }
+
+    /**
+     * Waits for the compression to finish.
+     * 
+     * @return the serialized view, or null if it could not be serialized.
+     */
+    Object getState() throws IOException
+    {
+        if (task == null)
+        {
+            // the view could not be serialized when the session was
+            return null;
+        }
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the view to be serialized");
+        }
+        catch (ExecutionException e)
+        {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException
+    {
+        Object state;
+        try
+        {
+            state = getState();
+        }
+        catch (IOException e)
+        {
+            state = null;
+        }
+        return state == null ? this : state;
+    }
+}
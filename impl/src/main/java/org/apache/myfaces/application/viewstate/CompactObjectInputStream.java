@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.myfaces.application.TreeStructureManager.TreeStructComponent;
+import org.apache.myfaces.shared.util.ClassUtils;
+import org.apache.myfaces.shared.util.MyFacesObjectInputStream;
+import org.apache.myfaces.view.facelets.AttachedFullStateWrapper;
+import org.apache.myfaces.view.facelets.DefaultFaceletsStateManagementStrategy;
+
+import static org.apache.myfaces.application.viewstate.CompactObjectOutputStream.*;
+
+/**
+ * ObjectInputStream that reads the format written by {@link CompactObjectOutputStream}.
+ * Classes are resolved like {@link MyFacesObjectInputStream} does, through the context
+ * class loader.
+ */
+public class CompactObjectInputStream extends ObjectInputStream
+{
+    private final InputStream in;
+    private final List<String> strings = new ArrayList<String>();
+    private ObjectInputStream serializableIn;
+
+    public CompactObjectInputStream(InputStream in) throws IOException
+    {
+        super();
+        this.in = new BufferedInputStream(in, 1024);
+        if (this.in.read() != MAGIC || this.in.read() != VERSION)
+        {
+            throw new StreamCorruptedException("Not a compact view state stream");
+        }
+    }
+
+    @Override
+    protected Object readObjectOverride() throws IOException, ClassNotFoundException
+    {
+        return readValue();
+    }
+
+    private Object readValue() throws IOException, ClassNotFoundException
+    {
+        int tag = nextByte();
+        switch (tag)
+        {
+            case TAG_NULL:
+                return null;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_INTEGER:
+                return unZigZag(readVarInt());
+            case TAG_LONG:
+                return unZigZag(readVarLong());
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(readFixedLong());
+            case TAG_STRING:
+                return readNewString();
+            case TAG_STRING_REF:
+                return readStringRef();
+            case TAG_OBJECT_ARRAY:
+            {
+                Object[] array = new Object[readVarInt()];
+                for (int i = 0; i < array.length; i++)
+                {
+                    array[i] = readValue();
+                }
+                return array;
+            }
+            case TAG_ARRAY_LIST:
+            {
+                int size = readVarInt();
+                List<Object> list = new ArrayList<Object>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    list.add(readValue());
+                }
+                return list;
+            }
+            case TAG_HASH_MAP:
+            {
+                int size = readVarInt();
+                Map<Object, Object> map = new HashMap<Object, Object>(Math.max((int) (size / .75f) + 1, 16));
+                for (int i = 0; i < size; i++)
+                {
+                    Object key = readValue();
+                    map.put(key, readValue());
+                }
+                return map;
+            }
+            case TAG_ENUM:
+            {
+                Class enumClass = ClassUtils.classForName((String) readValue());
+                return Enum.valueOf(enumClass, (String) readValue());
+            }
+            case TAG_CLASS:
+                return ClassUtils.classForName((String) readValue());
+            case TAG_ATTACHED_STATE_WRAPPER:
+            {
+                String className = (String) readValue();
+                Class<?> clazz = className == null ? null : ClassUtils.classForName(className);
+                return _AttachedStateWrappers.newAttachedStateWrapper(clazz, readValue());
+            }
+            case TAG_ATTACHED_DELTA_WRAPPER:
+                return _AttachedStateWrappers.newAttachedDeltaWrapper(readValue());
+            case TAG_ATTACHED_FULL_STATE_WRAPPER:
+                return new AttachedFullStateWrapper(readValue());
+            case TAG_TREE_STRUCT_COMPONENT:
+                return readTreeStructComponent();
+            case TAG_FACELETS_TREE_STRUCT_COMPONENT:
+                return readFaceletsTreeStructComponent();
+            case TAG_SERIALIZABLE:
+                if (serializableIn == null)
+                {
+                    serializableIn = new MyFacesObjectInputStream(new NonClosingInputStream(in));
+                }
+                return serializableIn.readObject();
+            default:
+                throw new StreamCorruptedException("Unknown tag " + tag);
+        }
+    }
+
+    private TreeStructComponent readTreeStructComponent() throws IOException, ClassNotFoundException
+    {
+        String componentClass = (String) readValue();
+        String componentId = (String) readValue();
+        TreeStructComponent component = new TreeStructComponent(componentClass, componentId);
+
+        int childCount = readVarInt();
+        if (childCount > 0)
+        {
+            TreeStructComponent[] children = new TreeStructComponent[childCount - 1];
+            for (int i = 0; i < children.length; i++)
+            {
+                children[i] = (TreeStructComponent) readValue();
+            }
+            component.setChildren(children);
+        }
+        component.setFacets((Object[]) readValue());
+        return component;
+    }
+
+    private DefaultFaceletsStateManagementStrategy.TreeStructComponent readFaceletsTreeStructComponent()
+            throws IOException, ClassNotFoundException
+    {
+        String componentClass = (String) readValue();
+        String componentId = (String) readValue();
+        DefaultFaceletsStateManagementStrategy.TreeStructComponent component =
+                new DefaultFaceletsStateManagementStrategy.TreeStructComponent(componentClass, componentId);
+
+        int childCount = readVarInt();
+        if (childCount > 0)
+        {
+            DefaultFaceletsStateManagementStrategy.TreeStructComponent[] children =
+                    new DefaultFaceletsStateManagementStrategy.TreeStructComponent[childCount - 1];
+            for (int i = 0; i < children.length; i++)
+            {
+                children[i] = (DefaultFaceletsStateManagementStrategy.TreeStructComponent) readValue();
+            }
+            component.setChildren(children);
+        }
+        component.setFacets((Object[]) readValue());
+        return component;
+    }
+
+    private String readNewString() throws IOException
+    {
+        int length = readVarInt();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+        {
+            chars[i] = (char) readVarInt();
+        }
+        String value = new String(chars);
+        strings.add(value);
+        return value;
+    }
+
+    private String readStringRef() throws IOException
+    {
+        int index = readVarInt();
+        if (index >= strings.size())
+        {
+            throw new StreamCorruptedException("Unknown string reference " + index);
+        }
+        return strings.get(index);
+    }
+
+    private int nextByte() throws IOException
+    {
+        int b = in.read();
+        if (b < 0)
+        {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private int readVarInt() throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = nextByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    private long readVarLong() throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = nextByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    private long readFixedLong() throws IOException
+    {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            value = (value << 8) | nextByte();
+        }
+        return value;
+    }
+
+    private static int unZigZag(int value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        return in.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        return in.read(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return in.available();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream
+    {
+        NonClosingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
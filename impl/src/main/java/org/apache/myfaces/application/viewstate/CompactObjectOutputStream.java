@@ -0,0 +1,383 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.myfaces.application.TreeStructureManager.TreeStructComponent;
+import org.apache.myfaces.view.facelets.AttachedFullStateWrapper;
+import org.apache.myfaces.view.facelets.DefaultFaceletsStateManagementStrategy;
+
+/**
+ * <p>ObjectOutputStream that writes the view state in a compact binary format instead of
+ * using java serialization. It knows the shapes produced by the state saving algorithm
+ * (object arrays, <code>_DeltaStateHelper</code> keys and values, the attached state
+ * wrappers and <code>TreeStructureManager</code> nodes) and writes them as tagged values:
+ * ints and longs as varints, strings and class names once per stream and later as a
+ * reference into a table, and no class descriptors or per-object headers at all. Unlike
+ * java serialization, shared references between those values are not preserved, which is
+ * fine for a view state because it is always a tree.</p>
+ *
+ * <p>Any other <code>Serializable</code> value is written with an embedded
+ * <code>ObjectOutputStream</code>, created on first use, so the result is always
+ * readable by {@link CompactObjectInputStream}.</p>
+ *
+ * <p>Only {@link #writeObject(Object)}, {@link #flush()} and {@link #close()} are
+ * supported, which is all the state saving code uses.</p>
+ */
+public class CompactObjectOutputStream extends ObjectOutputStream
+{
+    static final int MAGIC = 0xCA;
+    static final int VERSION = 1;
+
+    static final int TAG_NULL = 0;
+    static final int TAG_TRUE = 1;
+    static final int TAG_FALSE = 2;
+    static final int TAG_INTEGER = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_DOUBLE = 5;
+    static final int TAG_STRING = 6;
+    static final int TAG_STRING_REF = 7;
+    static final int TAG_OBJECT_ARRAY = 8;
+    static final int TAG_ARRAY_LIST = 9;
+    static final int TAG_HASH_MAP = 10;
+    static final int TAG_ENUM = 11;
+    static final int TAG_CLASS = 12;
+    static final int TAG_ATTACHED_STATE_WRAPPER = 13;
+    static final int TAG_ATTACHED_DELTA_WRAPPER = 14;
+    static final int TAG_ATTACHED_FULL_STATE_WRAPPER = 15;
+    static final int TAG_TREE_STRUCT_COMPONENT = 16;
+    static final int TAG_FACELETS_TREE_STRUCT_COMPONENT = 17;
+    static final int TAG_SERIALIZABLE = 18;
+
+    private final DrainableBufferedOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private ObjectOutputStream serializableOut;
+    private boolean closed;
+
+    public CompactObjectOutputStream(OutputStream out) throws IOException
+    {
+        super();
+        this.out = new DrainableBufferedOutputStream(out);
+        this.out.write(MAGIC);
+        this.out.write(VERSION);
+    }
+
+    @Override
+    protected void writeObjectOverride(Object obj) throws IOException
+    {
+        writeValue(obj);
+        // like ObjectOutputStream, hand the bytes of every top level object to the underlying stream
+        out.drain();
+    }
+
+    private void writeValue(Object value) throws IOException
+    {
+        if (value == null)
+        {
+            out.write(TAG_NULL);
+            return;
+        }
+
+        Class<?> type = value.getClass();
+        if (type == String.class)
+        {
+            writeString((String) value);
+        }
+        else if (type == Object[].class)
+        {
+            Object[] array = (Object[]) value;
+            out.write(TAG_OBJECT_ARRAY);
+            writeVarInt(array.length);
+            for (int i = 0; i < array.length; i++)
+            {
+                writeValue(array[i]);
+            }
+        }
+        else if (type == Integer.class)
+        {
+            out.write(TAG_INTEGER);
+            writeVarInt(zigZag((Integer) value));
+        }
+        else if (type == Boolean.class)
+        {
+            out.write(((Boolean) value) ? TAG_TRUE : TAG_FALSE);
+        }
+        else if (value instanceof Enum)
+        {
+            Enum<?> enumValue = (Enum<?>) value;
+            out.write(TAG_ENUM);
+            writeString(enumValue.getDeclaringClass().getName());
+            writeString(enumValue.name());
+        }
+        else if (_AttachedStateWrappers.isAttachedStateWrapper(type))
+        {
+            Class<?> clazz = _AttachedStateWrappers.getClazz(value);
+            out.write(TAG_ATTACHED_STATE_WRAPPER);
+            writeValue(clazz == null ? null : clazz.getName());
+            writeValue(_AttachedStateWrappers.getWrappedStateObject(value));
+        }
+        else if (_AttachedStateWrappers.isAttachedDeltaWrapper(type))
+        {
+            out.write(TAG_ATTACHED_DELTA_WRAPPER);
+            writeValue(_AttachedStateWrappers.getWrappedStateObject(value));
+        }
+        else if (type == AttachedFullStateWrapper.class)
+        {
+            out.write(TAG_ATTACHED_FULL_STATE_WRAPPER);
+            writeValue(((AttachedFullStateWrapper) value).getWrappedStateObject());
+        }
+        else if (type == TreeStructComponent.class)
+        {
+            TreeStructComponent component = (TreeStructComponent) value;
+            out.write(TAG_TREE_STRUCT_COMPONENT);
+            writeTreeStructComponent(component.getComponentClass(), component.getComponentId(),
+                    component.getChildren(), component.getFacets());
+        }
+        else if (type == DefaultFaceletsStateManagementStrategy.TreeStructComponent.class)
+        {
+            DefaultFaceletsStateManagementStrategy.TreeStructComponent component =
+                    (DefaultFaceletsStateManagementStrategy.TreeStructComponent) value;
+            out.write(TAG_FACELETS_TREE_STRUCT_COMPONENT);
+            writeTreeStructComponent(component.getComponentClass(), component.getComponentId(),
+                    component.getChildren(), component.getFacets());
+        }
+        else if (type == Long.class)
+        {
+            out.write(TAG_LONG);
+            writeVarLong(zigZag((Long) value));
+        }
+        else if (type == Double.class)
+        {
+            out.write(TAG_DOUBLE);
+            writeFixedLong(Double.doubleToLongBits((Double) value));
+        }
+        else if (type == ArrayList.class)
+        {
+            List<?> list = (List<?>) value;
+            out.write(TAG_ARRAY_LIST);
+            writeVarInt(list.size());
+            for (int i = 0, size = list.size(); i < size; i++)
+            {
+                writeValue(list.get(i));
+            }
+        }
+        else if (type == HashMap.class)
+        {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(TAG_HASH_MAP);
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                writeValue(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+        else if (type == Class.class)
+        {
+            out.write(TAG_CLASS);
+            writeString(((Class<?>) value).getName());
+        }
+        else if (value instanceof Serializable)
+        {
+            out.write(TAG_SERIALIZABLE);
+            if (serializableOut == null)
+            {
+                serializableOut = new ObjectOutputStream(new NonFlushingOutputStream(out));
+            }
+            serializableOut.writeObject(value);
+            // push the object into out, so the next compact value is written after it
+            serializableOut.flush();
+        }
+        else
+        {
+            throw new NotSerializableException(type.getName());
+        }
+    }
+
+    private void writeTreeStructComponent(String componentClass, String componentId, Object[] children,
+            Object[] facets) throws IOException
+    {
+        writeValue(componentClass);
+        writeValue(componentId);
+        if (children == null)
+        {
+            writeVarInt(0);
+        }
+        else
+        {
+            writeVarInt(children.length + 1);
+            for (int i = 0; i < children.length; i++)
+            {
+                writeValue(children[i]);
+            }
+        }
+        writeValue(facets);
+    }
+
+    /**
+     * Strings are written the first time as characters and from then on as a reference into
+     * the table of strings already written. Component ids, property names and class names
+     * repeat a lot inside a view state.
+     */
+    private void writeString(String value) throws IOException
+    {
+        Integer index = strings.get(value);
+        if (index != null)
+        {
+            out.write(TAG_STRING_REF);
+            writeVarInt(index);
+            return;
+        }
+        strings.put(value, strings.size());
+
+        out.write(TAG_STRING);
+        int length = value.length();
+        writeVarInt(length);
+        for (int i = 0; i < length; i++)
+        {
+            writeVarInt(value.charAt(i));
+        }
+    }
+
+    private static int zigZag(int value)
+    {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarInt(int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private void writeVarLong(long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private void writeFixedLong(long value) throws IOException
+    {
+        for (int shift = 56; shift >= 0; shift -= 8)
+        {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            if (serializableOut != null)
+            {
+                serializableOut.flush();
+            }
+            out.close();
+        }
+    }
+
+    private static class DrainableBufferedOutputStream extends BufferedOutputStream
+    {
+        DrainableBufferedOutputStream(OutputStream out)
+        {
+            super(out, 1024);
+        }
+
+        void drain() throws IOException
+        {
+            if (count > 0)
+            {
+                out.write(buf, 0, count);
+                count = 0;
+            }
+        }
+    }
+
+    /**
+     * The embedded ObjectOutputStream flushes after every object. That must only move its
+     * buffered bytes into our stream, not flush the whole chain down to a GZIPOutputStream.
+     */
+    private static class NonFlushingOutputStream extends FilterOutputStream
+    {
+        NonFlushingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
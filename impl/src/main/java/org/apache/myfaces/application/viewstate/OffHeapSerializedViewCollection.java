@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import javax.faces.context.FacesContext;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import org.apache.myfaces.spi.ViewScopeProvider;
+
+/**
+ * SerializedViewCollection that moves the serialized views into the
+ * {@link OffHeapSerializedViewStore}, and keeps only an {@link OffHeapStateHandle} for
+ * each one. States that are not serialized, or too big for the store, stay in the session.
+ */
+class OffHeapSerializedViewCollection extends SerializedViewCollection implements HttpSessionBindingListener
+{
+    private static final long serialVersionUID = 4617011406962286231L;
+
+    @Override
+    public void put(FacesContext context, Object state,
+        SerializedViewKey key, SerializedViewKey previousRestoredKey,
+        ViewScopeProvider viewScopeProvider, String viewScopeId)
+    {
+        if (state instanceof byte[])
+        {
+            OffHeapStateHandle handle = OffHeapSerializedViewStore.getCurrentInstance(
+                    context.getExternalContext()).put((byte[]) state);
+            if (handle != null)
+            {
+                state = handle;
+            }
+        }
+        super.put(context, state, key, previousRestoredKey, viewScopeProvider, viewScopeId);
+    }
+
+    @Override
+    public Object get(SerializedViewKey key)
+    {
+        Object state = super.get(key);
+        if (state instanceof OffHeapStateHandle)
+        {
+            return ((OffHeapStateHandle) state).getState();
+        }
+        return state;
+    }
+
+    @Override
+    protected void discardState(Object state)
+    {
+        if (state instanceof OffHeapStateHandle)
+        {
+            ((OffHeapStateHandle) state).discard();
+        }
+    }
+
+    public void valueBound(HttpSessionBindingEvent event)
+    {
+    }
+
+    public void valueUnbound(HttpSessionBindingEvent event)
+    {
+        try
+        {
+            if (event.getSession().getAttribute(event.getName()) == this)
+            {
+                // put again into the session to replicate it, nothing is discarded
+                return;
+            }
+        }
+        catch (IllegalStateException e)
+        {
+            // the session was invalidated
+        }
+        // the session is invalidated, expired or does not use this collection anymore,
+        // release its views in the store
+        discardAllStates();
+    }
+}
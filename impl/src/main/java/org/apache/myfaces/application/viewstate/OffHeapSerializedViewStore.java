@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.faces.FacesException;
+import javax.faces.context.ExternalContext;
+
+import org.apache.myfaces.shared.util.WebConfigParamUtils;
+
+/**
+ * <p>Application wide store for the serialized views of all sessions, kept outside of the java
+ * heap, in direct memory or in a memory mapped file. The session only holds a small
+ * {@link OffHeapStateHandle} for each view.</p>
+ * 
+ * <p>The store has a fixed capacity, split into segments with their own lock, and every
+ * segment into blocks of {@link #BLOCK_SIZE} bytes. A state uses as many blocks as it needs,
+ * not necessarily contiguous ones. When a segment runs out of blocks it discards its least
+ * recently used states; restoring one of them ends in a ViewExpiredException, like a view
+ * discarded because of <code>org.apache.myfaces.NUMBER_OF_VIEWS_IN_SESSION</code>.</p>
+ */
+public class OffHeapSerializedViewStore
+{
+    private static final Logger log = Logger.getLogger(OffHeapSerializedViewStore.class.getName());
+
+    private static final String INSTANCE_KEY = OffHeapSerializedViewStore.class.getName();
+
+    static final int BLOCK_SIZE = 512;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final long capacity;
+    private final File file;
+    private final AtomicLong nextId = new AtomicLong();
+
+    public OffHeapSerializedViewStore(long capacity)
+    {
+        this(capacity, null);
+    }
+
+    /**
+     * @param capacity maximum number of bytes used by the store.
+     * @param file if not null, the states are kept in this file mapped into memory, otherwise
+     * in direct memory.
+     */
+    public OffHeapSerializedViewStore(long capacity, File file)
+    {
+        long blocks = capacity / BLOCK_SIZE;
+        int segmentCount = (int) Math.max(1, Math.min(MAX_SEGMENTS, blocks / 64));
+        long blocksPerSegment = blocks / segmentCount;
+        if (blocksPerSegment < 1 || blocksPerSegment * BLOCK_SIZE > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Unsupported capacity for the serialized view store: " + capacity);
+        }
+        int segmentSize = (int) blocksPerSegment * BLOCK_SIZE;
+
+        this.capacity = (long) segmentSize * segmentCount;
+        this.segments = new Segment[segmentCount];
+        this.file = file;
+        if (file == null)
+        {
+            for (int i = 0; i < segmentCount; i++)
+            {
+                segments[i] = new Segment(ByteBuffer.allocateDirect(segmentSize));
+            }
+        }
+        else
+        {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+            {
+                // The mapping stays valid after the channel is closed.
+                FileChannel channel = raf.getChannel();
+                for (int i = 0; i < segmentCount; i++)
+                {
+                    segments[i] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE,
+                            (long) i * segmentSize, segmentSize));
+                }
+            }
+            catch (IOException e)
+            {
+                throw new FacesException("Cannot map serialized view store file " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the store of the current application, creating it the first time, using the
+     * <code>org.apache.myfaces.SERIALIZED_VIEW_STORE_*</code> parameters.
+     */
+    public static OffHeapSerializedViewStore getCurrentInstance(ExternalContext externalContext)
+    {
+        Map<String, Object> applicationMap = externalContext.getApplicationMap();
+        OffHeapSerializedViewStore store = (OffHeapSerializedViewStore) applicationMap.get(INSTANCE_KEY);
+        if (store == null)
+        {
+            synchronized (OffHeapSerializedViewStore.class)
+            {
+                store = (OffHeapSerializedViewStore) applicationMap.get(INSTANCE_KEY);
+                if (store == null)
+                {
+                    long capacity = WebConfigParamUtils.getLongInitParameter(externalContext,
+                            ServerSideStateCacheImpl.SERIALIZED_VIEW_STORE_CAPACITY_PARAM,
+                            ServerSideStateCacheImpl.SERIALIZED_VIEW_STORE_CAPACITY_PARAM_DEFAULT);
+                    String fileName = WebConfigParamUtils.getStringInitParameter(externalContext,
+                            ServerSideStateCacheImpl.SERIALIZED_VIEW_STORE_FILE_PARAM);
+                    File file = null;
+                    if (fileName != null)
+                    {
+                        file = new File(fileName);
+                    }
+
+                    store = new OffHeapSerializedViewStore(capacity, file);
+                    applicationMap.put(INSTANCE_KEY, store);
+                    if (log.isLoggable(Level.INFO))
+                    {
+                        log.info("Serialized views are stored " + (file == null ? "in direct memory" : "in " + file)
+                                + ", capacity " + store.getCapacity() + " bytes");
+                    }
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Releases the store of the current application, if it was created. Called when the
+     * application is destroyed.
+     */
+    public static void destroy(ExternalContext externalContext)
+    {
+        OffHeapSerializedViewStore store = (OffHeapSerializedViewStore)
+                externalContext.getApplicationMap().remove(INSTANCE_KEY);
+        if (store != null)
+        {
+            store.close();
+        }
+    }
+
+    /**
+     * Discards all the states and drops the buffers, so their memory can be reclaimed, and deletes
+     * the file the states were kept in, if any. The store keeps nothing afterwards.
+     */
+    public void close()
+    {
+        for (Segment segment : segments)
+        {
+            segment.close();
+        }
+        if (file != null && file.exists() && !file.delete())
+        {
+            log.warning("Cannot delete serialized view store file " + file);
+        }
+    }
+
+    /**
+     * Copies the state into the store.
+     * 
+     * @return the handle to get it back, or null if the state is bigger than a segment.
+     */
+    public OffHeapStateHandle put(byte[] state)
+    {
+        long id = nextId.getAndIncrement();
+        if (getSegment(id).put(id, state))
+        {
+            return new OffHeapStateHandle(this, id, state.length);
+        }
+        return null;
+    }
+
+    /**
+     * @return a copy of the state, or null if it was discarded to make room for newer states.
+     */
+    public byte[] get(OffHeapStateHandle handle)
+    {
+        return getSegment(handle.getId()).get(handle.getId());
+    }
+
+    public void remove(OffHeapStateHandle handle)
+    {
+        getSegment(handle.getId()).remove(handle.getId());
+    }
+
+    private Segment getSegment(long id)
+    {
+        return segments[(int) (id % segments.length)];
+    }
+
+    /**
+     * @return the number of bytes reserved by the store.
+     */
+    public long getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * @return the number of bytes in use, counted in whole blocks.
+     */
+    public long getUsedBytes()
+    {
+        long used = 0;
+        for (Segment segment : segments)
+        {
+            used += segment.getUsedBlocks();
+        }
+        return used * BLOCK_SIZE;
+    }
+
+    /**
+     * @return the number of bytes of the states themselves.
+     */
+    public long getStateBytes()
+    {
+        long bytes = 0;
+        for (Segment segment : segments)
+        {
+            bytes += segment.getStateBytes();
+        }
+        return bytes;
+    }
+
+    public int getStateCount()
+    {
+        int count = 0;
+        for (Segment segment : segments)
+        {
+            count += segment.getStateCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of states discarded because the store was full.
+     */
+    public long getEvictionCount()
+    {
+        long count = 0;
+        for (Segment segment : segments)
+        {
+            count += segment.getEvictionCount();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapSerializedViewStore[capacity=" + getCapacity() + ", used=" + getUsedBytes()
+                + ", states=" + getStateCount() + ", evictions=" + getEvictionCount() + "]";
+    }
+
+    private static final class Entry
+    {
+        private final int[] blocks;
+        private final int length;
+
+        Entry(int[] blocks, int length)
+        {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment
+    {
+        private ByteBuffer buffer;
+        private final int[] freeBlocks;
+        private int freeCount;
+        private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+        private long stateBytes;
+        private long evictionCount;
+
+        Segment(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+            this.freeBlocks = new int[buffer.capacity() / BLOCK_SIZE];
+            for (int i = 0; i < freeBlocks.length; i++)
+            {
+                freeBlocks[i] = freeBlocks.length - 1 - i;
+            }
+            this.freeCount = freeBlocks.length;
+        }
+
+        synchronized boolean put(long id, byte[] state)
+        {
+            int blockCount = (state.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            if (buffer == null || blockCount > freeBlocks.length)
+            {
+                return false;
+            }
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (freeCount < blockCount)
+            {
+                Entry entry = eldest.next();
+                eldest.remove();
+                release(entry);
+                evictionCount++;
+            }
+
+            int[] blocks = new int[blockCount];
+            for (int i = 0; i < blockCount; i++)
+            {
+                int block = freeBlocks[--freeCount];
+                blocks[i] = block;
+                buffer.position(block * BLOCK_SIZE);
+                int offset = i * BLOCK_SIZE;
+                buffer.put(state, offset, Math.min(BLOCK_SIZE, state.length - offset));
+            }
+            entries.put(id, new Entry(blocks, state.length));
+            stateBytes += state.length;
+            return true;
+        }
+
+        synchronized byte[] get(long id)
+        {
+            Entry entry = entries.get(id);
+            if (entry == null)
+            {
+                return null;
+            }
+
+            byte[] state = new byte[entry.length];
+            for (int i = 0; i < entry.blocks.length; i++)
+            {
+                buffer.position(entry.blocks[i] * BLOCK_SIZE);
+                int offset = i * BLOCK_SIZE;
+                buffer.get(state, offset, Math.min(BLOCK_SIZE, state.length - offset));
+            }
+            return state;
+        }
+
+        synchronized void remove(long id)
+        {
+            Entry entry = entries.remove(id);
+            if (entry != null)
+            {
+                release(entry);
+            }
+        }
+
+        synchronized void close()
+        {
+            entries.clear();
+            buffer = null;
+            freeCount = freeBlocks.length;
+            stateBytes = 0;
+        }
+
+        private void release(Entry entry)
+        {
+            for (int block : entry.blocks)
+            {
+                freeBlocks[freeCount++] = block;
+            }
+            stateBytes -= entry.length;
+        }
+
+        synchronized int getUsedBlocks()
+        {
+            return freeBlocks.length - freeCount;
+        }
+
+        synchronized long getStateBytes()
+        {
+            return stateBytes;
+        }
+
+        synchronized int getStateCount()
+        {
+            return entries.size();
+        }
+
+        synchronized long getEvictionCount()
+        {
+            return evictionCount;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+
+/**
+ * What the session keeps for a state living in the {@link OffHeapSerializedViewStore}.
+ * If the session itself is serialized (passivation, replication), the handle is replaced
+ * by the bytes of the state, because the store is local to this JVM.
+ */
+public final class OffHeapStateHandle implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final transient OffHeapSerializedViewStore store;
+    private final long id;
+    private final int length;
+
+    OffHeapStateHandle(OffHeapSerializedViewStore store, long id, int length)
+    {
+        this.store = store;
+        this.id = id;
+        this.length = length;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return the state, or null if the store has discarded it.
+     */
+    public byte[] getState()
+    {
+        // store is null once a handle to a discarded state went through serialization
+        return store == null ? null : store.get(this);
+    }
+
+    void discard()
+    {
+        if (store != null)
+        {
+            store.remove(this);
+        }
+    }
+
+    private Object writeReplace() throws ObjectStreamException
+    {
+        byte[] state = getState();
+        return state == null ? this : state;
+    }
+}
@@ -21,43 +21,68 @@ package org.apache.myfaces.application.viewstate;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 import javax.faces.context.FacesContext;
 import org.apache.myfaces.config.MyfacesConfig;
 import org.apache.myfaces.spi.ViewScopeProvider;
-import org.apache.myfaces.shared.util.LRULinkedHashMap;
 
 /**
- *
+ * Holds the views of a session. Parallel requests of the same session (ajax requests, several
+ * tabs) do not wait for each other to restore a view: the states and the last key of every
+ * client window are kept in concurrent maps and read without locking. Only the bookkeeping
+ * needed to discard old views (the order of the keys, the precedence between sequential views and
+ * the view scope counters) is done under a lock, and the discarded view scopes are destroyed
+ * after releasing it.
  */
 class SerializedViewCollection implements Serializable
 {
     private static final Logger log = Logger.getLogger(SerializedViewCollection.class.getName());
 
-    private static final Object[] EMPTY_STATES = new Object[]{null, null};
+    private static final long serialVersionUID = -3734849062185115848L;
+
+    /**
+     * Stored instead of a null state, because the concurrent map does not accept null values.
+     */
+    private enum NullState
+    {
+        INSTANCE
+    }
+
+    private final ReentrantLock _lock = new ReentrantLock();
 
-    private static final long serialVersionUID = -3734849062185115847L;
-    private final List<SerializedViewKey> _keys = 
-        new ArrayList<SerializedViewKey>(
-            MyfacesConfig.INIT_PARAM_NUMBER_OF_VIEWS_IN_SESSION_DEFAULT);
+    /**
+     * The keys from the oldest to the most recently used one. Guarded by _lock.
+     */
+    private final LinkedHashSet<SerializedViewKey> _keys = new LinkedHashSet<SerializedViewKey>(
+            (int) (MyfacesConfig.INIT_PARAM_NUMBER_OF_VIEWS_IN_SESSION_DEFAULT / .75f) + 1);
     private final Map<SerializedViewKey, Object> _serializedViews = 
-        new HashMap<SerializedViewKey, Object>();
+        new ConcurrentHashMap<SerializedViewKey, Object>();
     /**
      * The viewScopeIds can be shared between multiple entries of the same
      * view. To store it into session, the best is use two maps, one to 
      * associate the view key with the view scope id and other to keep track 
      * of the number of times the id is used. In that way it is possible to
      * know when a view scope id has been discarded and destroy the view scope
-     * in the right time.
+     * in the right time. Guarded by _lock.
      */
     private HashMap<SerializedViewKey, String> _viewScopeIds = null;
     private HashMap<String, Integer> _viewScopeIdCounts = null;
 
+    /**
+     * Guarded by _lock.
+     */
     private final Map<SerializedViewKey, SerializedViewKey> _precedence =
         new HashMap<SerializedViewKey, SerializedViewKey>();
-    private Map<String, SerializedViewKey> _lastWindowKeys = null;
+
+    private volatile Map<String, WindowKey> _lastWindowKeys = null;
+    private final AtomicLong _windowKeyStamp = new AtomicLong();
 
     public void put(FacesContext context, Object state, 
         SerializedViewKey key, SerializedViewKey previousRestoredKey)
@@ -65,169 +90,202 @@ class SerializedViewCollection implements Serializable
         put(context, state, key, previousRestoredKey, null, null);
     }
     
-    public synchronized void put(FacesContext context, Object state, 
+    public void put(FacesContext context, Object state, 
         SerializedViewKey key, SerializedViewKey previousRestoredKey,
         ViewScopeProvider viewScopeProvider, String viewScopeId)
     {
-        if (state == null)
-        {
-            state = EMPTY_STATES;
-        }
-        else if (state instanceof Object[] &&
-            ((Object[])state).length == 2 &&
-            ((Object[])state)[0] == null &&
-            ((Object[])state)[1] == null)
-        {
-            // The generated state can be considered zero, set it as null
-            // into the map.
-            state = null;
-        }
+        Object value = state == null ? NullState.INSTANCE : state;
+        Integer maxCount = getNumberOfSequentialViewsInSession(context);
+        int views = getNumberOfViewsInSession(context);
+
+        // What is discarded is released after unlocking
+        List<Object> discardedStates = new ArrayList<Object>(2);
+        List<String> discardedViewScopeIds = null;
 
-        if (_serializedViews.containsKey(key))
+        _lock.lock();
+        try
         {
-            // Update the state, the viewScopeId does not change.
-            _serializedViews.put(key, state);
-            // Make sure the view is at the end of the discard queue
-            while (_keys.remove(key))
+            if (_serializedViews.containsKey(key))
             {
-                // do nothing
+                // Update the state, the viewScopeId does not change.
+                discardedStates.add(_serializedViews.put(key, value));
+                // Make sure the view is at the end of the discard queue
+                _keys.remove(key);
+                _keys.add(key);
             }
-            _keys.add(key);
-            return;
-        }
-
-        Integer maxCount = getNumberOfSequentialViewsInSession(context);
-        if (maxCount != null)
-        {
-            if (previousRestoredKey != null)
+            else
             {
-                if (!_serializedViews.isEmpty())
+                if (maxCount != null)
                 {
-                    _precedence.put((SerializedViewKey) key, previousRestoredKey);
+                    if (previousRestoredKey != null)
+                    {
+                        if (!_serializedViews.isEmpty())
+                        {
+                            _precedence.put(key, previousRestoredKey);
+                        }
+                        else
+                        {
+                            // Note when the session is invalidated, _serializedViews map is empty,
+                            // but we could have a not null previousRestoredKey (the last one before
+                            // invalidate the session), so we need to check that condition before
+                            // set the precence. In that way, we ensure the precedence map will always
+                            // have valid keys.
+                            previousRestoredKey = null;
+                        }
+                    }
                 }
-                else
+                _serializedViews.put(key, value);
+
+                if (viewScopeProvider != null && viewScopeId != null)
                 {
-                    // Note when the session is invalidated, _serializedViews map is empty,
-                    // but we could have a not null previousRestoredKey (the last one before
-                    // invalidate the session), so we need to check that condition before
-                    // set the precence. In that way, we ensure the precedence map will always
-                    // have valid keys.
-                    previousRestoredKey = null;
+                    if (_viewScopeIds == null)
+                    {
+                        _viewScopeIds = new HashMap<SerializedViewKey, String>();
+                    }
+                    _viewScopeIds.put(key, viewScopeId);
+                    if (_viewScopeIdCounts == null)
+                    {
+                        _viewScopeIdCounts = new HashMap<String, Integer>();
+                    }
+                    Integer vscount = _viewScopeIdCounts.get(viewScopeId);
+                    vscount = (vscount == null) ? 1 : vscount + 1;
+                    _viewScopeIdCounts.put(viewScopeId, vscount);
                 }
-            }
-        }
-        _serializedViews.put(key, state);
-        
-        if (viewScopeProvider != null && viewScopeId != null)
-        {
-            if (_viewScopeIds == null)
-            {
-                _viewScopeIds = new HashMap<SerializedViewKey, String>();
-            }
-            _viewScopeIds.put(key, viewScopeId);
-            if (_viewScopeIdCounts == null)
-            {
-                _viewScopeIdCounts = new HashMap<String, Integer>();
-            }
-            Integer vscount = _viewScopeIdCounts.get(viewScopeId);
-            vscount = (vscount == null) ? 1 : vscount + 1;
-            _viewScopeIdCounts.put(viewScopeId, vscount);
-        }
 
-        while (_keys.remove(key))
-        {
-            // do nothing
-        }
-        _keys.add(key);
+                _keys.remove(key);
+                _keys.add(key);
 
-        if (previousRestoredKey != null && maxCount != null && maxCount > 0)
-        {
-            int count = 0;
-            SerializedViewKey previousKey = (SerializedViewKey) key;
-            do
-            {
-                previousKey = _precedence.get(previousKey);
-                count++;
-            }
-            while (previousKey != null && count < maxCount);
-
-            if (previousKey != null)
-            {
-                SerializedViewKey keyToRemove = (SerializedViewKey) previousKey;
-                // In theory it should be only one key but just to be sure
-                // do it in a loop, but in this case if cache old views is on,
-                // put on that map.
-                do
+                if (previousRestoredKey != null && maxCount != null && maxCount > 0)
                 {
-                    while (_keys.remove(keyToRemove))
+                    int count = 0;
+                    SerializedViewKey previousKey = key;
+                    do
                     {
-                        // do nothing
+                        previousKey = _precedence.get(previousKey);
+                        count++;
                     }
+                    while (previousKey != null && count < maxCount);
 
-                    _serializedViews.remove(keyToRemove);
-                    
-                    if (viewScopeProvider != null && _viewScopeIds != null)
+                    if (previousKey != null)
                     {
-                        String oldViewScopeId = _viewScopeIds.remove(keyToRemove);
-                        if (oldViewScopeId != null)
+                        SerializedViewKey keyToRemove = previousKey;
+                        // In theory it should be only one key but just to be sure
+                        // do it in a loop, but in this case if cache old views is on,
+                        // put on that map.
+                        do
                         {
-                            Integer vscount = _viewScopeIdCounts.get(oldViewScopeId);
-                            vscount = vscount - 1;
-                            if (vscount != null && vscount.intValue() < 1)
-                            {
-                                _viewScopeIdCounts.remove(oldViewScopeId);
-                                viewScopeProvider.destroyViewScopeMap(context, oldViewScopeId);
-                            }
-                            else
-                            {
-                                _viewScopeIdCounts.put(oldViewScopeId, vscount);
-                            }
+                            _keys.remove(keyToRemove);
+                            discardedViewScopeIds = removeView(keyToRemove, viewScopeProvider,
+                                    discardedStates, discardedViewScopeIds);
+                            keyToRemove = _precedence.remove(keyToRemove);
                         }
+                        while (keyToRemove != null);
                     }
+                }
 
-                    keyToRemove = _precedence.remove(keyToRemove);
+                Iterator<SerializedViewKey> oldest = _keys.iterator();
+                while (_keys.size() > views)
+                {
+                    SerializedViewKey oldestKey = oldest.next();
+                    oldest.remove();
+                    if (maxCount != null && maxCount > 0)
+                    {
+                        SerializedViewKey keyToRemove = oldestKey;
+                        // Note in this case the key to delete is the oldest one,
+                        // so it could be at least one precedence, but to be safe
+                        // do it with a loop.
+                        do
+                        {
+                            keyToRemove = _precedence.remove(keyToRemove);
+                        }
+                        while (keyToRemove != null);
+                    }
+
+                    discardedViewScopeIds = removeView(oldestKey, viewScopeProvider,
+                            discardedStates, discardedViewScopeIds);
                 }
-                while (keyToRemove != null);
             }
         }
-        int views = getNumberOfViewsInSession(context);
-        while (_keys.size() > views)
+        finally
+        {
+            _lock.unlock();
+        }
+
+        for (int i = 0; i < discardedStates.size(); i++)
+        {
+            discardState(unwrap(discardedStates.get(i)));
+        }
+        if (discardedViewScopeIds != null)
         {
-            key = _keys.remove(0);
-            if (maxCount != null && maxCount > 0)
+            for (int i = 0; i < discardedViewScopeIds.size(); i++)
             {
-                SerializedViewKey keyToRemove = (SerializedViewKey) key;
-                // Note in this case the key to delete is the oldest one,
-                // so it could be at least one precedence, but to be safe
-                // do it with a loop.
-                do
-                {
-                    keyToRemove = _precedence.remove(keyToRemove);
-                }
-                while (keyToRemove != null);
+                viewScopeProvider.destroyViewScopeMap(context, discardedViewScopeIds.get(i));
             }
+        }
+    }
+
+    /**
+     * Removes the state of a view and its view scope id. Must be called holding _lock.
+     * 
+     * @return the view scope ids no longer used by any view, that must be destroyed
+     */
+    private List<String> removeView(SerializedViewKey key, ViewScopeProvider viewScopeProvider,
+            List<Object> discardedStates, List<String> discardedViewScopeIds)
+    {
+        Object value = _serializedViews.remove(key);
+        if (value != null)
+        {
+            discardedStates.add(value);
+        }
 
-            _serializedViews.remove(key);
-            
-            if (viewScopeProvider != null && _viewScopeIds != null)
+        if (viewScopeProvider != null && _viewScopeIds != null)
+        {
+            String oldViewScopeId = _viewScopeIds.remove(key);
+            if (oldViewScopeId != null)
             {
-                String oldViewScopeId = _viewScopeIds.remove(key);
-                if (oldViewScopeId != null)
+                Integer vscount = _viewScopeIdCounts.get(oldViewScopeId);
+                vscount = vscount - 1;
+                if (vscount != null && vscount.intValue() < 1)
                 {
-                    Integer vscount = _viewScopeIdCounts.get(oldViewScopeId);
-                    vscount = vscount - 1;
-                    if (vscount != null && vscount.intValue() < 1)
-                    {
-                        _viewScopeIdCounts.remove(oldViewScopeId);
-                        viewScopeProvider.destroyViewScopeMap(context, oldViewScopeId);
-                    }
-                    else
+                    _viewScopeIdCounts.remove(oldViewScopeId);
+                    if (discardedViewScopeIds == null)
                     {
-                        _viewScopeIdCounts.put(oldViewScopeId, vscount);
+                        discardedViewScopeIds = new ArrayList<String>(2);
                     }
+                    discardedViewScopeIds.add(oldViewScopeId);
+                }
+                else
+                {
+                    _viewScopeIdCounts.put(oldViewScopeId, vscount);
                 }
             }
         }
+        return discardedViewScopeIds;
+    }
+
+    private static Object unwrap(Object value)
+    {
+        return value == NullState.INSTANCE ? null : value;
+    }
+
+    /**
+     * Called with the state of a view that is replaced or discarded from this collection.
+     * 
+     * @param state the stored state, possibly null
+     */
+    protected void discardState(Object state)
+    {
+    }
+
+    /**
+     * Discards the state of all the views in this collection.
+     */
+    protected void discardAllStates()
+    {
+        for (Object state : _serializedViews.values())
+        {
+            discardState(unwrap(state));
+        }
     }
 
     protected Integer getNumberOfSequentialViewsInSession(FacesContext context)
@@ -246,51 +304,95 @@ class SerializedViewCollection implements Serializable
         return MyfacesConfig.getCurrentInstance(context.getExternalContext()).getNumberOfViewsInSession();
     }
 
-    public synchronized void putLastWindowKey(FacesContext context, String id, SerializedViewKey key)
+    public void putLastWindowKey(FacesContext context, String id, SerializedViewKey key)
     {
-        if (_lastWindowKeys == null)
+        Map<String, WindowKey> lastWindowKeys = _lastWindowKeys;
+        if (lastWindowKeys == null)
         {
-            Integer i = getNumberOfSequentialViewsInSession(context);
-            int j = getNumberOfViewsInSession(context);
-            if (i != null && i> 0)
+            _lock.lock();
+            try
+            {
+                lastWindowKeys = _lastWindowKeys;
+                if (lastWindowKeys == null)
+                {
+                    lastWindowKeys = new ConcurrentHashMap<String, WindowKey>();
+                    _lastWindowKeys = lastWindowKeys;
+                }
+            }
+            finally
             {
-                _lastWindowKeys = new LRULinkedHashMap<>((j / i) + 1);
+                _lock.unlock();
             }
-            else
+        }
+
+        WindowKey previous = lastWindowKeys.put(id, new WindowKey(key, _windowKeyStamp.incrementAndGet()));
+        if (previous == null)
+        {
+            int capacity = getLastWindowKeysCapacity(context);
+            while (lastWindowKeys.size() > capacity)
             {
-                _lastWindowKeys = new LRULinkedHashMap(j + 1);
+                // Discard the least recently used window. The map is small, a scan is cheap.
+                String eldestId = null;
+                long eldestStamp = Long.MAX_VALUE;
+                for (Map.Entry<String, WindowKey> entry : lastWindowKeys.entrySet())
+                {
+                    if (entry.getValue().stamp < eldestStamp)
+                    {
+                        eldestStamp = entry.getValue().stamp;
+                        eldestId = entry.getKey();
+                    }
+                }
+                if (eldestId == null)
+                {
+                    break;
+                }
+                lastWindowKeys.remove(eldestId);
             }
         }
-        _lastWindowKeys.put(id, key);
     }
 
-    public SerializedViewKey getLastWindowKey(FacesContext context, String id)
+    private int getLastWindowKeysCapacity(FacesContext context)
     {
-        if (_lastWindowKeys != null)
+        Integer i = getNumberOfSequentialViewsInSession(context);
+        int j = getNumberOfViewsInSession(context);
+        if (i != null && i > 0)
         {
-            return _lastWindowKeys.get(id);
+            return (j / i) + 1;
         }
-        return null;
+        return j + 1;
     }
 
-    public Object get(SerializedViewKey key)
+    public SerializedViewKey getLastWindowKey(FacesContext context, String id)
     {
-        Object value = _serializedViews.get(key);
-        if (value == null)
+        Map<String, WindowKey> lastWindowKeys = _lastWindowKeys;
+        if (lastWindowKeys != null)
         {
-            if (_serializedViews.containsKey(key))
+            WindowKey windowKey = lastWindowKeys.get(id);
+            if (windowKey != null)
             {
-                return EMPTY_STATES;
+                windowKey.stamp = _windowKeyStamp.incrementAndGet();
+                return windowKey.key;
             }
         }
-        else if (value instanceof Object[] &&
-            ((Object[])value).length == 2 &&
-            ((Object[])value)[0] == null &&
-            ((Object[])value)[1] == null)
+        return null;
+    }
+
+    public Object get(SerializedViewKey key)
+    {
+        return unwrap(_serializedViews.get(key));
+    }
+
+    private static final class WindowKey implements Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final SerializedViewKey key;
+        private volatile long stamp;
+
+        WindowKey(SerializedViewKey key, long stamp)
         {
-            // Remember inside the state map null is stored as an empty array.
-            return null;
+            this.key = key;
+            this.stamp = stamp;
         }
-        return value;
     }
 }
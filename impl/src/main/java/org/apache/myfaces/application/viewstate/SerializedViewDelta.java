@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>A serialized view stored as the differences against the serialized view it was created from, usually
+ * the view restored by the same postback. Two sequential states of a view share most of their bytes, so the
+ * differences are a small fraction of the full state.</p>
+ * 
+ * <p>The base state is referenced directly instead of by its key, so the delta stays valid when the base view
+ * is discarded from the {@link SerializedViewCollection}. The base is a full serialized state (a byte array
+ * as written by {@link ServerSideStateCacheImpl#serializeView}) or another delta, and the length of that
+ * chain is bounded by the caller.</p>
+ * 
+ * <p>The differences are a sequence of instructions to copy a range of the base or to insert literal bytes,
+ * found by indexing the base in blocks of {@link #BLOCK_SIZE} bytes.</p>
+ */
+class SerializedViewDelta implements Serializable
+{
+    private static final long serialVersionUID = -2418003521462751247L;
+
+    private static final int BLOCK_SIZE = 16;
+    
+    private static final int LITERAL = 0;
+    private static final int COPY = 1;
+
+    /**
+     * A delta is only kept if it is smaller than the state divided by this ratio, about what the compression
+     * of the full state would give.
+     */
+    private static final int MIN_RATIO = 4;
+
+    private final Object base;
+    private final byte[] delta;
+    private final int depth;
+
+    private SerializedViewDelta(Object base, byte[] delta, int depth)
+    {
+        this.base = base;
+        this.delta = delta;
+        this.depth = depth;
+    }
+
+    /**
+     * Creates the delta of the serialized view against the base state.
+     * 
+     * @param base the state the view was restored from, as stored in the {@link SerializedViewCollection}
+     * @param bytes the serialized view, without compression
+     * @param maxDepth the maximum number of deltas between a full state and the new one
+     * @return the delta, or null if the base cannot be used or the delta would not be small enough
+     */
+    static SerializedViewDelta create(Object base, byte[] bytes, int maxDepth) throws IOException
+    {
+        int depth;
+        if (base instanceof SerializedViewDelta)
+        {
+            depth = ((SerializedViewDelta) base).depth + 1;
+        }
+        else if (base instanceof byte[])
+        {
+            depth = 1;
+        }
+        else
+        {
+            return null;
+        }
+        if (depth > maxDepth)
+        {
+            return null;
+        }
+
+        byte[] delta = diff(getSerializedBytes(base), bytes, bytes.length / MIN_RATIO);
+        return delta == null ? null : new SerializedViewDelta(base, delta, depth);
+    }
+
+    /**
+     * Returns the serialized view, without the compression flag and uncompressed, of a full state or a delta.
+     */
+    static byte[] getSerializedBytes(Object state) throws IOException
+    {
+        if (state instanceof SerializedViewDelta)
+        {
+            SerializedViewDelta delta = (SerializedViewDelta) state;
+            return patch(getSerializedBytes(delta.base), delta.delta);
+        }
+
+        byte[] bytes = (byte[]) state;
+        if (bytes.length > 0 && bytes[0] == ServerSideStateCacheImpl.COMPRESSED_FLAG)
+        {
+            InputStream is = new GZIPInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1));
+            try
+            {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length * 4);
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = is.read(buffer)) != -1)
+                {
+                    baos.write(buffer, 0, read);
+                }
+                return baos.toByteArray();
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+        return Arrays.copyOfRange(bytes, Math.min(1, bytes.length), bytes.length);
+    }
+
+    int getDepth()
+    {
+        return depth;
+    }
+
+    int getDeltaLength()
+    {
+        return delta.length;
+    }
+
+    /**
+     * Finds the differences of target against base, or returns null as soon as they need more than
+     * maxLength bytes.
+     */
+    static byte[] diff(byte[] base, byte[] target, int maxLength)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxLength, 1024) + 8);
+        writeVarInt(out, target.length);
+
+        int[] blocks = indexBlocks(base);
+        int mask = blocks.length - 1;
+
+        int literalStart = 0;
+        int i = 0;
+        while (i + BLOCK_SIZE <= target.length && blocks.length > 0)
+        {
+            int offset = blocks[hash(target, i) & mask] - 1;
+            if (offset < 0 || !regionMatches(base, offset, target, i, BLOCK_SIZE))
+            {
+                i++;
+                continue;
+            }
+
+            // extend the match backwards into the pending literal and forwards as far as possible
+            while (i > literalStart && offset > 0 && base[offset - 1] == target[i - 1])
+            {
+                i--;
+                offset--;
+            }
+            int length = BLOCK_SIZE;
+            while (offset + length < base.length && i + length < target.length
+                    && base[offset + length] == target[i + length])
+            {
+                length++;
+            }
+
+            writeLiteral(out, target, literalStart, i);
+            writeVarInt(out, (length << 1) | COPY);
+            writeVarInt(out, offset);
+            if (out.size() > maxLength)
+            {
+                return null;
+            }
+            i += length;
+            literalStart = i;
+        }
+        writeLiteral(out, target, literalStart, target.length);
+
+        return out.size() > maxLength ? null : out.toByteArray();
+    }
+
+    /**
+     * Rebuilds the target from the base and the differences written by {@link #diff(byte[], byte[], int)}.
+     */
+    static byte[] patch(byte[] base, byte[] delta) throws IOException
+    {
+        int[] position = new int[1];
+        byte[] target = new byte[readVarInt(delta, position)];
+        int count = 0;
+        while (position[0] < delta.length)
+        {
+            int instruction = readVarInt(delta, position);
+            int length = instruction >>> 1;
+            if (length > target.length - count)
+            {
+                throw new StreamCorruptedException("Invalid serialized view delta");
+            }
+            if ((instruction & COPY) == COPY)
+            {
+                int offset = readVarInt(delta, position);
+                if (offset < 0 || offset > base.length - length)
+                {
+                    throw new StreamCorruptedException("Invalid serialized view delta");
+                }
+                System.arraycopy(base, offset, target, count, length);
+            }
+            else
+            {
+                if (length > delta.length - position[0])
+                {
+                    throw new StreamCorruptedException("Invalid serialized view delta");
+                }
+                System.arraycopy(delta, position[0], target, count, length);
+                position[0] += length;
+            }
+            count += length;
+        }
+        if (count != target.length)
+        {
+            throw new StreamCorruptedException("Invalid serialized view delta");
+        }
+        return target;
+    }
+
+    /**
+     * Open addressing table from the hash of every aligned block of the base to its offset + 1. When two
+     * blocks have the same slot the first one is kept, a collision only costs a missed match.
+     */
+    private static int[] indexBlocks(byte[] base)
+    {
+        int count = base.length / BLOCK_SIZE;
+        if (count == 0)
+        {
+            return new int[0];
+        }
+        int[] blocks = new int[Integer.highestOneBit(count) << 2];
+        int mask = blocks.length - 1;
+        for (int offset = 0; offset + BLOCK_SIZE <= base.length; offset += BLOCK_SIZE)
+        {
+            int slot = hash(base, offset) & mask;
+            if (blocks[slot] == 0)
+            {
+                blocks[slot] = offset + 1;
+            }
+        }
+        return blocks;
+    }
+
+    private static int hash(byte[] bytes, int offset)
+    {
+        int h = 0;
+        for (int i = offset, end = offset + BLOCK_SIZE; i < end; i++)
+        {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean regionMatches(byte[] a, int aOffset, byte[] b, int bOffset, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (a[aOffset + i] != b[bOffset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeLiteral(ByteArrayOutputStream out, byte[] target, int start, int end)
+    {
+        if (end > start)
+        {
+            writeVarInt(out, ((end - start) << 1) | LITERAL);
+            out.write(target, start, end - start);
+        }
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] bytes, int[] position) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            if (position[0] >= bytes.length)
+            {
+                throw new StreamCorruptedException("Invalid serialized view delta");
+            }
+            int b = bytes[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Invalid serialized view delta");
+    }
+}
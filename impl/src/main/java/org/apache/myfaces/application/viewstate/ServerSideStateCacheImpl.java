@@ -29,6 +29,12 @@ import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -46,8 +52,10 @@ import org.apache.myfaces.application.viewstate.token.StateTokenProcessor;
 import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
 import org.apache.myfaces.config.MyfacesConfig;
 import org.apache.myfaces.shared.renderkit.RendererUtils;
-import org.apache.myfaces.shared.util.MyFacesObjectInputStream;
+import org.apache.myfaces.shared.util.StateUtils;
 import org.apache.myfaces.shared.util.WebConfigParamUtils;
+import org.apache.myfaces.shared.util.serial.DefaultSerialFactory;
+import org.apache.myfaces.shared.util.serial.SerialFactory;
 import org.apache.myfaces.spi.ViewScopeProvider;
 import org.apache.myfaces.spi.ViewScopeProviderFactory;
 import org.apache.myfaces.view.ViewScopeProxyMap;
@@ -158,9 +166,95 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
             = "org.apache.myfaces.RANDOM_KEY_IN_VIEW_STATE_SESSION_TOKEN_SECURE_RANDOM_ALGORITM";
     
     
+    public static final String SERIALIZED_VIEW_STORE_SESSION = "session";
+    public static final String SERIALIZED_VIEW_STORE_OFF_HEAP = "offheap";
+
+    /**
+     * Defines where the serialized views are kept. "session" keeps them in the session. "offheap" keeps
+     * them in a store shared by all sessions, outside of the java heap, with a fixed capacity. When the store
+     * is full, the least recently used views are discarded, and the session only holds a small handle for
+     * each view.
+     * 
+     * <p>Only applicable if state saving method is "server" and the state is serialized
+     * (<code>javax.faces.SERIALIZE_SERVER_STATE</code> is true).</p>
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="session", expectedValues="session, offheap",
+            group="state", tags="performance")
+    public static final String SERIALIZED_VIEW_STORE_PARAM = "org.apache.myfaces.SERIALIZED_VIEW_STORE";
+    public static final String SERIALIZED_VIEW_STORE_PARAM_DEFAULT = SERIALIZED_VIEW_STORE_SESSION;
+
+    /**
+     * Maximum number of bytes used by the "offheap" serialized view store. By default 64MB.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="67108864", group="state", tags="performance")
+    public static final String SERIALIZED_VIEW_STORE_CAPACITY_PARAM
+            = "org.apache.myfaces.SERIALIZED_VIEW_STORE_CAPACITY";
+    public static final long SERIALIZED_VIEW_STORE_CAPACITY_PARAM_DEFAULT = 64L * 1024 * 1024;
+
+    /**
+     * File used by the "offheap" serialized view store, mapped into memory. If not set, the store
+     * uses direct memory (see -XX:MaxDirectMemorySize).
+     */
+    @JSFWebConfigParam(since="3.0.0", group="state", tags="performance")
+    public static final String SERIALIZED_VIEW_STORE_FILE_PARAM = "org.apache.myfaces.SERIALIZED_VIEW_STORE_FILE";
+
+    /**
+     * Stores a serialized view as the differences against the view it was restored from, instead of storing
+     * the full view again on every postback. The memory used by a session then grows with the changes made by
+     * each request rather than with the number of views. The full view is rebuilt when it is restored.
+     * 
+     * <p>Only applicable if state saving method is "server", the state is serialized
+     * (<code>javax.faces.SERIALIZE_SERVER_STATE</code> is true) and the views are kept in the session.</p>
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="state", tags="performance")
+    public static final String SERIALIZED_VIEW_DELTA_PARAM = "org.apache.myfaces.SERIALIZED_VIEW_DELTA";
+    public static final boolean SERIALIZED_VIEW_DELTA_PARAM_DEFAULT = false;
+
+    /**
+     * Maximum number of differences stored on top of a full serialized view. When it is reached the full view
+     * is stored again, which bounds the work needed to restore a view.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="8", group="state", tags="performance")
+    public static final String SERIALIZED_VIEW_DELTA_MAX_CHAIN_PARAM
+            = "org.apache.myfaces.SERIALIZED_VIEW_DELTA_MAX_CHAIN";
+    public static final int SERIALIZED_VIEW_DELTA_MAX_CHAIN_PARAM_DEFAULT = 8;
+
+    /**
+     * Compresses the views stored in session on a background executor instead of the request thread, so the
+     * response is not delayed by it. The view is still serialized by the request thread, so the stored state
+     * is the one of the request even if the application changes the saved values later. Restoring a view
+     * waits until its compression is done.
+     * 
+     * <p>Only applicable if state saving method is "server", the state is serialized
+     * (<code>javax.faces.SERIALIZE_SERVER_STATE</code> is true) and compressed
+     * (<code>org.apache.myfaces.COMPRESS_STATE_IN_SESSION</code> is true), the views are kept in the session
+     * and <code>org.apache.myfaces.SERIALIZED_VIEW_DELTA</code> is not used.</p>
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="state", tags="performance")
+    public static final String ASYNC_SERIALIZE_SERVER_STATE_PARAM = "org.apache.myfaces.ASYNC_SERIALIZE_SERVER_STATE";
+    public static final boolean ASYNC_SERIALIZE_SERVER_STATE_PARAM_DEFAULT = false;
+
+    /**
+     * Number of threads compressing the views in the background. At most 64 views per thread wait for them,
+     * further views are compressed by the request thread.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="2", group="state", tags="performance")
+    public static final String ASYNC_SERIALIZE_SERVER_STATE_THREADS_PARAM
+            = "org.apache.myfaces.ASYNC_SERIALIZE_SERVER_STATE_THREADS";
+    public static final int ASYNC_SERIALIZE_SERVER_STATE_THREADS_PARAM_DEFAULT = 2;
+
+    private static final int ASYNC_SERIALIZE_SERVER_STATE_QUEUE_PER_THREAD = 64;
+
+    private static final String ASYNC_SERIALIZATION_EXECUTOR_KEY
+            = ServerSideStateCacheImpl.class.getName() + ".ASYNC_SERIALIZATION_EXECUTOR";
+
     public static final int UNCOMPRESSED_FLAG = 0;
     public static final int COMPRESSED_FLAG = 1;
 
+    private static final SerialFactory DEFAULT_SERIAL_FACTORY = new DefaultSerialFactory();
+
     private Boolean _useFlashScopePurgeViewsInSession = null;
     
     private Integer _numberOfSequentialViewsInSession = null;
@@ -169,6 +263,9 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
     private SessionViewStorageFactory sessionViewStorageFactory;
     private CsrfSessionTokenFactory csrfSessionTokenFactory;
     private StateTokenProcessor stateTokenProcessor;
+    private boolean serializedViewDelta;
+    private int serializedViewDeltaMaxChain;
+    private ThreadPoolExecutor asyncSerializationExecutor;
 
     public ServerSideStateCacheImpl()
     {
@@ -176,15 +273,14 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
         String randomMode = WebConfigParamUtils.getStringInitParameter(facesContext.getExternalContext(),
                 RANDOM_KEY_IN_VIEW_STATE_SESSION_TOKEN_PARAM, 
                 RANDOM_KEY_IN_VIEW_STATE_SESSION_TOKEN_PARAM_DEFAULT);
+        KeyFactory<byte[]> keyFactory;
         if (RANDOM_KEY_IN_VIEW_STATE_SESSION_TOKEN_SECURE_RANDOM.equals(randomMode))
         {
-            sessionViewStorageFactory = new RandomSessionViewStorageFactory(
-                    new SecureRandomKeyFactory(facesContext));
+            keyFactory = new SecureRandomKeyFactory(facesContext);
         }
         else if (RANDOM_KEY_IN_VIEW_STATE_SESSION_TOKEN_RANDOM.equals(randomMode))
         {
-            sessionViewStorageFactory = new RandomSessionViewStorageFactory(
-                    new RandomKeyFactory(facesContext));
+            keyFactory = new RandomKeyFactory(facesContext);
         }
         else
         {
@@ -194,10 +290,75 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
                         + randomMode + "\" is not supported (anymore)."
                         + " Fallback to \"random\"");
             }
-            sessionViewStorageFactory = new RandomSessionViewStorageFactory(
-                    new RandomKeyFactory(facesContext));
+            keyFactory = new RandomKeyFactory(facesContext);
+        }
+
+        String store = WebConfigParamUtils.getStringInitParameter(facesContext.getExternalContext(),
+                SERIALIZED_VIEW_STORE_PARAM, SERIALIZED_VIEW_STORE_PARAM_DEFAULT);
+        if (SERIALIZED_VIEW_STORE_OFF_HEAP.equals(store))
+        {
+            if (!isSerializeStateInSession(facesContext))
+            {
+                log.warning(SERIALIZED_VIEW_STORE_PARAM + " \"" + store + "\" only applies to serialized views,"
+                        + " set " + StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME + " to true to use it.");
+            }
+            sessionViewStorageFactory = new OffHeapSessionViewStorageFactory(keyFactory);
+        }
+        else
+        {
+            if (!SERIALIZED_VIEW_STORE_SESSION.equals(store))
+            {
+                log.warning(SERIALIZED_VIEW_STORE_PARAM + " \"" + store + "\" is not supported."
+                        + " Fallback to \"" + SERIALIZED_VIEW_STORE_SESSION + "\"");
+            }
+            sessionViewStorageFactory = new RandomSessionViewStorageFactory(keyFactory);
+        }
+
+        if (WebConfigParamUtils.getBooleanInitParameter(facesContext.getExternalContext(),
+                SERIALIZED_VIEW_DELTA_PARAM, SERIALIZED_VIEW_DELTA_PARAM_DEFAULT))
+        {
+            if (!isSerializeStateInSession(facesContext) || SERIALIZED_VIEW_STORE_OFF_HEAP.equals(store))
+            {
+                log.warning(SERIALIZED_VIEW_DELTA_PARAM + " only applies to serialized views kept in session,"
+                        + " set " + StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME + " to true and "
+                        + SERIALIZED_VIEW_STORE_PARAM + " to \"" + SERIALIZED_VIEW_STORE_SESSION + "\" to use it.");
+            }
+            else
+            {
+                serializedViewDelta = true;
+                serializedViewDeltaMaxChain = WebConfigParamUtils.getIntegerInitParameter(
+                        facesContext.getExternalContext(), SERIALIZED_VIEW_DELTA_MAX_CHAIN_PARAM,
+                        SERIALIZED_VIEW_DELTA_MAX_CHAIN_PARAM_DEFAULT);
+            }
         }
         
+        if (WebConfigParamUtils.getBooleanInitParameter(facesContext.getExternalContext(),
+                ASYNC_SERIALIZE_SERVER_STATE_PARAM, ASYNC_SERIALIZE_SERVER_STATE_PARAM_DEFAULT))
+        {
+            if (!isSerializeStateInSession(facesContext) || !isCompressStateInSession(facesContext)
+                    || SERIALIZED_VIEW_STORE_OFF_HEAP.equals(store) || serializedViewDelta)
+            {
+                log.warning(ASYNC_SERIALIZE_SERVER_STATE_PARAM + " only applies to compressed views kept in session,"
+                        + " set " + StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME + " and "
+                        + COMPRESS_SERVER_STATE_PARAM + " to true, "
+                        + SERIALIZED_VIEW_STORE_PARAM + " to \"" + SERIALIZED_VIEW_STORE_SESSION + "\" and do not use "
+                        + SERIALIZED_VIEW_DELTA_PARAM + ".");
+            }
+            else
+            {
+                int threads = Math.max(1, WebConfigParamUtils.getIntegerInitParameter(
+                        facesContext.getExternalContext(), ASYNC_SERIALIZE_SERVER_STATE_THREADS_PARAM,
+                        ASYNC_SERIALIZE_SERVER_STATE_THREADS_PARAM_DEFAULT));
+                asyncSerializationExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                        new ArrayBlockingQueue<Runnable>(threads * ASYNC_SERIALIZE_SERVER_STATE_QUEUE_PER_THREAD),
+                        new SerializationThreadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+                asyncSerializationExecutor.allowCoreThreadTimeOut(true);
+                // shut down by shutdownAsyncSerialization when the application is destroyed
+                facesContext.getExternalContext().getApplicationMap().put(ASYNC_SERIALIZATION_EXECUTOR_KEY,
+                        asyncSerializationExecutor);
+            }
+        }
+
         String csrfRandomMode = WebConfigParamUtils.getStringInitParameter(facesContext.getExternalContext(),
                 RANDOM_KEY_IN_CSRF_SESSION_TOKEN_PARAM, 
                 RANDOM_KEY_IN_CSRF_SESSION_TOKEN_PARAM_DEFAULT);
@@ -286,17 +447,42 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
             }
 
         }
+
+        Object state;
+        if (serializedViewDelta)
+        {
+            // Store the view as the differences against the view restored by this request or, if there is
+            // none, the last view of the window.
+            SerializedViewKey baseKey = key != null ? key
+                    : (SerializedViewKey) attributeMap.get(RESTORED_VIEW_KEY_REQUEST_ATTR);
+            ClientWindow window = context.getExternalContext().getClientWindow();
+            if (baseKey == null && window != null)
+            {
+                baseKey = viewCollection.getLastWindowKey(context, window.getId());
+            }
+            state = serializeViewDelta(context, serializedView,
+                    baseKey == null ? null : viewCollection.get(baseKey));
+        }
+        else if (asyncSerializationExecutor != null)
+        {
+            state = serializeViewAsync(context, serializedView);
+        }
+        else
+        {
+            state = serializeView(context, serializedView);
+        }
+
         if (viewScopeProxyMap != null)
         {
             ViewScopeProviderFactory factory = ViewScopeProviderFactory.getViewScopeHandlerFactory(
                 context.getExternalContext());
             ViewScopeProvider handler = factory.getViewScopeHandler(context.getExternalContext());
-            viewCollection.put(context, serializeView(context, serializedView), nextKey, key,
+            viewCollection.put(context, state, nextKey, key,
                     handler, viewScopeProxyMap.getViewScopeId());
         }
         else
         {
-            viewCollection.put(context, serializeView(context, serializedView), nextKey, key);
+            viewCollection.put(context, state, nextKey, key);
         }
 
         ClientWindow clientWindow = context.getExternalContext().getClientWindow();
@@ -351,6 +537,12 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
                     externalContext.getFlash().keep(RESTORED_VIEW_KEY_REQUEST_ATTR);
                 }
             }
+            else if (serializedViewDelta && serializedView != null)
+            {
+                // the next state of this view is stored as the differences against the restored one
+                attributeMap.put(RESTORED_VIEW_KEY_REQUEST_ATTR, getSessionViewStorageFactory().
+                        createSerializedViewKey(context, viewId, sequence));
+            }
 
             if (context.getPartialViewContext().isAjaxRequest() ||
                 context.getPartialViewContext().isPartialRequest())
@@ -422,57 +614,208 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
                 log.finest("Processing serializeView - serialize state in session");
             }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
-            try
-            {
-                OutputStream os = baos;
-                if(isCompressStateInSession(context))
-                {
-                    if (log.isLoggable(Level.FINEST))
-                    {
-                        log.finest("Processing serializeView - serialize compressed");
-                    }
+            return serializeView(serializedView, getSerialFactory(context), isCompressStateInSession(context));
+        }
 
-                    os.write(COMPRESSED_FLAG);
-                    os = new GZIPOutputStream(os, 1024);
-                }
-                else
-                {
-                    if (log.isLoggable(Level.FINEST))
-                    {
-                        log.finest("Processing serializeView - serialize uncompressed");
-                    }
 
-                    os.write(UNCOMPRESSED_FLAG);
-                }
+        if (log.isLoggable(Level.FINEST))
+        {
+            log.finest("Exiting serializeView - do not serialize state in session.");
+        }
 
-                ObjectOutputStream out = new ObjectOutputStream(os);
-                
-                out.writeObject(serializedView);
-                out.close();
-                baos.close();
+        return serializedView;
 
+    }
+
+    /**
+     * Stops the executor of {@link #ASYNC_SERIALIZE_SERVER_STATE_PARAM}, if any. Called when the
+     * application is destroyed. The views already queued are still compressed.
+     * 
+     * @param externalContext the ExternalContext of the application
+     */
+    static void shutdownAsyncSerialization(ExternalContext externalContext)
+    {
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) externalContext.getApplicationMap().remove(
+                ASYNC_SERIALIZATION_EXECUTOR_KEY);
+        if (executor != null)
+        {
+            executor.shutdown();
+        }
+    }
+
+    private Object serializeView(Object serializedView, SerialFactory serialFactory, boolean compress)
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+        try
+        {
+            OutputStream os = baos;
+            if(compress)
+            {
                 if (log.isLoggable(Level.FINEST))
                 {
-                    log.finest("Exiting serializeView - serialized. Bytes : " + baos.size());
+                    log.finest("Processing serializeView - serialize compressed");
                 }
-                return baos.toByteArray();
+
+                os.write(COMPRESSED_FLAG);
+                os = new GZIPOutputStream(os, 1024);
             }
-            catch (IOException e)
+            else
             {
-                log.log(Level.SEVERE, "Exiting serializeView - Could not serialize state: " + e.getMessage(), e);
-                return null;
+                if (log.isLoggable(Level.FINEST))
+                {
+                    log.finest("Processing serializeView - serialize uncompressed");
+                }
+
+                os.write(UNCOMPRESSED_FLAG);
+            }
+
+            ObjectOutputStream out = serialFactory.getObjectOutputStream(os);
+
+            out.writeObject(serializedView);
+            out.close();
+            baos.close();
+
+            if (log.isLoggable(Level.FINEST))
+            {
+                log.finest("Exiting serializeView - serialized. Bytes : " + baos.size());
             }
+            return baos.toByteArray();
         }
+        catch (IOException e)
+        {
+            log.log(Level.SEVERE, "Exiting serializeView - Could not serialize state: " + e.getMessage(), e);
+            return null;
+        }
+    }
 
+    /**
+     * Serializes the view like {@link #serializeView(FacesContext, Object)}, but compresses it on the executor
+     * configured by {@link #ASYNC_SERIALIZE_SERVER_STATE_PARAM}. The view is serialized by the request thread,
+     * so the stored bytes are a snapshot of the state of this request, and the returned
+     * {@link AsyncSerializedView} is stored in place of the serialized view until the compression is done.
+     * 
+     * @param context <code>FacesContext</code> for the request we are processing.
+     * @param serializedView the view to store
+     * @return the pending compression, or the serialized view if there is nothing to do in the background
+     */
+    protected Object serializeViewAsync(FacesContext context, Object serializedView)
+    {
+        if (!isCompressStateInSession(context))
+        {
+            return serializeView(context, serializedView);
+        }
 
-        if (log.isLoggable(Level.FINEST))
+        final byte[] bytes;
+        try
         {
-            log.finest("Exiting serializeView - do not serialize state in session.");
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+            ObjectOutputStream out = getSerialFactory(context).getObjectOutputStream(baos);
+            out.writeObject(serializedView);
+            out.close();
+            bytes = baos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            log.log(Level.SEVERE, "Exiting serializeViewAsync - Could not serialize state: " + e.getMessage(), e);
+            return null;
         }
 
-        return serializedView;
+        AsyncSerializedView pending = new AsyncSerializedView(new Callable<Object>()
+        {
+            @Override
+            public Object call() throws IOException
+            {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 4 + 64);
+                baos.write(COMPRESSED_FLAG);
+                OutputStream os = new GZIPOutputStream(baos, 1024);
+                os.write(bytes);
+                os.close();
+                return baos.toByteArray();
+            }
+        });
+        // when the queue is full the view is compressed by the request thread
+        asyncSerializationExecutor.execute(pending.getTask());
+        if (asyncSerializationExecutor.isShutdown())
+        {
+            // the executor discards the task once the application is destroyed, running it again has no effect
+            pending.getTask().run();
+        }
+        return pending;
+    }
 
+    /**
+     * Serializes the view like {@link #serializeView(FacesContext, Object)}, but returns a
+     * {@link SerializedViewDelta} against the base state when the differences are small enough.
+     * 
+     * @param context <code>FacesContext</code> for the request we are processing.
+     * @param serializedView the view to store
+     * @param baseState the stored state the view was restored from, or null
+     * @return the full serialized view or its differences against baseState
+     */
+    protected Object serializeViewDelta(FacesContext context, Object serializedView, Object baseState)
+    {
+        try
+        {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
+            ObjectOutputStream out = getSerialFactory(context).getObjectOutputStream(baos);
+            out.writeObject(serializedView);
+            out.close();
+            byte[] bytes = baos.toByteArray();
+
+            if (baseState != null)
+            {
+                SerializedViewDelta delta = SerializedViewDelta.create(baseState, bytes,
+                        serializedViewDeltaMaxChain);
+                if (delta != null)
+                {
+                    if (log.isLoggable(Level.FINEST))
+                    {
+                        log.finest("Exiting serializeViewDelta - serialized delta. Bytes : "
+                                + delta.getDeltaLength() + " of " + bytes.length);
+                    }
+                    return delta;
+                }
+            }
+
+            baos.reset();
+            OutputStream os = baos;
+            if (isCompressStateInSession(context))
+            {
+                os.write(COMPRESSED_FLAG);
+                os = new GZIPOutputStream(os, 1024);
+            }
+            else
+            {
+                os.write(UNCOMPRESSED_FLAG);
+            }
+            os.write(bytes);
+            os.close();
+
+            if (log.isLoggable(Level.FINEST))
+            {
+                log.finest("Exiting serializeViewDelta - serialized. Bytes : " + baos.size());
+            }
+            return baos.toByteArray();
+        }
+        catch (IOException e)
+        {
+            log.log(Level.SEVERE, "Exiting serializeViewDelta - Could not serialize state: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the SerialFactory configured through <code>org.apache.myfaces.SERIAL_FACTORY</code>, so the
+     * state stored in session is written in the same format as the client side state.
+     * 
+     * @param context <code>FacesContext</code> for the request we are processing.
+     * @return the configured SerialFactory, or a {@link DefaultSerialFactory} if there is none.
+     */
+    protected SerialFactory getSerialFactory(FacesContext context)
+    {
+        SerialFactory serialFactory = context == null ? null
+                : (SerialFactory) context.getExternalContext().getApplicationMap().get(StateUtils.SERIAL_FACTORY);
+        return serialFactory == null ? DEFAULT_SERIAL_FACTORY : serialFactory;
     }
 
     /**
@@ -521,6 +864,24 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
             log.finest("Entering deserializeView");
         }
 
+        if (state instanceof AsyncSerializedView)
+        {
+            if (log.isLoggable(Level.FINEST))
+            {
+                log.finest("Processing deserializeView - waiting for the serialization of the state");
+            }
+
+            try
+            {
+                state = ((AsyncSerializedView) state).getState();
+            }
+            catch (IOException e)
+            {
+                log.log(Level.SEVERE, "Exiting deserializeView - Could not serialize state: " + e.getMessage(), e);
+                return null;
+            }
+        }
+
         if(state instanceof byte[])
         {
             if (log.isLoggable(Level.FINEST))
@@ -537,38 +898,25 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
                 {
                     is = new GZIPInputStream(is);
                 }
-                ObjectInputStream ois = null;
-                try
-                {
-                    final ObjectInputStream in = new MyFacesObjectInputStream(is);
-                    ois = in;
-                    Object object = null;
-                    if (System.getSecurityManager() != null) 
-                    {
-                        object = AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() 
-                        {
-                            public Object run() throws PrivilegedActionException, IOException, ClassNotFoundException
-                            {
-                                //return new Object[] {in.readObject(), in.readObject()};
-                                return in.readObject();
-                            }
-                        });
-                    }
-                    else
-                    {
-                        //object = new Object[] {in.readObject(), in.readObject()};
-                        object = in.readObject();
-                    }
-                    return object;
-                }
-                finally
-                {
-                    if (ois != null)
-                    {
-                        ois.close();
-                        ois = null;
-                    }
-                }
+                return readView(is);
+            }
+            catch (PrivilegedActionException | IOException | ClassNotFoundException e) 
+            {
+                log.log(Level.SEVERE, "Exiting deserializeView - Could not deserialize state: " + e.getMessage(), e);
+                return null;
+            }
+        }
+        else if (state instanceof SerializedViewDelta)
+        {
+            if (log.isLoggable(Level.FINEST))
+            {
+                log.finest("Processing deserializeView - deserializing serialized state delta. Depth : "
+                           + ((SerializedViewDelta) state).getDepth());
+            }
+
+            try
+            {
+                return readView(new ByteArrayInputStream(SerializedViewDelta.getSerializedBytes(state)));
             }
             catch (PrivilegedActionException | IOException | ClassNotFoundException e) 
             {
@@ -598,6 +946,43 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
         }
     }
     
+    private Object readView(InputStream is) throws PrivilegedActionException, IOException, ClassNotFoundException
+    {
+        ObjectInputStream ois = null;
+        try
+        {
+            final ObjectInputStream in = getSerialFactory(FacesContext.getCurrentInstance())
+                    .getObjectInputStream(is);
+            ois = in;
+            Object object = null;
+            if (System.getSecurityManager() != null) 
+            {
+                object = AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() 
+                {
+                    public Object run() throws PrivilegedActionException, IOException, ClassNotFoundException
+                    {
+                        //return new Object[] {in.readObject(), in.readObject()};
+                        return in.readObject();
+                    }
+                });
+            }
+            else
+            {
+                //object = new Object[] {in.readObject(), in.readObject()};
+                object = in.readObject();
+            }
+            return object;
+        }
+        finally
+        {
+            if (ois != null)
+            {
+                ois.close();
+                ois = null;
+            }
+        }
+    }
+    
     //------------------------------------- METHOD FROM StateCache ------------------------------------------------
 
     @Override
@@ -690,4 +1075,20 @@ class ServerSideStateCacheImpl extends StateCache<Object, Object>
     {
         return stateTokenProcessor;
     }
+
+    private static class SerializationThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger count = new AtomicInteger();
+        private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "MyFaces view state serializer " + count.incrementAndGet());
+            thread.setDaemon(true);
+            // custom serializers may load classes of the application
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }
+    }
 }
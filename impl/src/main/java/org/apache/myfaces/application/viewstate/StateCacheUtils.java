@@ -19,6 +19,7 @@
 package org.apache.myfaces.application.viewstate;
 
 import javax.faces.FacesWrapper;
+import javax.faces.context.ExternalContext;
 import javax.faces.render.ResponseStateManager;
 import org.apache.myfaces.renderkit.MyfacesResponseStateManager;
 
@@ -79,4 +80,15 @@ public class StateCacheUtils
             return null;
         }
     }
+
+    /**
+     * Releases what the state caches keep for the whole application, like the threads compressing
+     * the views stored in session and the store of the serialized views kept off the heap. Called
+     * when the application is destroyed.
+     */
+    public static void destroy(ExternalContext externalContext)
+    {
+        ServerSideStateCacheImpl.shutdownAsyncSerialization(externalContext);
+        OffHeapSerializedViewStore.destroy(externalContext);
+    }
 }
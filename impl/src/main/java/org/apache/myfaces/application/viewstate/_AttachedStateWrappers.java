@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gives the compact streams access to the package private state wrappers of
+ * <code>javax.faces.component</code> (<code>_AttachedStateWrapper</code> and
+ * <code>_AttachedDeltaWrapper</code>), so they can be written field by field instead of
+ * going through java serialization. If the wrappers cannot be accessed (for example
+ * because a SecurityManager denies it), the streams fall back to java serialization for them.
+ */
+final class _AttachedStateWrappers
+{
+    private static final Logger log = Logger.getLogger(_AttachedStateWrappers.class.getName());
+
+    private static final Class<?> STATE_WRAPPER_CLASS;
+    private static final Constructor<?> STATE_WRAPPER_CONSTRUCTOR;
+    private static final Method STATE_WRAPPER_GET_CLAZZ;
+    private static final Method STATE_WRAPPER_GET_WRAPPED;
+
+    private static final Class<?> DELTA_WRAPPER_CLASS;
+    private static final Constructor<?> DELTA_WRAPPER_CONSTRUCTOR;
+    private static final Method DELTA_WRAPPER_GET_WRAPPED;
+
+    static
+    {
+        Object[] members = AccessController.doPrivileged(new PrivilegedAction<Object[]>()
+        {
+            public Object[] run()
+            {
+                try
+                {
+                    Class<?> stateWrapper = Class.forName("javax.faces.component._AttachedStateWrapper");
+                    Constructor<?> stateConstructor = stateWrapper.getConstructor(Class.class, Object.class);
+                    Method stateGetClazz = stateWrapper.getMethod("getClazz");
+                    Method stateGetWrapped = stateWrapper.getMethod("getWrappedStateObject");
+
+                    Class<?> deltaWrapper = Class.forName("javax.faces.component._AttachedDeltaWrapper");
+                    Constructor<?> deltaConstructor = deltaWrapper.getConstructor(Class.class, Object.class);
+                    Method deltaGetWrapped = deltaWrapper.getMethod("getWrappedStateObject");
+
+                    stateConstructor.setAccessible(true);
+                    stateGetClazz.setAccessible(true);
+                    stateGetWrapped.setAccessible(true);
+                    deltaConstructor.setAccessible(true);
+                    deltaGetWrapped.setAccessible(true);
+
+                    return new Object[] {stateWrapper, stateConstructor, stateGetClazz, stateGetWrapped,
+                        deltaWrapper, deltaConstructor, deltaGetWrapped};
+                }
+                catch (Exception e)
+                {
+                    if (log.isLoggable(Level.FINE))
+                    {
+                        log.log(Level.FINE, "Attached state wrappers not accessible, "
+                                + "they will be written using java serialization", e);
+                    }
+                    return new Object[7];
+                }
+            }
+        });
+        STATE_WRAPPER_CLASS = (Class<?>) members[0];
+        STATE_WRAPPER_CONSTRUCTOR = (Constructor<?>) members[1];
+        STATE_WRAPPER_GET_CLAZZ = (Method) members[2];
+        STATE_WRAPPER_GET_WRAPPED = (Method) members[3];
+        DELTA_WRAPPER_CLASS = (Class<?>) members[4];
+        DELTA_WRAPPER_CONSTRUCTOR = (Constructor<?>) members[5];
+        DELTA_WRAPPER_GET_WRAPPED = (Method) members[6];
+    }
+
+    private _AttachedStateWrappers()
+    {
+    }
+
+    static boolean isAttachedStateWrapper(Class<?> type)
+    {
+        return type == STATE_WRAPPER_CLASS && STATE_WRAPPER_CLASS != null;
+    }
+
+    static boolean isAttachedDeltaWrapper(Class<?> type)
+    {
+        return type == DELTA_WRAPPER_CLASS && DELTA_WRAPPER_CLASS != null;
+    }
+
+    static Class<?> getClazz(Object attachedStateWrapper)
+    {
+        return (Class<?>) invoke(STATE_WRAPPER_GET_CLAZZ, attachedStateWrapper);
+    }
+
+    static Object getWrappedStateObject(Object wrapper)
+    {
+        return invoke(wrapper.getClass() == STATE_WRAPPER_CLASS
+                ? STATE_WRAPPER_GET_WRAPPED : DELTA_WRAPPER_GET_WRAPPED, wrapper);
+    }
+
+    static Object newAttachedStateWrapper(Class<?> clazz, Object wrappedStateObject)
+    {
+        return newInstance(STATE_WRAPPER_CONSTRUCTOR, clazz, wrappedStateObject);
+    }
+
+    static Object newAttachedDeltaWrapper(Object wrappedStateObject)
+    {
+        return newInstance(DELTA_WRAPPER_CONSTRUCTOR, null, wrappedStateObject);
+    }
+
+    private static Object invoke(Method method, Object target)
+    {
+        try
+        {
+            return method.invoke(target);
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException("Cannot read " + target.getClass().getName(), e);
+        }
+    }
+
+    private static Object newInstance(Constructor<?> constructor, Class<?> clazz, Object wrappedStateObject)
+    {
+        if (constructor == null)
+        {
+            throw new IllegalStateException("Attached state wrappers are not accessible");
+        }
+        try
+        {
+            return constructor.newInstance(clazz, wrappedStateObject);
+        }
+        catch (Exception e)
+        {
+            throw new IllegalStateException("Cannot create " + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+}
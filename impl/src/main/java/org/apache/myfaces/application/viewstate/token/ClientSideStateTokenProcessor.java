@@ -18,7 +18,11 @@
  */
 package org.apache.myfaces.application.viewstate.token;
 
+import java.io.IOException;
+import java.io.Writer;
+import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
+import org.apache.myfaces.shared.renderkit.html.util.WritableAttributeValue;
 import org.apache.myfaces.shared.util.StateUtils;
 
 /**
@@ -50,4 +54,40 @@ public class ClientSideStateTokenProcessor extends StateTokenProcessor
         String serializedState = StateUtils.construct(savedStateObject, facesContext.getExternalContext());
         return serializedState;
     }
+
+    @Override
+    public Object encodeValue(FacesContext facesContext, Object savedStateObject)
+    {
+        if (facesContext.getViewRoot().isTransient())
+        {
+            return STATELESS_TOKEN;
+        }
+        return new ViewStateValue(savedStateObject, facesContext.getExternalContext());
+    }
+
+    /**
+     * The state is written straight into the response, without building the String.
+     */
+    private static class ViewStateValue implements WritableAttributeValue
+    {
+        private final Object savedStateObject;
+        private final ExternalContext externalContext;
+
+        ViewStateValue(Object savedStateObject, ExternalContext externalContext)
+        {
+            this.savedStateObject = savedStateObject;
+            this.externalContext = externalContext;
+        }
+
+        public void writeTo(Writer writer) throws IOException
+        {
+            StateUtils.construct(savedStateObject, externalContext, writer);
+        }
+
+        @Override
+        public String toString()
+        {
+            return StateUtils.construct(savedStateObject, externalContext);
+        }
+    }
 }
@@ -31,6 +31,16 @@ public abstract class StateTokenProcessor
     public abstract Object decode(FacesContext facesContext, String token);
     
     public abstract String encode(FacesContext facesContext, Object savedStateObject);
+
+    /**
+     * Returns the value of the view state field. By default the String of {@link #encode(FacesContext, Object)},
+     * but it can also be a {@link org.apache.myfaces.shared.renderkit.html.util.WritableAttributeValue}
+     * that writes the token straight into the response.
+     */
+    public Object encodeValue(FacesContext facesContext, Object savedStateObject)
+    {
+        return encode(facesContext, savedStateObject);
+    }
     
     public boolean isStateless(FacesContext facesContext, String token)
     {
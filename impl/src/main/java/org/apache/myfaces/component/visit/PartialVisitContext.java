@@ -26,6 +26,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -101,6 +102,10 @@ public class PartialVisitContext extends VisitContext
     // 4. unvisitedClientIds: contains the client ids to visit that
     //    have not yet been visited.
     //
+    // Ids are removed from subtreeClientIds once they have been
+    // visited, so naming containers can stop iterating over their
+    // children (or rows) as soon as their subtree collection is empty.
+    //
     // We populate these now.
     //
     // Note that we use default HashSet/Map initial capacities, though
@@ -113,7 +118,8 @@ public class PartialVisitContext extends VisitContext
     _ids = new HashSet<String>();
 
     // Intialize subtreeClientIds collection
-    _subtreeClientIds = new HashMap<String, Collection<String>>();
+    _subtreeClientIds = new HashMap<String, Set<String>>();
+    _subtreeClientIdViews = new HashMap<String, Collection<String>>();
 
     // Initialize the clientIds collection.  Note that we proxy
     // this collection so that we can trap adds/removes and sync
@@ -164,6 +170,11 @@ public class PartialVisitContext extends VisitContext
   }
 
   /**
+   * The returned collection is a read-only live view: its size shrinks while the
+   * client ids inside the subtree are visited, so a naming container can stop
+   * visiting its children as soon as it is empty. Its iterators work on a copy
+   * taken when they are created, so the subtree can be visited while iterating.
+   * 
    * @see VisitContext#getSubtreeIdsToVisit VisitContext.getSubtreeIdsToVisit()
    */
   @Override
@@ -176,7 +187,7 @@ public class PartialVisitContext extends VisitContext
     }
 
     String clientId = component.getClientId(getFacesContext());
-    Collection<String> ids = _subtreeClientIds.get(clientId);
+    Collection<String> ids = _subtreeClientIdViews.get(clientId);
 
     if (ids == null)
     {
@@ -184,7 +195,7 @@ public class PartialVisitContext extends VisitContext
     }
     else
     {
-        return Collections.unmodifiableCollection(ids);
+        return ids;
     }
   }
 
@@ -212,8 +223,8 @@ public class PartialVisitContext extends VisitContext
     // client ids, so perform the visit.
     VisitResult result = callback.visit(this, component);
 
-    // Remove the component from our "unvisited" collection
-    _unvisitedClientIds.remove(clientId);
+    // Remove the component from our "unvisited" collections
+    _idVisited(clientId, result == VisitResult.REJECT);
 
     // If the unvisited collection is now empty, we are done.
     // Return VisitResult.COMPLETE to terminate the visit.
@@ -262,6 +273,30 @@ public class PartialVisitContext extends VisitContext
     _removeSubtreeClientId(clientId);
   }
 
+  // Called once the component with the specified client id has been
+  // visited.  If the callback rejected the subtree of the component, the
+  // ids to visit inside that subtree will not be reached by this visit
+  // anymore, so they are dropped from the unvisited collections too.
+  // That way the visit can complete as soon as possible.
+  private void _idVisited(String clientId, boolean subtreeRejected)
+  {
+    _unvisitedClientIds.remove(clientId);
+    _removeSubtreeClientId(clientId);
+
+    if (subtreeRejected && !_unvisitedClientIds.isEmpty())
+    {
+      Set<String> subtreeClientIds = _subtreeClientIds.get(clientId);
+      if (subtreeClientIds != null && !subtreeClientIds.isEmpty())
+      {
+        for (String unvisitedClientId : new ArrayList<String>(subtreeClientIds))
+        {
+          _unvisitedClientIds.remove(unvisitedClientId);
+          _removeSubtreeClientId(unvisitedClientId);
+        }
+      }
+    }
+  }
+
   // Tests whether the specified component should be visited.
   // If so, returns its client id.  If not, returns null.
   private String _getVisitId(UIComponent component)
@@ -338,13 +373,13 @@ public class PartialVisitContext extends VisitContext
         // NamingContainer client id.  If not, create the
         // Collection for this NamingContainer client id and
         // stash it away in our map
-        Collection<String> c = _subtreeClientIds.get(namingContainerClientId);
+        Set<String> c = _subtreeClientIds.get(namingContainerClientId);
 
         if (c == null)
         {
-          // TODO: smarter initial size?
-          c = new ArrayList<String>();
+          c = new LinkedHashSet<String>();
           _subtreeClientIds.put(namingContainerClientId, c);
+          _subtreeClientIdViews.put(namingContainerClientId, new SubtreeIdsView(c));
         }
 
         // Stash away the client id
@@ -357,18 +392,16 @@ public class PartialVisitContext extends VisitContext
   // entries from our subtree collections
   private void _removeSubtreeClientId(String clientId)
   {
-    // Loop through each entry in the map and check to see whether
-    // the client id to remove should be contained in the corresponding
-    // collection - ie. whether the key (the NamingContainer client id)
-    // is present at the start of the client id to remove.
-    for (Map.Entry<String, Collection<String>> stringCollectionEntry : _subtreeClientIds.entrySet())
+    // The client id can only be in the collections of its ancestor
+    // NamingContainers, so only look at the prefixes of the client id
+    // that end before a separator.
+    final char separator = getFacesContext().getNamingContainerSeparatorChar();
+
+    for (int i = clientId.indexOf(separator); i >= 0; i = clientId.indexOf(separator, i + 1))
     {
-      if (clientId.startsWith(stringCollectionEntry.getKey()))
+      Set<String> ids = _subtreeClientIds.get(clientId.substring(0, i));
+      if (ids != null)
       {
-        // If the clientId starts with the key, we should
-        // have an entry for this clientId in the corresponding
-        // collection.  Remove it.
-        Collection<String> ids = stringCollectionEntry.getValue();
         ids.remove(clientId);
       }
     }
@@ -448,6 +481,43 @@ public class PartialVisitContext extends VisitContext
     private E _current = null;
   }
 
+  // Read-only view of a subtree collection returned by getSubtreeIdsToVisit().
+  // The size is live, the iterators work on a copy so visiting the subtree
+  // while iterating does not throw ConcurrentModificationException.
+  private static class SubtreeIdsView extends AbstractCollection<String>
+  {
+    private SubtreeIdsView(Set<String> wrapped)
+    {
+      _wrapped = wrapped;
+    }
+
+    @Override
+    public int size()
+    {
+      return _wrapped.size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+      return _wrapped.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+      return _wrapped.contains(o);
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+      return Collections.unmodifiableCollection(new ArrayList<String>(_wrapped)).iterator();
+    }
+
+    private final Set<String> _wrapped;
+  }
+
   // The client ids to visit
   private final Collection<String> _clientIds;
 
@@ -461,7 +531,11 @@ public class PartialVisitContext extends VisitContext
   // The keys in this map are NamingContainer client ids.  The values
   // are collections containing all of the client ids to visit within
   // corresponding naming container.
-  private final Map<String,Collection<String>> _subtreeClientIds;
+  private final Map<String,Set<String>> _subtreeClientIds;
+
+  // Read-only views of the _subtreeClientIds collections, created
+  // once and returned by getSubtreeIdsToVisit().
+  private final Map<String,Collection<String>> _subtreeClientIdViews;
 
   // The FacesContext for this request
   private final FacesContext _facesContext;
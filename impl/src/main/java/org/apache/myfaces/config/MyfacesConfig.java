@@ -304,6 +304,32 @@ public class MyfacesConfig
     private static final String INIT_PARAM_EARLY_FLUSH_ENABLED =
         "org.apache.myfaces.EARLY_FLUSH_ENABLED";
     private static final boolean INIT_PARAM_EARLY_FLUSH_ENABLED_DEFAULT = false;
+
+    /**
+     * When early flush is enabled, flush the response again each time this many characters have
+     * been rendered, so the browser receives the body progressively instead of in one piece at the
+     * end. Chunks stop at the first form whose view state is written into the page after the view
+     * has been rendered (client side state saving); the rest of the page follows with the state.
+     * With server side state saving the session is created before the first flush. If this is set
+     * to 0, only the head is flushed early.
+     */
+    @JSFWebConfigParam(defaultValue = "0", since = "3.0.0", group="render", tags="performance")
+    public static final String INIT_PARAM_EARLY_FLUSH_CHUNK_SIZE =
+        "org.apache.myfaces.EARLY_FLUSH_CHUNK_SIZE";
+    public static final int INIT_PARAM_EARLY_FLUSH_CHUNK_SIZE_DEFAULT = 0;
+
+    /**
+     * Write UTF-8 responses to the ServletOutputStream, encoding the characters to bytes in
+     * MyFaces instead of using the writer of the servlet container. Element and attribute names
+     * are encoded only once and text is escaped in the same pass that encodes it. Only enable it
+     * if no filter or error page of the application calls getWriter() on a response that
+     * MyFaces has already written to.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false", group="render",
+            tags="performance")
+    public static final String INIT_PARAM_UTF8_OUTPUT_STREAM_WRITER_ENABLED =
+        "org.apache.myfaces.UTF8_OUTPUT_STREAM_WRITER_ENABLED";
+    public static final boolean INIT_PARAM_UTF8_OUTPUT_STREAM_WRITER_ENABLED_DEFAULT = false;
     
     /**
      * This param makes components like c:set, ui:param and templating components like ui:decorate,
@@ -434,6 +460,8 @@ public class MyfacesConfig
     private String _gaeJsfAnnotationsJarFiles;
     private boolean _strictJsf2ViewNotFound;
     private boolean _earlyFlushEnabled;
+    private int _earlyFlushChunkSize;
+    private boolean _utf8OutputStreamWriterEnabled;
     private boolean _strictJsf2FaceletsCompatibility;
     private boolean _renderFormViewStateAtBegin;
     private boolean _flashScopeDisabled;
@@ -516,6 +544,8 @@ public class MyfacesConfig
         setGaeJsfAnnotationsJarFiles(INIT_PARAM_GAE_JSF_ANNOTATIONS_JAR_FILES_DEFAULT);
         setStrictJsf2ViewNotFound(INIT_PARAM_STRICT_JSF_2_VIEW_NOT_FOUND_DEFAULT);
         setEarlyFlushEnabled(INIT_PARAM_EARLY_FLUSH_ENABLED_DEFAULT);
+        setEarlyFlushChunkSize(INIT_PARAM_EARLY_FLUSH_CHUNK_SIZE_DEFAULT);
+        setUtf8OutputStreamWriterEnabled(INIT_PARAM_UTF8_OUTPUT_STREAM_WRITER_ENABLED_DEFAULT);
         setStrictJsf2FaceletsCompatibility(INIT_PARAM_STRICT_JSF_2_FACELETS_COMPATIBILITY_DEFAULT);
         setRenderFormViewStateAtBegin(INIT_PARAM_RENDER_FORM_VIEW_STATE_AT_BEGIN_DEFAULT);
         setFlashScopeDisabled(INIT_PARAM_FLASH_SCOPE_DISABLED_DEFAULT);
@@ -620,6 +650,11 @@ public class MyfacesConfig
         
         myfacesConfig.setEarlyFlushEnabled(WebConfigParamUtils.getBooleanInitParameter(extCtx,
                 INIT_PARAM_EARLY_FLUSH_ENABLED, INIT_PARAM_EARLY_FLUSH_ENABLED_DEFAULT));
+        myfacesConfig.setEarlyFlushChunkSize(WebConfigParamUtils.getIntegerInitParameter(extCtx,
+                INIT_PARAM_EARLY_FLUSH_CHUNK_SIZE, INIT_PARAM_EARLY_FLUSH_CHUNK_SIZE_DEFAULT));
+
+        myfacesConfig.setUtf8OutputStreamWriterEnabled(WebConfigParamUtils.getBooleanInitParameter(extCtx,
+                INIT_PARAM_UTF8_OUTPUT_STREAM_WRITER_ENABLED, INIT_PARAM_UTF8_OUTPUT_STREAM_WRITER_ENABLED_DEFAULT));
 
 
         myfacesConfig.setStrictJsf2FaceletsCompatibility(WebConfigParamUtils.getBooleanInitParameter(extCtx, 
@@ -1053,6 +1088,26 @@ public class MyfacesConfig
         this._earlyFlushEnabled = earlyFlushEnabled;
     }
 
+    public int getEarlyFlushChunkSize()
+    {
+        return _earlyFlushChunkSize;
+    }
+
+    public void setEarlyFlushChunkSize(int earlyFlushChunkSize)
+    {
+        this._earlyFlushChunkSize = earlyFlushChunkSize;
+    }
+
+    public boolean isUtf8OutputStreamWriterEnabled()
+    {
+        return _utf8OutputStreamWriterEnabled;
+    }
+
+    public void setUtf8OutputStreamWriterEnabled(boolean utf8OutputStreamWriterEnabled)
+    {
+        this._utf8OutputStreamWriterEnabled = utf8OutputStreamWriterEnabled;
+    }
+
     public boolean isStrictJsf2FaceletsCompatibility()
     {
         return _strictJsf2FaceletsCompatibility;
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.faces.FacesException;
@@ -56,7 +57,9 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
+import org.apache.myfaces.config.MyfacesConfig;
 import org.apache.myfaces.context.flash.FlashImpl;
+import org.apache.myfaces.shared.renderkit.html.util.Utf8ResponseOutputWriter;
 import org.apache.myfaces.shared.util.WebConfigParamUtils;
 import org.apache.myfaces.util.EnumerationIterator;
 import org.apache.myfaces.util.ExternalSpecifications;
@@ -78,6 +81,7 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     private static final String URL_NAME_VALUE_PAIR_SEPERATOR="=";
     private static final String PUSHED_RESOURCE_URLS = "oam.PUSHED_RESOURCE_URLS";
     private static final String PUSH_SUPPORTED = "oam.PUSH_SUPPORTED";
+    private static final String UTF8 = "UTF-8";
 
     /**
      * Indicates the port used for websocket connections.
@@ -101,6 +105,7 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     private FlashFactory _flashFactory;
     private Flash _flash;
     private FacesContext _currentFacesContext;
+    private Utf8ResponseOutputWriter _utf8Writer;
 
     public ServletExternalContextImpl(final ServletContext servletContext, 
             final ServletRequest servletRequest,
@@ -143,6 +148,7 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     {
         super.release(); // releases fields on ServletExternalContextImplBase
         
+        releaseUtf8Writer();
         _currentFacesContext = null;
         _servletRequest = null;
         _servletResponse = null;
@@ -219,6 +225,11 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     @Override
     public OutputStream getResponseOutputStream() throws IOException
     {
+        if (_utf8Writer != null)
+        {
+            // what was written with the writer goes before what is written to the stream
+            _utf8Writer.flushBuffer();
+        }
         return _servletResponse.getOutputStream();
     }
 
@@ -228,9 +239,50 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     @Override
     public Writer getResponseOutputWriter() throws IOException
     {
+        if (_utf8Writer != null)
+        {
+            return _utf8Writer;
+        }
+        if (UTF8.equalsIgnoreCase(_servletResponse.getCharacterEncoding())
+                && MyfacesConfig.getCurrentInstance(this).isUtf8OutputStreamWriterEnabled())
+        {
+            try
+            {
+                _utf8Writer = new Utf8ResponseOutputWriter(_servletResponse.getOutputStream());
+                return _utf8Writer;
+            }
+            catch (IllegalStateException e)
+            {
+                // getWriter() was already called on the response, keep using it
+            }
+        }
         return _servletResponse.getWriter();
     }
 
+    /**
+     * The bytes buffered by the Utf8ResponseOutputWriter must reach the response before the
+     * container completes it.
+     */
+    private void releaseUtf8Writer()
+    {
+        if (_utf8Writer != null)
+        {
+            try
+            {
+                _utf8Writer.release();
+            }
+            catch (IOException e)
+            {
+                // the client has gone, nothing else can be done with the response
+                if (log.isLoggable(Level.FINE))
+                {
+                    log.log(Level.FINE, "Cannot write the end of the response", e);
+                }
+            }
+            _utf8Writer = null;
+        }
+    }
+
     @Override
     public Map<String, Object> getSessionMap()
     {
@@ -615,6 +667,10 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     public void responseFlushBuffer() throws IOException
     {
         checkHttpServletResponse();
+        if (_utf8Writer != null)
+        {
+            _utf8Writer.flushBuffer();
+        }
         _httpServletResponse.flushBuffer();
     }
 
@@ -625,6 +681,10 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     public void responseReset()
     {
         checkHttpServletResponse();
+        if (_utf8Writer != null)
+        {
+            _utf8Writer.reset();
+        }
         _httpServletResponse.reset();
     }
 
@@ -710,6 +770,7 @@ public final class ServletExternalContextImpl extends ServletExternalContextImpl
     @Override
     public void setResponse(final java.lang.Object response)
     {
+        releaseUtf8Writer();
         this._servletResponse = (ServletResponse) response;
     }
 
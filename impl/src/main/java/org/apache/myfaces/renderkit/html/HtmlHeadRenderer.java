@@ -19,9 +19,15 @@
 package org.apache.myfaces.renderkit.html;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.faces.application.ProjectStage;
+import javax.faces.application.Resource;
+import javax.faces.application.ResourceHandler;
 import javax.faces.component.UIComponent;
 import javax.faces.component.UIViewRoot;
 import javax.faces.context.FacesContext;
@@ -32,6 +38,10 @@ import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFRendere
 import org.apache.myfaces.config.MyfacesConfig;
 import org.apache.myfaces.shared.renderkit.html.util.HTML;
 import org.apache.myfaces.shared.renderkit.html.HtmlRendererUtils;
+import org.apache.myfaces.shared.renderkit.html.util.JSFAttr;
+import org.apache.myfaces.shared.renderkit.html.util.ResourceUtils;
+import org.apache.myfaces.shared.resource.BundleResource;
+import org.apache.myfaces.shared.resource.BundleResourceCache;
 
 /**
  * Renderer used by h:head component
@@ -52,6 +62,12 @@ public class HtmlHeadRenderer extends Renderer
     private final static String[] HEAD_PASSTHROUGH_ATTRIBUTES = { HTML.DIR_ATTR,
             HTML.LANG_ATTR, PROFILE_ATTR};
 
+    /**
+     * Attributes of a script or stylesheet that may be set through an expression and would be lost in a bundle.
+     */
+    private final static String[] NOT_BUNDLEABLE_ATTRIBUTES = { "nonce", "async", "defer", "crossorigin",
+            "integrity", "referrerpolicy", "media", "type", "charset", "title", "id" };
+
     @Override
     public void encodeBegin(FacesContext facesContext, UIComponent component)
             throws IOException
@@ -77,10 +93,18 @@ public class HtmlHeadRenderer extends Renderer
         List<UIComponent> componentResources = root.getComponentResources(facesContext,
                 HEAD_TARGET);
         
-        for (int i = 0, childCount = componentResources.size(); i < childCount; i++)
+        BundleResourceCache bundleResourceCache = BundleResourceCache.getInstance(facesContext);
+        if (bundleResourceCache.isEnabled())
+        {
+            encodeComponentResources(facesContext, bundleResourceCache, componentResources);
+        }
+        else
         {
-            UIComponent child = componentResources.get(i);
-            child.encodeAll(facesContext);
+            for (int i = 0, childCount = componentResources.size(); i < childCount; i++)
+            {
+                UIComponent child = componentResources.get(i);
+                child.encodeAll(facesContext);
+            }
         }
         writer.endElement(HEAD_ELEM);
 
@@ -90,4 +114,185 @@ public class HtmlHeadRenderer extends Renderer
             writer.flush();
         }
     }
+
+    /**
+     * Renders the scripts and stylesheets that come one after the other as a bundle, and the
+     * other component resources as they are.
+     */
+    private void encodeComponentResources(FacesContext facesContext, BundleResourceCache bundleResourceCache,
+            List<UIComponent> componentResources) throws IOException
+    {
+        int i = 0;
+        int childCount = componentResources.size();
+        while (i < childCount)
+        {
+            String rendererType = getBundleableRendererType(componentResources.get(i));
+            int end = i + 1;
+            if (rendererType != null)
+            {
+                while (end < childCount && rendererType.equals(getBundleableRendererType(componentResources.get(end))))
+                {
+                    end++;
+                }
+            }
+            if (end - i < 2 || !encodeBundle(facesContext, bundleResourceCache, rendererType,
+                    componentResources.subList(i, end)))
+            {
+                for (int j = i; j < end; j++)
+                {
+                    componentResources.get(j).encodeAll(facesContext);
+                }
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * @return the renderer type of a script or stylesheet that can be bundled, or null
+     */
+    private static String getBundleableRendererType(UIComponent component)
+    {
+        String rendererType = component.getRendererType();
+        boolean stylesheet = ResourceUtils.DEFAULT_STYLESHEET_RENDERER_TYPE.equals(rendererType);
+        if (!(stylesheet || ResourceUtils.DEFAULT_SCRIPT_RENDERER_TYPE.equals(rendererType))
+                || component.getChildCount() > 0 || !component.isRendered())
+        {
+            return null;
+        }
+        Map<String, Object> attributes = component.getAttributes();
+        String resourceName = (String) attributes.get(JSFAttr.NAME_ATTR);
+        if (resourceName == null || resourceName.isEmpty() || resourceName.indexOf('?') >= 0
+                || hasOtherAttributes(component))
+        {
+            return null;
+        }
+        return rendererType;
+    }
+
+    /**
+     * @return true if the component has passthrough attributes or attributes other than name, library
+     * and target, like a CSP nonce, async or integrity, that the bundle could not render.
+     */
+    private static boolean hasOtherAttributes(UIComponent component)
+    {
+        Map<String, Object> passThroughAttributes = component.getPassThroughAttributes(false);
+        if (passThroughAttributes != null && !passThroughAttributes.isEmpty())
+        {
+            return true;
+        }
+        for (String name : component.getAttributes().keySet())
+        {
+            // names with a dot are the markers of the view handling, not attributes of the element
+            if (!JSFAttr.NAME_ATTR.equals(name) && !JSFAttr.LIBRARY_ATTR.equals(name)
+                    && !JSFAttr.TARGET_ATTR.equals(name) && name.indexOf('.') < 0)
+            {
+                return true;
+            }
+        }
+        for (String name : NOT_BUNDLEABLE_ATTRIBUTES)
+        {
+            if (component.getValueExpression(name) != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renders the given scripts or stylesheets as a single bundle resource.
+     * 
+     * @return false if they could not be bundled and must be rendered one by one
+     */
+    private static boolean encodeBundle(FacesContext facesContext, BundleResourceCache bundleResourceCache,
+            String rendererType, List<UIComponent> components) throws IOException
+    {
+        boolean stylesheet = ResourceUtils.DEFAULT_STYLESHEET_RENDERER_TYPE.equals(rendererType);
+        ResourceHandler resourceHandler = facesContext.getApplication().getResourceHandler();
+        List<Resource> resources = new ArrayList<Resource>(components.size());
+        Set<String> resourceIds = new HashSet<String>();
+        for (int i = 0, size = components.size(); i < size; i++)
+        {
+            Map<String, Object> attributes = components.get(i).getAttributes();
+            String resourceName = (String) attributes.get(JSFAttr.NAME_ATTR);
+            String libraryName = (String) attributes.get(JSFAttr.LIBRARY_ATTR);
+            if (isRendered(facesContext, stylesheet, libraryName, resourceName))
+            {
+                continue;
+            }
+            Resource resource = libraryName == null ? resourceHandler.createResource(resourceName)
+                    : resourceHandler.createResource(resourceName, libraryName);
+            if (resource == null || !BundleResourceCache.isBundleable(resource)
+                    || !resource.getResourceName().endsWith(stylesheet ? ".css" : ".js"))
+            {
+                return false;
+            }
+            if (!isRendered(facesContext, stylesheet, resource.getLibraryName(), resource.getResourceName())
+                    && resourceIds.add(resource.getLibraryName() + ':' + resource.getResourceName()))
+            {
+                resources.add(resource);
+            }
+        }
+        if (resources.size() < 2)
+        {
+            return false;
+        }
+
+        BundleResource bundle = bundleResourceCache.getBundle(facesContext, resources, stylesheet ? ".css" : ".js");
+        if (bundle == null)
+        {
+            return false;
+        }
+
+        for (int i = 0, size = components.size(); i < size; i++)
+        {
+            Map<String, Object> attributes = components.get(i).getAttributes();
+            markAsRendered(facesContext, stylesheet, (String) attributes.get(JSFAttr.LIBRARY_ATTR),
+                    (String) attributes.get(JSFAttr.NAME_ATTR));
+        }
+        for (int i = 0, size = resources.size(); i < size; i++)
+        {
+            Resource resource = resources.get(i);
+            markAsRendered(facesContext, stylesheet, resource.getLibraryName(), resource.getResourceName());
+        }
+
+        ResponseWriter writer = facesContext.getResponseWriter();
+        String path = facesContext.getExternalContext().encodeResourceURL(bundle.getRequestPath());
+        if (stylesheet)
+        {
+            writer.startElement(HTML.LINK_ELEM, components.get(0));
+            writer.writeAttribute(HTML.REL_ATTR, HTML.STYLESHEET_VALUE, null);
+            writer.writeAttribute(HTML.TYPE_ATTR, HTML.STYLE_TYPE_TEXT_CSS, null);
+            writer.writeURIAttribute(HTML.HREF_ATTR, path, null);
+            writer.endElement(HTML.LINK_ELEM);
+        }
+        else
+        {
+            writer.startElement(HTML.SCRIPT_ELEM, components.get(0));
+            writer.writeAttribute(HTML.SCRIPT_TYPE_ATTR, HTML.SCRIPT_TYPE_TEXT_JAVASCRIPT, null);
+            writer.writeURIAttribute(HTML.SRC_ATTR, path, null);
+            writer.endElement(HTML.SCRIPT_ELEM);
+        }
+        return true;
+    }
+
+    private static boolean isRendered(FacesContext facesContext, boolean stylesheet, String libraryName,
+            String resourceName)
+    {
+        return stylesheet ? ResourceUtils.isRenderedStylesheet(facesContext, libraryName, resourceName)
+                : ResourceUtils.isRenderedScript(facesContext, libraryName, resourceName);
+    }
+
+    private static void markAsRendered(FacesContext facesContext, boolean stylesheet, String libraryName,
+            String resourceName)
+    {
+        if (stylesheet)
+        {
+            ResourceUtils.markStylesheetAsRendered(facesContext, libraryName, resourceName);
+        }
+        else
+        {
+            ResourceUtils.markScriptAsRendered(facesContext, libraryName, resourceName);
+        }
+    }
 }
@@ -119,8 +119,9 @@ public class HtmlResponseStateManager extends MyfacesResponseStateManager
     private void writeViewStateField(FacesContext facesContext, ResponseWriter responseWriter, Object savedState)
         throws IOException
     {
-        String serializedState = getStateCache(facesContext).getStateTokenProcessor(facesContext)
-                .encode(facesContext, savedState);
+        // The client side state is written straight into the response
+        Object serializedState = getStateCache(facesContext).getStateTokenProcessor(facesContext)
+                .encodeValue(facesContext, savedState);
         ExternalContext extContext = facesContext.getExternalContext();
         MyfacesConfig myfacesConfig = MyfacesConfig.getCurrentInstance(extContext);
 
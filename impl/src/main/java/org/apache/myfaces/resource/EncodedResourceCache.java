@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.application.Resource;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+
+import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
+import org.apache.myfaces.shared.util.ClassUtils;
+import org.apache.myfaces.shared.util.ConcurrentLRUCache;
+import org.apache.myfaces.shared.util.StringUtils;
+import org.apache.myfaces.shared.util.WebConfigParamUtils;
+
+/**
+ * Keeps the encoded variants of text resources, for example gzip compressed, so that a resource
+ * is encoded once instead of letting the container compress it on every request. The variants are
+ * kept in memory up to a total size; when it is reached the oldest variants make room for the new
+ * ones.
+ * <p>
+ * Only used in Production, where resources do not change while the application runs.
+ * </p>
+ * 
+ * @since 3.0.0
+ */
+public class EncodedResourceCache
+{
+    /**
+     * Encode the text resources sent by the ResourceHandler once, and send the encoded variant
+     * accepted by the Accept-Encoding header of the request. Only applies in Production.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="resources", tags="performance")
+    public static final String INIT_PARAM_RESOURCE_CONTENT_ENCODING_ENABLED =
+            "org.apache.myfaces.RESOURCE_CONTENT_ENCODING_ENABLED";
+    public static final boolean INIT_PARAM_RESOURCE_CONTENT_ENCODING_ENABLED_DEFAULT = false;
+
+    /**
+     * Comma separated list of the ResourceContentEncoder classes, in order of preference.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="org.apache.myfaces.resource.GzipResourceContentEncoder",
+            group="resources", tags="performance")
+    public static final String INIT_PARAM_RESOURCE_CONTENT_ENCODERS = "org.apache.myfaces.RESOURCE_CONTENT_ENCODERS";
+    public static final String INIT_PARAM_RESOURCE_CONTENT_ENCODERS_DEFAULT =
+            GzipResourceContentEncoder.class.getName();
+
+    /**
+     * Comma separated list of the content types of the resources that are encoded.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="text/css, text/javascript, application/javascript, "
+            + "application/x-javascript, image/svg+xml, text/plain", group="resources", tags="performance")
+    public static final String INIT_PARAM_RESOURCE_CONTENT_ENCODING_TYPES =
+            "org.apache.myfaces.RESOURCE_CONTENT_ENCODING_TYPES";
+    public static final String INIT_PARAM_RESOURCE_CONTENT_ENCODING_TYPES_DEFAULT =
+            "text/css, text/javascript, application/javascript, application/x-javascript, image/svg+xml, text/plain";
+
+    /**
+     * Maximum number of bytes of the encoded resources kept in memory.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="4194304", group="resources", tags="performance")
+    public static final String INIT_PARAM_RESOURCE_CONTENT_ENCODING_CACHE_SIZE =
+            "org.apache.myfaces.RESOURCE_CONTENT_ENCODING_CACHE_SIZE";
+    public static final long INIT_PARAM_RESOURCE_CONTENT_ENCODING_CACHE_SIZE_DEFAULT = 4 * 1024 * 1024;
+
+    /**
+     * How many variants too big for the cache are remembered, so they are not encoded again.
+     */
+    private static final int MAX_TOO_LARGE = 256;
+
+    private final List<ResourceContentEncoder> _encoders;
+    private final Set<String> _contentTypes;
+    private final long _maxSize;
+
+    private final Map<String, byte[]> _contents = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * The variants bigger than the whole cache, which are sent without encoding.
+     */
+    private final ConcurrentLRUCache<String, Boolean> _tooLarge =
+            new ConcurrentLRUCache<String, Boolean>((MAX_TOO_LARGE * 4 + 3) / 3, MAX_TOO_LARGE);
+
+    /**
+     * The cached variants in the order they were added, guarded by this.
+     */
+    private final LinkedHashMap<String, byte[]> _order = new LinkedHashMap<String, byte[]>();
+    private long _size;
+
+    public EncodedResourceCache(List<ResourceContentEncoder> encoders, Set<String> contentTypes, long maxSize)
+    {
+        _encoders = encoders;
+        _contentTypes = contentTypes;
+        _maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache configured for the application, or null if resources are not encoded
+     */
+    public static EncodedResourceCache create(FacesContext facesContext)
+    {
+        ExternalContext externalContext = facesContext.getExternalContext();
+        if (!facesContext.isProjectStage(ProjectStage.Production)
+                || !WebConfigParamUtils.getBooleanInitParameter(externalContext,
+                        INIT_PARAM_RESOURCE_CONTENT_ENCODING_ENABLED,
+                        INIT_PARAM_RESOURCE_CONTENT_ENCODING_ENABLED_DEFAULT))
+        {
+            return null;
+        }
+
+        List<ResourceContentEncoder> encoders = new ArrayList<ResourceContentEncoder>();
+        for (String className : StringUtils.splitShortString(WebConfigParamUtils.getStringInitParameter(
+                externalContext, INIT_PARAM_RESOURCE_CONTENT_ENCODERS, INIT_PARAM_RESOURCE_CONTENT_ENCODERS_DEFAULT),
+                ','))
+        {
+            className = className.trim();
+            if (className.length() > 0)
+            {
+                encoders.add((ResourceContentEncoder) ClassUtils.newInstance(className,
+                        ResourceContentEncoder.class));
+            }
+        }
+
+        Set<String> contentTypes = new HashSet<String>();
+        for (String contentType : StringUtils.splitShortString(WebConfigParamUtils.getStringInitParameter(
+                externalContext, INIT_PARAM_RESOURCE_CONTENT_ENCODING_TYPES,
+                INIT_PARAM_RESOURCE_CONTENT_ENCODING_TYPES_DEFAULT), ','))
+        {
+            contentType = contentType.trim();
+            if (contentType.length() > 0)
+            {
+                contentTypes.add(contentType.toLowerCase(Locale.ENGLISH));
+            }
+        }
+
+        long maxSize = WebConfigParamUtils.getLongInitParameter(externalContext,
+                INIT_PARAM_RESOURCE_CONTENT_ENCODING_CACHE_SIZE,
+                INIT_PARAM_RESOURCE_CONTENT_ENCODING_CACHE_SIZE_DEFAULT);
+
+        return encoders.isEmpty() ? null : new EncodedResourceCache(encoders, contentTypes, maxSize);
+    }
+
+    /**
+     * @return true if resources of this content type are encoded, so that their responses vary
+     * with the Accept-Encoding header
+     */
+    public boolean isEncoded(String contentType)
+    {
+        if (contentType == null)
+        {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mimeType = semicolon < 0 ? contentType : contentType.substring(0, semicolon);
+        return _contentTypes.contains(mimeType.trim().toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding header of the request
+     * @return the preferred encoder accepted by the user agent, or null
+     */
+    public ResourceContentEncoder getEncoder(String acceptEncoding)
+    {
+        if (acceptEncoding == null)
+        {
+            return null;
+        }
+        for (int i = 0, size = _encoders.size(); i < size; i++)
+        {
+            ResourceContentEncoder encoder = _encoders.get(i);
+            if (isAccepted(acceptEncoding, encoder.getContentEncoding()))
+            {
+                return encoder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key identifies the resource and its variant for the locale and the contract
+     * @return false if the encoded content was found too big to be kept in the cache, so the
+     * resource is sent without encoding instead of being encoded on every request
+     */
+    public boolean isEncodable(String key, ResourceContentEncoder encoder)
+    {
+        return _tooLarge.get(encoder.getContentEncoding() + ':' + key) == null;
+    }
+
+    /**
+     * @param key identifies the resource and its variant for the locale and the contract
+     * @return the content of the resource encoded by the given encoder
+     */
+    public byte[] getEncodedContent(String key, ResourceContentEncoder encoder, Resource resource)
+            throws IOException
+    {
+        String cacheKey = encoder.getContentEncoding() + ':' + key;
+        byte[] content = _contents.get(cacheKey);
+        if (content == null)
+        {
+            // Concurrent first requests may encode the resource more than once, the last one is kept
+            content = encode(encoder, resource);
+            put(cacheKey, content);
+        }
+        return content;
+    }
+
+    private static byte[] encode(ResourceContentEncoder encoder, Resource resource) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        try (InputStream in = resource.getInputStream(); OutputStream out = encoder.encode(bytes))
+        {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, length);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private synchronized void put(String key, byte[] content)
+    {
+        if (content.length > _maxSize)
+        {
+            _tooLarge.put(key, Boolean.TRUE);
+            return;
+        }
+        byte[] old = _order.remove(key);
+        if (old != null)
+        {
+            _size -= old.length;
+        }
+        for (Iterator<Map.Entry<String, byte[]>> it = _order.entrySet().iterator();
+                _size + content.length > _maxSize && it.hasNext();)
+        {
+            Map.Entry<String, byte[]> eldest = it.next();
+            it.remove();
+            _contents.remove(eldest.getKey());
+            _size -= eldest.getValue().length;
+        }
+        _order.put(key, content);
+        _contents.put(key, content);
+        _size += content.length;
+    }
+
+    /**
+     * @return true if the Accept-Encoding header lists the coding, or "*", without a zero quality
+     */
+    static boolean isAccepted(String acceptEncoding, String coding)
+    {
+        boolean wildcard = false;
+        for (String token : StringUtils.splitShortString(acceptEncoding, ','))
+        {
+            int semicolon = token.indexOf(';');
+            String name = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+            boolean refused = semicolon >= 0 && isZeroQuality(token.substring(semicolon + 1));
+            if (name.equalsIgnoreCase(coding))
+            {
+                return !refused;
+            }
+            if ("*".equals(name))
+            {
+                wildcard = !refused;
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean isZeroQuality(String parameters)
+    {
+        for (String parameter : StringUtils.splitShortString(parameters, ';'))
+        {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q="))
+            {
+                try
+                {
+                    return Double.parseDouble(parameter.substring(2)) == 0;
+                }
+                catch (NumberFormatException e)
+                {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+}
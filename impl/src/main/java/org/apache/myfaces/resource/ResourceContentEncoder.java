@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Content coding applied once to the resources kept by {@link EncodedResourceCache}, like gzip.
+ * Implementations are listed in <code>org.apache.myfaces.RESOURCE_CONTENT_ENCODERS</code> and
+ * must have a public constructor without arguments.
+ * 
+ * @since 3.0.0
+ */
+public interface ResourceContentEncoder
+{
+    /**
+     * @return the name of the coding in the Accept-Encoding and Content-Encoding headers
+     */
+    String getContentEncoding();
+
+    /**
+     * @return a stream that writes the encoded bytes of what it is given to out, finishing the
+     * encoding when it is closed
+     */
+    OutputStream encode(OutputStream out) throws IOException;
+}
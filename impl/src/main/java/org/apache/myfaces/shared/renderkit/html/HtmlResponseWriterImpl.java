@@ -36,7 +36,11 @@ import javax.faces.render.Renderer;
 
 import org.apache.myfaces.config.MyfacesConfig;
 import org.apache.myfaces.shared.renderkit.ContentTypeUtils;
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedResponseWriter;
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedText;
 import org.apache.myfaces.shared.renderkit.html.util.UnicodeEncoder;
+import org.apache.myfaces.shared.renderkit.html.util.Utf8ResponseOutputWriter;
+import org.apache.myfaces.shared.renderkit.html.util.WritableAttributeValue;
 import org.apache.myfaces.shared.util.CommentUtils;
 import org.apache.myfaces.shared.util.ComponentUtils;
 import org.apache.myfaces.shared.util.StreamCharBuffer;
@@ -44,7 +48,7 @@ import org.apache.myfaces.shared.renderkit.html.util.HTML;
 import org.apache.myfaces.shared.renderkit.html.util.HTMLEncoder;
 
 public class HtmlResponseWriterImpl
-        extends ResponseWriter
+        extends ResponseWriter implements PreEncodedResponseWriter
 {
     private static final Logger log = Logger.getLogger(HtmlResponseWriterImpl.class.getName());
 
@@ -310,6 +314,12 @@ public class HtmlResponseWriterImpl
         {
             _currentWriter.flush();
         }
+        if (_buffer != null)
+        {
+            // give the chunks of the buffer back to the pool of the thread
+            _buffer.release();
+            _buffer = null;
+        }
         _facesContext = null;
     }
 
@@ -351,16 +361,16 @@ public class HtmlResponseWriterImpl
                     _startedChangedElements.add(elementName);
                     _startedElementsCount.add(0);
                 }
-                _currentWriter.write((String) elementName);
+                writeName(elementName);
             }
             else
             {
-                _currentWriter.write(name);
+                writeName(name);
             }
         }
         else
         {
-            _currentWriter.write(name);
+            writeName(name);
         }
 
         if (!_startedElementsCount.isEmpty())
@@ -807,7 +817,7 @@ public class HtmlResponseWriterImpl
         }
 
         _currentWriter.write("</");
-        _currentWriter.write(name);
+        writeName(name);
         _currentWriter.write('>');
     }
 
@@ -836,19 +846,27 @@ public class HtmlResponseWriterImpl
             {
                 // name as value for XHTML compatibility
                 _currentWriter.write(' ');
-                _currentWriter.write(name);
+                writeName(name);
                 _currentWriter.write("=\"");
-                _currentWriter.write(name);
+                writeName(name);
                 _currentWriter.write('"');
             }
         }
+        else if (value instanceof WritableAttributeValue)
+        {
+            _currentWriter.write(' ');
+            writeName(name);
+            _currentWriter.write("=\"");
+            ((WritableAttributeValue) value).writeTo(_currentWriter);
+            _currentWriter.write('"');
+        }
         else
         {
             String strValue = (value == null) ? "" : value.toString();
             _currentWriter.write(' ');
-            _currentWriter.write(name);
+            writeName(name);
             _currentWriter.write("=\"");
-            HTMLEncoder.encode(_currentWriter, strValue, false, false, !_isUTF8);
+            writeEscaped(strValue);
             _currentWriter.write('"');
         }
     }
@@ -857,9 +875,9 @@ public class HtmlResponseWriterImpl
     {
         String strValue = (value==null)?"":value.toString();
         _currentWriter.write(' ');
-        _currentWriter.write(name);
+        writeName(name);
         _currentWriter.write("=\"");
-        HTMLEncoder.encode(_currentWriter, strValue, false, false, !_isUTF8);
+        writeEscaped(strValue);
         _currentWriter.write('"');
     }
 
@@ -889,11 +907,11 @@ public class HtmlResponseWriterImpl
     {
         String strValue = value.toString();
         _currentWriter.write(' ');
-        _currentWriter.write(name);
+        writeName(name);
         _currentWriter.write("=\"");
-        if (strValue.toLowerCase().startsWith("javascript:"))
+        if (strValue.regionMatches(true, 0, "javascript:", 0, 11))
         {
-            HTMLEncoder.encode(_currentWriter, strValue, false, false, !_isUTF8);
+            writeEscaped(strValue);
         }
         else
         {
@@ -942,7 +960,7 @@ public class HtmlResponseWriterImpl
         }
         else
         {
-            HTMLEncoder.encode(_currentWriter, strValue, false, false, !_isUTF8);
+            writeEscaped(strValue);
         }
     }
 
@@ -976,7 +994,7 @@ public class HtmlResponseWriterImpl
         else if (isTextarea())
         {
             // For textareas we must *not* map successive spaces to &nbsp or Newlines to <br/>
-            HTMLEncoder.encode(cbuf, off, len, false, false, !_isUTF8, _currentWriter);
+            writeEscaped(cbuf, off, len);
         }
         else
         {
@@ -985,6 +1003,89 @@ public class HtmlResponseWriterImpl
         }
     }
 
+    public void writePreEncoded(PreEncodedText text) throws IOException
+    {
+        closeStartTagIfNecessary();
+
+        if (!_isUTF8)
+        {
+            // the arrays are for UTF-8, other encodings escape non latin characters
+            if (text.isEscaped())
+            {
+                writeText(text.getText(), null);
+            }
+            else
+            {
+                write(text.getText());
+            }
+        }
+        else if (text.isEscaped() && isScriptOrStyle())
+        {
+            // writeText does not escape script or style content
+            _currentWriter.write(text.getText());
+        }
+        else
+        {
+            Utf8ResponseOutputWriter utf8Writer = Utf8ResponseOutputWriter.getUtf8Writer(_currentWriter);
+            if (utf8Writer != null)
+            {
+                utf8Writer.writeUtf8(text.getUtf8());
+            }
+            else
+            {
+                char[] chars = text.getChars();
+                _currentWriter.write(chars, 0, chars.length);
+            }
+        }
+    }
+
+    /**
+     * Writes an element or attribute name, as bytes encoded only once when the output goes to a
+     * {@link Utf8ResponseOutputWriter}.
+     */
+    private void writeName(String name) throws IOException
+    {
+        Utf8ResponseOutputWriter utf8Writer = Utf8ResponseOutputWriter.getUtf8Writer(_currentWriter);
+        if (utf8Writer != null)
+        {
+            utf8Writer.writeUtf8(Utf8ResponseOutputWriter.encodeName(name));
+        }
+        else
+        {
+            _currentWriter.write(name);
+        }
+    }
+
+    /**
+     * Escapes the text with {@link HTMLEncoder}, or in the same pass that encodes it to bytes when
+     * the output goes to a {@link Utf8ResponseOutputWriter}.
+     */
+    private void writeEscaped(String text) throws IOException
+    {
+        Utf8ResponseOutputWriter utf8Writer = _isUTF8 ? Utf8ResponseOutputWriter.getUtf8Writer(_currentWriter) : null;
+        if (utf8Writer != null)
+        {
+            utf8Writer.writeHtmlEscaped(text);
+        }
+        else
+        {
+            HTMLEncoder.encode(_currentWriter, text, false, false, !_isUTF8);
+        }
+    }
+
+    private void writeEscaped(char[] cbuf, int off, int len) throws IOException
+    {
+        Utf8ResponseOutputWriter utf8Writer = _isUTF8 ? Utf8ResponseOutputWriter.getUtf8Writer(_currentWriter) : null;
+        if (utf8Writer != null)
+        {
+            utf8Writer.writeHtmlEscaped(cbuf, off, len);
+        }
+        else
+        {
+            HTMLEncoder.encode(cbuf, off, len, false, false, !_isUTF8, _currentWriter);
+        }
+    }
+
     private boolean isScriptOrStyle()
     {
         //initializeStartedTagInfo();
@@ -1170,7 +1271,7 @@ public class HtmlResponseWriterImpl
     {
         if (_buffer == null)
         {
-            _buffer = new StreamCharBuffer(256, 100);
+            _buffer = new StreamCharBuffer(256, 100, true);
         }
         else if (reset)
         {
@@ -21,13 +21,70 @@ package org.apache.myfaces.shared.renderkit.html.util;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 
 /**
  * Converts Strings so that they can be used within HTML-Code.
+ * <p>
+ * The encoders look up every character in a table to find the next one that has to be
+ * escaped, and copy the runs of characters between them to the writer in one call. If
+ * nothing has to be escaped the given string is written or returned as it is.
+ * </p>
  */
 public abstract class HTMLEncoder
 {
+    /**
+     * Flag of the characters below 'A' that are always escaped (or dropped, for control characters).
+     */
+    private static final byte TEXT_ESCAPE = 1;
+    
+    /**
+     * Flag of ' ', which is escaped as &amp;#160; after another blank when encodeSubsequentBlanksToNbsp is set.
+     */
+    private static final byte TEXT_BLANK = 2;
+    
+    /**
+     * Flag of '\n', which is converted to &lt;br/&gt; when encodeNewline is set.
+     */
+    private static final byte TEXT_NEWLINE = 4;
+    
+    /**
+     * Characters at or above 'A' are only escaped when they are above 0x80 and encodeNonLatin is set.
+     */
+    private static final int TEXT_TABLE_SIZE = 0x41;
+    
+    private static final byte[] TEXT_FLAGS = new byte[TEXT_TABLE_SIZE];
+    
+    private static final String[] TEXT_ESCAPES = new String[TEXT_TABLE_SIZE];
+    
+    static
+    {
+        // http://www.w3.org/MarkUp/html3/specialchars.html
+        // From C0 extension U+0000-U+001F only U+0009, U+000A and
+        // U+000D are valid control characters, the others are ignored
+        for (int i = 0; i <= 0x1F; i++)
+        {
+            if (i != 0x09 && i != 0x0A && i != 0x0D)
+            {
+                TEXT_FLAGS[i] = TEXT_ESCAPE;
+                TEXT_ESCAPES[i] = "";
+            }
+        }
+        TEXT_FLAGS['"'] = TEXT_ESCAPE;
+        TEXT_ESCAPES['"'] = "&quot;";
+        TEXT_FLAGS['&'] = TEXT_ESCAPE;
+        TEXT_ESCAPES['&'] = "&amp;";
+        TEXT_FLAGS['<'] = TEXT_ESCAPE;
+        TEXT_ESCAPES['<'] = "&lt;";
+        TEXT_FLAGS['>'] = TEXT_ESCAPE;
+        TEXT_ESCAPES['>'] = "&gt;";
+        TEXT_FLAGS[' '] = TEXT_BLANK;
+        TEXT_ESCAPES[' '] = "&#160;";
+        TEXT_FLAGS['\n'] = TEXT_NEWLINE;
+        TEXT_ESCAPES['\n'] = "<br/>";
+    }
+
     /**
      * Variant of {@link #encode} where encodeNewline is false and encodeNbsp is true.
      */
@@ -69,102 +126,42 @@ public abstract class HTMLEncoder
             return "";
         }
 
-        StringBuilder sb = null;    //create later on demand
-        String app;
-        char c = ' ';
-        char prevC;
+        int mask = textMask(encodeNewline, encodeSubsequentBlanksToNbsp);
+        int nonLatinLimit = encodeNonLatin ? 0x80 : Character.MAX_VALUE;
         int length = string.length();
-        for (int i = 0; i < length; ++i)
+        int i = nextTextEscape(string, 0, length, mask, nonLatinLimit);
+        if (i == length)
         {
-            app = null;
-            prevC = c;
-            c = string.charAt(i);
-            
-            // All characters before letters
-            if ((int)c < 0x41)
-            {
-                switch (c)
-                {
-                    case '"': app = "&quot;"; break;    //"
-                    case '&': app = "&amp;"; break;     //&
-                    case '<': app = "&lt;"; break;      //<
-                    case '>': app = "&gt;"; break;      //>
-                    case ' ':
-                        if (encodeSubsequentBlanksToNbsp && prevC == ' ')
-                        {
-                            //Space at beginning or after another space
-                            app = "&#160;";
-                        }
-                        break;
-                    case '\n':
-                        if (encodeNewline)
-                        {
-                            app = "<br/>";
-                        }
-                        break;
-                    default:
-                        break;
-                }
-                // http://www.w3.org/MarkUp/html3/specialchars.html
-                // From C0 extension U+0000-U+001F only U+0009, U+000A and
-                // U+000D are valid control characters
-                if (c <= 0x1F && c != 0x09 && c != 0x0A && c != 0x0D)
-                {
-                    // Ignore escape character
-                    app = "";
-                }
-            }
-            else if (encodeNonLatin && (int)c > 0x80)
-            {
-                 switch(c)
-                 {
-                    //german umlauts
-                    case '\u00E4' : app = "&auml;";  break;
-                    case '\u00C4' : app = "&Auml;";  break;
-                    case '\u00F6' : app = "&ouml;";  break;
-                    case '\u00D6' : app = "&Ouml;";  break;
-                    case '\u00FC' : app = "&uuml;";  break;
-                    case '\u00DC' : app = "&Uuml;";  break;
-                    case '\u00DF' : app = "&szlig;"; break;
-
-                    //misc
-                    //case 0x80: app = "&euro;"; break;  sometimes euro symbol is ascii 128, should we suport it?
-                    case '\u20AC': app = "&euro;";  break;
-                    case '\u00AB': app = "&laquo;"; break;
-                    case '\u00BB': app = "&raquo;"; break;
-                    case '\u00A0': app = "&#160;"; break;
+            return string;
+        }
 
-                    default :
-                        //encode all non basic latin characters
-                        app = "&#" + ((int)c) + ';';
-                    break;
-                }
-            }
-            if (app != null)
+        StringBuilder sb = new StringBuilder(length + 16);
+        int start = 0;
+        for (; i < length; i = nextTextEscape(string, i, length, mask, nonLatinLimit))
+        {
+            char c = string.charAt(i);
+            sb.append(string, start, i);
+            if (c < TEXT_TABLE_SIZE)
             {
-                if (sb == null)
-                {
-                    sb = new StringBuilder(string.substring(0, i));
-                }
-                sb.append(app);
+                sb.append(TEXT_ESCAPES[c]);
             }
             else
             {
-                if (sb != null)
+                String entity = nonLatinEntity(c);
+                if (entity != null)
+                {
+                    sb.append(entity);
+                }
+                else
                 {
-                    sb.append(c);
+                    //encode all non basic latin characters
+                    sb.append("&#").append((int) c).append(';');
                 }
             }
+            start = ++i;
         }
-
-        if (sb == null)
-        {
-            return string;
-        }
-        else
-        {
-            return sb.toString();
-        }
+        sb.append(string, start, length);
+        return sb.toString();
     }
     
     /**
@@ -202,87 +199,19 @@ public abstract class HTMLEncoder
             return;
         }
 
-        int start = 0;
-        String app;
-        char c = ' ';
-        char prevC;
+        int mask = textMask(encodeNewline, encodeSubsequentBlanksToNbsp);
+        int nonLatinLimit = encodeNonLatin ? 0x80 : Character.MAX_VALUE;
         int length = string.length();
-        for (int i = 0; i < length; ++i)
+        int start = 0;
+        for (int i = nextTextEscape(string, 0, length, mask, nonLatinLimit); i < length;
+             i = nextTextEscape(string, i, length, mask, nonLatinLimit))
         {
-            app = null;
-            prevC = c;
-            c = string.charAt(i);
-            
-            // All characters before letters
-            if ((int)c < 0x41)
-            {
-                switch (c)
-                {
-                    case '"': app = "&quot;"; break;    //"
-                    case '&': app = "&amp;"; break;     //&
-                    case '<': app = "&lt;"; break;      //<
-                    case '>': app = "&gt;"; break;      //>
-                    case ' ':
-                        if (encodeSubsequentBlanksToNbsp &&
-                                prevC == ' ')
-                        {
-                            //Space at beginning or after another space
-                            app = "&#160;";
-                        }
-                        break;
-                    case '\n':
-                        if (encodeNewline)
-                        {
-                            app = "<br/>";
-                        }
-                        break;
-                    default:
-                        break;
-                }
-                // http://www.w3.org/MarkUp/html3/specialchars.html
-                // From C0 extension U+0000-U+001F only U+0009, U+000A and
-                // U+000D are valid control characters
-                if (c <= 0x1F && c != 0x09 && c != 0x0A && c != 0x0D)
-                {
-                    // Ignore escape character
-                    app = "";
-                }
-            }
-            else if (encodeNonLatin && (int)c > 0x80)
-            {
-                 switch(c)
-                 {
-                    //german umlauts
-                    case '\u00E4' : app = "&auml;";  break;
-                    case '\u00C4' : app = "&Auml;";  break;
-                    case '\u00F6' : app = "&ouml;";  break;
-                    case '\u00D6' : app = "&Ouml;";  break;
-                    case '\u00FC' : app = "&uuml;";  break;
-                    case '\u00DC' : app = "&Uuml;";  break;
-                    case '\u00DF' : app = "&szlig;"; break;
-
-                    //misc
-                    //case 0x80: app = "&euro;"; break;  sometimes euro symbol is ascii 128, should we suport it?
-                    case '\u20AC': app = "&euro;";  break;
-                    case '\u00AB': app = "&laquo;"; break;
-                    case '\u00BB': app = "&raquo;"; break;
-                    case '\u00A0': app = "&#160;"; break;
-
-                    default :
-                        //encode all non basic latin characters
-                        app = "&#" + ((int)c) + ';';
-                    break;
-                }
-            }
-            if (app != null)
+            if (start < i)
             {
-                if (start < i)
-                {
-                    writer.write(string, start, i-start);
-                }
-                start = i+1;
-                writer.write(app);
+                writer.write(string, start, i-start);
             }
+            writeTextEscape(writer, string.charAt(i));
+            start = ++i;
         }
 
         if (start == 0)
@@ -341,742 +270,438 @@ public abstract class HTMLEncoder
         }
         offset = Math.max(0, offset);
         int realLength = Math.min(length, string.length - offset);
+        int end = offset + realLength;
 
-        //StringBuilder sb = null;    //create later on demand
-        String app;
-        char c = ' ';
-        char prevC;
+        int mask = textMask(encodeNewline, encodeSubsequentBlanksToNbsp);
+        int nonLatinLimit = encodeNonLatin ? 0x80 : Character.MAX_VALUE;
         int start = offset;
-        
-        for (int i = offset; i < offset + realLength; ++i)
+        for (int i = nextTextEscape(string, offset, offset, end, mask, nonLatinLimit); i < end;
+             i = nextTextEscape(string, offset, i, end, mask, nonLatinLimit))
         {
-            app = null;
-            prevC = c;
-            c = string[i];
-
-            // All characters before letters
-            if ((int)c < 0x41)
+            if (start < i)
             {
-                switch (c)
-                {
-                    case '"': app = "&quot;"; break;    //"
-                    case '&': app = "&amp;"; break;     //&
-                    case '<': app = "&lt;"; break;      //<
-                    case '>': app = "&gt;"; break;      //>
-                    case ' ':
-                        if (encodeSubsequentBlanksToNbsp &&
-                                prevC == ' ')
-                        {
-                            //Space at beginning or after another space
-                            app = "&#160;";
-                        }
-                        break;
-                    case '\n':
-                        if (encodeNewline)
-                        {
-                            app = "<br/>";
-                        }
-                        break;
-                    default:
-                        break;
-                }
-                // http://www.w3.org/MarkUp/html3/specialchars.html
-                // From C0 extension U+0000-U+001F only U+0009, U+000A and
-                // U+000D are valid control characters
-                if (c <= 0x1F && c != 0x09 && c != 0x0A && c != 0x0D)
-                {
-                    // Ignore escape character
-                    app = "";
-                }
-            }
-            else if (encodeNonLatin && (int)c > 0x80)
-            {
-                 switch(c)
-                 {
-                    //german umlauts
-                    case '\u00E4' : app = "&auml;";  break;
-                    case '\u00C4' : app = "&Auml;";  break;
-                    case '\u00F6' : app = "&ouml;";  break;
-                    case '\u00D6' : app = "&Ouml;";  break;
-                    case '\u00FC' : app = "&uuml;";  break;
-                    case '\u00DC' : app = "&Uuml;";  break;
-                    case '\u00DF' : app = "&szlig;"; break;
-
-                    //misc
-                    //case 0x80: app = "&euro;"; break;  sometimes euro symbol is ascii 128, should we suport it?
-                    case '\u20AC': app = "&euro;";  break;
-                    case '\u00AB': app = "&laquo;"; break;
-                    case '\u00BB': app = "&raquo;"; break;
-                    case '\u00A0': app = "&#160;"; break;
-
-                    default :
-                        //encode all non basic latin characters
-                        app = "&#" + ((int)c) + ';';
-                    break;
-                }
-            }
-            if (app != null)
-            {
-                if (start < i)
-                {
-                    writer.write(string, start, i-start);
-                }
-                start = i+1;
-                writer.write(app);
+                writer.write(string, start, i-start);
             }
+            writeTextEscape(writer, string[i]);
+            start = ++i;
         }
 
         if (start == offset)
         {
             writer.write(string, offset, realLength);
         }
-        else if (start < offset+realLength)
+        else if (start < end)
         {
-            writer.write(string,start,offset+realLength-start);
+            writer.write(string,start,end-start);
         }
     }
     
-    private static final String HEX_CHARSET = "0123456789ABCDEF";
-    
-    private static final String UTF8 = "UTF-8";
-    
+    private static int textMask(boolean encodeNewline, boolean encodeSubsequentBlanksToNbsp)
+    {
+        return TEXT_ESCAPE | (encodeNewline ? TEXT_NEWLINE : 0) | (encodeSubsequentBlanksToNbsp ? TEXT_BLANK : 0);
+    }
+
     /**
-     * Encode an URI, escaping or percent-encoding all required characters and
-     * following the rules mentioned on RFC 3986.  
-     * 
-     * @param string
-     * @param characterEncoding
-     * @return
-     * @throws IOException
+     * Returns the index of the next character from index that has to be escaped, or end if there is none.
+     * A blank is only escaped if it is the first character of the string or follows another blank.
      */
-    public static String encodeURIAttribute(final String string, final String characterEncoding)
-        throws IOException
+    private static int nextTextEscape(String string, int index, int end, int mask, int nonLatinLimit)
     {
-        StringBuilder sb = null;    //create later on demand
-        String app;
-        char c;
-        boolean endLoop = false;
-        int length = string.length();
-        for (int i = 0; i < length; ++i)
+        for (; index < end; index++)
         {
-            app = null;
-            c = string.charAt(i);
-            
-            // This are the guidelines to be taken into account by this algorithm to encode:
-            
-            // RFC 2396 Section 2.4.3 Excluded US-ASCII Characters
-            //
-            // control     = <US-ASCII coded characters 00-1F and 7F hexadecimal>
-            // space       = <US-ASCII coded character 20 hexadecimal>
-            // delims      = "<" | ">" | "#" | "%" | <">
-            //               %3C   %3E   %23   %25   %22
-            // unwise      = "{" | "}" | "|" | "\" | "^" | "[" | "]" | "`"
-            //               %7D   %7B   %7C   %5C   %5E   %5B   %5D   %60
-            //
-            // ".... Data corresponding to excluded characters must be escaped in order to
-            // be properly represented within a URI....."
-            
-            // RFC 3986 Section 3.  Syntax Components
-            //
-            // "... The generic URI syntax consists of a hierarchical sequence of
-            // components referred to as the scheme, authority, path, query, and
-            // fragment.
-            //
-            //   URI         = scheme ":" hier-part [ "?" query ] [ "#" fragment ]
-            //
-            //   hier-part   = "//" authority path-abempty
-            //               / path-absolute
-            //               / path-rootless
-            //               / path-empty
-            // ...."
-            
-            // RFC 3986 Section 2.2:
-            // Reserved characters (should not be percent-encoded)
-            // reserved    = gen-delims / sub-delims
-            // gen-delims  = ":" / "/" / "?" / "#" / "[" / "]" / "@"
-            //               %3A   %2F   %3F   %23   %5B   %5D   %40
-            // sub-delims  = "!" / "$" / "&" / "'" / "(" / ")" / "*" / "+" / "," / ";" / "="
-            //               %21   %24   %26   %27   %28   %29   %2A   %2B   %2C   %3B   %3D
-            
-            // Note than chars "[" and "]" are mentioned as they should be escaped on RFC 2396,
-            // but on the part D. Changes from RFC 2396 says about this chars (used on IPv6) 
-            // "...those rules were redefined to directly specify the characters allowed...."
-            // There is also other characters moved from excluded list to reserved:
-            // "[" / "]" / "#"  
-            
-            // RFC 3986 Section 2.3:
-            // "... for consistency, percent-encoded octets in the ranges of ALPHA
-            // (%41-%5A and %61-%7A), DIGIT (%30-%39), hyphen (%2D), period (%2E),
-            // underscore (%5F), or tilde (%7E) should not be created by URI
-            // producers...."
-            
-            // RFC 3986 Section  3.2.2.  Host
-
-            // host = IP-literal / IPv4address / reg-name
-
-            // The reg-name syntax allows percent-encoded octets in order to
-            // represent non-ASCII registered names in a uniform way that is
-            // independent of the underlying name resolution technology.  Non-ASCII
-            // characters must first be encoded according to UTF-8 [STD63], and then
-            // each octet of the corresponding UTF-8 sequence must be percent-
-            // encoded to be represented as URI characters.  URI producing
-            // applications must not use percent-encoding in host unless it is used
-            // to represent a UTF-8 character sequence.
-            
-            // RFC 3986 Section 3.4 Query 
-            //         query       = *( pchar / "/" / "?" )
-            //
-            // "...  However, as query components are often used to carry identifying information 
-            // in the form of "key=value" pairs and one frequently used value is a reference to
-            // another URI, it is sometimes better for usability to avoid percent-encoding those characters....."
-            //
-            // RFC 3986 Section 2.5 Identifying Data (Apply to query section)
-            //
-            // When a new URI scheme defines a component that represents textual
-            // data consisting of characters from the Universal Character Set [UCS],
-            // the data should first be encoded as octets according to the UTF-8
-            // character encoding [STD63]; then only those octets that do not
-            // correspond to characters in the unreserved set should be percent-
-            // encoded.  For example, the character A would be represented as "A",
-            // the character LATIN CAPITAL LETTER A WITH GRAVE would be represented
-            // as "%C3%80", and the character KATAKANA LETTER A would be represented
-            // as "%E3%82%A2".
-            //
-            // RFC 3986 Section 3.5 Fragment
-            //         fragment    = *( pchar / "/" / "?" )
-            //
-            // Note that follows the same as query
-            
-            // Based on the extracts the strategy to apply on this method is:
-            // 
-            // On scheme ":" hier-part
-            //
-            // Escape or percent encode chars inside :
-            // 
-            // - From %00 to %20, 
-            // - <"> %22, "%" %25 (If there is encode of "%", there is a risk of 
-            //                     duplicate encoding, encode it when we are sure 
-            //                     that there are not encoded twice)
-            // - "<" %3C, ">" %3E
-            // - "\" %5C, "^" %5E, "`" %60 
-            // - "{" %7B, "|" %7C, "}" %7D
-            // - From %7F ad infinitum (characters from %100 to infinitum should not be used in this
-            //   part of an URI, but it is preferred to encode it that omit it).
-            //
-            // The remaining characters must not be encoded
-            //
-            // Characters after ? or # should be percent encoding but only the necessary ones:
-            //
-            // - From %00 to %20 (' ' %20 could encode as +, but %20 also works, so we keep %20)
-            // - <"> %22, "%" %25 (If there is encode of "%", there is a risk of 
-            //                     duplicate encoding, encode it when we are sure 
-            //                     that there are not encoded twice)
-            // - "<" %3C, ">" %3E,
-            // - "\" %5C, "^" %5E, "`" %60 
-            // - "{" %7B, "|" %7C, "}" %7D
-            // - From %7F ad infinitum (each character as many bytes as necessary but take into account
-            //   that a single char should contain 2,3 or more bytes!. This data should be encoded 
-            //   translating from the document character encoding to percent encoding, because this values
-            //   could be retrieved from httpRequest.getParameter() and it uses the current character encoding
-            //   for decode values)
-            //
-            // "&" should be encoded as "&amp;" because this link is inside an html page, and 
-            // put only & is invalid in this context.
-
-            if (   (c <= (char)0x20) || (c >= (char)0x7F) || 
-                    c == '"' || c == '<' ||
-                    c == '>' || c == '\\' || c == '^' || c == '`' ||
-                    c == '{' || c == '|' || c == '}')
-            {
-                // The percent encoding on this part should be done using UTF-8 charset
-                // as RFC 3986 Section 3.2.2 says.
-                // Also there is a reference on 
-                // http://www.w3.org/TR/html40/appendix/notes.html#non-ascii-chars
-                // that recommend use of UTF-8 instead the document character encoding.
-                // Jetty set by default UTF-8 (see http://jira.codehaus.org/browse/JETTY-113)
-                app = percentEncode(c, "UTF-8");
-            }
-            else if (c == '%')
+            char c = string.charAt(index);
+            if (c < TEXT_TABLE_SIZE ? (TEXT_FLAGS[c] & mask) != 0 : c > nonLatinLimit)
             {
-                if (i + 2 < length)
+                if (c != ' ' || index == 0 || string.charAt(index - 1) == ' ')
                 {
-                    char c1 = string.charAt(i+1);
-                    char c2 = string.charAt(i+2);
-                    if ((( c1 >= '0' && c1 <='9') || (c1 >='A' && c1 <='Z') || (c1 >='a' && c1 <='z')) &&
-                        (( c2 >= '0' && c2 <='9') || (c2 >='A' && c2 <='Z') || (c2 >='a' && c2 <='z')))
-                    {
-                        // do not percent encode, because it could be already encoded
-                        // and we don't want encode it twice
-                    }
-                    else
-                    {
-                        app = percentEncode(c, UTF8);
-                    }
-                }
-                else
-                {
-                    app = percentEncode(c, UTF8);
+                    return index;
                 }
             }
-            else if (c == '?' || c == '#')
+        }
+        return end;
+    }
+
+    private static int nextTextEscape(char[] string, int offset, int index, int end, int mask, int nonLatinLimit)
+    {
+        for (; index < end; index++)
+        {
+            char c = string[index];
+            if (c < TEXT_TABLE_SIZE ? (TEXT_FLAGS[c] & mask) != 0 : c > nonLatinLimit)
             {
-                if (i+1 < length)
+                if (c != ' ' || index == offset || string[index - 1] == ' ')
                 {
-                    // The remaining part of the URI are data that should be encoded
-                    // using the document character encoding.
-                    app = c + encodeURIQuery(string.substring(i+1), characterEncoding);
-                    endLoop = true;
+                    return index;
                 }
             }
-            else
-            {
-                //No encoding, just do nothing, char will be added later.
-            }
-                        
-            if (app != null)
+        }
+        return end;
+    }
+
+    private static void writeTextEscape(Writer writer, char c) throws IOException
+    {
+        if (c < TEXT_TABLE_SIZE)
+        {
+            writer.write(TEXT_ESCAPES[c]);
+        }
+        else
+        {
+            String entity = nonLatinEntity(c);
+            if (entity != null)
             {
-                if (sb == null)
-                {
-                    sb = new StringBuilder(string.substring(0, i));
-                }
-                sb.append(app);
+                writer.write(entity);
             }
             else
             {
-                if (sb != null)
-                {
-                    sb.append(c);
-                }
-            }
-            if (endLoop)
-            {
-                break;
+                //encode all non basic latin characters
+                UnicodeEncoder.writeCharacterReference(writer, c);
             }
         }
-        if (sb == null)
-        {
-            return string;
-        }
-        else
-        {
-            return sb.toString();
+    }
+
+    private static String nonLatinEntity(char c)
+    {
+        switch(c)
+        {
+            //german umlauts
+            case '\u00E4' : return "&auml;";
+            case '\u00C4' : return "&Auml;";
+            case '\u00F6' : return "&ouml;";
+            case '\u00D6' : return "&Ouml;";
+            case '\u00FC' : return "&uuml;";
+            case '\u00DC' : return "&Uuml;";
+            case '\u00DF' : return "&szlig;";
+
+            //misc
+            //case 0x80: return "&euro;";  sometimes euro symbol is ascii 128, should we suport it?
+            case '\u20AC': return "&euro;";
+            case '\u00AB': return "&laquo;";
+            case '\u00BB': return "&raquo;";
+            case '\u00A0': return "&#160;";
+
+            default :
+                return null;
         }
     }
     
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    
+    private static final String UTF8 = "UTF-8";
+    
     /**
-     * Encode a unicode char value in percentEncode, decoding its bytes using a specified 
-     * characterEncoding.
-     * 
-     * @param c
-     * @param characterEncoding
-     * @return
+     * Flag of the US-ASCII characters that are percent encoded in every part of an URI.
+     */
+    private static final byte URI_PERCENT_ENCODE = 1;
+    
+    /**
+     * Flag of '%', which is percent encoded unless it starts an already percent encoded octet.
+     */
+    private static final byte URI_PERCENT_SIGN = 2;
+    
+    /**
+     * Flag of '?' and '#', which start the query or fragment part of an URI.
+     */
+    private static final byte URI_QUERY_START = 4;
+    
+    /**
+     * Flag of '&amp;', which is escaped in the query or fragment part of an URI.
      */
-    private static String percentEncode(char c, String characterEncoding)
+    private static final byte URI_AMPERSAND = 8;
+    
+    private static final int URI_PATH_MASK = URI_PERCENT_ENCODE | URI_PERCENT_SIGN | URI_QUERY_START;
+    
+    private static final int URI_QUERY_MASK = URI_PERCENT_ENCODE | URI_PERCENT_SIGN | URI_AMPERSAND;
+    
+    /**
+     * Flags of the US-ASCII characters, every character from 0x80 on is percent encoded.
+     */
+    private static final byte[] URI_FLAGS = new byte[0x80];
+    
+    static
     {
-        String app = null;
-        if (c > (char)((short)0x007F))
+        for (int i = 0; i <= 0x20; i++)
         {
-            //percent encode in the proper encoding to be consistent
-            app = percentEncodeNonUsAsciiCharacter(c, characterEncoding);
+            URI_FLAGS[i] = URI_PERCENT_ENCODE;
         }
-        else
+        URI_FLAGS[0x7F] = URI_PERCENT_ENCODE;
+        for (char c : "\"<>\\^`{|}".toCharArray())
         {
-            //percent encode US-ASCII char (0x00-0x7F range)
-            app = "%" + HEX_CHARSET.charAt( ((c >> 0x4) % 0x10)) +HEX_CHARSET.charAt(c % 0x10);
+            URI_FLAGS[c] = URI_PERCENT_ENCODE;
         }
-        return app;
+        URI_FLAGS['%'] = URI_PERCENT_SIGN;
+        URI_FLAGS['?'] = URI_QUERY_START;
+        URI_FLAGS['#'] = URI_QUERY_START;
+        URI_FLAGS['&'] = URI_AMPERSAND;
     }
     
-    private static String percentEncodeNonUsAsciiCharacter(char c, String characterEncoding)
+    /**
+     * Encode an URI, escaping or percent-encoding all required characters and
+     * following the rules mentioned on RFC 3986.  
+     * 
+     * @param string
+     * @param characterEncoding
+     * @return
+     * @throws IOException
+     */
+    public static String encodeURIAttribute(final String string, final String characterEncoding)
+        throws IOException
     {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(10);
-        StringBuilder builder = new StringBuilder();
-        try
-        {
-            OutputStreamWriter writer = new OutputStreamWriter(baos,characterEncoding);
-            writer.write(c);
-            writer.flush();
-        }
-        catch(IOException e)
-        {
-            baos.reset();
-            return null;
-        }
-        
-        byte [] byteArray =  baos.toByteArray();
-        for (int i=0; i < byteArray.length; i++)
+        if (!isURIEncodingRequired(string))
         {
-            builder.append('%');
-            builder.append(HEX_CHARSET.charAt( (( ((short) byteArray[i] & 0xFF ) >> 0x4) % 0x10)) );
-            builder.append(HEX_CHARSET.charAt( ((short) byteArray[i] & 0xFF ) % 0x10));
+            return string;
         }
-        
-        return builder.toString();
+        StringWriter writer = new StringWriter(string.length() + 16);
+        encodeURIAttribute(writer, string, characterEncoding);
+        return writer.toString();
     }
 
     /**
-     * Encode the query part using the document charset encoding provided.
-     * 
+     * Encode an URI, escaping or percent-encoding all required characters and
+     * following the rules mentioned on RFC 3986.  
      * 
+     * @param writer
      * @param string
      * @param characterEncoding
-     * @return
+     * @throws IOException
      */
-    private static String encodeURIQuery(final String string, final String characterEncoding)
+    public static void encodeURIAttribute(Writer writer, final String string, final String characterEncoding)
+        throws IOException
     {
-        StringBuilder sb = null;    //create later on demand
-        String app;
-        char c;
-        boolean endLoop = false;
+        // This are the guidelines to be taken into account by this algorithm to encode:
+        
+        // RFC 2396 Section 2.4.3 Excluded US-ASCII Characters
+        //
+        // control     = <US-ASCII coded characters 00-1F and 7F hexadecimal>
+        // space       = <US-ASCII coded character 20 hexadecimal>
+        // delims      = "<" | ">" | "#" | "%" | <">
+        //               %3C   %3E   %23   %25   %22
+        // unwise      = "{" | "}" | "|" | "\" | "^" | "[" | "]" | "`"
+        //               %7D   %7B   %7C   %5C   %5E   %5B   %5D   %60
+        //
+        // ".... Data corresponding to excluded characters must be escaped in order to
+        // be properly represented within a URI....."
+        
+        // RFC 3986 Section 3.  Syntax Components
+        //
+        // "... The generic URI syntax consists of a hierarchical sequence of
+        // components referred to as the scheme, authority, path, query, and
+        // fragment.
+        //
+        //   URI         = scheme ":" hier-part [ "?" query ] [ "#" fragment ]
+        //
+        //   hier-part   = "//" authority path-abempty
+        //               / path-absolute
+        //               / path-rootless
+        //               / path-empty
+        // ...."
+        
+        // RFC 3986 Section 2.2:
+        // Reserved characters (should not be percent-encoded)
+        // reserved    = gen-delims / sub-delims
+        // gen-delims  = ":" / "/" / "?" / "#" / "[" / "]" / "@"
+        //               %3A   %2F   %3F   %23   %5B   %5D   %40
+        // sub-delims  = "!" / "$" / "&" / "'" / "(" / ")" / "*" / "+" / "," / ";" / "="
+        //               %21   %24   %26   %27   %28   %29   %2A   %2B   %2C   %3B   %3D
+        
+        // Note than chars "[" and "]" are mentioned as they should be escaped on RFC 2396,
+        // but on the part D. Changes from RFC 2396 says about this chars (used on IPv6) 
+        // "...those rules were redefined to directly specify the characters allowed...."
+        // There is also other characters moved from excluded list to reserved:
+        // "[" / "]" / "#"  
+        
+        // RFC 3986 Section 2.3:
+        // "... for consistency, percent-encoded octets in the ranges of ALPHA
+        // (%41-%5A and %61-%7A), DIGIT (%30-%39), hyphen (%2D), period (%2E),
+        // underscore (%5F), or tilde (%7E) should not be created by URI
+        // producers...."
+        
+        // RFC 3986 Section  3.2.2.  Host
+
+        // host = IP-literal / IPv4address / reg-name
+
+        // The reg-name syntax allows percent-encoded octets in order to
+        // represent non-ASCII registered names in a uniform way that is
+        // independent of the underlying name resolution technology.  Non-ASCII
+        // characters must first be encoded according to UTF-8 [STD63], and then
+        // each octet of the corresponding UTF-8 sequence must be percent-
+        // encoded to be represented as URI characters.  URI producing
+        // applications must not use percent-encoding in host unless it is used
+        // to represent a UTF-8 character sequence.
+        
+        // RFC 3986 Section 3.4 Query 
+        //         query       = *( pchar / "/" / "?" )
+        //
+        // "...  However, as query components are often used to carry identifying information 
+        // in the form of "key=value" pairs and one frequently used value is a reference to
+        // another URI, it is sometimes better for usability to avoid percent-encoding those characters....."
+        //
+        // RFC 3986 Section 2.5 Identifying Data (Apply to query section)
+        //
+        // When a new URI scheme defines a component that represents textual
+        // data consisting of characters from the Universal Character Set [UCS],
+        // the data should first be encoded as octets according to the UTF-8
+        // character encoding [STD63]; then only those octets that do not
+        // correspond to characters in the unreserved set should be percent-
+        // encoded.  For example, the character A would be represented as "A",
+        // the character LATIN CAPITAL LETTER A WITH GRAVE would be represented
+        // as "%C3%80", and the character KATAKANA LETTER A would be represented
+        // as "%E3%82%A2".
+        //
+        // RFC 3986 Section 3.5 Fragment
+        //         fragment    = *( pchar / "/" / "?" )
+        //
+        // Note that follows the same as query
+        
+        // Based on the extracts the strategy to apply on this method is:
+        // 
+        // On scheme ":" hier-part
+        //
+        // Escape or percent encode chars inside :
+        // 
+        // - From %00 to %20, 
+        // - <"> %22, "%" %25 (If there is encode of "%", there is a risk of 
+        //                     duplicate encoding, encode it when we are sure 
+        //                     that there are not encoded twice)
+        // - "<" %3C, ">" %3E
+        // - "\" %5C, "^" %5E, "`" %60 
+        // - "{" %7B, "|" %7C, "}" %7D
+        // - From %7F ad infinitum (characters from %100 to infinitum should not be used in this
+        //   part of an URI, but it is preferred to encode it that omit it).
+        //
+        // The remaining characters must not be encoded
+        //
+        // Characters after ? or # should be percent encoding but only the necessary ones:
+        //
+        // - From %00 to %20 (' ' %20 could encode as +, but %20 also works, so we keep %20)
+        // - <"> %22, "%" %25 (If there is encode of "%", there is a risk of 
+        //                     duplicate encoding, encode it when we are sure 
+        //                     that there are not encoded twice)
+        // - "<" %3C, ">" %3E,
+        // - "\" %5C, "^" %5E, "`" %60 
+        // - "{" %7B, "|" %7C, "}" %7D
+        // - From %7F ad infinitum (each character as many bytes as necessary but take into account
+        //   that a single char should contain 2,3 or more bytes!. This data should be encoded 
+        //   translating from the document character encoding to percent encoding, because this values
+        //   could be retrieved from httpRequest.getParameter() and it uses the current character encoding
+        //   for decode values)
+        //
+        // "&" should be encoded as "&amp;" because this link is inside an html page, and 
+        // put only & is invalid in this context.
+        
         int length = string.length();
+        int start = 0;
+        int mask = URI_PATH_MASK;
+        // The percent encoding on the scheme and hier-part should be done using UTF-8 charset
+        // as RFC 3986 Section 3.2.2 says.
+        // Also there is a reference on 
+        // http://www.w3.org/TR/html40/appendix/notes.html#non-ascii-chars
+        // that recommend use of UTF-8 instead the document character encoding.
+        // Jetty set by default UTF-8 (see http://jira.codehaus.org/browse/JETTY-113)
+        String encoding = UTF8;
         for (int i = 0; i < length; ++i)
         {
-            app = null;
-            c = string.charAt(i);
-            
-            // - From %00 to %20 (' ' %20 could encode as +, but %20 also works, so we keep %20)
-            // - <"> %22 (If there is encode of "%", there is a risk of duplicate encoding, so 
-            //            we make easier and omit this one)
-            // - "<" %3C, ">" %3E,
-            // - "\" %5C, "^" %5E, "`" %60 
-            // - "{" %7B, "|" %7C, "}" %7D
-            // - From %7F ad infinitum (each character as many bytes as necessary but take into account
-            //   that a single char should contain 2,3 or more bytes!. This data should be encoded 
-            //   translating from the document character encoding to percent encoding)
-            //
-            // "&" should be encoded as "&amp;" because this link is inside an html page, and 
-            // put & is invalid in this context   
-            
-            if (   (c <= (char)0x20) || (c >= (char)0x7F) || 
-                    c == '"' || c == '<' ||
-                    c == '>' || c == '\\' || c == '^' || c == '`' ||
-                    c == '{' || c == '|' || c == '}')
+            char c = string.charAt(i);
+            if (c < 0x80 && (URI_FLAGS[c] & mask) == 0)
             {
-                // The percent encoding on this part should be done using UTF-8 charset
-                // as RFC 3986 Section 3.2.2 says
-                app = percentEncode(c, characterEncoding);
+                //No encoding, the char is written with the rest of the run.
+                continue;
             }
-            else if (c == '%')
+            
+            if (c >= 0x80 || URI_FLAGS[c] == URI_PERCENT_ENCODE
+                    || (c == '%' && !isPercentEncodedOctet(string, i, length)))
             {
-                if (i + 2 < length)
-                {
-                    char c1 = string.charAt(i+1);
-                    char c2 = string.charAt(i+2);
-                    if ((( c1 >= '0' && c1 <='9') || (c1 >='A' && c1 <='Z') || (c1 >='a' && c1 <='z')) &&
-                        (( c2 >= '0' && c2 <='9') || (c2 >='A' && c2 <='Z') || (c2 >='a' && c2 <='z')))
-                    {
-                        // do not percent encode, because it could be already encoded
-                    }
-                    else
-                    {
-                        app = percentEncode(c, characterEncoding);
-                    }
-                }
-                else
+                if (start < i)
                 {
-                    app = percentEncode(c, characterEncoding);
+                    writer.write(string, start, i-start);
                 }
+                start = i+1;
+                percentEncode(writer, c, encoding);
             }
             else if (c == '&')
             {
-                if (i+4 < length )
+                if (!string.startsWith("&amp;", i))
                 {
-                    if ('a' == string.charAt(i+1) &&
-                        'm' == string.charAt(i+2) &&
-                        'p' == string.charAt(i+3) &&
-                        ';' == string.charAt(i+4))
-                    {
-                        //Skip
-                    }
-                    else
+                    if (start < i)
                     {
-                        app = "&amp;";
+                        writer.write(string, start, i-start);
                     }
-                }
-                else
-                {
-                    app = "&amp;";
-                }
-            }
-            else
-            {
-                //No encoding, just do nothing, char will be added later.
-            }
-                        
-            if (app != null)
-            {
-                if (sb == null)
-                {
-                    sb = new StringBuilder(string.substring(0, i));
-                }
-                sb.append(app);
-            }
-            else
-            {
-                if (sb != null)
-                {
-                    sb.append(c);
+                    start = i+1;
+                    writer.write("&amp;");
                 }
             }
-            if (endLoop)
+            else if (c != '%' && i+1 < length)
             {
-                break;
+                // '?' or '#': the remaining part of the URI are data that should be encoded
+                // using the document character encoding.
+                mask = URI_QUERY_MASK;
+                encoding = characterEncoding;
             }
         }
-        if (sb == null)
+
+        if (start == 0)
         {
-            return string;
+            writer.write(string);
         }
-        else
+        else if (start < length)
         {
-            return sb.toString();
+            writer.write(string,start,length-start);
         }
     }
-
+    
     /**
-     * Encode an URI, escaping or percent-encoding all required characters and
-     * following the rules mentioned on RFC 3986.  
-     * 
-     * @param writer
-     * @param string
-     * @param characterEncoding
-     * @throws IOException
+     * Checks whether {@link #encodeURIAttribute(Writer, String, String)} would change the given
+     * URI, following the same rules but without writing anything.
      */
-    public static void encodeURIAttribute(Writer writer, final String string, final String characterEncoding)
-        throws IOException
+    private static boolean isURIEncodingRequired(final String string)
     {
-        //StringBuilder sb = null;    //create later on demand
-        int start = 0;
-        String app;
-        char c;
-        boolean endLoop = false;
         int length = string.length();
+        int mask = URI_PATH_MASK;
         for (int i = 0; i < length; ++i)
         {
-            app = null;
-            c = string.charAt(i);
-            
-            // This are the guidelines to be taken into account by this algorithm to encode:
-            
-            // RFC 2396 Section 2.4.3 Excluded US-ASCII Characters
-            //
-            // control     = <US-ASCII coded characters 00-1F and 7F hexadecimal>
-            // space       = <US-ASCII coded character 20 hexadecimal>
-            // delims      = "<" | ">" | "#" | "%" | <">
-            //               %3C   %3E   %23   %25   %22
-            // unwise      = "{" | "}" | "|" | "\" | "^" | "[" | "]" | "`"
-            //               %7D   %7B   %7C   %5C   %5E   %5B   %5D   %60
-            //
-            // ".... Data corresponding to excluded characters must be escaped in order to
-            // be properly represented within a URI....."
-            
-            // RFC 3986 Section 3.  Syntax Components
-            //
-            // "... The generic URI syntax consists of a hierarchical sequence of
-            // components referred to as the scheme, authority, path, query, and
-            // fragment.
-            //
-            //   URI         = scheme ":" hier-part [ "?" query ] [ "#" fragment ]
-            //
-            //   hier-part   = "//" authority path-abempty
-            //               / path-absolute
-            //               / path-rootless
-            //               / path-empty
-            // ...."
-            
-            // RFC 3986 Section 2.2:
-            // Reserved characters (should not be percent-encoded)
-            // reserved    = gen-delims / sub-delims
-            // gen-delims  = ":" / "/" / "?" / "#" / "[" / "]" / "@"
-            //               %3A   %2F   %3F   %23   %5B   %5D   %40
-            // sub-delims  = "!" / "$" / "&" / "'" / "(" / ")" / "*" / "+" / "," / ";" / "="
-            //               %21   %24   %26   %27   %28   %29   %2A   %2B   %2C   %3B   %3D
-            
-            // Note than chars "[" and "]" are mentioned as they should be escaped on RFC 2396,
-            // but on the part D. Changes from RFC 2396 says about this chars (used on IPv6) 
-            // "...those rules were redefined to directly specify the characters allowed...."
-            // There is also other characters moved from excluded list to reserved:
-            // "[" / "]" / "#"  
-            
-            // RFC 3986 Section 2.3:
-            // "... for consistency, percent-encoded octets in the ranges of ALPHA
-            // (%41-%5A and %61-%7A), DIGIT (%30-%39), hyphen (%2D), period (%2E),
-            // underscore (%5F), or tilde (%7E) should not be created by URI
-            // producers...."
-            
-            // RFC 3986 Section  3.2.2.  Host
-
-            // host = IP-literal / IPv4address / reg-name
-
-            // The reg-name syntax allows percent-encoded octets in order to
-            // represent non-ASCII registered names in a uniform way that is
-            // independent of the underlying name resolution technology.  Non-ASCII
-            // characters must first be encoded according to UTF-8 [STD63], and then
-            // each octet of the corresponding UTF-8 sequence must be percent-
-            // encoded to be represented as URI characters.  URI producing
-            // applications must not use percent-encoding in host unless it is used
-            // to represent a UTF-8 character sequence.
-            
-            // RFC 3986 Section 3.4 Query 
-            //         query       = *( pchar / "/" / "?" )
-            //
-            // "...  However, as query components are often used to carry identifying information 
-            // in the form of "key=value" pairs and one frequently used value is a reference to
-            // another URI, it is sometimes better for usability to avoid percent-encoding those characters....."
-            //
-            // RFC 3986 Section 2.5 Identifying Data (Apply to query section)
-            //
-            // When a new URI scheme defines a component that represents textual
-            // data consisting of characters from the Universal Character Set [UCS],
-            // the data should first be encoded as octets according to the UTF-8
-            // character encoding [STD63]; then only those octets that do not
-            // correspond to characters in the unreserved set should be percent-
-            // encoded.  For example, the character A would be represented as "A",
-            // the character LATIN CAPITAL LETTER A WITH GRAVE would be represented
-            // as "%C3%80", and the character KATAKANA LETTER A would be represented
-            // as "%E3%82%A2".
-            //
-            // RFC 3986 Section 3.5 Fragment
-            //         fragment    = *( pchar / "/" / "?" )
-            //
-            // Note that follows the same as query
-            
-            // Based on the extracts the strategy to apply on this method is:
-            // 
-            // On scheme ":" hier-part
-            //
-            // Escape or percent encode chars inside :
-            // 
-            // - From %00 to %20, 
-            // - <"> %22, "%" %25 (If there is encode of "%", there is a risk of 
-            //                     duplicate encoding, encode it when we are sure 
-            //                     that there are not encoded twice)
-            // - "<" %3C, ">" %3E
-            // - "\" %5C, "^" %5E, "`" %60 
-            // - "{" %7B, "|" %7C, "}" %7D
-            // - From %7F ad infinitum (characters from %100 to infinitum should not be used in this
-            //   part of an URI, but it is preferred to encode it that omit it).
-            //
-            // The remaining characters must not be encoded
-            //
-            // Characters after ? or # should be percent encoding but only the necessary ones:
-            //
-            // - From %00 to %20 (' ' %20 could encode as +, but %20 also works, so we keep %20)
-            // - <"> %22, "%" %25 (If there is encode of "%", there is a risk of 
-            //                     duplicate encoding, encode it when we are sure 
-            //                     that there are not encoded twice)
-            // - "<" %3C, ">" %3E,
-            // - "\" %5C, "^" %5E, "`" %60 
-            // - "{" %7B, "|" %7C, "}" %7D
-            // - From %7F ad infinitum (each character as many bytes as necessary but take into account
-            //   that a single char should contain 2,3 or more bytes!. This data should be encoded 
-            //   translating from the document character encoding to percent encoding, because this values
-            //   could be retrieved from httpRequest.getParameter() and it uses the current character encoding
-            //   for decode values)
-            //
-            // "&" should be encoded as "&amp;" because this link is inside an html page, and 
-            // put only & is invalid in this context.
-
-            if (   (c <= (char)0x20) || (c >= (char)0x7F) || 
-                    c == '"' || c == '<' ||
-                    c == '>' || c == '\\' || c == '^' || c == '`' ||
-                    c == '{' || c == '|' || c == '}')
+            char c = string.charAt(i);
+            if (c < 0x80 && (URI_FLAGS[c] & mask) == 0)
             {
-                // The percent encoding on this part should be done using UTF-8 charset
-                // as RFC 3986 Section 3.2.2 says.
-                // Also there is a reference on 
-                // http://www.w3.org/TR/html40/appendix/notes.html#non-ascii-chars
-                // that recommend use of UTF-8 instead the document character encoding.
-                // Jetty set by default UTF-8 (see http://jira.codehaus.org/browse/JETTY-113)
-                //app = percentEncode(c, "UTF-8");
-                if (start < i)
-                {
-                    writer.write(string, start, i-start);
-                }
-                start = i+1;
-                percentEncode(writer, c, "UTF-8");
+                continue;
             }
-            else if (c == '%')
+            if (c >= 0x80 || URI_FLAGS[c] == URI_PERCENT_ENCODE)
             {
-                if (i + 2 < length)
-                {
-                    char c1 = string.charAt(i+1);
-                    char c2 = string.charAt(i+2);
-                    if ((( c1 >= '0' && c1 <='9') || (c1 >='A' && c1 <='Z') || (c1 >='a' && c1 <='z')) &&
-                        (( c2 >= '0' && c2 <='9') || (c2 >='A' && c2 <='Z') || (c2 >='a' && c2 <='z')))
-                    {
-                        // do not percent encode, because it could be already encoded
-                        // and we don't want encode it twice
-                    }
-                    else
-                    {
-                        //app = percentEncode(c, UTF8);
-                        if (start < i)
-                        {
-                            writer.write(string, start, i-start);
-                        }
-                        start = i+1;
-                        percentEncode(writer, c, UTF8);
-                    }
-                }
-                else
-                {
-                    //app = percentEncode(c, UTF8);
-                    if (start < i)
-                    {
-                        writer.write(string, start, i-start);
-                    }
-                    start = i+1;
-                    percentEncode(writer, c, UTF8);
-                }
+                return true;
             }
-            else if (c == '?' || c == '#')
+            else if (c == '%')
             {
-                if (i+1 < length)
+                if (!isPercentEncodedOctet(string, i, length))
                 {
-                    // The remaining part of the URI are data that should be encoded
-                    // using the document character encoding.
-                    //app = c + encodeURIQuery(string.substring(i+1), characterEncoding);
-                    if (start < i)
-                    {
-                        writer.write(string, start, i-start);
-                    }
-                    start = i+1;
-                    writer.write(c);
-                    //encodeURIQuery(writer, string.substring(i+1), characterEncoding);
-                    encodeURIQuery(writer, string, i+1, characterEncoding);
-                    endLoop = true;
+                    return true;
                 }
             }
-            else
-            {
-                //No encoding, just do nothing, char will be added later.
-            }
-                        
-            if (app != null)
+            else if (c == '&')
             {
-                if (start < i)
+                if (!string.startsWith("&amp;", i))
                 {
-                    writer.write(string, start, i-start);
+                    return true;
                 }
-                start = i+1;
-                writer.write(app);
             }
-            if (endLoop)
+            else if (i+1 < length)
             {
-                start = length;
-                break;
+                mask = URI_QUERY_MASK;
             }
         }
-
-        if (start == 0)
-        {
-            writer.write(string);
-        }
-        else if (start < length)
+        return false;
+    }
+    
+    /**
+     * Checks if the '%' at index is followed by two characters that look like an already
+     * percent encoded octet, which should not be encoded twice.
+     */
+    private static boolean isPercentEncodedOctet(String string, int index, int length)
+    {
+        if (index + 2 < length)
         {
-            writer.write(string,start,length-start);
+            char c1 = string.charAt(index+1);
+            char c2 = string.charAt(index+2);
+            return (( c1 >= '0' && c1 <='9') || (c1 >='A' && c1 <='Z') || (c1 >='a' && c1 <='z')) &&
+                   (( c2 >= '0' && c2 <='9') || (c2 >='A' && c2 <='Z') || (c2 >='a' && c2 <='z'));
         }
+        return false;
     }
 
     /**
@@ -1085,24 +710,43 @@ public abstract class HTMLEncoder
      * 
      * @param c
      * @param characterEncoding
-     * @return
      */
     private static void percentEncode(Writer writer, char c, String characterEncoding) throws IOException
     {
-        if (c > (char)((short)0x007F))
+        if (c < 0x80)
         {
-            //percent encode in the proper encoding to be consistent
-            percentEncodeNonUsAsciiCharacter(writer, c, characterEncoding);
+            //percent encode US-ASCII char (0x00-0x7F range)
+            writePercentEncodedOctet(writer, c);
+        }
+        else if (!Character.isSurrogate(c)
+                && (characterEncoding == UTF8 || UTF8.equalsIgnoreCase(characterEncoding)))
+        {
+            //percent encode the UTF-8 bytes of the char without going through a charset encoder
+            if (c < 0x800)
+            {
+                writePercentEncodedOctet(writer, 0xC0 | (c >> 6));
+            }
+            else
+            {
+                writePercentEncodedOctet(writer, 0xE0 | (c >> 12));
+                writePercentEncodedOctet(writer, 0x80 | ((c >> 6) & 0x3F));
+            }
+            writePercentEncodedOctet(writer, 0x80 | (c & 0x3F));
         }
         else
         {
-            //percent encode US-ASCII char (0x00-0x7F range)
-            writer.write('%');
-            writer.write(HEX_CHARSET.charAt( ((c >> 0x4) % 0x10)));
-            writer.write(HEX_CHARSET.charAt(c % 0x10));
+            //percent encode in the proper encoding to be consistent
+            percentEncodeNonUsAsciiCharacter(writer, c, characterEncoding);
         }
     }
     
+    private static void writePercentEncodedOctet(Writer writer, int octet) throws IOException
+    {
+        writer.write('%');
+        writer.write(HEX_DIGITS[(octet >> 4) & 0x0F]);
+        writer.write(HEX_DIGITS[octet & 0x0F]);
+    }
+    
     private static void percentEncodeNonUsAsciiCharacter(Writer currentWriter, char c, String characterEncoding) 
         throws IOException
     {
@@ -1123,145 +767,7 @@ public abstract class HTMLEncoder
         byte [] byteArray =  baos.toByteArray();
         for (int i=0; i < byteArray.length; i++)
         {
-            //builder.append('%');
-            //builder.append(HEX_CHARSET.charAt( (( ((short) byteArray[i] & 0xFF ) >> 0x4) % 0x10)) );
-            //builder.append(HEX_CHARSET.charAt( ((short) byteArray[i] & 0xFF ) % 0x10));
-            currentWriter.write('%');
-            currentWriter.write(HEX_CHARSET.charAt( (( ((short) byteArray[i] & 0xFF ) >> 0x4) % 0x10)) );
-            currentWriter.write(HEX_CHARSET.charAt( ((short) byteArray[i] & 0xFF ) % 0x10));
-        }
-        
-        //return builder.toString();
-    }
-    
-    /**
-     * Encode the query part using the document charset encoding provided.
-     * 
-     * 
-     * @param string
-     * @param characterEncoding
-     * @return
-     */
-    private static void encodeURIQuery(Writer writer, final String string, int offset, final String characterEncoding)
-            throws IOException
-    {
-        //StringBuilder sb = null;    //create later on demand
-        int start = offset;
-        int length = string.length();
-        int realLength = length-offset;
-        String app;
-        char c;
-        //boolean endLoop = false;
-        for (int i = offset; i < length; ++i)
-        {
-            app = null;
-            c = string.charAt(i);
-            
-            // - From %00 to %20 (' ' %20 could encode as +, but %20 also works, so we keep %20)
-            // - <"> %22 (If there is encode of "%", there is a risk of duplicate encoding, so 
-            //            we make easier and omit this one)
-            // - "<" %3C, ">" %3E,
-            // - "\" %5C, "^" %5E, "`" %60 
-            // - "{" %7B, "|" %7C, "}" %7D
-            // - From %7F ad infinitum (each character as many bytes as necessary but take into account
-            //   that a single char should contain 2,3 or more bytes!. This data should be encoded 
-            //   translating from the document character encoding to percent encoding)
-            //
-            // "&" should be encoded as "&amp;" because this link is inside an html page, and 
-            // put & is invalid in this context   
-            
-            if (   (c <= (char)0x20) || (c >= (char)0x7F) || 
-                    c == '"' || c == '<' ||
-                    c == '>' || c == '\\' || c == '^' || c == '`' ||
-                    c == '{' || c == '|' || c == '}')
-            {
-                // The percent encoding on this part should be done using UTF-8 charset
-                // as RFC 3986 Section 3.2.2 says
-                //app = percentEncode(c, characterEncoding);
-                if (start < i)
-                {
-                    writer.write(string, start, i-start);
-                }
-                start = i+1;
-                percentEncode(writer, c, characterEncoding);
-            }
-            else if (c == '%')
-            {
-                if (i + 2 < length)
-                {
-                    char c1 = string.charAt(i+1);
-                    char c2 = string.charAt(i+2);
-                    if ((( c1 >= '0' && c1 <='9') || (c1 >='A' && c1 <='Z') || (c1 >='a' && c1 <='z')) &&
-                        (( c2 >= '0' && c2 <='9') || (c2 >='A' && c2 <='Z') || (c2 >='a' && c2 <='z')))
-                    {
-                        // do not percent encode, because it could be already encoded
-                    }
-                    else
-                    {
-                        //app = percentEncode(c, characterEncoding);
-                        if (start < i)
-                        {
-                            writer.write(string, start, i-start);
-                        }
-                        start = i+1;
-                        percentEncode(writer, c, characterEncoding);
-                    }
-                }
-                else
-                {
-                    //app = percentEncode(c, characterEncoding);
-                    if (start < i)
-                    {
-                        writer.write(string, start, i-start);
-                    }
-                    start = i+1;
-                    percentEncode(writer, c, characterEncoding);
-                }
-            }
-            else if (c == '&')
-            {
-                if (i+4 < length )
-                {
-                    if ('a' == string.charAt(i+1) &&
-                        'm' == string.charAt(i+2) &&
-                        'p' == string.charAt(i+3) &&
-                        ';' == string.charAt(i+4))
-                    {
-                        //Skip
-                    }
-                    else
-                    {
-                        app = "&amp;";
-                    }
-                }
-                else
-                {
-                    app = "&amp;";
-                }
-            }
-            else
-            {
-                //No encoding, just do nothing, char will be added later.
-            }
-                        
-            if (app != null)
-            {
-                if (start < i)
-                {
-                    writer.write(string, start, i-start);
-                }
-                start = i+1;
-                writer.write(app);
-            }
-        }
-
-        if (start == offset)
-        {
-            writer.write(string, offset, realLength);
-        }
-        else if (start < length)
-        {
-            writer.write(string,start,length-start);
+            writePercentEncodedOctet(currentWriter, byteArray[i] & 0xFF);
         }
     }
 }
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.renderkit.html.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * Static text of a page, escaped and encoded when the page is compiled instead of on every
+ * render. A ResponseWriter that implements {@link PreEncodedResponseWriter} copies the arrays
+ * as they are. The arrays hold the text for a UTF-8 response, any other encoding needs the
+ * text itself.
+ */
+public final class PreEncodedText
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final String _text;
+    private final boolean _escaped;
+    private final char[] _chars;
+
+    /**
+     * Only created the first time the text is written to a {@link Utf8ResponseOutputWriter}.
+     */
+    private volatile byte[] _utf8;
+
+    /**
+     * @param text the text as written in the page
+     * @param escaped true for text that goes through <code>ResponseWriter.writeText</code>, false
+     * for markup that goes through <code>ResponseWriter.write</code>
+     */
+    public PreEncodedText(String text, boolean escaped)
+    {
+        _text = text;
+        _escaped = escaped;
+        _chars = escaped ? HTMLEncoder.encode(text, false, false, false).toCharArray() : text.toCharArray();
+    }
+
+    public String getText()
+    {
+        return _text;
+    }
+
+    public boolean isEscaped()
+    {
+        return _escaped;
+    }
+
+    /**
+     * @return the text, escaped if needed, for a UTF-8 response. The array is shared and must not
+     * be modified.
+     */
+    public char[] getChars()
+    {
+        return _chars;
+    }
+
+    /**
+     * @return the text, escaped if needed, encoded to UTF-8. The array is shared and must not be
+     * modified.
+     */
+    public byte[] getUtf8()
+    {
+        byte[] utf8 = _utf8;
+        if (utf8 == null)
+        {
+            utf8 = new String(_chars).getBytes(UTF8);
+            _utf8 = utf8;
+        }
+        return utf8;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _text;
+    }
+}
@@ -38,30 +38,24 @@ public abstract class UnicodeEncoder
             return "";
         }
 
-        StringBuilder sb = null;
-        char c;
-        for (int i = 0; i < string.length (); ++i)
+        int length = string.length();
+        int i = nextNonBasicLatin(string, 0, length);
+        if (i == length)
         {
-            c = string.charAt(i);
-            if (((int)c) >= 0x80)
-            {
-                if( sb == null )
-                {
-                    sb = new StringBuilder( string.length()+4 );
-                    sb.append( string.substring(0,i) );
-                }
-                //encode all non basic latin characters
-                sb.append("&#");
-                sb.append((int)c);
-                sb.append(';');
-            }
-            else if( sb != null )
-            {
-                sb.append(c);
-            }
+            return string;
         }
 
-        return sb != null ? sb.toString() : string;
+        StringBuilder sb = new StringBuilder(length + 16);
+        int start = 0;
+        for (; i < length; i = nextNonBasicLatin(string, i, length))
+        {
+            sb.append(string, start, i);
+            //encode all non basic latin characters
+            sb.append("&#").append((int) string.charAt(i)).append(';');
+            start = ++i;
+        }
+        sb.append(string, start, length);
+        return sb.toString();
     }
     
     public static void encode (Writer writer, String string) throws IOException
@@ -71,33 +65,7 @@ public abstract class UnicodeEncoder
             return;
         }
 
-        int start = 0;
-        char c;
-        for (int i = 0; i < string.length (); ++i)
-        {
-            c = string.charAt(i);
-            if (((int)c) >= 0x80)
-            {
-                if (start < i)
-                {
-                    writer.write(string, start, i-start);
-                }
-                start = i+1;
-                //encode all non basic latin characters
-                writer.write("&#");
-                writer.write(Integer.toString((int)c));
-                writer.write(';');
-            }
-        }
-
-        if (start == 0)
-        {
-            writer.write(string);
-        }
-        else if (start < string.length())
-        {
-            writer.write(string,start,string.length()-start);
-        }
+        encode(writer, string, 0, string.length());
     }
 
     public static void encode (Writer writer, char[] cbuf, int off, int len) throws IOException
@@ -107,32 +75,26 @@ public abstract class UnicodeEncoder
             return;
         }
 
+        int end = off+len;
         int start = off;
-        char c;
-        for (int i = off; i < off+len; ++i)
+        for (int i = nextNonBasicLatin(cbuf, off, end); i < end; i = nextNonBasicLatin(cbuf, i, end))
         {
-            c = cbuf[i];
-            if (((int)c) >= 0x80)
+            if (start < i)
             {
-                if (start < i)
-                {
-                    writer.write(cbuf, start, i-start);
-                }
-                start = i+1;
-                //encode all non basic latin characters
-                writer.write("&#");
-                writer.write(Integer.toString((int)c));
-                writer.write(';');
+                writer.write(cbuf, start, i-start);
             }
+            //encode all non basic latin characters
+            writeCharacterReference(writer, cbuf[i]);
+            start = ++i;
         }
 
         if (start == off)
         {
             writer.write(cbuf, off, len);
         }
-        else if (start < off+len)
+        else if (start < end)
         {
-            writer.write(cbuf,start,off+len-start);
+            writer.write(cbuf,start,end-start);
         }
     }
     
@@ -143,32 +105,74 @@ public abstract class UnicodeEncoder
             return;
         }
 
+        int end = off+len;
         int start = off;
-        char c;
-        for (int i = off; i < off+len; ++i)
+        for (int i = nextNonBasicLatin(cbuf, off, end); i < end; i = nextNonBasicLatin(cbuf, i, end))
         {
-            c = cbuf.charAt(i);
-            if (((int)c) >= 0x80)
+            if (start < i)
             {
-                if (start < i)
-                {
-                    writer.write(cbuf, start, i-start);
-                }
-                start = i+1;
-                //encode all non basic latin characters
-                writer.write("&#");
-                writer.write(Integer.toString((int)c));
-                writer.write(';');
+                writer.write(cbuf, start, i-start);
             }
+            //encode all non basic latin characters
+            writeCharacterReference(writer, cbuf.charAt(i));
+            start = ++i;
         }
 
-        if (start == off)
+        if (start == 0 && end == cbuf.length())
+        {
+            writer.write(cbuf);
+        }
+        else if (start == off)
         {
             writer.write(cbuf, off, len);
         }
-        else if (start < off+len)
+        else if (start < end)
         {
-            writer.write(cbuf,start,off+len-start);
+            writer.write(cbuf,start,end-start);
+        }
+    }
+    
+    /**
+     * Writes the decimal numeric character reference of c, without creating a String for its value.
+     */
+    static void writeCharacterReference(Writer writer, char c) throws IOException
+    {
+        writer.write('&');
+        writer.write('#');
+        int value = c;
+        int divisor = 1;
+        while (divisor * 10 <= value)
+        {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10)
+        {
+            writer.write('0' + (value / divisor) % 10);
+        }
+        writer.write(';');
+    }
+
+    private static int nextNonBasicLatin(String string, int index, int end)
+    {
+        for (; index < end; index++)
+        {
+            if (string.charAt(index) >= 0x80)
+            {
+                return index;
+            }
+        }
+        return end;
+    }
+
+    private static int nextNonBasicLatin(char[] string, int index, int end)
+    {
+        for (; index < end; index++)
+        {
+            if (string[index] >= 0x80)
+            {
+                return index;
+            }
         }
+        return end;
     }
 }
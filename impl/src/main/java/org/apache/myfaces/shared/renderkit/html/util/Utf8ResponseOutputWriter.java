@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.renderkit.html.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Writer that encodes the response to UTF-8 itself and writes the bytes to the
+ * <code>ServletOutputStream</code>, instead of giving characters to the writer of the servlet
+ * container, which transcodes them again. The bytes are collected in a buffer taken from a per
+ * thread pool, and the buffer goes back to the pool on {@link #release()}.</p>
+ *
+ * <p>Besides the Writer methods, it can copy bytes that are already encoded, like the element and
+ * attribute names returned by {@link #encodeName(String)}, and it can escape text for HTML in the
+ * same pass that encodes it to UTF-8.</p>
+ */
+public class Utf8ResponseOutputWriter extends Writer
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The longest output of a single char: a pending surrogate replacement plus "&amp;quot;".
+     */
+    private static final int MAX_BYTES_PER_CHAR = 7;
+
+    /**
+     * Element and attribute names come from a small set, but nothing prevents a page from
+     * using a different one on every request, so the cache stops growing at this size.
+     */
+    private static final int MAX_CACHED_NAMES = 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER_POOL = new ThreadLocal<byte[]>();
+
+    private static final ConcurrentMap<String, byte[]> NAMES = new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * What to write instead of each char below 0x40 when escaping, or null to write it as is. Same
+     * rules as {@link HTMLEncoder} for UTF-8: the markup chars become entities and the C0 control
+     * chars other than tab, line feed and carriage return are dropped.
+     */
+    private static final byte[][] HTML_ESCAPES = new byte[0x40][];
+
+    static
+    {
+        byte[] dropped = new byte[0];
+        for (int c = 0; c < 0x20; c++)
+        {
+            if (c != '\t' && c != '\n' && c != '\r')
+            {
+                HTML_ESCAPES[c] = dropped;
+            }
+        }
+        HTML_ESCAPES['"'] = "&quot;".getBytes(UTF8);
+        HTML_ESCAPES['&'] = "&amp;".getBytes(UTF8);
+        HTML_ESCAPES['<'] = "&lt;".getBytes(UTF8);
+        HTML_ESCAPES['>'] = "&gt;".getBytes(UTF8);
+    }
+
+    private final OutputStream _out;
+    private byte[] _buffer;
+    private int _count;
+
+    /**
+     * High surrogate written as the last char of a previous call, waiting for its low surrogate.
+     */
+    private char _highSurrogate;
+
+    /**
+     * Scratch array the chars of a String are copied into before encoding them.
+     */
+    private char[] _chars;
+
+    public Utf8ResponseOutputWriter(OutputStream out)
+    {
+        _out = out;
+    }
+
+    /**
+     * Implemented by writers that pass everything they get straight to a
+     * Utf8ResponseOutputWriter, so a ResponseWriter on top of them can use the byte methods.
+     */
+    public interface Source
+    {
+        /**
+         * @return the writer the output goes to at this moment, or null if it does not go to
+         * a Utf8ResponseOutputWriter right now.
+         */
+        Utf8ResponseOutputWriter getUtf8Writer();
+    }
+
+    /**
+     * @return the Utf8ResponseOutputWriter the output of the given writer goes to, or null
+     */
+    public static Utf8ResponseOutputWriter getUtf8Writer(Writer writer)
+    {
+        if (writer instanceof Utf8ResponseOutputWriter)
+        {
+            return (Utf8ResponseOutputWriter) writer;
+        }
+        if (writer instanceof Source)
+        {
+            return ((Source) writer).getUtf8Writer();
+        }
+        return null;
+    }
+
+    /**
+     * @return the UTF-8 bytes of an element or attribute name. The array is shared and must not
+     * be modified.
+     */
+    public static byte[] encodeName(String name)
+    {
+        byte[] bytes = NAMES.get(name);
+        if (bytes == null)
+        {
+            bytes = name.getBytes(UTF8);
+            if (NAMES.size() < MAX_CACHED_NAMES)
+            {
+                NAMES.putIfAbsent(name, bytes);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes bytes that are already encoded in UTF-8.
+     */
+    public void writeUtf8(byte[] bytes) throws IOException
+    {
+        writeUtf8(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes bytes that are already encoded in UTF-8.
+     */
+    public void writeUtf8(byte[] bytes, int off, int len) throws IOException
+    {
+        byte[] buffer = getBuffer();
+        writeUnpairedSurrogate();
+        if (len > buffer.length - _count)
+        {
+            drain();
+            if (len > buffer.length)
+            {
+                _out.write(bytes, off, len);
+                return;
+            }
+        }
+        System.arraycopy(bytes, off, buffer, _count, len);
+        _count += len;
+    }
+
+    /**
+     * Escapes the text like {@link HTMLEncoder#encode(Writer, String, boolean, boolean, boolean)}
+     * does for UTF-8 without newline or blank encoding, and writes it encoded to UTF-8.
+     */
+    public void writeHtmlEscaped(String text) throws IOException
+    {
+        encode(text, 0, text.length(), true);
+    }
+
+    /**
+     * Array variant of {@link #writeHtmlEscaped(String)}.
+     */
+    public void writeHtmlEscaped(char[] cbuf, int off, int len) throws IOException
+    {
+        encode(cbuf, off, len, true);
+    }
+
+    @Override
+    public void write(int c) throws IOException
+    {
+        char[] chars = getChars();
+        chars[0] = (char) c;
+        encode(chars, 0, 1, false);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException
+    {
+        encode(cbuf, off, len, false);
+    }
+
+    @Override
+    public void write(String str) throws IOException
+    {
+        encode(str, 0, str.length(), false);
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException
+    {
+        encode(str, off, len, false);
+    }
+
+    private void encode(String str, int off, int len, boolean escape) throws IOException
+    {
+        char[] chars = getChars();
+        while (len > 0)
+        {
+            int chunk = Math.min(len, chars.length);
+            str.getChars(off, off + chunk, chars, 0);
+            encode(chars, 0, chunk, escape);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+
+    private void encode(char[] cbuf, int off, int len, boolean escape) throws IOException
+    {
+        byte[] b = getBuffer();
+        int limit = b.length - MAX_BYTES_PER_CHAR;
+        int n = _count;
+        char high = _highSurrogate;
+        for (int i = off, end = off + len; i < end; i++)
+        {
+            if (n > limit)
+            {
+                _count = n;
+                drain();
+                n = 0;
+            }
+
+            char c = cbuf[i];
+            if (high != 0)
+            {
+                if (Character.isLowSurrogate(c))
+                {
+                    int codePoint = Character.toCodePoint(high, c);
+                    high = 0;
+                    b[n++] = (byte) (0xF0 | (codePoint >> 18));
+                    b[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    b[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    b[n++] = (byte) (0x80 | (codePoint & 0x3F));
+                    continue;
+                }
+                b[n++] = '?';
+                high = 0;
+            }
+
+            if (c < 0x80)
+            {
+                byte[] escaped = escape && c < 0x40 ? HTML_ESCAPES[c] : null;
+                if (escaped != null)
+                {
+                    System.arraycopy(escaped, 0, b, n, escaped.length);
+                    n += escaped.length;
+                }
+                else
+                {
+                    b[n++] = (byte) c;
+                }
+            }
+            else if (c < 0x800)
+            {
+                b[n++] = (byte) (0xC0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c))
+            {
+                high = c;
+            }
+            else if (Character.isLowSurrogate(c))
+            {
+                b[n++] = '?';
+            }
+            else
+            {
+                b[n++] = (byte) (0xE0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[n++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        _count = n;
+        _highSurrogate = high;
+    }
+
+    /**
+     * A high surrogate that is not followed by a low surrogate is replaced with '?'.
+     */
+    private void writeUnpairedSurrogate() throws IOException
+    {
+        if (_highSurrogate != 0)
+        {
+            byte[] buffer = getBuffer();
+            if (_count == buffer.length)
+            {
+                drain();
+            }
+            buffer[_count++] = '?';
+            _highSurrogate = 0;
+        }
+    }
+
+    private byte[] getBuffer()
+    {
+        byte[] buffer = _buffer;
+        if (buffer == null)
+        {
+            buffer = BUFFER_POOL.get();
+            if (buffer == null)
+            {
+                buffer = new byte[BUFFER_SIZE];
+            }
+            else
+            {
+                BUFFER_POOL.set(null);
+            }
+            _buffer = buffer;
+        }
+        return buffer;
+    }
+
+    private char[] getChars()
+    {
+        if (_chars == null)
+        {
+            _chars = new char[512];
+        }
+        return _chars;
+    }
+
+    private void drain() throws IOException
+    {
+        if (_count > 0)
+        {
+            _out.write(_buffer, 0, _count);
+            _count = 0;
+        }
+    }
+
+    /**
+     * Hands the buffered bytes to the output stream, without flushing the output stream.
+     */
+    public void flushBuffer() throws IOException
+    {
+        drain();
+    }
+
+    /**
+     * Discards the buffered bytes, used when the response is reset.
+     */
+    public void reset()
+    {
+        _count = 0;
+        _highSurrogate = 0;
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream and gives the buffer back to the pool of
+     * the current thread. The writer can still be used afterwards, it takes a buffer again.
+     */
+    public void release() throws IOException
+    {
+        try
+        {
+            writeUnpairedSurrogate();
+            drain();
+        }
+        finally
+        {
+            if (_buffer != null)
+            {
+                _count = 0;
+                BUFFER_POOL.set(_buffer);
+                _buffer = null;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        drain();
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        release();
+        _out.close();
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.myfaces.shared.resource;
 
 import java.util.Map;
 
+import javax.faces.application.ProjectStage;
 import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 
@@ -43,6 +44,17 @@ public class BaseResourceHandlerSupport extends ResourceHandlerSupport
     @JSFWebConfigParam(since="2.0", defaultValue="604800000", group="resources", tags="performance")
     public static final String RESOURCE_MAX_TIME_EXPIRES = "org.apache.myfaces.RESOURCE_MAX_TIME_EXPIRES";
 
+    /**
+     * Append the hash of the content of a resource to its request path, and send the
+     * resources requested with the current hash with a "Cache-Control: immutable" header
+     * valid for one year, so user agents do not revalidate them. Only applies in Production.
+     * The hash is computed once and kept in the resource handler cache, see
+     * org.apache.myfaces.RESOURCE_HANDLER_CACHE_ENABLED.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="resources", tags="performance")
+    public static final String RESOURCE_CONTENT_HASH_ENABLED = "org.apache.myfaces.RESOURCE_CONTENT_HASH_ENABLED";
+
     /**
      * Identifies the FacesServlet mapping in the current request map.
      */
@@ -56,6 +68,8 @@ public class BaseResourceHandlerSupport extends ResourceHandlerSupport
     private Long _startupTime;
     
     private Long _maxTimeExpires;
+
+    private Boolean _contentHashEnabled;
         
     public BaseResourceHandlerSupport()
     {
@@ -196,4 +210,17 @@ public class BaseResourceHandlerSupport extends ResourceHandlerSupport
         }
         return _maxTimeExpires;
     }
+
+    @Override
+    public boolean isContentHashEnabled()
+    {
+        if (_contentHashEnabled == null)
+        {
+            FacesContext facesContext = FacesContext.getCurrentInstance();
+            _contentHashEnabled = facesContext.isProjectStage(ProjectStage.Production)
+                    && WebConfigParamUtils.getBooleanInitParameter(facesContext.getExternalContext(),
+                            RESOURCE_CONTENT_HASH_ENABLED, false);
+        }
+        return _contentHashEnabled;
+    }
 }
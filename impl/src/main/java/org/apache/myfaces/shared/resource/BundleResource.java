@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.faces.application.Resource;
+import javax.faces.context.FacesContext;
+
+/**
+ * A resource made of the content of several scripts or stylesheets, sent to the user agent in
+ * one response. Its name is derived from the hash of its content, so the URL changes when the
+ * content of any of the bundled resources changes.
+ * 
+ * @see BundleResourceCache
+ * @since 3.0.0
+ */
+public class BundleResource extends Resource
+{
+    private final String _id;
+    private final String _members;
+    private final byte[] _content;
+    private final long _lastModified;
+    private final ResourceHandlerSupport _resourceHandlerSupport;
+
+    public BundleResource(String id, String extension, String members, String contentType, byte[] content,
+            ResourceHandlerSupport support)
+    {
+        _id = id;
+        _members = members;
+        _content = content;
+        _lastModified = System.currentTimeMillis();
+        _resourceHandlerSupport = support;
+        setResourceName(id + extension);
+        setLibraryName(BundleResourceCache.BUNDLE_LIBRARY_NAME);
+        setContentType(contentType);
+    }
+
+    /**
+     * @return the hash of the content that identifies this bundle
+     */
+    public String getId()
+    {
+        return _id;
+    }
+
+    /**
+     * @return the bundled resources, as a comma separated list of libraryName:resourceName
+     */
+    public String getMembers()
+    {
+        return _members;
+    }
+
+    /**
+     * @return the entity tag of the bundle sent with the given content coding, or as it is if null
+     */
+    public String getETag(String contentEncoding)
+    {
+        return '"' + (contentEncoding == null ? _id : _id + '-' + contentEncoding) + '"';
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException
+    {
+        return new ByteArrayInputStream(_content);
+    }
+
+    @Override
+    public Map<String, String> getResponseHeaders()
+    {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Last-Modified", ResourceLoaderUtils.formatDateHeader(_lastModified));
+        headers.put("Expires", ResourceLoaderUtils.formatDateHeader(
+                System.currentTimeMillis() + _resourceHandlerSupport.getMaxTimeExpires()));
+        return headers;
+    }
+
+    @Override
+    public String getRequestPath()
+    {
+        String path;
+        if (_resourceHandlerSupport.isExtensionMapping())
+        {
+            path = _resourceHandlerSupport.getResourceIdentifier() + '/' +
+                getResourceName() + _resourceHandlerSupport.getMapping();
+        }
+        else
+        {
+            String mapping = _resourceHandlerSupport.getMapping();
+            path = _resourceHandlerSupport.getResourceIdentifier() + '/' + getResourceName();
+            path = (mapping == null) ? path : mapping + path;
+        }
+        path = path + "?ln=" + getLibraryName() + '&' + BundleResourceCache.MEMBERS_PARAM + '=' + _members;
+
+        FacesContext facesContext = FacesContext.getCurrentInstance();
+        return facesContext.getApplication().getViewHandler().getResourceURL(facesContext, path);
+    }
+
+    /**
+     * Bundles are not read from an URL.
+     * 
+     * @return null
+     */
+    @Override
+    public URL getURL()
+    {
+        return null;
+    }
+
+    @Override
+    public boolean userAgentNeedsUpdate(FacesContext context)
+    {
+        String ifModifiedSince = context.getExternalContext().getRequestHeaderMap().get("If-Modified-Since");
+        Long date = ifModifiedSince == null ? null : ResourceLoaderUtils.parseDateHeader(ifModifiedSince);
+        return date == null || _lastModified - (_lastModified % 1000) > date;
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.application.Resource;
+import javax.faces.application.ResourceHandler;
+import javax.faces.context.FacesContext;
+
+import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
+import org.apache.myfaces.shared.util.ConcurrentLRUCache;
+import org.apache.myfaces.shared.util.StringUtils;
+import org.apache.myfaces.shared.util.WebConfigParamUtils;
+
+/**
+ * Builds and keeps the bundles of the scripts and stylesheets rendered together in the head of
+ * the views. A bundle is built once for each list of resources and identified by the hash of its
+ * content; its URL lists the bundled resources, so any node of a cluster can build it again.
+ * <p>
+ * Stylesheets with relative url() references, @import or @charset rules are not bundled, because
+ * they would not work the same from the URL of the bundle.
+ * </p>
+ * 
+ * @since 3.0.0
+ */
+public class BundleResourceCache
+{
+    private static final Logger log = Logger.getLogger(BundleResourceCache.class.getName());
+
+    /**
+     * Render the scripts and stylesheets of the head that come one after the other as a single
+     * bundle resource, so the user agent sends one request for all of them. Only applies in
+     * Production.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="resources", tags="performance")
+    public static final String INIT_PARAM_RESOURCE_BUNDLING_ENABLED = "org.apache.myfaces.RESOURCE_BUNDLING_ENABLED";
+    public static final boolean INIT_PARAM_RESOURCE_BUNDLING_ENABLED_DEFAULT = false;
+
+    /**
+     * The library name of the bundle resources.
+     */
+    public static final String BUNDLE_LIBRARY_NAME = "myfaces.bundle";
+
+    /**
+     * The request parameter that lists the bundled resources.
+     */
+    public static final String MEMBERS_PARAM = "res";
+
+    private static final String INSTANCE_KEY = BundleResourceCache.class.getName();
+
+    private static final int MAX_BUNDLES = 256;
+    private static final int MAX_REQUESTED_BUNDLES = 64;
+    private static final int MAX_REJECTED = 256;
+    private static final int MAX_MEMBERS = 32;
+
+    private static final byte[] SCRIPT_SEPARATOR = "\n;\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] STYLESHEET_SEPARATOR = "\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final boolean _enabled;
+
+    /**
+     * The bundles rendered by this node, by their resource name.
+     */
+    private final Map<String, BundleResource> _bundles = new ConcurrentHashMap<String, BundleResource>();
+
+    /**
+     * The bundles rendered by this node, by the list of their resources.
+     */
+    private final Map<String, BundleResource> _bundlesByMembers = new ConcurrentHashMap<String, BundleResource>();
+
+    /**
+     * The bundles built from the list of resources of a request, by that list. They are kept apart
+     * from the rendered bundles, so requests cannot use up the room of the rendered ones.
+     */
+    private final ConcurrentLRUCache<String, BundleResource> _requestedBundles
+            = new ConcurrentLRUCache<String, BundleResource>((MAX_REQUESTED_BUNDLES * 4 + 3) / 3,
+                    MAX_REQUESTED_BUNDLES);
+
+    /**
+     * The lists of resources that cannot be bundled.
+     */
+    private final ConcurrentLRUCache<String, Boolean> _rejected
+            = new ConcurrentLRUCache<String, Boolean>((MAX_REJECTED * 4 + 3) / 3, MAX_REJECTED);
+
+    public BundleResourceCache(boolean enabled)
+    {
+        _enabled = enabled;
+    }
+
+    /**
+     * @return the cache of the application
+     */
+    public static BundleResourceCache getInstance(FacesContext facesContext)
+    {
+        Map<String, Object> applicationMap = facesContext.getExternalContext().getApplicationMap();
+        BundleResourceCache instance = (BundleResourceCache) applicationMap.get(INSTANCE_KEY);
+        if (instance == null)
+        {
+            instance = new BundleResourceCache(facesContext.isProjectStage(ProjectStage.Production)
+                    && WebConfigParamUtils.getBooleanInitParameter(facesContext.getExternalContext(),
+                            INIT_PARAM_RESOURCE_BUNDLING_ENABLED, INIT_PARAM_RESOURCE_BUNDLING_ENABLED_DEFAULT));
+            applicationMap.put(INSTANCE_KEY, instance);
+        }
+        return instance;
+    }
+
+    /**
+     * @return true if the scripts and stylesheets of the head are bundled
+     */
+    public boolean isEnabled()
+    {
+        return _enabled;
+    }
+
+    /**
+     * @return true if the resource can be referenced from the URL of a bundle. Only default
+     * resources, without locale prefix or contract, whose names are made of letters, digits,
+     * '.', '-', '_' and '/' (not in the library name) are bundled.
+     */
+    public static boolean isBundleable(Resource resource)
+    {
+        if (!(resource instanceof ResourceImpl))
+        {
+            return false;
+        }
+        ResourceMeta resourceMeta = ((ResourceImpl) resource).getResourceMeta();
+        return resourceMeta.getLocalePrefix() == null && resourceMeta.getContractName() == null
+                && isBundleableName(resource.getLibraryName(), false)
+                && isBundleableName(resource.getResourceName(), true);
+    }
+
+    private static boolean isBundleableName(String name, boolean allowSlash)
+    {
+        if (name == null)
+        {
+            return true;
+        }
+        for (int i = 0, length = name.length(); i < length; i++)
+        {
+            char c = name.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '_' || (allowSlash && c == '/')))
+            {
+                return false;
+            }
+        }
+        return name.length() > 0;
+    }
+
+    /**
+     * Returns the bundle of the given resources, building it the first time.
+     * 
+     * @param resources bundleable resources, in the order they are rendered
+     * @param extension ".js" or ".css"
+     * @return the bundle, or null if the resources cannot be bundled
+     */
+    public BundleResource getBundle(FacesContext facesContext, List<Resource> resources, String extension)
+    {
+        StringBuilder members = new StringBuilder(resources.size() * 32);
+        for (int i = 0, size = resources.size(); i < size; i++)
+        {
+            Resource resource = resources.get(i);
+            if (i > 0)
+            {
+                members.append(',');
+            }
+            if (resource.getLibraryName() != null)
+            {
+                members.append(resource.getLibraryName());
+            }
+            members.append(':').append(resource.getResourceName());
+        }
+        String key = extension + members;
+
+        BundleResource bundle = _bundlesByMembers.get(key);
+        if (bundle == null && _rejected.get(key) == null && resources.size() <= MAX_MEMBERS
+                && _bundlesByMembers.size() < MAX_BUNDLES)
+        {
+            bundle = build(facesContext, resources, members.toString(), extension);
+            if (bundle != null)
+            {
+                BundleResource existing = _bundles.get(bundle.getResourceName());
+                if (existing != null)
+                {
+                    // the same content from another list of resources
+                    bundle = existing;
+                }
+                else if (_bundles.size() < MAX_BUNDLES)
+                {
+                    _bundles.put(bundle.getResourceName(), bundle);
+                }
+                else
+                {
+                    return null;
+                }
+                _bundlesByMembers.put(key, bundle);
+            }
+        }
+        return bundle;
+    }
+
+    /**
+     * Returns the bundle requested by the user agent, building it again from the list of its
+     * resources if it is not known, for example after a restart. The bundles built here are
+     * kept in a small separate cache, because the list of resources comes from the request.
+     * 
+     * @param resourceName the requested resource name, the id of the bundle and its extension
+     * @param members the value of the {@link #MEMBERS_PARAM} request parameter
+     * @return the bundle, or null if it cannot be built
+     */
+    public BundleResource getBundle(FacesContext facesContext, String resourceName, String members)
+    {
+        BundleResource bundle = _bundles.get(resourceName);
+        if (bundle != null || members == null)
+        {
+            return bundle;
+        }
+
+        int dot = resourceName.lastIndexOf('.');
+        String extension = dot < 0 ? "" : resourceName.substring(dot);
+        if (!".js".equals(extension) && !".css".equals(extension))
+        {
+            return null;
+        }
+        String key = extension + members;
+        bundle = _bundlesByMembers.get(key);
+        if (bundle == null)
+        {
+            bundle = _requestedBundles.get(key);
+        }
+        if (bundle != null || _rejected.get(key) != null)
+        {
+            return bundle;
+        }
+
+        String[] names = StringUtils.splitShortString(members, ',');
+        if (names.length > MAX_MEMBERS)
+        {
+            return null;
+        }
+        ResourceHandler resourceHandler = facesContext.getApplication().getResourceHandler();
+        List<Resource> resources = new ArrayList<Resource>(names.length);
+        for (String name : names)
+        {
+            int colon = name.indexOf(':');
+            String libraryName = colon > 0 ? name.substring(0, colon) : null;
+            String memberName = name.substring(colon + 1);
+            if (colon < 0 || !isBundleableName(libraryName, false) || !isBundleableName(memberName, true)
+                    || !ResourceValidationUtils.isValidResourceName(memberName)
+                    || (libraryName != null && !ResourceValidationUtils.isValidLibraryName(libraryName, false))
+                    || !memberName.endsWith(extension))
+            {
+                return null;
+            }
+            Resource resource = libraryName == null ? resourceHandler.createResource(memberName)
+                    : resourceHandler.createResource(memberName, libraryName);
+            if (resource == null || !isBundleable(resource))
+            {
+                return null;
+            }
+            resources.add(resource);
+        }
+        bundle = build(facesContext, resources, members, extension);
+        if (bundle != null)
+        {
+            _requestedBundles.put(key, bundle);
+        }
+        return bundle;
+    }
+
+    private BundleResource build(FacesContext facesContext, List<Resource> resources, String members,
+            String extension)
+    {
+        String key = extension + members;
+
+        boolean stylesheet = ".css".equals(extension);
+        byte[] content;
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16384);
+            for (int i = 0, size = resources.size(); i < size; i++)
+            {
+                byte[] memberContent = read(resources.get(i));
+                if (stylesheet && !isBundleableStylesheet(memberContent))
+                {
+                    _rejected.put(key, Boolean.TRUE);
+                    return null;
+                }
+                if (i > 0)
+                {
+                    out.write(stylesheet ? STYLESHEET_SEPARATOR : SCRIPT_SEPARATOR);
+                }
+                int offset = hasByteOrderMark(memberContent) ? 3 : 0;
+                out.write(memberContent, offset, memberContent.length - offset);
+            }
+            content = out.toByteArray();
+        }
+        catch (IOException e)
+        {
+            log.log(Level.WARNING, "The resources " + members + " could not be bundled", e);
+            _rejected.put(key, Boolean.TRUE);
+            return null;
+        }
+
+        Resource first = resources.get(0);
+        return new BundleResource(hash(content), extension, members, first.getContentType(),
+                content, ((ResourceImpl) first).getResourceHandlerSupport());
+    }
+
+    private static byte[] read(Resource resource) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try (InputStream in = resource.getInputStream())
+        {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean hasByteOrderMark(byte[] content)
+    {
+        return content.length >= 3 && content[0] == (byte) 0xEF && content[1] == (byte) 0xBB
+                && content[2] == (byte) 0xBF;
+    }
+
+    /**
+     * @return true if the stylesheet has no relative url() reference, @import or @charset rule
+     */
+    static boolean isBundleableStylesheet(byte[] content)
+    {
+        String css = new String(content, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ENGLISH);
+        if (css.contains("@import") || css.contains("@charset"))
+        {
+            return false;
+        }
+        for (int index = css.indexOf("url("); index >= 0; index = css.indexOf("url(", index + 4))
+        {
+            int start = index + 4;
+            while (start < css.length() && (Character.isWhitespace(css.charAt(start))
+                    || css.charAt(start) == '"' || css.charAt(start) == '\''))
+            {
+                start++;
+            }
+            if (!isAbsoluteReference(css, start))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAbsoluteReference(String css, int start)
+    {
+        if (css.startsWith("/", start) || css.startsWith("#", start))
+        {
+            return true;
+        }
+        // scheme ":"
+        for (int i = start, length = css.length(); i < length; i++)
+        {
+            char c = css.charAt(i);
+            if (c == ':')
+            {
+                return i > start;
+            }
+            if (!((c >= 'a' && c <= 'z') || (i > start && ((c >= '0' && c <= '9') || c == '+' || c == '-'
+                    || c == '.'))))
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    static String hash(byte[] content)
+    {
+        return ResourceLoaderUtils.computeContentHash(content);
+    }
+}
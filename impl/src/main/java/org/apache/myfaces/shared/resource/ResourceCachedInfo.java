@@ -30,10 +30,18 @@ public class ResourceCachedInfo
 
     private final String requestPath;
 
+    private final String contentHash;
+
     public ResourceCachedInfo(URL url, String requestPath)
+    {
+        this(url, requestPath, null);
+    }
+
+    public ResourceCachedInfo(URL url, String requestPath, String contentHash)
     {
         this.url = url;
         this.requestPath = requestPath;
+        this.contentHash = contentHash;
     }
 
     public URL getURL()
@@ -45,4 +53,9 @@ public class ResourceCachedInfo
     {
         return requestPath;
     }
+
+    public String getContentHash()
+    {
+        return contentHash;
+    }
 }
@@ -18,6 +18,12 @@
  */
 package org.apache.myfaces.shared.resource;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,20 +32,41 @@ import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 
 import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
-import org.apache.myfaces.shared.util.ConcurrentLRUCache;
 import org.apache.myfaces.shared.util.WebConfigParamUtils;
 
+/**
+ * Remembers where the resources handled by the default ResourceHandler were found, and for
+ * a while which ones do not exist, so the resource loaders are not asked again.
+ * <p>
+ * The entries of each kind of resource are grouped by resource name, and the entries for the
+ * same name are matched by comparing the other parts of the key, so a lookup does not allocate
+ * a key. Lookups do not lock; entries are replaced with copy on write.
+ * </p>
+ */
 public class ResourceHandlerCache
 {
     private static final Logger log = Logger
             .getLogger(ResourceHandlerCache.class.getName());
 
-    private Boolean _resourceCacheEnabled = null;
-    private volatile ConcurrentLRUCache<Object, ResourceValue> _resourceCacheMap = null;
+    /**
+     * Set once by the first lookup, after {@link #_maxSize} and {@link #_notFoundTimeToLiveNanos},
+     * so a thread that reads it also sees them.
+     */
+    private volatile Boolean _resourceCacheEnabled = null;
 
-    private volatile ConcurrentLRUCache<Object, ResourceValue> _viewResourceCacheMap = null;
-    
-    private volatile ConcurrentLRUCache<Object, Boolean> _libraryExistsCacheMap = null;
+    private int _maxSize;
+
+    private long _notFoundTimeToLiveNanos;
+
+    private final ResourceHandlerCacheStatistics _statistics = getCurrentStatistics();
+
+    private final EntryTable _resources = new EntryTable(_statistics);
+
+    private final EntryTable _resourceIds = new EntryTable(_statistics);
+
+    private final EntryTable _viewResources = new EntryTable(_statistics);
+
+    private final Map<String, Boolean> _libraryExistsCacheMap = new ConcurrentHashMap<String, Boolean>();
     
     /**
      * Controls the size of the cache used to check if a resource exists or not. 
@@ -63,6 +90,26 @@ public class ResourceHandlerCache
         "org.apache.myfaces.RESOURCE_HANDLER_CACHE_ENABLED";
     private static final boolean RESOURCE_HANDLER_CACHE_ENABLED_DEFAULT = true;
 
+    /**
+     * Time in milliseconds the cache remembers that a resource does not exist, so looking it up
+     * again does not ask the resource loaders. 0 disables these "not found" entries.
+     */
+    @JSFWebConfigParam(defaultValue = "60000", since = "3.0.0", group="resources", 
+            classType="java.lang.Long", tags="performance")
+    private static final String RESOURCE_HANDLER_CACHE_NOT_FOUND_TTL_ATTRIBUTE = 
+        "org.apache.myfaces.RESOURCE_HANDLER_CACHE_NOT_FOUND_TTL";
+    private static final long RESOURCE_HANDLER_CACHE_NOT_FOUND_TTL_DEFAULT = 60000L;
+
+    /**
+     * Registers the counters of the resource handler cache in the platform MBeanServer, as
+     * org.apache.myfaces:type=ResourceHandlerCache,context=&lt;context path&gt;.
+     */
+    @JSFWebConfigParam(defaultValue = "false", since = "3.0.0", group="resources", 
+            expectedValues="true,false", tags="performance")
+    public static final String RESOURCE_HANDLER_CACHE_JMX_ATTRIBUTE = 
+        "org.apache.myfaces.RESOURCE_HANDLER_CACHE_JMX";
+    public static final boolean RESOURCE_HANDLER_CACHE_JMX_DEFAULT = false;
+
     public ResourceValue getResource(String resourceName, String libraryName,
             String contentType, String localePrefix)
     {
@@ -72,7 +119,7 @@ public class ResourceHandlerCache
     public ResourceValue getResource(String resourceName, String libraryName,
             String contentType, String localePrefix, String contractName)
     {
-        if (!isResourceCachingEnabled() || _resourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return null;
         }
@@ -83,9 +130,8 @@ public class ResourceHandlerCache
                     + resourceName);
         }
 
-        ResourceKey key = new ResourceKey(resourceName, libraryName, contentType, localePrefix, contractName);
-
-        return _resourceCacheMap.get(key);
+        return getValue(_resources.get(resourceName, libraryName, contentType, localePrefix, contractName),
+                contractName);
     }    
 
     public boolean containsResource(String resourceName, String libraryName, String contentType, String localePrefix)
@@ -96,13 +142,13 @@ public class ResourceHandlerCache
     public boolean containsResource(String resourceName, String libraryName, String contentType, 
         String localePrefix, String contractName)
     {
-        if (!isResourceCachingEnabled() || _resourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return false;
         }
 
-        ResourceKey key = new ResourceKey(resourceName, libraryName, contentType, localePrefix);
-        return _resourceCacheMap.get(key) != null;
+        Entry entry = _resources.get(resourceName, libraryName, contentType, localePrefix, contractName);
+        return entry != null && entry.value != null;
     }
 
     public void putResource(String resourceName, String libraryName,
@@ -126,40 +172,50 @@ public class ResourceHandlerCache
                     + resourceName);
         }
 
-        if (_resourceCacheMap == null)
-        {
-            if (log.isLoggable(Level.FINE))
-            {
-                log.log(Level.FINE, "Initializing resource cache map");
-            }
-            int maxSize = getMaxSize();
-            _resourceCacheMap = new ConcurrentLRUCache<Object, ResourceValue>(
-                    (maxSize * 4 + 3) / 3, maxSize);
-        }
-
-        _resourceCacheMap.put(new ResourceKey(resourceName, libraryName,
-                contentType, localePrefix, contractName), new ResourceValue(resource, loader, info));
+        _resources.put(resourceName, new Entry(libraryName, contentType, localePrefix, contractName,
+                new ResourceValue(resource, loader, info), 0), _maxSize);
     }
-    
-    public ResourceValue getResource(String resourceId)
+
+    /**
+     * @return true if the resource, looked up without contract, was not found recently
+     * @since 3.0.0
+     */
+    public boolean isResourceNotFound(String resourceName, String libraryName, String contentType,
+            String localePrefix)
     {
-        if (!isResourceCachingEnabled() || _resourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
-            return null;
+            return false;
         }
 
-        if (log.isLoggable(Level.FINE))
+        return isNotFound(_resources.get(resourceName, libraryName, contentType, localePrefix, null));
+    }
+
+    /**
+     * Remembers for a while that the resource does not exist without contract.
+     * 
+     * @since 3.0.0
+     */
+    public void putResourceNotFound(String resourceName, String libraryName, String contentType,
+            String localePrefix)
+    {
+        if (!isResourceCachingEnabled() || _notFoundTimeToLiveNanos <= 0)
         {
-            log.log(Level.FINE, "Attemping to get resource from cache for "
-                    + resourceId);
+            return;
         }
 
-        return _resourceCacheMap.get(resourceId);
+        _resources.put(resourceName, new Entry(libraryName, contentType, localePrefix, null, null,
+                System.nanoTime() + _notFoundTimeToLiveNanos), _maxSize);
+    }
+    
+    public ResourceValue getResource(String resourceId)
+    {
+        return getResource(resourceId, null);
     }
 
     public ResourceValue getResource(String resourceId, String contractName)
     {
-        if (!isResourceCachingEnabled() || _resourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return null;
         }
@@ -170,27 +226,23 @@ public class ResourceHandlerCache
                     + resourceId);
         }
 
-        return _resourceCacheMap.get(contractName+':'+resourceId);
+        return getValue(_resourceIds.get(resourceId, null, null, null, contractName), contractName);
     }
     
     public boolean containsResource(String resourceId, String contractName)
     {
-        if (!isResourceCachingEnabled() || _resourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return false;
         }
 
-        return _resourceCacheMap.get(contractName+':'+resourceId) != null;
+        Entry entry = _resourceIds.get(resourceId, null, null, null, contractName);
+        return entry != null && entry.value != null;
     }
     
     public boolean containsResource(String resourceId)
     {
-        if (!isResourceCachingEnabled() || _resourceCacheMap == null)
-        {
-            return false;
-        }
-
-        return _resourceCacheMap.get(resourceId) != null;
+        return containsResource(resourceId, null);
     }
 
     public void putResource(String resourceId, ResourceMeta resource, ResourceLoader loader, 
@@ -207,26 +259,46 @@ public class ResourceHandlerCache
                     + resourceId);
         }
 
-        if (_resourceCacheMap == null)
+        if (resource.getContractName() != null)
         {
-            if (log.isLoggable(Level.FINE))
-            {
-                log.log(Level.FINE, "Initializing resource cache map");
-            }
-            int maxSize = getMaxSize();
-            _resourceCacheMap = new ConcurrentLRUCache<Object, ResourceValue>(
-                    (maxSize * 4 + 3) / 3, maxSize);
+            _resourceIds.put(resourceId, new Entry(null, null, null, resource.getContractName(),
+                    new ResourceValue(resource, loader), 0), _maxSize);
+        }
+        else
+        {
+            _resourceIds.put(resourceId, new Entry(null, null, null, null,
+                    new ResourceValue(resource, loader, info), 0), _maxSize);
         }
+    }
 
-        if (resource.getContractName() != null)
+    /**
+     * @return true if the resource, looked up by id without contract, was not found recently
+     * @since 3.0.0
+     */
+    public boolean isResourceNotFound(String resourceId)
+    {
+        if (!isResourceCachingEnabled())
         {
-            _resourceCacheMap.put(resource.getContractName()+':'+resourceId, 
-                new ResourceValue(resource, loader));
+            return false;
         }
-        else
+
+        return isNotFound(_resourceIds.get(resourceId, null, null, null, null));
+    }
+
+    /**
+     * Remembers for a while that there is no resource with this id without contract.
+     * 
+     * @since 3.0.0
+     */
+    public void putResourceNotFound(String resourceId)
+    {
+        if (!isResourceCachingEnabled() || _notFoundTimeToLiveNanos <= 0)
         {
-            _resourceCacheMap.put(resourceId, new ResourceValue(resource, loader, info));
+            return;
         }
+
+        _resourceIds.put(resourceId, new Entry(null, null, null, null, null,
+                System.nanoTime() + _notFoundTimeToLiveNanos), _maxSize);
     }
 
     public boolean containsViewResource(
@@ -238,13 +310,13 @@ public class ResourceHandlerCache
     public boolean containsViewResource(String resourceName, String contentType, 
         String localePrefix, String contractName)
     {
-        if (!isResourceCachingEnabled() || _viewResourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return false;
         }
 
-        ResourceKey key = new ResourceKey(resourceName, null, contentType, localePrefix, contractName);
-        return _viewResourceCacheMap.get(key) != null;
+        Entry entry = _viewResources.get(resourceName, null, contentType, localePrefix, contractName);
+        return entry != null && entry.value != null;
     }
     
     public ResourceValue getViewResource(String resourceName,
@@ -256,7 +328,7 @@ public class ResourceHandlerCache
     public ResourceValue getViewResource(String resourceName,
             String contentType, String localePrefix, String contractName)
     {
-        if (!isResourceCachingEnabled() || _viewResourceCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return null;
         }
@@ -267,9 +339,8 @@ public class ResourceHandlerCache
                     + resourceName);
         }
 
-        ResourceKey key = new ResourceKey(resourceName, null, contentType, localePrefix, contractName);
-
-        return _viewResourceCacheMap.get(key);
+        return getValue(_viewResources.get(resourceName, null, contentType, localePrefix, contractName),
+                contractName);
     }
     
     public void putViewResource(String resourceName, String contentType, 
@@ -293,24 +364,43 @@ public class ResourceHandlerCache
                     + resourceName);
         }
 
-        if (_viewResourceCacheMap == null)
+        _viewResources.put(resourceName, new Entry(null, contentType, localePrefix, contractName,
+                new ResourceValue(resource, loader, info), 0), _maxSize);
+    }
+
+    /**
+     * @return true if the view resource, looked up without contract, was not found recently
+     * @since 3.0.0
+     */
+    public boolean isViewResourceNotFound(String resourceName, String contentType, String localePrefix)
+    {
+        if (!isResourceCachingEnabled())
         {
-            if (log.isLoggable(Level.FINE))
-            {
-                log.log(Level.FINE, "Initializing resource cache map");
-            }
-            int maxSize = getMaxSize();
-            _viewResourceCacheMap = new ConcurrentLRUCache<Object, ResourceValue>(
-                    (maxSize * 4 + 3) / 3, maxSize);
+            return false;
         }
 
-        _viewResourceCacheMap.put(new ResourceKey(resourceName, null,
-                contentType, localePrefix, contractName), new ResourceValue(resource, loader, info));
+        return isNotFound(_viewResources.get(resourceName, null, contentType, localePrefix, null));
+    }
+
+    /**
+     * Remembers for a while that the view resource does not exist without contract.
+     * 
+     * @since 3.0.0
+     */
+    public void putViewResourceNotFound(String resourceName, String contentType, String localePrefix)
+    {
+        if (!isResourceCachingEnabled() || _notFoundTimeToLiveNanos <= 0)
+        {
+            return;
+        }
+
+        _viewResources.put(resourceName, new Entry(null, contentType, localePrefix, null, null,
+                System.nanoTime() + _notFoundTimeToLiveNanos), _maxSize);
     }
     
     public Boolean libraryExists(String libraryName)
     {
-        if (!isResourceCachingEnabled() || _libraryExistsCacheMap == null)
+        if (!isResourceCachingEnabled())
         {
             return null;
         }
@@ -325,6 +415,16 @@ public class ResourceHandlerCache
     }
     
     public void confirmLibraryExists(String libraryName)
+    {
+        putLibraryExists(libraryName, Boolean.TRUE);
+    }
+    
+    public void confirmLibraryNotExists(String libraryName)
+    {
+        putLibraryExists(libraryName, Boolean.FALSE);
+    }
+
+    private void putLibraryExists(String libraryName, Boolean exists)
     {
         if (!isResourceCachingEnabled())
         {
@@ -337,50 +437,59 @@ public class ResourceHandlerCache
                     + libraryName);
         }
 
-        if (_libraryExistsCacheMap == null)
+        // Library names are few, when there are too many some are forgotten
+        Iterator<String> it = _libraryExistsCacheMap.keySet().iterator();
+        while (_libraryExistsCacheMap.size() >= Math.max(_maxSize / 5, 1) && it.hasNext())
         {
-            if (log.isLoggable(Level.FINE))
-            {
-                log.log(Level.FINE, "Initializing resource cache map");
-            }
-            int maxSize = getMaxSize()/10;
-            _libraryExistsCacheMap = new ConcurrentLRUCache<Object, Boolean>(
-                    (maxSize * 4 + 3) / 3, maxSize);
+            it.next();
+            it.remove();
         }
+        _libraryExistsCacheMap.put(libraryName, exists);
+    }
 
-        _libraryExistsCacheMap.put(libraryName, Boolean.TRUE);
+    /**
+     * @return the counters of the cache
+     * @since 3.0.0
+     */
+    public ResourceHandlerCacheStatistics getStatistics()
+    {
+        return _statistics;
     }
-    
-    public void confirmLibraryNotExists(String libraryName)
+
+    /**
+     * Counts the lookup. Only the lookups without contract count as misses, because they are
+     * done last, when the resource was not found for any contract.
+     */
+    private ResourceValue getValue(Entry entry, String contractName)
     {
-        if (!isResourceCachingEnabled())
+        if (entry != null && entry.value != null)
         {
-            return;
+            entry.used = true;
+            _statistics.recordHit();
+            return entry.value;
         }
-        
-        if (log.isLoggable(Level.FINE))
+        if (contractName == null)
         {
-            log.log(Level.FINE, "Attemping to set confirmLibraryExists on cache "
-                    + libraryName);
+            _statistics.recordMiss();
         }
+        return null;
+    }
 
-        if (_libraryExistsCacheMap == null)
+    private boolean isNotFound(Entry entry)
+    {
+        if (entry != null && entry.value == null && entry.expires - System.nanoTime() > 0)
         {
-            if (log.isLoggable(Level.FINE))
-            {
-                log.log(Level.FINE, "Initializing resource cache map");
-            }
-            int maxSize = getMaxSize()/5;
-            _libraryExistsCacheMap = new ConcurrentLRUCache<Object, Boolean>(
-                    (maxSize * 4 + 3) / 3, maxSize);
+            entry.used = true;
+            _statistics.recordNotFoundHit();
+            return true;
         }
-
-        _libraryExistsCacheMap.put(libraryName, Boolean.FALSE);
-    }    
+        return false;
+    }
 
     private boolean isResourceCachingEnabled()
     {
-        if (_resourceCacheEnabled == null)
+        Boolean resourceCacheEnabled = _resourceCacheEnabled;
+        if (resourceCacheEnabled == null)
         {
             FacesContext facesContext = FacesContext.getCurrentInstance();
 
@@ -388,7 +497,7 @@ public class ResourceHandlerCache
             if (!facesContext.isProjectStage(ProjectStage.Production))
             {
                 _resourceCacheEnabled = Boolean.FALSE;
-                return _resourceCacheEnabled;
+                return false;
             }
 
             ExternalContext externalContext = facesContext.getExternalContext();
@@ -397,100 +506,230 @@ public class ResourceHandlerCache
                 return false; //don't cache right now, but don't disable it yet either
             }
 
+            _maxSize = getMaxSize(externalContext);
+            _notFoundTimeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(WebConfigParamUtils.getLongInitParameter(
+                    externalContext, RESOURCE_HANDLER_CACHE_NOT_FOUND_TTL_ATTRIBUTE,
+                    RESOURCE_HANDLER_CACHE_NOT_FOUND_TTL_DEFAULT));
+            _statistics.setMaxSize(_maxSize);
+
             //if in production, make sure that the cache is not explicitly disabled via context param
-            _resourceCacheEnabled = WebConfigParamUtils.getBooleanInitParameter(externalContext, 
-                    ResourceHandlerCache.RESOURCE_HANDLER_CACHE_ENABLED_ATTRIBUTE,
-                    ResourceHandlerCache.RESOURCE_HANDLER_CACHE_ENABLED_DEFAULT);
+            resourceCacheEnabled = isEnabled(externalContext);
+            _resourceCacheEnabled = resourceCacheEnabled;
 
             if (log.isLoggable(Level.FINE))
             {
                 log.log(Level.FINE, "MyFaces Resource Caching Enabled="
-                        + _resourceCacheEnabled);
+                        + resourceCacheEnabled);
             }
         }
-        return _resourceCacheEnabled;
+        return resourceCacheEnabled;
     }
 
-    private int getMaxSize()
+    private static int getMaxSize(ExternalContext externalContext)
     {
-        
-        ExternalContext externalContext = FacesContext.getCurrentInstance()
-                .getExternalContext();
         return WebConfigParamUtils.getIntegerInitParameter(externalContext, 
                 RESOURCE_HANDLER_CACHE_SIZE_ATTRIBUTE, RESOURCE_HANDLER_CACHE_DEFAULT_SIZE);
     }
 
-    public static class ResourceKey
+    private static boolean isEnabled(ExternalContext externalContext)
+    {
+        return WebConfigParamUtils.getBooleanInitParameter(externalContext, 
+                RESOURCE_HANDLER_CACHE_ENABLED_ATTRIBUTE, RESOURCE_HANDLER_CACHE_ENABLED_DEFAULT);
+    }
+
+    private static ResourceHandlerCacheStatistics getCurrentStatistics()
+    {
+        FacesContext facesContext = FacesContext.getCurrentInstance();
+        if (facesContext == null || facesContext.getExternalContext() == null)
+        {
+            return new ResourceHandlerCacheStatistics();
+        }
+        return ResourceHandlerCacheStatistics.getCurrentInstance(facesContext.getExternalContext());
+    }
+
+    /**
+     * Registers the statistics of the cache in the platform MBeanServer when the application
+     * starts, if the cache is enabled and org.apache.myfaces.RESOURCE_HANDLER_CACHE_JMX is set.
+     */
+    public static void registerStatistics(FacesContext facesContext)
+    {
+        ExternalContext externalContext = facesContext.getExternalContext();
+        if (facesContext.isProjectStage(ProjectStage.Production) && isEnabled(externalContext)
+                && WebConfigParamUtils.getBooleanInitParameter(externalContext,
+                        RESOURCE_HANDLER_CACHE_JMX_ATTRIBUTE, RESOURCE_HANDLER_CACHE_JMX_DEFAULT))
+        {
+            ResourceHandlerCacheStatistics statistics =
+                    ResourceHandlerCacheStatistics.getCurrentInstance(externalContext);
+            statistics.setMaxSize(getMaxSize(externalContext));
+            ResourceHandlerCacheStatistics.register(externalContext, statistics);
+        }
+    }
+
+    /**
+     * A cached resource, or a resource that was not found if the value is null. The key is the
+     * resource name the entry is grouped by, plus the fields of the entry.
+     */
+    private static final class Entry
     {
-        private final String resourceName;
         private final String libraryName;
         private final String contentType;
         private final String localePrefix;
         private final String contractName;
+        private final ResourceValue value;
 
-        public ResourceKey(String resourceName, String libraryName,
-                String contentType, String localePrefix)
-        {
-            this(resourceName, libraryName, contentType, localePrefix, null);
-        }
-        
-        public ResourceKey(String resourceName, String libraryName,
-                String contentType, String localePrefix, String contractName)
+        /**
+         * For a "not found" entry, the System.nanoTime() when it expires.
+         */
+        private final long expires;
+
+        /**
+         * Set when the entry is used, cleared when it gets a second chance to stay in the cache.
+         * Lost updates only change which entry is evicted.
+         */
+        private boolean used;
+
+        Entry(String libraryName, String contentType, String localePrefix, String contractName,
+                ResourceValue value, long expires)
         {
-            this.resourceName = resourceName;
             this.libraryName = libraryName;
             this.contentType = contentType;
             this.localePrefix = localePrefix;
             this.contractName = contractName;
+            this.value = value;
+            this.expires = expires;
         }
 
-        @Override
-        public boolean equals(Object o)
+        boolean matches(String libraryName, String contentType, String localePrefix, String contractName)
         {
-            if (this == o)
-            {
-                return true;
-            }
-            if (o == null || getClass() != o.getClass())
-            {
-                return false;
-            }
+            return equals(this.libraryName, libraryName) && equals(this.contentType, contentType)
+                    && equals(this.localePrefix, localePrefix) && equals(this.contractName, contractName);
+        }
 
-            ResourceKey that = (ResourceKey) o;
+        private static boolean equals(String a, String b)
+        {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
 
-            if (contentType != null ? !contentType.equals(that.contentType) : that.contentType != null)
-            {
-                return false;
-            }
-            if (libraryName != null ? !libraryName.equals(that.libraryName) : that.libraryName != null)
-            {
-                return false;
-            }
-            if (localePrefix != null ? !localePrefix.equals(that.localePrefix) : that.localePrefix != null)
+    /**
+     * The entries of one kind of resource by resource name. The arrays are never modified once
+     * they are in the map, so they can be read without locking.
+     */
+    private static final class EntryTable
+    {
+        private final ConcurrentHashMap<String, Entry[]> _entries = new ConcurrentHashMap<String, Entry[]>();
+        private final AtomicInteger _size = new AtomicInteger();
+        private final ResourceHandlerCacheStatistics _statistics;
+
+        EntryTable(ResourceHandlerCacheStatistics statistics)
+        {
+            _statistics = statistics;
+        }
+
+        Entry get(String resourceName, String libraryName, String contentType, String localePrefix,
+                String contractName)
+        {
+            Entry[] entries = _entries.get(resourceName);
+            if (entries != null)
             {
-                return false;
+                for (int i = 0; i < entries.length; i++)
+                {
+                    if (entries[i].matches(libraryName, contentType, localePrefix, contractName))
+                    {
+                        return entries[i];
+                    }
+                }
             }
-            if (resourceName != null ? !resourceName.equals(that.resourceName) : that.resourceName != null)
+            return null;
+        }
+
+        void put(String resourceName, Entry entry, int maxSize)
+        {
+            while (true)
             {
-                return false;
+                Entry[] entries = _entries.get(resourceName);
+                if (entries == null)
+                {
+                    if (_entries.putIfAbsent(resourceName, new Entry[] {entry}) == null)
+                    {
+                        added();
+                        break;
+                    }
+                    continue;
+                }
+
+                int index = -1;
+                for (int i = 0; i < entries.length; i++)
+                {
+                    if (entries[i].matches(entry.libraryName, entry.contentType, entry.localePrefix,
+                            entry.contractName))
+                    {
+                        index = i;
+                        break;
+                    }
+                }
+                Entry[] updated;
+                if (index >= 0)
+                {
+                    updated = entries.clone();
+                    updated[index] = entry;
+                }
+                else
+                {
+                    updated = Arrays.copyOf(entries, entries.length + 1);
+                    updated[entries.length] = entry;
+                }
+                if (_entries.replace(resourceName, entries, updated))
+                {
+                    if (index < 0)
+                    {
+                        added();
+                    }
+                    break;
+                }
             }
-            if (contractName != null ? !contractName.equals(that.contractName) : that.contractName != null)
+
+            if (_size.get() > maxSize)
             {
-                return false;
+                evict(maxSize);
             }
+        }
 
-            return true;
+        private void added()
+        {
+            _size.incrementAndGet();
+            _statistics.recordAdded();
         }
 
-        @Override
-        public int hashCode()
+        /**
+         * Removes the resource names whose entries were not used since the last time they were
+         * considered, giving a second chance to the used ones.
+         */
+        private void evict(int maxSize)
         {
-            int result = resourceName != null ? resourceName.hashCode() : 0;
-            result = 31 * result + (libraryName != null ? libraryName.hashCode() : 0);
-            result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
-            result = 31 * result + (localePrefix != null ? localePrefix.hashCode() : 0);
-            result = 31 * result + (contractName != null ? contractName.hashCode() : 0);
-            return result;
+            for (int pass = 0; pass < 2 && _size.get() > maxSize; pass++)
+            {
+                Iterator<Map.Entry<String, Entry[]>> it = _entries.entrySet().iterator();
+                while (_size.get() > maxSize && it.hasNext())
+                {
+                    Map.Entry<String, Entry[]> mapEntry = it.next();
+                    Entry[] entries = mapEntry.getValue();
+                    boolean used = false;
+                    for (int i = 0; i < entries.length; i++)
+                    {
+                        if (entries[i].used)
+                        {
+                            entries[i].used = false;
+                            used = true;
+                        }
+                    }
+                    if (!used && _entries.remove(mapEntry.getKey(), entries))
+                    {
+                        _size.addAndGet(-entries.length);
+                        _statistics.recordEvictions(entries.length);
+                    }
+                }
+            }
         }
     }
 
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.faces.context.ExternalContext;
+
+import org.apache.myfaces.shared.util.MBeanUtils;
+
+/**
+ * Counters of the {@link ResourceHandlerCache}: hits, misses, misses answered by a "not found"
+ * entry, evictions and the current size. They can be registered in the platform MBeanServer as
+ * <code>org.apache.myfaces:type=ResourceHandlerCache,context=&lt;context path&gt;</code>.
+ * 
+ * @since 3.0.0
+ */
+public class ResourceHandlerCacheStatistics implements ResourceHandlerCacheStatisticsMBean
+{
+    private static final String INSTANCE_KEY = ResourceHandlerCacheStatistics.class.getName();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notFoundHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder size = new LongAdder();
+    private volatile long maxSize;
+
+    ResourceHandlerCacheStatistics()
+    {
+    }
+
+    /**
+     * Returns the statistics of the current application, creating them the first time, so the
+     * ones registered when the application starts are the ones the cache updates.
+     */
+    static ResourceHandlerCacheStatistics getCurrentInstance(ExternalContext externalContext)
+    {
+        Map<String, Object> applicationMap = externalContext.getApplicationMap();
+        ResourceHandlerCacheStatistics statistics = (ResourceHandlerCacheStatistics) applicationMap.get(INSTANCE_KEY);
+        if (statistics == null)
+        {
+            synchronized (ResourceHandlerCacheStatistics.class)
+            {
+                statistics = (ResourceHandlerCacheStatistics) applicationMap.get(INSTANCE_KEY);
+                if (statistics == null)
+                {
+                    statistics = new ResourceHandlerCacheStatistics();
+                    applicationMap.put(INSTANCE_KEY, statistics);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    void recordHit()
+    {
+        hits.increment();
+    }
+
+    void recordMiss()
+    {
+        misses.increment();
+    }
+
+    void recordNotFoundHit()
+    {
+        notFoundHits.increment();
+    }
+
+    void recordEvictions(int count)
+    {
+        evictions.add(count);
+        size.add(-count);
+    }
+
+    void recordAdded()
+    {
+        size.increment();
+    }
+
+    void setMaxSize(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getNotFoundHitCount()
+    {
+        return notFoundHits.sum();
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size.sum();
+    }
+
+    @Override
+    public long getMaxSize()
+    {
+        return maxSize;
+    }
+
+    @Override
+    public void resetCounters()
+    {
+        hits.reset();
+        misses.reset();
+        notFoundHits.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Registers the statistics in the platform MBeanServer, under the context path of the given
+     * application.
+     */
+    public static void register(ExternalContext externalContext, ResourceHandlerCacheStatistics statistics)
+    {
+        MBeanUtils.register(externalContext, "ResourceHandlerCache", statistics);
+    }
+
+    /**
+     * Unregisters the statistics registered for this application, if any.
+     */
+    public static void unregister(ExternalContext externalContext)
+    {
+        MBeanUtils.unregister(externalContext, "ResourceHandlerCache");
+    }
+}
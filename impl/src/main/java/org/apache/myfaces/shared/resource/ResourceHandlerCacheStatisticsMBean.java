@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+/**
+ * Management interface of {@link ResourceHandlerCacheStatistics}, registered when
+ * <code>org.apache.myfaces.RESOURCE_HANDLER_CACHE_JMX</code> is true.
+ * 
+ * @since 3.0.0
+ */
+public interface ResourceHandlerCacheStatisticsMBean
+{
+    /**
+     * @return number of lookups of a resource answered with a cached resource
+     */
+    long getHitCount();
+
+    /**
+     * @return number of resources that were not cached, so the resource loaders were asked for
+     * them unless they are known not to exist
+     */
+    long getMissCount();
+
+    double getHitRatio();
+
+    /**
+     * @return number of misses answered by a cached "not found" entry, without asking the
+     * resource loaders
+     */
+    long getNotFoundHitCount();
+
+    /**
+     * @return number of resources removed from the cache to make room for others
+     */
+    long getEvictionCount();
+
+    /**
+     * @return number of resources and "not found" entries in the cache
+     */
+    long getSize();
+
+    /**
+     * @return maximum number of entries kept for each kind of resource
+     */
+    long getMaxSize();
+
+    void resetCounters();
+}
@@ -101,6 +101,18 @@ public abstract class ResourceHandlerSupport
      */
     public abstract long getMaxTimeExpires();
     
+    /**
+     * Check if the request paths of the resources carry the hash of their content, so
+     * they can be cached by the user agent for as long as the content does not change.
+     * 
+     * @since 3.0.0
+     * @return
+     */
+    public boolean isContentHashEnabled()
+    {
+        return false;
+    }
+
     public String getResourceIdentifier()
     {
         return ResourceHandler.RESOURCE_IDENTIFIER;
@@ -18,6 +18,7 @@
  */
 package org.apache.myfaces.shared.resource;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -37,6 +38,16 @@ public class ResourceImpl extends Resource implements ContractResource
     protected final static String JAVAX_FACES_LIBRARY_NAME = "javax.faces";
     protected final static String JSF_JS_RESOURCE_NAME = "jsf.js";
 
+    /**
+     * The request parameter that carries the hash of the content of the resource.
+     */
+    public static final String CONTENT_HASH_PARAM = "v";
+
+    /**
+     * One year in seconds, the max-age of the resources requested with the hash of their content.
+     */
+    private static final long IMMUTABLE_MAX_AGE = 31536000L;
+
 
     private ResourceMeta _resourceMeta;
     private ResourceLoader _resourceLoader;
@@ -44,6 +55,7 @@ public class ResourceImpl extends Resource implements ContractResource
     
     private URL _url;
     private String _requestPath;
+    private String _contentHash;
     
     public ResourceImpl(ResourceMeta resourceMeta, 
             ResourceLoader resourceLoader, ResourceHandlerSupport support, String contentType)
@@ -60,12 +72,20 @@ public class ResourceImpl extends Resource implements ContractResource
             ResourceLoader resourceLoader, ResourceHandlerSupport support, String contentType,
             URL url, String requestPath)
     {
+        this(resourceMeta, resourceLoader, support, contentType, url, requestPath, null);
+    }
+
+    public ResourceImpl(ResourceMeta resourceMeta, 
+            ResourceLoader resourceLoader, ResourceHandlerSupport support, String contentType,
+            URL url, String requestPath, String contentHash)
+    {
         
         _resourceMeta = resourceMeta;
         _resourceLoader = resourceLoader;
         _resourceHandlerSupport = support;
         _url = url;
         _requestPath = requestPath;
+        _contentHash = contentHash;
         setLibraryName(resourceMeta.getLibraryName());
         setResourceName(resourceMeta.getResourceName());
         setContentType(contentType);
@@ -150,6 +170,12 @@ public class ResourceImpl extends Resource implements ContractResource
                 path = path + (useAmp ? '&' : '?') + "con=" + _resourceMeta.getContractName();
                 useAmp = true;
             }
+            String contentHash = getContentHash();
+            if (contentHash != null)
+            {
+                path = path + (useAmp ? '&' : '?') + CONTENT_HASH_PARAM + '=' + contentHash;
+                useAmp = true;
+            }
             _requestPath = facesContext.getApplication().getViewHandler().getResourceURL(facesContext, path);
         }
         return _requestPath;
@@ -200,6 +226,13 @@ public class ResourceImpl extends Resource implements ContractResource
                     // Force to expire now to prevent caching on development time.
                     expires = System.currentTimeMillis();
                 }
+                else if (isRequestedWithContentHash(facesContext))
+                {
+                    // The URL changes with the content, so the user agent can keep it without
+                    // revalidating it.
+                    expires = System.currentTimeMillis() + IMMUTABLE_MAX_AGE * 1000;
+                    headers.put("Cache-Control", "public, max-age=" + IMMUTABLE_MAX_AGE + ", immutable");
+                }
                 else
                 {
                     expires = System.currentTimeMillis() + _resourceHandlerSupport.getMaxTimeExpires();
@@ -216,6 +249,43 @@ public class ResourceImpl extends Resource implements ContractResource
         }
     }
 
+    /**
+     * @return true if the resource was requested with the current hash of its content
+     */
+    private boolean isRequestedWithContentHash(FacesContext facesContext)
+    {
+        String requestedHash = facesContext.getExternalContext().getRequestParameterMap().get(CONTENT_HASH_PARAM);
+        return requestedHash != null && requestedHash.equals(getContentHash());
+    }
+
+    /**
+     * Returns the hash of the content of the resource, computed the first time it is needed.
+     * The hash is kept by the ResourceHandler with the rest of the cached information of the
+     * resource, so it is computed once for each resource.
+     * 
+     * @return the hash of the content, or null if the request paths do not carry it
+     */
+    public String getContentHash()
+    {
+        if (_contentHash == null && _resourceHandlerSupport.isContentHashEnabled())
+        {
+            try
+            {
+                InputStream in = getInputStream();
+                if (in != null)
+                {
+                    _contentHash = ResourceLoaderUtils.computeContentHash(in);
+                }
+            }
+            catch (IOException e)
+            {
+                // without hash the resource is cached as usual
+                return null;
+            }
+        }
+        return _contentHash;
+    }
+
     @Override
     public URL getURL()
     {
@@ -228,6 +298,20 @@ public class ResourceImpl extends Resource implements ContractResource
         return _url;
     }
 
+    /**
+     * @return the file the bytes of this resource are read from, or null if the resource does not
+     * come from a file or its content is filtered before it is sent
+     */
+    public File getFile()
+    {
+        if (couldResourceContainValueExpressions())
+        {
+            return null;
+        }
+        URL url = getURL();
+        return url == null ? null : ResourceLoaderUtils.getResourceFile(url);
+    }
+
     @Override
     public boolean userAgentNeedsUpdate(FacesContext context)
     {
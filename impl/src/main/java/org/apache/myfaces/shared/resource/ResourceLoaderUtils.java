@@ -20,9 +20,13 @@ package org.apache.myfaces.shared.resource;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -43,6 +47,12 @@ public class ResourceLoaderUtils
     
     private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
 
+    /**
+     * Returned by {@link #parseByteRange(String, long)} when no byte of the requested range is
+     * in the resource.
+     */
+    public static final long[] UNSATISFIABLE_BYTE_RANGE = new long[0];
+
     public static String formatDateHeader(long value)
     {
         SimpleDateFormat format = new SimpleDateFormat(
@@ -92,6 +102,191 @@ public class ResourceLoaderUtils
         }
     }
 
+    /**
+     * @return the file the given URL points to, or null if it is not a readable file
+     */
+    public static File getResourceFile(URL url)
+    {
+        if (!"file".equals(url.getProtocol()))
+        {
+            return null;
+        }
+        File file;
+        try
+        {
+            file = new File(url.toURI());
+        }
+        catch (URISyntaxException | IllegalArgumentException e)
+        {
+            file = new File(url.getPath());
+        }
+        return file.isFile() && file.canRead() ? file : null;
+    }
+
+    /**
+     * @return an entity tag derived from the size and the modification time of a file
+     */
+    public static String formatETag(long length, long lastModified)
+    {
+        return formatETag(length, lastModified, null);
+    }
+
+    /**
+     * @param contentEncoding the content coding of the sent representation, or null if the file
+     * is sent as it is
+     * @return an entity tag derived from the size and the modification time of a file, which
+     * differs for each content coding
+     */
+    public static String formatETag(long length, long lastModified, String contentEncoding)
+    {
+        String tag = Long.toHexString(length) + '-' + Long.toHexString(lastModified);
+        return '"' + (contentEncoding == null ? tag : tag + '-' + contentEncoding) + '"';
+    }
+
+    /**
+     * Evaluates an If-None-Match header, with the weak comparison of RFC 7232.
+     * 
+     * @return true if the header is "*" or contains the given entity tag
+     */
+    public static boolean isETagMatching(String ifNoneMatch, String etag)
+    {
+        String opaqueTag = etag.startsWith("W/") ? etag.substring(2) : etag;
+        String[] tags = StringUtils.splitShortString(ifNoneMatch, ',');
+        for (String tag : tags)
+        {
+            tag = tag.trim();
+            if ("*".equals(tag))
+            {
+                return true;
+            }
+            if (tag.startsWith("W/"))
+            {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaqueTag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a Range header that asks for a single range of bytes. Other units and several ranges
+     * are not supported, the whole resource is sent for them.
+     * 
+     * @param range the value of the Range header
+     * @param length the size of the resource
+     * @return the first and the last position of the range, {@link #UNSATISFIABLE_BYTE_RANGE} or
+     * null if the header must be ignored
+     */
+    public static long[] parseByteRange(String range, long length)
+    {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0)
+        {
+            return null;
+        }
+        int dash = range.indexOf('-', 6);
+        if (dash < 0)
+        {
+            return null;
+        }
+        String first = range.substring(6, dash).trim();
+        String last = range.substring(dash + 1).trim();
+        long start;
+        long end;
+        try
+        {
+            if (first.isEmpty())
+            {
+                // suffix range, the last bytes of the resource
+                long suffixLength = Long.parseLong(last);
+                if (suffixLength < 0)
+                {
+                    return null;
+                }
+                if (suffixLength == 0 || length == 0)
+                {
+                    return UNSATISFIABLE_BYTE_RANGE;
+                }
+                start = Math.max(0, length - suffixLength);
+                end = length - 1;
+            }
+            else
+            {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                if (start < 0 || end < start)
+                {
+                    return null;
+                }
+                if (start >= length)
+                {
+                    return UNSATISFIABLE_BYTE_RANGE;
+                }
+                end = Math.min(end, length - 1);
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+        return new long[] {start, end};
+    }
+
+    /**
+     * @return the hash of the content read from the stream, which is closed
+     */
+    public static String computeContentHash(InputStream in) throws IOException
+    {
+        MessageDigest digest = createContentDigest();
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int length;
+            while ((length = in.read(buffer)) >= 0)
+            {
+                digest.update(buffer, 0, length);
+            }
+        }
+        finally
+        {
+            in.close();
+        }
+        return formatContentHash(digest.digest());
+    }
+
+    /**
+     * @return the hash of the content, 20 hexadecimal digits taken from its SHA-256 digest
+     */
+    public static String computeContentHash(byte[] content)
+    {
+        return formatContentHash(createContentDigest().digest(content));
+    }
+
+    private static MessageDigest createContentDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String formatContentHash(byte[] digest)
+    {
+        char[] hex = new char[20];
+        for (int i = 0; i < hex.length / 2; i++)
+        {
+            hex[i * 2] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
     public static long getResourceLastModified(URLConnection connection) throws IOException
     {
         long modified;
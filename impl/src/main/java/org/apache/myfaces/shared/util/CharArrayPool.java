@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+/**
+ * Per-thread pool of the char arrays that buffer the rendered output: the chunks of a
+ * {@link StreamCharBuffer} and the array of a FastWriter. A request renders on one thread, so
+ * the arrays a request gives back at the end of rendering are taken again by the next request
+ * on that thread, instead of being allocated again.
+ * <p>
+ * Only arrays whose length is a power of two between 256 and
+ * <code>oam.chararraypool.maxlength</code> (64K chars by default) are pooled, and each thread
+ * keeps at most <code>oam.chararraypool.maxarrays</code> (4 by default) arrays of each length.
+ * The pool of a thread only holds char arrays, so it does not keep the web application
+ * classloader alive.
+ * </p>
+ * <p>
+ * An array must only be given back by its owner once nothing refers to it anymore.
+ * </p>
+ * 
+ * @since 3.0.0
+ */
+public final class CharArrayPool
+{
+    private static final int MIN_POOLED_LENGTH = 256;
+    private static final int MAX_POOLED_LENGTH = Integer.highestOneBit(Math.max(MIN_POOLED_LENGTH,
+            Integer.getInteger("oam.chararraypool.maxlength", 64 * 1024)));
+    private static final int MAX_ARRAYS_PER_LENGTH = Integer.getInteger("oam.chararraypool.maxarrays", 4);
+
+    private static final int LENGTHS = Integer.numberOfTrailingZeros(MAX_POOLED_LENGTH / MIN_POOLED_LENGTH) + 1;
+
+    /**
+     * For each pooled length, a stack of free arrays with empty slots set to null.
+     */
+    private static final ThreadLocal<char[][][]> POOL = new ThreadLocal<char[][][]>();
+
+    private static final CharArrayPoolStatistics STATISTICS = new CharArrayPoolStatistics();
+
+    private CharArrayPool()
+    {
+    }
+
+    public static CharArrayPoolStatistics getStatistics()
+    {
+        return STATISTICS;
+    }
+
+    /**
+     * @param minLength the number of chars needed
+     * @return an array of at least minLength chars, with undefined content
+     */
+    public static char[] acquire(int minLength)
+    {
+        if (minLength > MAX_POOLED_LENGTH || MAX_ARRAYS_PER_LENGTH <= 0)
+        {
+            STATISTICS.recordAllocation(minLength);
+            return new char[minLength];
+        }
+
+        int index = indexOf(Math.max(minLength, MIN_POOLED_LENGTH));
+        char[][][] pool = POOL.get();
+        if (pool != null)
+        {
+            char[][] arrays = pool[index];
+            for (int i = arrays.length - 1; i >= 0; i--)
+            {
+                char[] array = arrays[i];
+                if (array != null)
+                {
+                    arrays[i] = null;
+                    STATISTICS.recordReuse();
+                    return array;
+                }
+            }
+        }
+
+        int length = MIN_POOLED_LENGTH << index;
+        STATISTICS.recordAllocation(length);
+        return new char[length];
+    }
+
+    /**
+     * Gives an array back to the pool of the current thread. Arrays that were not created by
+     * {@link #acquire(int)} or do not fit in the pool anymore are left to the garbage collector.
+     */
+    public static void release(char[] array)
+    {
+        if (array == null)
+        {
+            return;
+        }
+        int length = array.length;
+        if (length < MIN_POOLED_LENGTH || length > MAX_POOLED_LENGTH || Integer.bitCount(length) != 1
+                || MAX_ARRAYS_PER_LENGTH <= 0)
+        {
+            STATISTICS.recordDiscard();
+            return;
+        }
+
+        char[][][] pool = POOL.get();
+        if (pool == null)
+        {
+            pool = new char[LENGTHS][MAX_ARRAYS_PER_LENGTH][];
+            POOL.set(pool);
+        }
+        char[][] arrays = pool[indexOf(length)];
+        for (int i = 0; i < arrays.length; i++)
+        {
+            if (arrays[i] == null)
+            {
+                arrays[i] = array;
+                STATISTICS.recordRelease();
+                return;
+            }
+            if (arrays[i] == array)
+            {
+                // already given back
+                return;
+            }
+        }
+        STATISTICS.recordDiscard();
+    }
+
+    /**
+     * @return the index of the smallest pooled length that is at least length
+     */
+    private static int indexOf(int length)
+    {
+        return 32 - Integer.numberOfLeadingZeros((length - 1) / MIN_POOLED_LENGTH);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.faces.context.ExternalContext;
+
+import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
+
+/**
+ * Counters of the {@link CharArrayPool}: how many render buffers were taken from the pool and how
+ * many chars had to be allocated instead. Sampling the allocated chars over time gives the
+ * allocation rate of the render buffers. They can be registered in the platform MBeanServer as
+ * <code>org.apache.myfaces:type=CharArrayPool,context=&lt;context path&gt;</code>.
+ * 
+ * @since 3.0.0
+ */
+public class CharArrayPoolStatistics implements CharArrayPoolStatisticsMBean
+{
+    /**
+     * Registers the counters of the pool of render buffers in the platform MBeanServer, as
+     * org.apache.myfaces:type=CharArrayPool,context=&lt;context path&gt;.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="render", tags="performance")
+    public static final String CHAR_ARRAY_POOL_JMX_PARAM = "org.apache.myfaces.CHAR_ARRAY_POOL_JMX";
+    public static final boolean CHAR_ARRAY_POOL_JMX_PARAM_DEFAULT = false;
+
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder allocatedChars = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+
+    CharArrayPoolStatistics()
+    {
+    }
+
+    void recordReuse()
+    {
+        reused.increment();
+    }
+
+    void recordAllocation(int length)
+    {
+        allocated.increment();
+        allocatedChars.add(length);
+    }
+
+    void recordRelease()
+    {
+        released.increment();
+    }
+
+    void recordDiscard()
+    {
+        discarded.increment();
+    }
+
+    @Override
+    public long getReuseCount()
+    {
+        return reused.sum();
+    }
+
+    @Override
+    public long getAllocationCount()
+    {
+        return allocated.sum();
+    }
+
+    @Override
+    public long getAllocatedBytes()
+    {
+        return allocatedChars.sum() * 2;
+    }
+
+    @Override
+    public double getReuseRatio()
+    {
+        long reuseCount = getReuseCount();
+        long total = reuseCount + getAllocationCount();
+        return total == 0 ? 0 : (double) reuseCount / total;
+    }
+
+    @Override
+    public long getReleaseCount()
+    {
+        return released.sum();
+    }
+
+    @Override
+    public long getDiscardCount()
+    {
+        return discarded.sum();
+    }
+
+    @Override
+    public void resetCounters()
+    {
+        reused.reset();
+        allocated.reset();
+        allocatedChars.reset();
+        released.reset();
+        discarded.reset();
+    }
+
+    /**
+     * Registers the statistics of the pool in the platform MBeanServer, under the context path of
+     * the given application.
+     */
+    public static void register(ExternalContext externalContext)
+    {
+        MBeanUtils.register(externalContext, "CharArrayPool", CharArrayPool.getStatistics());
+    }
+
+    /**
+     * Unregisters the statistics registered for this application, if any.
+     */
+    public static void unregister(ExternalContext externalContext)
+    {
+        MBeanUtils.unregister(externalContext, "CharArrayPool");
+    }
+}
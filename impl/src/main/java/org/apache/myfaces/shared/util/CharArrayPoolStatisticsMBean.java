@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+/**
+ * Management interface of {@link CharArrayPoolStatistics}, registered when
+ * <code>org.apache.myfaces.CHAR_ARRAY_POOL_JMX</code> is true.
+ * 
+ * @since 3.0.0
+ */
+public interface CharArrayPoolStatisticsMBean
+{
+    /**
+     * @return number of render buffers taken from the pool
+     */
+    long getReuseCount();
+
+    /**
+     * @return number of render buffers that had to be allocated, because the pool of the thread was
+     * empty or the buffer was too big to be pooled
+     */
+    long getAllocationCount();
+
+    /**
+     * @return bytes allocated for render buffers, the allocation rate is the difference between two
+     * samples divided by the time between them
+     */
+    long getAllocatedBytes();
+
+    double getReuseRatio();
+
+    /**
+     * @return number of render buffers given back to the pool
+     */
+    long getReleaseCount();
+
+    /**
+     * @return number of render buffers left to the garbage collector, because the pool of the thread
+     * was full or their size is not pooled
+     */
+    long getDiscardCount();
+
+    void resetCounters();
+}
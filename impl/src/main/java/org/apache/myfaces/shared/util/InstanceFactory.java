@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.faces.FacesException;
+
+/**
+ * Creates instances of the components, converters, validators and behaviors registered in the
+ * Application, without the reflective access checks of <code>Class.newInstance()</code> and
+ * <code>Constructor.newInstance()</code> on every call.
+ * <p>
+ * The factory of a class is looked up once and kept in a {@link ClassValue}, so it lives as long as
+ * the class itself and does not keep the web application classloader alive. For a public class with
+ * a public constructor that is visible from the MyFaces classloader, the factory is a lambda spun by
+ * {@link LambdaMetafactory}, which the JIT can inline like a plain <code>new</code>. Classes of the
+ * web application are not visible from there, so they get a constructor {@link MethodHandle} instead.
+ * Classes without an accessible constructor keep the reflective path.
+ * </p>
+ * 
+ * @since 3.0.0
+ */
+public final class InstanceFactory
+{
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType SUPPLIER_TYPE = MethodType.methodType(Supplier.class);
+    private static final MethodType FUNCTION_TYPE = MethodType.methodType(Function.class);
+    private static final MethodType NO_ARG_CONSTRUCTOR = MethodType.methodType(void.class);
+    private static final MethodType CLASS_ARG_CONSTRUCTOR = MethodType.methodType(void.class, Class.class);
+
+    private static final ClassValue<Supplier<?>> NO_ARG_FACTORIES = new ClassValue<Supplier<?>>()
+    {
+        @Override
+        protected Supplier<?> computeValue(Class<?> type)
+        {
+            return createNoArgFactory(type);
+        }
+    };
+
+    private static final ClassValue<Function<Class<?>, ?>> CLASS_ARG_FACTORIES
+            = new ClassValue<Function<Class<?>, ?>>()
+    {
+        @Override
+        protected Function<Class<?>, ?> computeValue(Class<?> type)
+        {
+            return createClassArgFactory(type);
+        }
+    };
+
+    private InstanceFactory()
+    {
+    }
+
+    /**
+     * Creates a new instance of the given class with its no-arg constructor, like
+     * <code>type.newInstance()</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(Class<T> type) throws InstantiationException, IllegalAccessException
+    {
+        Supplier<?> factory = NO_ARG_FACTORIES.get(type);
+        if (factory == null)
+        {
+            return type.newInstance();
+        }
+        return (T) factory.get();
+    }
+
+    /**
+     * Returns the factory calling the public constructor of the given class that takes a single
+     * <code>Class</code> argument, as the one of a converter created for a target class, or null if
+     * the class has no such constructor.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Function<Class<?>, T> getClassArgumentFactory(Class<T> type)
+    {
+        return (Function<Class<?>, T>) CLASS_ARG_FACTORIES.get(type);
+    }
+
+    private static Supplier<?> createNoArgFactory(Class<?> type)
+    {
+        if (!isInstantiable(type))
+        {
+            return null;
+        }
+        try
+        {
+            MethodHandle constructor = MethodHandles.publicLookup().findConstructor(type, NO_ARG_CONSTRUCTOR);
+            if (isVisible(type))
+            {
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get", SUPPLIER_TYPE,
+                        MethodType.methodType(Object.class), constructor, MethodType.methodType(type));
+                return (Supplier<?>) site.getTarget().invoke();
+            }
+            return new MethodHandleSupplier(constructor.asType(MethodType.methodType(Object.class)));
+        }
+        catch (Throwable e)
+        {
+            // no public no-arg constructor, keep the reflective path and its exceptions
+            return null;
+        }
+    }
+
+    private static Function<Class<?>, ?> createClassArgFactory(Class<?> type)
+    {
+        if (!isInstantiable(type))
+        {
+            return null;
+        }
+        try
+        {
+            MethodHandle constructor = MethodHandles.publicLookup().findConstructor(type, CLASS_ARG_CONSTRUCTOR);
+            if (isVisible(type))
+            {
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply", FUNCTION_TYPE,
+                        MethodType.methodType(Object.class, Object.class), constructor,
+                        MethodType.methodType(type, Class.class));
+                return (Function<Class<?>, ?>) site.getTarget().invoke();
+            }
+            return new MethodHandleFunction(constructor.asType(MethodType.methodType(Object.class, Class.class)));
+        }
+        catch (Throwable e)
+        {
+            return null;
+        }
+    }
+
+    private static boolean isInstantiable(Class<?> type)
+    {
+        int modifiers = type.getModifiers();
+        return Modifier.isPublic(modifiers) && !Modifier.isAbstract(modifiers) && !type.isInterface()
+                && !type.isArray() && !type.isPrimitive();
+    }
+
+    /**
+     * A lambda spun by {@link LambdaMetafactory} links the class from the MyFaces classloader, so it
+     * can only be used for classes that classloader resolves to the same class.
+     */
+    private static boolean isVisible(Class<?> type)
+    {
+        try
+        {
+            return Class.forName(type.getName(), false, InstanceFactory.class.getClassLoader()) == type;
+        }
+        catch (ClassNotFoundException e)
+        {
+            return false;
+        }
+        catch (LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    private static FacesException rethrow(Throwable e)
+    {
+        if (e instanceof RuntimeException)
+        {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error)
+        {
+            throw (Error) e;
+        }
+        return new FacesException(e);
+    }
+
+    private static final class MethodHandleSupplier implements Supplier<Object>
+    {
+        private final MethodHandle constructor;
+
+        MethodHandleSupplier(MethodHandle constructor)
+        {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public Object get()
+        {
+            try
+            {
+                return constructor.invokeExact();
+            }
+            catch (Throwable e)
+            {
+                throw rethrow(e);
+            }
+        }
+    }
+
+    private static final class MethodHandleFunction implements Function<Class<?>, Object>
+    {
+        private final MethodHandle constructor;
+
+        MethodHandleFunction(MethodHandle constructor)
+        {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public Object apply(Class<?> argument)
+        {
+            try
+            {
+                return constructor.invokeExact(argument);
+            }
+            catch (Throwable e)
+            {
+                throw rethrow(e);
+            }
+        }
+    }
+}
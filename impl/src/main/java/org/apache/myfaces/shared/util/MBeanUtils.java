@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.faces.context.ExternalContext;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Registers the statistics MBeans of an application in the platform MBeanServer, as
+ * <code>org.apache.myfaces:type=&lt;type&gt;,context=&lt;context path&gt;</code>, and remembers
+ * their names in the application map so they can be unregistered when the application stops.
+ * 
+ * @since 3.0.0
+ */
+public final class MBeanUtils
+{
+    private static final Logger log = Logger.getLogger(MBeanUtils.class.getName());
+
+    private static final String OBJECT_NAME_KEY_PREFIX = MBeanUtils.class.getName() + ".OBJECT_NAME.";
+
+    private MBeanUtils()
+    {
+    }
+
+    /**
+     * Registers the MBean under the context path of the given application, replacing the one of a
+     * previous instance of the same application.
+     */
+    public static void register(ExternalContext externalContext, String type, Object mbean)
+    {
+        try
+        {
+            String context = externalContext.getApplicationContextPath();
+            ObjectName name = new ObjectName("org.apache.myfaces:type=" + type + ",context="
+                    + ObjectName.quote(context == null || context.isEmpty() ? "/" : context));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+            {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+            externalContext.getApplicationMap().put(OBJECT_NAME_KEY_PREFIX + type, name);
+        }
+        catch (JMException | SecurityException e)
+        {
+            log.log(Level.WARNING, "Cannot register the " + type + " statistics", e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean of the given type registered for this application, if any.
+     */
+    public static void unregister(ExternalContext externalContext, String type)
+    {
+        ObjectName name = (ObjectName) externalContext.getApplicationMap().remove(OBJECT_NAME_KEY_PREFIX + type);
+        if (name != null)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+            catch (JMException | SecurityException e)
+            {
+                log.log(Level.FINE, "Cannot unregister the " + type + " statistics", e);
+            }
+        }
+    }
+}
@@ -20,11 +20,19 @@ package org.apache.myfaces.shared.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.security.AccessController;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
@@ -36,6 +44,8 @@ import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
 import javax.crypto.SecretKey;
@@ -144,7 +154,10 @@ public final class StateUtils
     /**
      * Defines the factory class name using for serialize/deserialize the view state returned 
      * by state manager into a byte array. The expected class must implement
-     * org.apache.myfaces.shared.util.serial.SerialFactory interface.
+     * org.apache.myfaces.shared.util.serial.SerialFactory interface. The factory is used for the client
+     * side state and for the server side state serialized into the session.
+     * org.apache.myfaces.application.viewstate.CompactSerialFactory writes a compact binary format
+     * that is smaller and faster than java serialization.
      */
     @JSFWebConfigParam(name="org.apache.myfaces.SERIAL_FACTORY", since="1.1",group="state",tags="performance")
     public static final String SERIAL_FACTORY = INIT_PREFIX + "SERIAL_FACTORY";
@@ -242,24 +255,63 @@ public final class StateUtils
 
     public static final String construct(Object object, ExternalContext ctx)
     {
-        byte[] bytes = getAsByteArray(object, ctx);
-        if( enableCompression(ctx) )
+        StringWriter writer = new StringWriter(1024);
+        try
         {
-            bytes = compress(bytes);
+            construct(object, ctx, writer);
         }
-        if(isSecure(ctx))
+        catch (IOException e)
         {
-            bytes = encrypt(bytes, ctx);
+            throw new FacesException(e);
         }
-        bytes = encode(bytes);
-        try
+        return writer.toString();
+    }
+
+    /**
+     * Writes the same String as {@link #construct(Object, ExternalContext)} into the writer, without creating
+     * the intermediate byte arrays: the object is serialized through the compression, the cipher and the base64
+     * encoding straight into the writer.
+     */
+    public static final void construct(Object object, ExternalContext ctx, Writer writer) throws IOException
+    {
+        OutputStream os = Base64.getEncoder().wrap(new WriterOutputStream(writer));
+        if (isSecure(ctx))
+        {
+            testConfiguration(ctx);
+            SecretKey secretKey = (SecretKey) getSecret(ctx);
+            SecretKey macSecretKey = (SecretKey) getMacSecret(ctx);
+            try
+            {
+                // EtM Composition Approach: the mac of the encrypted bytes is appended to them
+                os = new CipherOutputStream(new MacOutputStream(os, initMac(macSecretKey, ctx)),
+                        initCipher(Cipher.ENCRYPT_MODE, secretKey, ctx));
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new FacesException(e);
+            }
+        }
+        if (enableCompression(ctx))
         {
-            return new String(bytes, ZIP_CHARSET);
+            os = new GZIPOutputStream(os, 1024);
         }
-        catch (UnsupportedEncodingException e)
+
+        ObjectOutputStream writerStream = getSerialFactory(ctx).getObjectOutputStream(os);
+        writerStream.writeObject(object);
+        // finishes the compression, the cipher, the mac and the base64 padding
+        writerStream.close();
+    }
+
+    private static SerialFactory getSerialFactory(ExternalContext ctx)
+    {
+        // get the Factory that was instantiated @ startup
+        SerialFactory serialFactory = (SerialFactory) ctx.getApplicationMap().get(SERIAL_FACTORY);
+        
+        if(serialFactory == null)
         {
-            throw new FacesException(e);
+            throw new NullPointerException("serialFactory");
         }
+        return serialFactory;
     }
 
     /**
@@ -311,32 +363,13 @@ public final class StateUtils
         testConfiguration(ctx);
         
         SecretKey secretKey = (SecretKey) getSecret(ctx);
-        String algorithm = findAlgorithm(ctx);
-        String algorithmParams = findAlgorithmParams(ctx);
-        byte[] iv = findInitializationVector(ctx);
-        
         SecretKey macSecretKey = (SecretKey) getMacSecret(ctx);
-        String macAlgorithm = findMacAlgorithm(ctx);
                 
         try
         {
             // keep local to avoid threading issue
-            Mac mac = Mac.getInstance(macAlgorithm);
-            mac.init(macSecretKey);
-            Cipher cipher = Cipher.getInstance(algorithm + '/' + algorithmParams);
-            if (iv != null)
-            {
-                IvParameterSpec ivSpec = new IvParameterSpec(iv);
-                cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
-            }
-            else
-            {
-                cipher.init(Cipher.ENCRYPT_MODE, secretKey);
-            }
-            if (log.isLoggable(Level.FINE))
-            {
-                log.fine("encrypting w/ " + algorithm + '/' + algorithmParams);
-            }
+            Mac mac = initMac(macSecretKey, ctx);
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, secretKey, ctx);
             
             //EtM Composition Approach
             int macLenght = mac.getMacLength();
@@ -353,6 +386,38 @@ public final class StateUtils
         }
     }
 
+    private static Mac initMac(SecretKey macSecretKey, ExternalContext ctx) throws GeneralSecurityException
+    {
+        Mac mac = Mac.getInstance(findMacAlgorithm(ctx));
+        mac.init(macSecretKey);
+        return mac;
+    }
+
+    private static Cipher initCipher(int mode, SecretKey secretKey, ExternalContext ctx)
+            throws GeneralSecurityException
+    {
+        String algorithm = findAlgorithm(ctx);
+        String algorithmParams = findAlgorithmParams(ctx);
+        byte[] iv = findInitializationVector(ctx);
+
+        Cipher cipher = Cipher.getInstance(algorithm + '/' + algorithmParams);
+        if (iv != null)
+        {
+            IvParameterSpec ivSpec = new IvParameterSpec(iv);
+            cipher.init(mode, secretKey, ivSpec);
+        }
+        else
+        {
+            cipher.init(mode, secretKey);
+        }
+        if (log.isLoggable(Level.FINE))
+        {
+            log.fine((mode == Cipher.ENCRYPT_MODE ? "encrypting" : "decrypting")
+                    + " w/ " + algorithm + '/' + algorithmParams);
+        }
+        return cipher;
+    }
+
     public static final byte[] compress(byte[] bytes)
     {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -384,7 +449,6 @@ public final class StateUtils
      */
     public static final Object reconstruct(String string, ExternalContext ctx)
     {
-        byte[] bytes;
         try
         {
             if(log.isLoggable(Level.FINE))
@@ -392,17 +456,31 @@ public final class StateUtils
                 log.fine("Processing state : " + string);
             }
 
-            bytes = string.getBytes(ZIP_CHARSET);
-            bytes = decode(bytes);
+            // The state is decoded, decrypted and decompressed while it is deserialized, without
+            // creating a byte array for every step.
+            int length = getDecodedLength(string);
+            InputStream is;
             if(isSecure(ctx))
             {
-                bytes = decrypt(bytes, ctx);
+                testConfiguration(ctx);
+                // EtM Composition Approach: nothing is decrypted or deserialized before the mac is verified,
+                // which takes a first pass over the state.
+                SecretKey secretKey = (SecretKey) getSecret(ctx);
+                Mac mac = initMac((SecretKey) getMacSecret(ctx), ctx);
+                length -= mac.getMacLength();
+                verifyMac(string, length, mac);
+                is = new CipherInputStream(new LimitedInputStream(decoding(string), length),
+                        initCipher(Cipher.DECRYPT_MODE, secretKey, ctx));
+            }
+            else
+            {
+                is = decoding(string);
             }
             if( enableCompression(ctx) )
             {
-                bytes = decompress(bytes);
+                is = new GZIPInputStream(is, 1024);
             }
-            return getAsObject(bytes, ctx);
+            return readObject(is, ctx);
         }
         catch (Throwable e)
         {
@@ -414,6 +492,56 @@ public final class StateUtils
         }
     }
 
+    private static InputStream decoding(String string)
+    {
+        return Base64.getDecoder().wrap(new StringInputStream(string));
+    }
+
+    private static int getDecodedLength(String string)
+    {
+        int length = string.length();
+        while (length > 0 && string.charAt(length - 1) == '=')
+        {
+            length--;
+        }
+        return (int) (length * 3L / 4);
+    }
+
+    private static void verifyMac(String string, int length, Mac mac) throws IOException
+    {
+        InputStream is = decoding(string);
+        byte[] buffer = new byte[Math.min(Math.max(length, 16), 4096)];
+        int remaining = length;
+        while (remaining > 0)
+        {
+            int read = is.read(buffer, 0, Math.min(remaining, buffer.length));
+            if (read < 0)
+            {
+                throw new ViewExpiredException();
+            }
+            mac.update(buffer, 0, read);
+            remaining -= read;
+        }
+
+        byte[] signedDigestHash = mac.doFinal();
+        byte[] digestHash = new byte[signedDigestHash.length];
+        int offset = 0;
+        while (offset < digestHash.length)
+        {
+            int read = is.read(digestHash, offset, digestHash.length - offset);
+            if (read < 0)
+            {
+                throw new ViewExpiredException();
+            }
+            offset += read;
+        }
+        // MYFACES-2934 Must compare *ALL* bytes of the hash, MessageDigest.isEqual does it in constant time
+        if (!MessageDigest.isEqual(signedDigestHash, digestHash))
+        {
+            throw new ViewExpiredException();
+        }
+    }
+
     public static final byte[] decode(byte[] bytes)
     {
         return Base64.getDecoder().decode(bytes);
@@ -464,33 +592,13 @@ public final class StateUtils
         testConfiguration(ctx);
                 
         SecretKey secretKey = (SecretKey) getSecret(ctx);
-        String algorithm = findAlgorithm(ctx);
-        String algorithmParams = findAlgorithmParams(ctx);
-        byte[] iv = findInitializationVector(ctx);
-        
         SecretKey macSecretKey = (SecretKey) getMacSecret(ctx);
-        String macAlgorithm = findMacAlgorithm(ctx);
 
         try
         {
             // keep local to avoid threading issue
-            Mac mac = Mac.getInstance(macAlgorithm);
-            mac.init(macSecretKey);
-            Cipher cipher = Cipher.getInstance(algorithm + '/'
-                    + algorithmParams);
-            if (iv != null)
-            {
-                IvParameterSpec ivSpec = new IvParameterSpec(iv);
-                cipher.init(Cipher.DECRYPT_MODE, secretKey, ivSpec);
-            }
-            else
-            {
-                cipher.init(Cipher.DECRYPT_MODE, secretKey);
-            }
-            if (log.isLoggable(Level.FINE))
-            {
-                log.fine("decrypting w/ " + algorithm + '/' + algorithmParams);
-            }
+            Mac mac = initMac(macSecretKey, ctx);
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, secretKey, ctx);
 
             //EtM Composition Approach
             int macLenght = mac.getMacLength();
@@ -541,103 +649,101 @@ public final class StateUtils
         try
         {
             input = new ByteArrayInputStream(bytes);
-
-            // get the Factory that was instantiated @ startup
-            SerialFactory serialFactory = (SerialFactory) ctx.getApplicationMap().get(SERIAL_FACTORY);
-            
-            if(serialFactory == null)
-            {
-                throw new NullPointerException("serialFactory");
-            }
-            
-            ObjectInputStream s = null;
-            Exception pendingException = null;
-            try
+            return readObject(input, ctx);
+        }
+        finally
+        {
+            if (input != null)
             {
-                s = serialFactory.getObjectInputStream(input); 
-                Object object = null;
-                if (System.getSecurityManager() != null)
+                try
                 {
-                    final ObjectInputStream ois = s;
-                    object = AccessController.doPrivileged(new PrivilegedExceptionAction<Object>()
-                    {
-                        //Put IOException and ClassNotFoundException as "checked" exceptions,
-                        //so AccessController wrap them in a PrivilegedActionException
-                        public Object run() throws PrivilegedActionException, 
-                                                   IOException, ClassNotFoundException
-                        {
-                            return ois.readObject();
-                        }
-                    });
-                    // Since s has the same instance as ois,
-                    // we don't need to close it here, rather
-                    // close it on the finally block related to s
-                    // and avoid duplicate close exceptions
-                    // finally
-                    // {
-                    //    ois.close();
-                    // }
+                    input.close();
                 }
-                else
+                catch (IOException e)
                 {
-                    object = s.readObject();
+                    //ignore it, because ByteArrayInputStream.close has
+                    //no effect, but it is better to call close and preserve
+                    //semantic from previous code.
+                }
+                finally
+                {
+                    input = null;
                 }
-                return object;
-            }
-            catch (Exception e)
-            {
-                pendingException = e;
-                throw new FacesException(e);
             }
-            finally
+        }
+    }
+
+    private static Object readObject(InputStream input, ExternalContext ctx)
+    {
+        SerialFactory serialFactory = getSerialFactory(ctx);
+
+        ObjectInputStream s = null;
+        Exception pendingException = null;
+        try
+        {
+            s = serialFactory.getObjectInputStream(input); 
+            Object object = null;
+            if (System.getSecurityManager() != null)
             {
-                if (s != null)
+                final ObjectInputStream ois = s;
+                object = AccessController.doPrivileged(new PrivilegedExceptionAction<Object>()
                 {
-                    try
+                    //Put IOException and ClassNotFoundException as "checked" exceptions,
+                    //so AccessController wrap them in a PrivilegedActionException
+                    public Object run() throws PrivilegedActionException, 
+                                               IOException, ClassNotFoundException
                     {
-                        s.close();
+                        return ois.readObject();
                     }
-                    catch (IOException e)
-                    {
-                        // If a previous exception is thrown 
-                        // ignore this, but if not, wrap it in a
-                        // FacesException and throw it. In this way
-                        // we preserve the original semantic of this
-                        // method, but we handle correctly the case
-                        // when we close a stream. Obviously, the 
-                        // information about this exception is lost,
-                        // but note that the interesting information 
-                        // is always on pendingException, since we
-                        // only do a readObject() on the outer try block.
-                        if (pendingException == null)
-                        {
-                            throw new FacesException(e);
-                        }                        
-                    }
-                    finally
-                    {
-                        s = null;
-                    }
-                }
+                });
+                // Since s has the same instance as ois,
+                // we don't need to close it here, rather
+                // close it on the finally block related to s
+                // and avoid duplicate close exceptions
+                // finally
+                // {
+                //    ois.close();
+                // }
+            }
+            else
+            {
+                object = s.readObject();
             }
+            return object;
+        }
+        catch (Exception e)
+        {
+            pendingException = e;
+            throw new FacesException(e);
         }
         finally
         {
-            if (input != null)
+            if (s != null)
             {
                 try
                 {
-                    input.close();
+                    s.close();
                 }
                 catch (IOException e)
                 {
-                    //ignore it, because ByteArrayInputStream.close has
-                    //no effect, but it is better to call close and preserve
-                    //semantic from previous code.
+                    // If a previous exception is thrown 
+                    // ignore this, but if not, wrap it in a
+                    // FacesException and throw it. In this way
+                    // we preserve the original semantic of this
+                    // method, but we handle correctly the case
+                    // when we close a stream. Obviously, the 
+                    // information about this exception is lost,
+                    // but note that the interesting information 
+                    // is always on pendingException, since we
+                    // only do a readObject() on the outer try block.
+                    if (pendingException == null)
+                    {
+                        throw new FacesException(e);
+                    }                        
                 }
                 finally
                 {
-                    input = null;
+                    s = null;
                 }
             }
         }
@@ -1064,4 +1170,185 @@ public final class StateUtils
         
         return bytes;
     }
+
+    /**
+     * Passes the bytes to the underlying stream and appends their mac when closed.
+     */
+    private static class MacOutputStream extends FilterOutputStream
+    {
+        private final Mac mac;
+
+        MacOutputStream(OutputStream out, Mac mac)
+        {
+            super(out);
+            this.mac = mac;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            mac.update((byte) b);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            mac.update(b, off, len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.write(mac.doFinal());
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the bytes (base64 characters) as ISO-8859-1 characters into a Writer, that is not closed.
+     */
+    private static class WriterOutputStream extends OutputStream
+    {
+        private final Writer writer;
+        private final char[] buffer = new char[1024];
+        private int count;
+
+        WriterOutputStream(Writer writer)
+        {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (count == buffer.length)
+            {
+                flushBuffer();
+            }
+            buffer[count++] = (char) (b & 0xFF);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            for (int end = off + len; off < end; off++)
+            {
+                if (count == buffer.length)
+                {
+                    flushBuffer();
+                }
+                buffer[count++] = (char) (b[off] & 0xFF);
+            }
+        }
+
+        private void flushBuffer() throws IOException
+        {
+            writer.write(buffer, 0, count);
+            count = 0;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Reads the characters of a String as ISO-8859-1 bytes.
+     */
+    private static class StringInputStream extends InputStream
+    {
+        private final String string;
+        private int position;
+
+        StringInputStream(String string)
+        {
+            this.string = string;
+        }
+
+        @Override
+        public int read()
+        {
+            if (position >= string.length())
+            {
+                return -1;
+            }
+            return toByte(string.charAt(position++));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            int available = string.length() - position;
+            if (available <= 0)
+            {
+                return len == 0 ? 0 : -1;
+            }
+            len = Math.min(len, available);
+            for (int i = 0; i < len; i++)
+            {
+                b[off + i] = (byte) toByte(string.charAt(position++));
+            }
+            return len;
+        }
+
+        private static int toByte(char c)
+        {
+            // like String.getBytes(ISO-8859-1), and rejected by the base64 decoder
+            return c > 0xFF ? '?' : c;
+        }
+    }
+
+    /**
+     * Stops after the given number of bytes, so the cipher does not see the mac that follows them.
+     */
+    private static class LimitedInputStream extends FilterInputStream
+    {
+        private int remaining;
+
+        LimitedInputStream(InputStream in, int length)
+        {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0)
+            {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            if (remaining <= 0)
+            {
+                return -1;
+            }
+            int read = in.read(b, off, Math.min(len, remaining));
+            if (read > 0)
+            {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException
+        {
+            return Math.min(in.available(), remaining);
+        }
+    }
 }
@@ -212,6 +212,13 @@ import java.util.Set;
  * Properties.
  *
  * </p>
+ * <p>
+ * A buffer created with recycleArrays takes its chunks from the
+ * {@link CharArrayPool} of the current thread and gives them back when it is
+ * reset or released. This is only safe for a private buffer: it must not be
+ * read by a Reader, connected to a target or written to another
+ * StreamCharBuffer, since these keep references to the chunks.
+ * </p>
  *
  * See org.codehaus.groovy.grails.web.util.StreamCharBuffer
  *      file licensed under ASL v2.0 
@@ -241,6 +248,7 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
     private final int firstChunkSize;
     private final int growProcent;
     private final int maxChunkSize;
+    private final boolean recycleArrays;
     private int subStringChunkMinSize = SUB_STRINGCHUNK_MIN_SIZE;
     private int subBufferChunkMinSize = SUB_BUFFERCHUNK_MIN_SIZE;
     private int writeDirectlyToConnectedMinSize = WRITE_DIRECT_MIN_SIZE;
@@ -286,10 +294,25 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
     }
 
     public StreamCharBuffer(int chunkSize, int growProcent, int maxChunkSize)
+    {
+        this(chunkSize, growProcent, maxChunkSize, false);
+    }
+
+    public StreamCharBuffer(int chunkSize, int growProcent, boolean recycleArrays)
+    {
+        this(chunkSize, growProcent, DEFAULT_MAX_CHUNK_SIZE, recycleArrays);
+    }
+
+    /**
+     * @param recycleArrays take the chunks from the {@link CharArrayPool} and give them back on
+     * {@link #reset()} and {@link #release()}, only for private buffers
+     */
+    public StreamCharBuffer(int chunkSize, int growProcent, int maxChunkSize, boolean recycleArrays)
     {
         this.firstChunkSize = chunkSize;
         this.growProcent = growProcent;
         this.maxChunkSize = maxChunkSize;
+        this.recycleArrays = recycleArrays;
         writer = new StreamCharBufferWriter();
         reset(true);
     }
@@ -325,6 +348,11 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
      */
     public final void reset(boolean resetChunkSize)
     {
+        boolean recycling = isRecycling() && allocBuffer != null;
+        if (recycling)
+        {
+            releaseChunkArrays();
+        }
         firstChunk = null;
         lastChunk = null;
         totalCharsInList = 0;
@@ -335,10 +363,79 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
             chunkSize = firstChunkSize;
             totalChunkSize = 0;
         }
+        if (recycling)
+        {
+            if (allocBuffer.chunkSize() >= chunkSize)
+            {
+                allocBuffer.reuseBuffer();
+            }
+            else
+            {
+                allocBuffer.release();
+                allocBuffer = new AllocatedBuffer(chunkSize);
+            }
+            dynamicChunkMap.clear();
+            return;
+        }
         allocBuffer = new AllocatedBuffer(chunkSize);
         dynamicChunkMap = new HashMap<StreamCharBufferKey, StreamCharBufferSubChunk>();
     }
 
+    /**
+     * Empties the buffer and gives its chunks back to the {@link CharArrayPool}, if it was
+     * created with recycleArrays. The buffer takes new chunks from the pool when it is written
+     * again.
+     */
+    public final void release()
+    {
+        if (isRecycling())
+        {
+            releaseChunkArrays();
+            firstChunk = null;
+            lastChunk = null;
+            totalCharsInList = 0;
+            totalCharsInDynamicChunks = -1;
+            sizeAtLeast = -1;
+            chunkSize = firstChunkSize;
+            totalChunkSize = 0;
+            allocBuffer.release();
+            allocBuffer = new AllocatedBuffer(0);
+            dynamicChunkMap.clear();
+        }
+        else
+        {
+            reset();
+        }
+    }
+
+    private boolean isRecycling()
+    {
+        // a Reader may still refer to the chunks
+        return recycleArrays && !hasReaders;
+    }
+
+    /**
+     * Gives the arrays of the chunks in the list back to the pool, except the one still used by
+     * the allocated buffer.
+     */
+    private void releaseChunkArrays()
+    {
+        char[] released = null;
+        for (AbstractChunk current = firstChunk; current != null; current = current.next)
+        {
+            if (current instanceof CharBufferChunk)
+            {
+                // the chunks cut from one array follow each other
+                char[] buffer = ((CharBufferChunk) current).buffer;
+                if (buffer != released && buffer != allocBuffer.buffer)
+                {
+                    CharArrayPool.release(buffer);
+                    released = buffer;
+                }
+            }
+        }
+    }
+
     /**
      * Clears the buffer and notifies the parents of this buffer of the change
      * 
@@ -547,6 +644,10 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
         }
         if (emptyAfter)
         {
+            if (isRecycling())
+            {
+                releaseChunkArrays();
+            }
             firstChunk = null;
             lastChunk = null;
             totalCharsInList = 0;
@@ -853,8 +954,12 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
         }
         if (spaceLeft == 0)
         {
-            totalChunkSize += allocBuffer.chunkSize();
-            resizeChunkSizeAsProcentageOfTotalSize();
+            // the empty buffer left by release() does not count for the growth
+            if (allocBuffer.chunkSize() > 0)
+            {
+                totalChunkSize += allocBuffer.chunkSize();
+                resizeChunkSizeAsProcentageOfTotalSize();
+            }
             allocBuffer = new AllocatedBuffer(chunkSize);
             spaceLeft = allocBuffer.spaceLeft();
         }
@@ -1510,8 +1615,16 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
 
         public AllocatedBuffer(int size)
         {
-            this.size = size;
-            buffer = new char[size];
+            if (recycleArrays && size > 0)
+            {
+                buffer = CharArrayPool.acquire(size);
+                this.size = buffer.length;
+            }
+            else
+            {
+                this.size = size;
+                buffer = new char[size];
+            }
         }
 
         public int charsUsed()
@@ -1600,6 +1713,14 @@ public class StreamCharBuffer implements /*Writable,*/CharSequence,
             return (used > chunkStart);
         }
 
+        public void release()
+        {
+            if (buffer.length > 0)
+            {
+                CharArrayPool.release(buffer);
+            }
+        }
+
     }
 
     /**
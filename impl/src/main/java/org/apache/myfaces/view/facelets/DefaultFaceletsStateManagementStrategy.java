@@ -1643,7 +1643,7 @@ public class DefaultFaceletsStateManagementStrategy extends StateManagementStrat
         private TreeStructComponent[] _children = null; // Array of children
         private Object[] _facets = null; // Array of Array-tuples with Facetname and TreeStructComponent
 
-        TreeStructComponent(String componentClass, String componentId)
+        public TreeStructComponent(String componentClass, String componentId)
         {
             _componentClass = componentClass;
             _componentId = componentId;
@@ -1659,22 +1659,22 @@ public class DefaultFaceletsStateManagementStrategy extends StateManagementStrat
             return _componentId;
         }
 
-        void setChildren(TreeStructComponent[] children)
+        public void setChildren(TreeStructComponent[] children)
         {
             _children = children;
         }
 
-        TreeStructComponent[] getChildren()
+        public TreeStructComponent[] getChildren()
         {
             return _children;
         }
 
-        Object[] getFacets()
+        public Object[] getFacets()
         {
             return _facets;
         }
 
-        void setFacets(Object[] facets)
+        public void setFacets(Object[] facets)
         {
             _facets = facets;
         }
@@ -1852,6 +1852,17 @@ public class FaceletViewDeclarationLanguage extends FaceletViewDeclarationLangua
                     //{
                     //    extContext.getSession(true);
                     //}
+                    // But with early flush the response is committed when the head is flushed, which
+                    // is long before the state is saved, so in that case the session must exist first.
+                    if (_config.isEarlyFlushEnabled() && context.isProjectStage(ProjectStage.Production)
+                            && !context.getPartialViewContext().isPartialRequest())
+                    {
+                        if (!view.isTransient() && !stateMgr.isSavingStateInClient(context))
+                        {
+                            extContext.getSession(true);
+                        }
+                        stateWriter.setFlushChunkSize(_config.getEarlyFlushChunkSize());
+                    }
 
                     // render the view to the response
                     writer.startDocument();
@@ -2752,6 +2763,14 @@ public class FaceletViewDeclarationLanguage extends FaceletViewDeclarationLangua
         return _faceletFactory;
     }
 
+    /**
+     * @return true if the path is a page handled by this view declaration language, by extension or mapping
+     */
+    boolean handles(String path)
+    {
+        return _strategy.handles(path);
+    }
+
     @Override
     public UIComponent createComponent(FacesContext context, 
         String taglibURI, String tagName, Map<String, Object> attributes)
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.application.ResourceHandler;
+import javax.faces.application.ViewHandler;
+import javax.faces.component.UIViewRoot;
+import javax.faces.context.ExternalContext;
+import javax.faces.context.FacesContext;
+import javax.faces.view.StateManagementStrategy;
+import javax.faces.view.ViewDeclarationLanguage;
+
+import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
+import org.apache.myfaces.shared.util.WebConfigParamUtils;
+
+/**
+ * <p>Compiles the pages of the application at startup, so the first request of every view on a freshly
+ * started node does not pay for parsing its page, its templates and its composite components.</p>
+ *
+ * <p>The pages are listed from the web application root, including <code>/WEB-INF</code> and the resources
+ * directory, and compiled in parallel on a fork-join pool into the Facelet cache: views are compiled with
+ * their view metadata, composite components with their metadata and everything else, like templates, as a
+ * plain Facelet. Optionally the views are also built once and pushed into the view pool.</p>
+ *
+ * <p>Every worker thread runs with its own startup FacesContext, so request scoped state is not available
+ * while building views. A page that cannot be compiled or built is logged and skipped; it will be handled
+ * by the first request as usual.</p>
+ *
+ * @since 3.0.0
+ */
+public class FaceletsWarmUpProcessor
+{
+    private static final Logger log = Logger.getLogger(FaceletsWarmUpProcessor.class.getName());
+
+    /**
+     * Compile the pages of the application into the Facelet cache at startup.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false", group="viewhandler",
+            tags="performance")
+    public static final String WARM_UP_PARAM = "org.apache.myfaces.FACELETS_WARM_UP";
+    public static final boolean WARM_UP_PARAM_DEFAULT = false;
+
+    /**
+     * Number of threads used to compile the pages at startup. By default, the number of processors.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="0", group="viewhandler", tags="performance")
+    public static final String WARM_UP_PARALLELISM_PARAM = "org.apache.myfaces.FACELETS_WARM_UP_PARALLELISM";
+    public static final int WARM_UP_PARALLELISM_PARAM_DEFAULT = 0;
+
+    /**
+     * Also build every view once at startup and push it into the view pool, when the view pool is enabled.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false", group="viewhandler",
+            tags="performance")
+    public static final String WARM_UP_VIEW_POOL_PARAM = "org.apache.myfaces.FACELETS_WARM_UP_VIEW_POOL";
+    public static final boolean WARM_UP_VIEW_POOL_PARAM_DEFAULT = false;
+
+    private static final String WEB_INF = "/WEB-INF/";
+
+    private final FaceletViewDeclarationLanguage vdl;
+    private final String resourcesDirectory;
+    private final boolean buildViewPool;
+
+    FaceletsWarmUpProcessor(FaceletViewDeclarationLanguage vdl, String resourcesDirectory, boolean buildViewPool)
+    {
+        this.vdl = vdl;
+        this.resourcesDirectory = resourcesDirectory;
+        this.buildViewPool = buildViewPool;
+    }
+
+    /**
+     * Compiles the pages of the application if {@link #WARM_UP_PARAM} is enabled.
+     *
+     * @param facesContext the startup FacesContext
+     * @param contextFactory creates the FacesContext of a worker thread, released when the thread ends
+     * @return the number of pages compiled
+     */
+    public static int warmUp(FacesContext facesContext, Supplier<FacesContext> contextFactory)
+    {
+        ExternalContext externalContext = facesContext.getExternalContext();
+        if (!WebConfigParamUtils.getBooleanInitParameter(externalContext, WARM_UP_PARAM, WARM_UP_PARAM_DEFAULT))
+        {
+            return 0;
+        }
+
+        long refreshPeriod = WebConfigParamUtils.getLongInitParameter(externalContext,
+                ViewHandler.FACELETS_REFRESH_PERIOD_PARAM_NAME, facesContext.isProjectStage(ProjectStage.Production)
+                        ? FaceletViewDeclarationLanguage.DEFAULT_REFRESH_PERIOD_PRODUCTION
+                        : FaceletViewDeclarationLanguage.DEFAULT_REFRESH_PERIOD);
+        if (refreshPeriod == 0)
+        {
+            log.warning(WARM_UP_PARAM + " is enabled, but " + ViewHandler.FACELETS_REFRESH_PERIOD_PARAM_NAME
+                    + " is 0, so Facelets are not cached. Pages are not compiled at startup.");
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        String suffix = WebConfigParamUtils.getStringInitParameter(externalContext,
+                ViewHandler.FACELETS_SUFFIX_PARAM_NAME, ViewHandler.DEFAULT_FACELETS_SUFFIX);
+        ViewDeclarationLanguage vdl = facesContext.getApplication().getViewHandler()
+                .getViewDeclarationLanguage(facesContext, "/warmUp" + suffix);
+        if (!(vdl instanceof FaceletViewDeclarationLanguage))
+        {
+            log.warning(WARM_UP_PARAM + " is enabled, but Facelets is not the view declaration language of this "
+                    + "application. Pages are not compiled at startup.");
+            return 0;
+        }
+
+        String resourcesDirectory = WebConfigParamUtils.getStringInitParameter(externalContext,
+                ResourceHandler.WEBAPP_RESOURCES_DIRECTORY_PARAM_NAME, "resources");
+        boolean buildViewPool = WebConfigParamUtils.getBooleanInitParameter(externalContext,
+                WARM_UP_VIEW_POOL_PARAM, WARM_UP_VIEW_POOL_PARAM_DEFAULT)
+                && ViewPoolProcessor.getInstance(facesContext) != null;
+        FaceletsWarmUpProcessor processor = new FaceletsWarmUpProcessor((FaceletViewDeclarationLanguage) vdl,
+                '/' + resourcesDirectory + '/', buildViewPool);
+
+        List<String> paths = new ArrayList<String>();
+        processor.collectPages(externalContext, "/", paths);
+
+        int parallelism = WebConfigParamUtils.getIntegerInitParameter(externalContext, WARM_UP_PARALLELISM_PARAM,
+                WARM_UP_PARALLELISM_PARAM_DEFAULT);
+        if (parallelism <= 0)
+        {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        }
+
+        int compiled = processor.compile(paths, parallelism, contextFactory);
+        if (log.isLoggable(Level.INFO))
+        {
+            log.info("Compiled " + compiled + " of " + paths.size() + " Facelets"
+                    + (buildViewPool ? " and built their views into the view pool" : "") + " in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms using " + parallelism
+                    + " threads");
+        }
+        return compiled;
+    }
+
+    private void collectPages(ExternalContext externalContext, String path, List<String> pages)
+    {
+        Set<String> children = externalContext.getResourcePaths(path);
+        if (children == null)
+        {
+            return;
+        }
+        for (String child : children)
+        {
+            if (child.endsWith("/"))
+            {
+                if (!child.equals("/WEB-INF/lib/") && !child.equals("/WEB-INF/classes/")
+                        && !child.equals("/META-INF/"))
+                {
+                    collectPages(externalContext, child, pages);
+                }
+            }
+            else if (vdl.handles(child))
+            {
+                pages.add(child);
+            }
+        }
+    }
+
+    private int compile(List<String> paths, int parallelism, final Supplier<FacesContext> contextFactory)
+    {
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final FaceletFactory faceletFactory = vdl.getFaceletFactory();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+        {
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+            {
+                return new WarmUpThread(pool, classLoader, contextFactory, faceletFactory);
+            }
+        }, null, false);
+
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(paths.size());
+        for (final String path : paths)
+        {
+            tasks.add(new Callable<Boolean>()
+            {
+                public Boolean call()
+                {
+                    return compile(FacesContext.getCurrentInstance(), path);
+                }
+            });
+        }
+
+        int compiled = 0;
+        try
+        {
+            for (Future<Boolean> result : pool.invokeAll(tasks))
+            {
+                if (Boolean.TRUE.equals(result.get()))
+                {
+                    compiled++;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            log.log(Level.WARNING, "Error compiling Facelets at startup", e.getCause());
+        }
+        finally
+        {
+            pool.shutdown();
+            try
+            {
+                // let the workers release their FacesContext before going on with the startup
+                pool.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return compiled;
+    }
+
+    private boolean compile(FacesContext facesContext, String path)
+    {
+        try
+        {
+            FaceletFactory faceletFactory = vdl.getFaceletFactory();
+            faceletFactory.getFacelet(facesContext, path);
+            if (path.startsWith(resourcesDirectory))
+            {
+                faceletFactory.getCompositeComponentMetadataFacelet(facesContext, path);
+            }
+            else if (!path.startsWith(WEB_INF))
+            {
+                faceletFactory.getViewMetadataFacelet(facesContext, path);
+                if (buildViewPool)
+                {
+                    buildView(facesContext, path);
+                }
+            }
+            return true;
+        }
+        catch (Exception e)
+        {
+            log.log(Level.WARNING, "Cannot compile view " + path + " at startup", e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds the view and saves its state, which pushes it into the view pool like at the end of a request.
+     */
+    private void buildView(FacesContext facesContext, String viewId) throws Exception
+    {
+        UIViewRoot oldViewRoot = facesContext.getViewRoot();
+        try
+        {
+            ViewHandler viewHandler = facesContext.getApplication().getViewHandler();
+            UIViewRoot view = viewHandler.createView(facesContext, viewId);
+            facesContext.setViewRoot(view);
+            vdl.buildView(facesContext, view);
+
+            ViewPoolProcessor processor = ViewPoolProcessor.getInstance(facesContext);
+            if (processor.isViewPoolStrategyAllowedForThisView(facesContext, view))
+            {
+                StateManagementStrategy strategy = vdl.getStateManagementStrategy(facesContext, viewId);
+                strategy.saveView(facesContext);
+            }
+        }
+        finally
+        {
+            facesContext.setViewRoot(oldViewRoot);
+            facesContext.getAttributes().clear();
+        }
+    }
+
+    private static final class WarmUpThread extends ForkJoinWorkerThread
+    {
+        private final Supplier<FacesContext> contextFactory;
+        private final FaceletFactory faceletFactory;
+        private FacesContext facesContext;
+
+        WarmUpThread(ForkJoinPool pool, ClassLoader classLoader, Supplier<FacesContext> contextFactory,
+                FaceletFactory faceletFactory)
+        {
+            super(pool);
+            setContextClassLoader(classLoader);
+            this.contextFactory = contextFactory;
+            this.faceletFactory = faceletFactory;
+        }
+
+        @Override
+        protected void onStart()
+        {
+            super.onStart();
+            facesContext = contextFactory.get();
+            FaceletFactory.setInstance(faceletFactory);
+        }
+
+        @Override
+        protected void onTermination(Throwable exception)
+        {
+            FaceletFactory.setInstance(null);
+            if (facesContext != null)
+            {
+                facesContext.release();
+            }
+            super.onTermination(exception);
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.myfaces.view.facelets;
 
+import org.apache.myfaces.shared.renderkit.html.util.Utf8ResponseOutputWriter;
 import org.apache.myfaces.view.facelets.util.FastWriter;
 
 import javax.faces.context.FacesContext;
@@ -44,7 +45,7 @@ import java.io.Writer;
  * @author Adam Winer
  * @version $Id$
  */
-public final class StateWriter extends Writer
+public final class StateWriter extends Writer implements Utf8ResponseOutputWriter.Source
 {
 
     private static final String CURRENT_WRITER_KEY = "org.apache.myfaces.view.facelets.StateWriter.CURRENT_WRITER";
@@ -54,6 +55,8 @@ public final class StateWriter extends Writer
     private FastWriter fast;
     private boolean writtenState;
     private boolean writtenStateWithoutWrapper;
+    private int flushChunkSize;
+    private int unflushedSize;
 
     static public StateWriter getCurrentInstance()
     {
@@ -136,6 +139,18 @@ public final class StateWriter extends Writer
         }
     }
     
+    /**
+     * Flush the underlying writer each time the given number of characters has been written to it,
+     * until the state is written. Since the content is counted here, ResponseWriters do not write
+     * their bytes to a {@link Utf8ResponseOutputWriter} directly while this is enabled.
+     * 
+     * @param flushChunkSize the number of characters between two flushes, 0 to disable it
+     */
+    public void setFlushChunkSize(int flushChunkSize)
+    {
+        this.flushChunkSize = flushChunkSize;
+    }
+
     public boolean isStateWritten()
     {
         return this.writtenState;
@@ -163,6 +178,7 @@ public final class StateWriter extends Writer
     {
         if (!this.writtenState)
         {
+            this.unflushedSize = 0;
             this.out.flush();
         }
     }
@@ -170,26 +186,69 @@ public final class StateWriter extends Writer
     public void write(char[] cbuf, int off, int len) throws IOException
     {
         this.out.write(cbuf, off, len);
+        if (this.flushChunkSize > 0)
+        {
+            flushChunkIfNecessary(len);
+        }
     }
 
     public void write(char[] cbuf) throws IOException
     {
         this.out.write(cbuf);
+        if (this.flushChunkSize > 0)
+        {
+            flushChunkIfNecessary(cbuf.length);
+        }
     }
 
     public void write(int c) throws IOException
     {
         this.out.write(c);
+        if (this.flushChunkSize > 0)
+        {
+            flushChunkIfNecessary(1);
+        }
     }
 
     public void write(String str, int off, int len) throws IOException
     {
         this.out.write(str, off, len);
+        if (this.flushChunkSize > 0)
+        {
+            flushChunkIfNecessary(len);
+        }
     }
 
     public void write(String str) throws IOException
     {
         this.out.write(str);
+        if (this.flushChunkSize > 0)
+        {
+            flushChunkIfNecessary(str.length());
+        }
+    }
+
+    private void flushChunkIfNecessary(int len) throws IOException
+    {
+        // Once the state is being written everything goes to the buffer until the
+        // state token has been replaced, so there is nothing to flush
+        if (!this.writtenState)
+        {
+            this.unflushedSize += len;
+            if (this.unflushedSize >= this.flushChunkSize)
+            {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Until the state is written the content goes straight to the response writer, so a
+     * ResponseWriter can write its bytes there directly.
+     */
+    public Utf8ResponseOutputWriter getUtf8Writer()
+    {
+        return this.writtenState || this.flushChunkSize > 0 ? null : Utf8ResponseOutputWriter.getUtf8Writer(this.out);
     }
 
     public String getAndResetBuffer()
@@ -206,14 +265,24 @@ public final class StateWriter extends Writer
 
     public void release()
     {
+        releaseBuffer();
         // remove from FacesContext attribute Map
         setCurrentInstance(null);
     }
     
     public void release(FacesContext facesContext)
     {
+        releaseBuffer();
         // remove from FacesContext attribute Map
         setCurrentInstance(null, facesContext);
     }
 
+    private void releaseBuffer()
+    {
+        if (this.fast != null)
+        {
+            this.fast.release();
+        }
+    }
+
 }
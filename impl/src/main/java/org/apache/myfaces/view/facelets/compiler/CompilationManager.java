@@ -429,6 +429,14 @@ final class CompilationManager
         return ((CompilationUnit) this.units.get(0)).createFaceletHandler();
     }
 
+    /**
+     * @return the number of compilation units (tags, text and doctype) created for the page so far.
+     */
+    public int getCompilationUnitCount()
+    {
+        return this.tagId;
+    }
+
     private CompilationUnit currentUnit()
     {
         if (!this.units.isEmpty())
@@ -76,6 +76,8 @@ public abstract class Compiler
 
     private Collection<FaceletsProcessing> faceletsProcessingConfigurations;
 
+    private String precompiledFaceletsPath;
+
     /**
      * 
      */
@@ -272,5 +274,22 @@ public abstract class Compiler
     {
         this.faceletsProcessingConfigurations = faceletsProcessingConfigurations;
     }
-}
 
+    /**
+     * @since 3.0.0
+     * @return the path of the precompiled facelets inside the web application, or null
+     */
+    public String getPrecompiledFaceletsPath()
+    {
+        return precompiledFaceletsPath;
+    }
+
+    /**
+     * @since 3.0.0
+     * @param precompiledFaceletsPath the path where {@link FaceletsPrecompiler} wrote its output
+     */
+    public void setPrecompiledFaceletsPath(String precompiledFaceletsPath)
+    {
+        this.precompiledFaceletsPath = precompiledFaceletsPath;
+    }
+}
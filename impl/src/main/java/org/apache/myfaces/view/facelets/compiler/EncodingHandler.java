@@ -33,13 +33,20 @@ public class EncodingHandler implements FaceletHandler
 
     private final FaceletHandler next;
     private final String encoding;
+    private final int compilationUnitCount;
     
     private volatile List<String> _uniqueIdList;
 
     public EncodingHandler(FaceletHandler next, String encoding)
+    {
+        this(next, encoding, 1);
+    }
+
+    public EncodingHandler(FaceletHandler next, String encoding, int compilationUnitCount)
     {
         this.next = next;
         this.encoding = encoding;
+        this.compilationUnitCount = compilationUnitCount;
     }
 
     public void apply(FaceletContext ctx, UIComponent parent) throws IOException, FacesException, FaceletException,
@@ -60,6 +67,14 @@ public class EncodingHandler implements FaceletHandler
         }
     }
 
+    /**
+     * @return the number of compilation units of the page, a measure of the size of the compiled page.
+     */
+    public int getCompilationUnitCount()
+    {
+        return compilationUnitCount;
+    }
+
     /**
      * @return the _uniqueIdList
      */
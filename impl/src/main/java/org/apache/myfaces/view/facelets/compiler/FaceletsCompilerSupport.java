@@ -28,6 +28,7 @@ import javax.faces.context.ExternalContext;
 import javax.faces.context.FacesContext;
 import javax.faces.context.FacesContextWrapper;
 import javax.faces.view.facelets.TagDecorator;
+import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
 import org.apache.myfaces.config.RuntimeConfig;
 import org.apache.myfaces.config.element.ComponentTagDeclaration;
 import org.apache.myfaces.config.element.facelets.FaceletTagLibrary;
@@ -57,6 +58,16 @@ public class FaceletsCompilerSupport
 {
     private static final Logger log = Logger.getLogger(FaceletsCompilerSupport.class.getName());
 
+    /**
+     * Path inside the web application where the output of {@link FaceletsPrecompiler} is deployed. When a
+     * precompiled form exists for a page and the page is not newer than it, the page is compiled from it
+     * without parsing its XML. Set it to an empty value to always parse the pages.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="/WEB-INF/facelets-precompiled", group="viewhandler",
+            tags="performance")
+    public static final String PRECOMPILED_FACELETS_PATH_PARAM = "org.apache.myfaces.PRECOMPILED_FACELETS_PATH";
+    public static final String PRECOMPILED_FACELETS_PATH_PARAM_DEFAULT = "/WEB-INF/facelets-precompiled";
+
     /**
      * Load the various tag libraries for Facelets.
      *
@@ -185,6 +196,19 @@ public class FaceletsCompilerSupport
         compiler.setFaceletsProcessingConfigurations(
                 RuntimeConfig.getCurrentInstance(
                         context.getExternalContext()).getFaceletProcessingConfigurations());
+
+        // an empty value disables the lookup, so the param is not read through WebConfigParamUtils
+        String precompiledPath = eContext.getInitParameter(PRECOMPILED_FACELETS_PATH_PARAM);
+        if (precompiledPath == null)
+        {
+            precompiledPath = PRECOMPILED_FACELETS_PATH_PARAM_DEFAULT;
+        }
+        precompiledPath = precompiledPath.trim();
+        if (precompiledPath.endsWith("/"))
+        {
+            precompiledPath = precompiledPath.substring(0, precompiledPath.length() - 1);
+        }
+        compiler.setPrecompiledFaceletsPath(precompiledPath.length() == 0 ? null : precompiledPath);
     }
     
     private static class LoadComponentTagDeclarationFacesContextWrapper 
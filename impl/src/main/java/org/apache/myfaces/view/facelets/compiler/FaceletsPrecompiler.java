@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+import javax.faces.view.facelets.FaceletException;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+
+import org.xml.sax.SAXException;
+
+/**
+ * <p>Build time tool that precompiles the pages of a web application, so {@link SAXCompiler} can compile
+ * them at runtime without parsing their XML. For each page found under the source directory it writes its
+ * precompiled form to the same relative path under the target directory, with the {@code .fcl} suffix
+ * appended. The target directory has to be deployed at the path given by
+ * {@link FaceletsCompilerSupport#PRECOMPILED_FACELETS_PATH_PARAM}, by default
+ * {@code /WEB-INF/facelets-precompiled}.</p>
+ *
+ * <p>It is meant to be run from the build, for example with the exec-maven-plugin:</p>
+ * <pre>
+ * java org.apache.myfaces.view.facelets.compiler.FaceletsPrecompiler src/main/webapp
+ *     target/myapp/WEB-INF/facelets-precompiled [.xhtml ...]
+ * </pre>
+ *
+ * @since 3.0.0
+ */
+public final class FaceletsPrecompiler
+{
+    private static final Logger log = Logger.getLogger(FaceletsPrecompiler.class.getName());
+
+    private FaceletsPrecompiler()
+    {
+    }
+
+    /**
+     * Parses the page and returns its precompiled form.
+     *
+     * @throws FaceletException if the page is not well formed
+     */
+    public static byte[] precompile(URL src) throws IOException, FaceletException
+    {
+        InputStream is = new BufferedInputStream(src.openStream(), 1024);
+        try
+        {
+            Matcher m = SAXCompiler.matchXmlDecl(is);
+            PrecompiledFacelet.Recorder recorder = new PrecompiledFacelet.Recorder(
+                    m == null ? null : m.group(0), m == null ? null : m.group(3));
+            SAXParser parser = SAXCompiler.createSAXParser(recorder, false);
+            parser.parse(is, recorder);
+            return recorder.toByteArray();
+        }
+        catch (SAXException e)
+        {
+            throw new FaceletException("Error Parsing " + src + ": " + e.getMessage(), e);
+        }
+        catch (ParserConfigurationException e)
+        {
+            throw new FaceletException("Error Configuring Parser " + src + ": " + e.getMessage(), e);
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * Precompiles every page under the source directory whose name ends with one of the extensions.
+     *
+     * @return the number of pages that could not be precompiled
+     */
+    public static int precompile(File sourceDirectory, File targetDirectory, List<String> extensions)
+            throws IOException
+    {
+        return precompile(sourceDirectory, targetDirectory, extensions, 0);
+    }
+
+    private static int precompile(File directory, File targetDirectory, List<String> extensions, int failures)
+            throws IOException
+    {
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return failures;
+        }
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (file.isDirectory())
+            {
+                failures = precompile(file, new File(targetDirectory, name), extensions, failures);
+            }
+            else if (hasExtension(name, extensions))
+            {
+                try
+                {
+                    byte[] precompiled = precompile(file.toURI().toURL());
+                    if (!targetDirectory.isDirectory() && !targetDirectory.mkdirs())
+                    {
+                        throw new IOException("Cannot create directory " + targetDirectory);
+                    }
+                    OutputStream out = new FileOutputStream(
+                            new File(targetDirectory, name + PrecompiledFacelet.SUFFIX));
+                    try
+                    {
+                        out.write(precompiled);
+                    }
+                    finally
+                    {
+                        out.close();
+                    }
+                }
+                catch (FaceletException e)
+                {
+                    log.log(Level.WARNING, "Cannot precompile " + file + ", it will be parsed at runtime", e);
+                    failures++;
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static boolean hasExtension(String name, List<String> extensions)
+    {
+        for (int i = 0, size = extensions.size(); i < size; i++)
+        {
+            if (name.endsWith(extensions.get(i)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param args the source directory, the target directory and optionally the extensions of the pages to
+     *     precompile, {@code .xhtml} by default
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage: FaceletsPrecompiler <source directory> <target directory> [extension ...]");
+            System.exit(2);
+        }
+        List<String> extensions = args.length > 2
+                ? Arrays.asList(args).subList(2, args.length) : Arrays.asList(".xhtml");
+        int failures = precompile(new File(args[0]), new File(args[1]), extensions);
+        if (failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+}
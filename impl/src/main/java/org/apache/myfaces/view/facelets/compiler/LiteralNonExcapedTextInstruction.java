@@ -23,6 +23,10 @@ import java.io.IOException;
 import javax.el.ELContext;
 import javax.el.ExpressionFactory;
 import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedResponseWriter;
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedText;
 
 /**
  * 
@@ -31,16 +35,24 @@ import javax.faces.context.FacesContext;
  */
 final class LiteralNonExcapedTextInstruction implements Instruction
 {
-    private final String text;
+    private final PreEncodedText text;
 
     public LiteralNonExcapedTextInstruction(String text)
     {
-        this.text = text;
+        this.text = new PreEncodedText(text, false);
     }
 
     public void write(FacesContext context) throws IOException
     {
-        context.getResponseWriter().write(this.text);
+        ResponseWriter rw = context.getResponseWriter();
+        if (rw instanceof PreEncodedResponseWriter)
+        {
+            ((PreEncodedResponseWriter) rw).writePreEncoded(this.text);
+        }
+        else
+        {
+            rw.write(this.text.getText());
+        }
     }
 
     public Instruction apply(ExpressionFactory factory, ELContext ctx)
@@ -55,6 +67,6 @@ final class LiteralNonExcapedTextInstruction implements Instruction
     
     String getText()
     {
-        return this.text;
+        return this.text.getText();
     }
 }
@@ -23,19 +23,31 @@ import java.io.IOException;
 import javax.el.ELContext;
 import javax.el.ExpressionFactory;
 import javax.faces.context.FacesContext;
+import javax.faces.context.ResponseWriter;
+
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedResponseWriter;
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedText;
 
 final class LiteralTextInstruction implements Instruction
 {
-    private final String text;
+    private final PreEncodedText text;
 
     public LiteralTextInstruction(String text)
     {
-        this.text = text;
+        this.text = new PreEncodedText(text, true);
     }
 
     public void write(FacesContext context) throws IOException
     {
-        context.getResponseWriter().writeText(this.text, null);
+        ResponseWriter rw = context.getResponseWriter();
+        if (rw instanceof PreEncodedResponseWriter)
+        {
+            ((PreEncodedResponseWriter) rw).writePreEncoded(this.text);
+        }
+        else
+        {
+            rw.writeText(this.text.getText(), null);
+        }
     }
 
     public Instruction apply(ExpressionFactory factory, ELContext ctx)
@@ -50,6 +62,6 @@ final class LiteralTextInstruction implements Instruction
 
     String getText()
     {
-        return this.text;
+        return this.text.getText();
     }
 }
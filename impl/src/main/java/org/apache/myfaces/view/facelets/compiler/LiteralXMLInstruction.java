@@ -25,25 +25,35 @@ import javax.el.ExpressionFactory;
 import javax.faces.context.FacesContext;
 import javax.faces.context.ResponseWriter;
 
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedResponseWriter;
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedText;
+
 final class LiteralXMLInstruction implements Instruction
 {
 
     private final static char[] STOP = new char[0];
 
-    private final char[] instruction;
-    private final int len;
+    private final PreEncodedText instruction;
 
     public LiteralXMLInstruction(String literal)
     {
-        this.instruction = literal.toCharArray();
-        this.len = this.instruction.length;
+        this.instruction = new PreEncodedText(literal, false);
     }
 
     public void write(FacesContext context) throws IOException
     {
         ResponseWriter rw = context.getResponseWriter();
-        rw.writeText(STOP, 0, 0); // hack to get closing elements
-        rw.write(this.instruction, 0, this.len);
+        if (rw instanceof PreEncodedResponseWriter)
+        {
+            // closes the start element like writeText does
+            ((PreEncodedResponseWriter) rw).writePreEncoded(this.instruction);
+        }
+        else
+        {
+            char[] chars = this.instruction.getChars();
+            rw.writeText(STOP, 0, 0); // hack to get closing elements
+            rw.write(chars, 0, chars.length);
+        }
     }
 
     public Instruction apply(ExpressionFactory factory, ELContext ctx)
@@ -0,0 +1,531 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.myfaces.shared.util.ClassUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * <p>The precompiled form of a page: the SAX events the parser fires for it, written in a compact binary
+ * format by {@link FaceletsPrecompiler} at build time. {@link SAXCompiler} replays them into the same
+ * handlers the parser would call, so a page with a precompiled form is compiled without parsing its XML,
+ * resolving its DTD or expanding its entities.</p>
+ *
+ * <p>The events are recorded before any facelets processing is applied, so the same precompiled form is
+ * valid for the view, its view metadata and, for composite components, its interface.</p>
+ *
+ * <p>Format: a magic byte and a version, the xml declaration and its encoding if any, then one opcode per event
+ * followed by its arguments. Ints are varints; names are written once and later as a reference into the
+ * table of names already written; text is written as is.</p>
+ */
+final class PrecompiledFacelet
+{
+    /**
+     * Suffix appended to the path of the page to get the path of its precompiled form.
+     */
+    static final String SUFFIX = ".fcl";
+
+    private static final int MAGIC = 0xFC;
+    private static final int VERSION = 1;
+
+    private static final int END_DOCUMENT = 0;
+    private static final int START_DOCUMENT = 1;
+    private static final int START_DTD = 2;
+    private static final int END_DTD = 3;
+    private static final int START_CDATA = 4;
+    private static final int END_CDATA = 5;
+    private static final int START_PREFIX_MAPPING = 6;
+    private static final int END_PREFIX_MAPPING = 7;
+    private static final int START_ELEMENT = 8;
+    private static final int END_ELEMENT = 9;
+    private static final int CHARACTERS = 10;
+    private static final int IGNORABLE_WHITESPACE = 11;
+    private static final int COMMENT = 12;
+    private static final int PROCESSING_INSTRUCTION = 13;
+
+    private static final int NAME_NULL = 0;
+    private static final int NAME_NEW = 1;
+
+    private final byte[] data;
+    private final int eventsOffset;
+    private final String xmlDeclaration;
+    private final String encoding;
+
+    private PrecompiledFacelet(byte[] data) throws IOException
+    {
+        this.data = data;
+        if (data.length < 2 || (data[0] & 0xFF) != MAGIC || data[1] != VERSION)
+        {
+            throw new StreamCorruptedException("Not a precompiled facelet");
+        }
+        Reader reader = new Reader(data, 2);
+        this.xmlDeclaration = reader.readOptionalText();
+        this.encoding = reader.readOptionalText();
+        this.eventsOffset = reader.position;
+    }
+
+    static PrecompiledFacelet load(URL url) throws IOException
+    {
+        InputStream is = url.openStream();
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                out.write(buffer, 0, read);
+            }
+            return new PrecompiledFacelet(out.toByteArray());
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    /**
+     * @return the xml declaration of the page, without the trailing new line, or null if it has none
+     */
+    String getXmlDeclaration()
+    {
+        return xmlDeclaration;
+    }
+
+    /**
+     * @return the encoding declared by the xml declaration of the page, or null
+     */
+    String getEncoding()
+    {
+        return encoding;
+    }
+
+    /**
+     * Fires the recorded events on the handler, in the order the parser fired them.
+     */
+    <H extends DefaultHandler & LexicalHandler> void replay(H handler) throws IOException, SAXException
+    {
+        Reader reader = new Reader(data, eventsOffset);
+        ReplayLocator locator = new ReplayLocator();
+        AttributesImpl attributes = new AttributesImpl();
+        handler.setDocumentLocator(locator);
+        while (true)
+        {
+            int opcode = reader.readByte();
+            switch (opcode)
+            {
+                case END_DOCUMENT:
+                    handler.endDocument();
+                    return;
+                case START_DOCUMENT:
+                    handler.startDocument();
+                    break;
+                case START_DTD:
+                    handler.startDTD(reader.readName(), reader.readName(), reader.readName());
+                    break;
+                case END_DTD:
+                    handler.endDTD();
+                    break;
+                case START_CDATA:
+                    handler.startCDATA();
+                    break;
+                case END_CDATA:
+                    handler.endCDATA();
+                    break;
+                case START_PREFIX_MAPPING:
+                    handler.startPrefixMapping(reader.readName(), reader.readName());
+                    break;
+                case END_PREFIX_MAPPING:
+                    handler.endPrefixMapping(reader.readName());
+                    break;
+                case START_ELEMENT:
+                {
+                    locator.lineNumber = reader.readVarInt();
+                    locator.columnNumber = reader.readVarInt();
+                    String uri = reader.readName();
+                    String localName = reader.readName();
+                    String qName = reader.readName();
+                    attributes.clear();
+                    for (int i = reader.readVarInt(); i > 0; i--)
+                    {
+                        attributes.addAttribute(reader.readName(), reader.readName(), reader.readName(),
+                                reader.readName(), reader.readText());
+                    }
+                    handler.startElement(uri, localName, qName, attributes);
+                    break;
+                }
+                case END_ELEMENT:
+                    handler.endElement(reader.readName(), reader.readName(), reader.readName());
+                    break;
+                case CHARACTERS:
+                {
+                    char[] text = reader.readChars();
+                    handler.characters(text, 0, text.length);
+                    break;
+                }
+                case IGNORABLE_WHITESPACE:
+                {
+                    char[] text = reader.readChars();
+                    handler.ignorableWhitespace(text, 0, text.length);
+                    break;
+                }
+                case COMMENT:
+                {
+                    char[] text = reader.readChars();
+                    handler.comment(text, 0, text.length);
+                    break;
+                }
+                case PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(reader.readName(), reader.readName());
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unknown event " + opcode);
+            }
+        }
+    }
+
+    private static final class Reader
+    {
+        private final byte[] data;
+        private final List<String> names = new ArrayList<String>();
+        private int position;
+
+        Reader(byte[] data, int position)
+        {
+            this.data = data;
+            this.position = position;
+        }
+
+        int readByte() throws IOException
+        {
+            if (position >= data.length)
+            {
+                throw new StreamCorruptedException("Truncated precompiled facelet");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        int readVarInt() throws IOException
+        {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7)
+            {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        char[] readChars() throws IOException
+        {
+            char[] chars = new char[readVarInt()];
+            for (int i = 0; i < chars.length; i++)
+            {
+                chars[i] = (char) readVarInt();
+            }
+            return chars;
+        }
+
+        String readText() throws IOException
+        {
+            return new String(readChars());
+        }
+
+        String readOptionalText() throws IOException
+        {
+            return readByte() == 0 ? null : readText();
+        }
+
+        String readName() throws IOException
+        {
+            int tag = readVarInt();
+            if (tag == NAME_NULL)
+            {
+                return null;
+            }
+            if (tag == NAME_NEW)
+            {
+                String name = readText();
+                names.add(name);
+                return name;
+            }
+            int index = tag - 2;
+            if (index >= names.size())
+            {
+                throw new StreamCorruptedException("Unknown name reference " + index);
+            }
+            return names.get(index);
+        }
+    }
+
+    private static final class ReplayLocator implements Locator
+    {
+        private int lineNumber;
+        private int columnNumber;
+
+        public String getPublicId()
+        {
+            return null;
+        }
+
+        public String getSystemId()
+        {
+            return null;
+        }
+
+        public int getLineNumber()
+        {
+            return lineNumber;
+        }
+
+        public int getColumnNumber()
+        {
+            return columnNumber;
+        }
+    }
+
+    /**
+     * SAX handler that writes the events it receives in the precompiled format. It resolves entities like
+     * the handlers of {@link SAXCompiler} do, so the recorded text is the text they would get.
+     */
+    static final class Recorder extends DefaultHandler implements LexicalHandler
+    {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        private final Map<String, Integer> names = new HashMap<String, Integer>();
+        private Locator locator;
+
+        Recorder(String xmlDeclaration, String encoding)
+        {
+            out.write(MAGIC);
+            out.write(VERSION);
+            writeOptionalText(xmlDeclaration);
+            writeOptionalText(encoding);
+        }
+
+        byte[] toByteArray()
+        {
+            return out.toByteArray();
+        }
+
+        @Override
+        public void setDocumentLocator(Locator locator)
+        {
+            this.locator = locator;
+        }
+
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) throws SAXException
+        {
+            URL url = ClassUtils.getResource("org/apache/myfaces/resource/default.dtd");
+            return new InputSource(url.toString());
+        }
+
+        @Override
+        public void startDocument()
+        {
+            out.write(START_DOCUMENT);
+        }
+
+        @Override
+        public void endDocument()
+        {
+            out.write(END_DOCUMENT);
+        }
+
+        public void startDTD(String name, String publicId, String systemId)
+        {
+            out.write(START_DTD);
+            writeName(name);
+            writeName(publicId);
+            writeName(systemId);
+        }
+
+        public void endDTD()
+        {
+            out.write(END_DTD);
+        }
+
+        public void startEntity(String name)
+        {
+        }
+
+        public void endEntity(String name)
+        {
+        }
+
+        public void startCDATA()
+        {
+            out.write(START_CDATA);
+        }
+
+        public void endCDATA()
+        {
+            out.write(END_CDATA);
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri)
+        {
+            out.write(START_PREFIX_MAPPING);
+            writeName(prefix);
+            writeName(uri);
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix)
+        {
+            out.write(END_PREFIX_MAPPING);
+            writeName(prefix);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+        {
+            out.write(START_ELEMENT);
+            writeVarInt(locator == null ? -1 : locator.getLineNumber());
+            writeVarInt(locator == null ? -1 : locator.getColumnNumber());
+            writeName(uri);
+            writeName(localName);
+            writeName(qName);
+            int length = attributes.getLength();
+            writeVarInt(length);
+            for (int i = 0; i < length; i++)
+            {
+                writeName(attributes.getURI(i));
+                writeName(attributes.getLocalName(i));
+                writeName(attributes.getQName(i));
+                writeName(attributes.getType(i));
+                writeText(attributes.getValue(i));
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName)
+        {
+            out.write(END_ELEMENT);
+            writeName(uri);
+            writeName(localName);
+            writeName(qName);
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length)
+        {
+            out.write(CHARACTERS);
+            writeChars(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length)
+        {
+            out.write(IGNORABLE_WHITESPACE);
+            writeChars(ch, start, length);
+        }
+
+        public void comment(char[] ch, int start, int length)
+        {
+            out.write(COMMENT);
+            writeChars(ch, start, length);
+        }
+
+        @Override
+        public void processingInstruction(String target, String data)
+        {
+            out.write(PROCESSING_INSTRUCTION);
+            writeName(target);
+            writeName(data);
+        }
+
+        private void writeName(String name)
+        {
+            if (name == null)
+            {
+                writeVarInt(NAME_NULL);
+                return;
+            }
+            Integer index = names.get(name);
+            if (index != null)
+            {
+                writeVarInt(index + 2);
+                return;
+            }
+            names.put(name, names.size());
+            writeVarInt(NAME_NEW);
+            writeText(name);
+        }
+
+        private void writeOptionalText(String text)
+        {
+            out.write(text == null ? 0 : 1);
+            if (text != null)
+            {
+                writeText(text);
+            }
+        }
+
+        private void writeText(String text)
+        {
+            int length = text.length();
+            writeVarInt(length);
+            for (int i = 0; i < length; i++)
+            {
+                writeVarInt(text.charAt(i));
+            }
+        }
+
+        private void writeChars(char[] ch, int start, int length)
+        {
+            writeVarInt(length);
+            for (int i = start, end = start + length; i < end; i++)
+            {
+                writeVarInt(ch[i]);
+            }
+        }
+
+        private void writeVarInt(int value)
+        {
+            while ((value & ~0x7F) != 0)
+            {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.myfaces.view.facelets.compiler;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StreamCorruptedException;
 import java.net.URL;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -28,11 +29,13 @@ import java.security.AccessController;
 import java.security.PrivilegedExceptionAction;
 import java.security.PrivilegedActionException;
 import java.util.Map;
+import java.util.logging.Level;
 
 import javax.el.ELException;
 import javax.el.MethodExpression;
 import javax.el.ValueExpression;
 import javax.faces.FacesException;
+import javax.faces.context.FacesContext;
 import javax.faces.view.Location;
 import javax.faces.view.facelets.FaceletException;
 import javax.faces.view.facelets.FaceletHandler;
@@ -44,6 +47,7 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.myfaces.config.element.FaceletsProcessing;
+import org.apache.myfaces.shared.resource.ResourceLoaderUtils;
 import org.apache.myfaces.shared.util.ClassUtils;
 import org.apache.myfaces.view.facelets.tag.TagAttributeImpl;
 import org.apache.myfaces.view.facelets.tag.TagAttributesImpl;
@@ -75,6 +79,13 @@ public final class SAXCompiler extends Compiler
     private final static Pattern XML_DECLARATION = Pattern
             .compile("^<\\?xml.+?version=['\"](.+?)['\"](.+?encoding=['\"]((.+?))['\"])?.*?\\?>");
 
+    /**
+     * Prefixes DefaultFaceletFactory puts in front of the path of the page to build the alias of its view
+     * metadata and composite component metadata facelets.
+     */
+    private final static String VIEW_METADATA_ALIAS_PREFIX = "/viewMetadata";
+    private final static String COMPOSITE_COMPONENT_METADATA_ALIAS_PREFIX = "/compositeComponentMetadata";
+
     private static class CompilationHandler extends DefaultHandler implements LexicalHandler
     {
 
@@ -753,6 +764,19 @@ public final class SAXCompiler extends Compiler
     public FaceletHandler doCompile(URL src, String alias)
             throws IOException, FaceletException, ELException, FacesException
     {
+        PrecompiledFacelet precompiled = getPrecompiledFacelet(src, alias, "");
+        if (precompiled != null)
+        {
+            CompilationManager mngr = new CompilationManager(alias, this,
+                    getFaceletsProcessingInstructions(src, alias));
+            if (precompiled.getXmlDeclaration() != null
+                    && !mngr.getFaceletsProcessingInstructions().isConsumeXmlDeclaration())
+            {
+                mngr.writeInstruction(precompiled.getXmlDeclaration() + '\n');
+            }
+            return replay(precompiled, mngr, new CompilationHandler(mngr, alias), alias);
+        }
+
         CompilationManager mngr = null;
         InputStream is = null;
         String encoding = null;
@@ -780,7 +804,7 @@ public final class SAXCompiler extends Compiler
                 is.close();
             }
         }
-        return new EncodingHandler(mngr.createFaceletHandler(), encoding);
+        return new EncodingHandler(mngr.createFaceletHandler(), encoding, mngr.getCompilationUnitCount());
     }
 
     /**
@@ -790,6 +814,14 @@ public final class SAXCompiler extends Compiler
     protected FaceletHandler doCompileViewMetadata(URL src, String alias)
             throws IOException, FaceletException, ELException, FacesException
     {
+        PrecompiledFacelet precompiled = getPrecompiledFacelet(src, alias, VIEW_METADATA_ALIAS_PREFIX);
+        if (precompiled != null)
+        {
+            CompilationManager mngr = new CompilationManager(alias, this,
+                    getFaceletsProcessingInstructions(src, alias));
+            return replay(precompiled, mngr, new ViewMetadataHandler(mngr, alias), alias);
+        }
+
         CompilationManager mngr = null;
         InputStream is = null;
         String encoding = null;
@@ -848,7 +880,7 @@ public final class SAXCompiler extends Compiler
                 is.close();
             }
         }
-        return new EncodingHandler(mngr.createFaceletHandler(), encoding);
+        return new EncodingHandler(mngr.createFaceletHandler(), encoding, mngr.getCompilationUnitCount());
     }
 
     /**
@@ -858,6 +890,14 @@ public final class SAXCompiler extends Compiler
     protected FaceletHandler doCompileCompositeComponentMetadata(URL src, String alias)
             throws IOException, FaceletException, ELException, FacesException
     {
+        PrecompiledFacelet precompiled = getPrecompiledFacelet(src, alias, COMPOSITE_COMPONENT_METADATA_ALIAS_PREFIX);
+        if (precompiled != null)
+        {
+            CompilationManager mngr = new CompilationManager(alias, this,
+                    getFaceletsProcessingInstructions(src, alias));
+            return replay(precompiled, mngr, new CompositeComponentMetadataHandler(mngr, alias), alias);
+        }
+
         CompilationManager mngr = null;
         InputStream is = null;
         String encoding = null;
@@ -885,7 +925,7 @@ public final class SAXCompiler extends Compiler
                 is.close();
             }
         }
-        return new EncodingHandler(mngr.createFaceletHandler(), encoding);
+        return new EncodingHandler(mngr.createFaceletHandler(), encoding, mngr.getCompilationUnitCount());
     }
     
     @Override
@@ -970,6 +1010,64 @@ public final class SAXCompiler extends Compiler
         return handler;
     }
     
+    /**
+     * Looks for the precompiled form of the page written by {@link FaceletsPrecompiler}. It is ignored when
+     * the page was modified after it was precompiled.
+     *
+     * @return the precompiled form, or null if the page has to be parsed
+     */
+    private PrecompiledFacelet getPrecompiledFacelet(URL src, String alias, String aliasPrefix) throws IOException
+    {
+        String precompiledPath = getPrecompiledFaceletsPath();
+        if (precompiledPath == null || !alias.startsWith(aliasPrefix))
+        {
+            return null;
+        }
+        FacesContext facesContext = FacesContext.getCurrentInstance();
+        if (facesContext == null)
+        {
+            return null;
+        }
+        URL url = facesContext.getExternalContext().getResource(
+                precompiledPath + alias.substring(aliasPrefix.length()) + PrecompiledFacelet.SUFFIX);
+        if (url == null)
+        {
+            return null;
+        }
+        if (ResourceLoaderUtils.getResourceLastModified(src) > ResourceLoaderUtils.getResourceLastModified(url))
+        {
+            if (log.isLoggable(Level.FINE))
+            {
+                log.fine(src + " is newer than its precompiled form " + url + ", parsing it");
+            }
+            return null;
+        }
+        try
+        {
+            return PrecompiledFacelet.load(url);
+        }
+        catch (StreamCorruptedException e)
+        {
+            log.log(Level.WARNING, "Ignoring precompiled form " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private <H extends DefaultHandler & LexicalHandler> FaceletHandler replay(PrecompiledFacelet precompiled,
+            CompilationManager mngr, H handler, String alias) throws IOException
+    {
+        try
+        {
+            precompiled.replay(handler);
+        }
+        catch (SAXException e)
+        {
+            throw new FaceletException("Error Parsing " + alias + ": " + e.getMessage(), e.getCause());
+        }
+        return new EncodingHandler(mngr.createFaceletHandler(), precompiled.getEncoding(),
+                mngr.getCompilationUnitCount());
+    }
+
     protected FaceletsProcessingInstructions getDefaultFaceletsProcessingInstructions()
     {
         return FaceletsProcessingInstructions.getProcessingInstructions(FaceletsProcessing.PROCESS_AS_XHTML, false);
@@ -993,39 +1091,34 @@ public final class SAXCompiler extends Compiler
 
     protected static String writeXmlDecl(InputStream is, CompilationManager mngr) throws IOException
     {
-        is.mark(128);
         String encoding = null;
-        try
+        Matcher m = matchXmlDecl(is);
+        if (m != null)
         {
-            byte[] b = new byte[128];
-            if (is.read(b) > 0)
+            if (!mngr.getFaceletsProcessingInstructions().isConsumeXmlDeclaration())
             {
-                String r = new String(b);
-                Matcher m = XML_DECLARATION.matcher(r);
-                if (m.find())
-                {
-                    if (!mngr.getFaceletsProcessingInstructions().isConsumeXmlDeclaration())
-                    {
-                        mngr.writeInstruction(m.group(0) + '\n');
-                    }
-                    if (m.group(3) != null)
-                    {
-                        encoding = m.group(3);
-                    }
-                }
+                mngr.writeInstruction(m.group(0) + '\n');
+            }
+            if (m.group(3) != null)
+            {
+                encoding = m.group(3);
             }
-        }
-        finally
-        {
-            is.reset();
         }
         return encoding;
     }
     
     protected static String getXmlDecl(InputStream is, CompilationManager mngr) throws IOException
+    {
+        Matcher m = matchXmlDecl(is);
+        return m == null ? null : m.group(3);
+    }
+
+    /**
+     * Looks for the xml declaration at the start of the stream, leaving the stream where it was.
+     */
+    static Matcher matchXmlDecl(InputStream is) throws IOException
     {
         is.mark(128);
-        String encoding = null;
         try
         {
             byte[] b = new byte[128];
@@ -1033,27 +1126,33 @@ public final class SAXCompiler extends Compiler
             {
                 String r = new String(b);
                 Matcher m = XML_DECLARATION.matcher(r);
-                if (m.find() && m.group(3) != null)
+                if (m.find())
                 {
-                    encoding = m.group(3);
+                    return m;
                 }
             }
+            return null;
         }
         finally
         {
             is.reset();
         }
-        return encoding;
     }
 
     private SAXParser createSAXParser(DefaultHandler handler) throws SAXException,
             ParserConfigurationException
+    {
+        return createSAXParser(handler, this.isValidating());
+    }
+
+    static SAXParser createSAXParser(DefaultHandler handler, boolean validating) throws SAXException,
+            ParserConfigurationException
     {
         SAXParserFactory factory = SAXParserFactory.newInstance();
         factory.setNamespaceAware(true);
         factory.setFeature("http://xml.org/sax/features/namespace-prefixes", true);
-        factory.setFeature("http://xml.org/sax/features/validation", this.isValidating());
-        factory.setValidating(this.isValidating());
+        factory.setFeature("http://xml.org/sax/features/validation", validating);
+        factory.setValidating(validating);
         SAXParser parser = factory.newSAXParser();
         XMLReader reader = parser.getXMLReader();
         reader.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
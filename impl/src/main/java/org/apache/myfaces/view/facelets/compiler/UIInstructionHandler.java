@@ -19,7 +19,6 @@
 package org.apache.myfaces.view.facelets.compiler;
 
 import java.io.IOException;
-import java.io.Writer;
 
 import javax.el.ELException;
 import javax.faces.FacesException;
@@ -207,16 +206,20 @@ final class UIInstructionHandler extends AbstractUIHandler
 
     public String getText(FaceletContext ctx)
     {
-        Writer writer = new FastWriter(this.length);
+        FastWriter writer = new FastWriter(this.length);
         try
         {
             this.txt.apply(ctx.getExpressionFactory(), ctx).write(writer, ctx);
+            return writer.toString();
         }
         catch (IOException e)
         {
             throw new ELException(this.alias + ": " + e.getMessage(), e.getCause());
         }
-        return writer.toString();
+        finally
+        {
+            writer.release();
+        }
     }
 
 }
@@ -1319,6 +1319,11 @@ public class UIRepeat extends UIComponentBase implements NamingContainer
                                 {
                                     return true;
                                 }
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    // everything inside this component has been visited
+                                    return false;
+                                }
                             }
                         }
 
@@ -1343,6 +1348,12 @@ public class UIRepeat extends UIComponentBase implements NamingContainer
                                     }
                                 }
 
+                                // do not iterate over the remaining rows once nothing is left to visit
+                                if (subtreeIdsToVisit.isEmpty())
+                                {
+                                    return false;
+                                }
+
                                 _count++;
                                 i += step;
 
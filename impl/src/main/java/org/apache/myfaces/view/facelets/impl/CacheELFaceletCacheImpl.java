@@ -23,9 +23,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.faces.view.facelets.FaceletContext;
 import javax.faces.view.facelets.FaceletException;
@@ -56,23 +54,33 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
      * and composite component metadata only takes into account composite:xxx tags,
      * ignoring ui:xxx tags.
      */
-    private Map<String, FaceletNode> _facelets;
+    private final FaceletCacheMap<FaceletNode> _facelets;
     
-    private Map<String, DefaultFacelet> _viewMetadataFacelets;
+    private final FaceletCacheMap<DefaultFacelet> _viewMetadataFacelets;
     
-    private Map<String, DefaultFacelet> _compositeComponentMetadataFacelets;
+    private final FaceletCacheMap<DefaultFacelet> _compositeComponentMetadataFacelets;
     
+    private final FaceletCacheStatistics _statistics;
+
     private long _refreshPeriod;
     
     CacheELFaceletCacheImpl(long refreshPeriod)
+    {
+        this(refreshPeriod, new FaceletCacheStatistics(-1));
+    }
+
+    CacheELFaceletCacheImpl(long refreshPeriod, FaceletCacheStatistics statistics)
     {
         _refreshPeriod = refreshPeriod < 0 ? INFINITE_DELAY : refreshPeriod * 1000;
 
-        _facelets = new ConcurrentHashMap<String, FaceletNode>();
+        _statistics = statistics;
+
+        _facelets = new FaceletCacheMap<FaceletNode>(statistics.getMaxWeight(), statistics);
         
-        _viewMetadataFacelets = new ConcurrentHashMap<String, DefaultFacelet>();
+        _viewMetadataFacelets = new FaceletCacheMap<DefaultFacelet>(statistics.getMaxWeight(), statistics);
         
-        _compositeComponentMetadataFacelets = new ConcurrentHashMap<String, DefaultFacelet>();
+        _compositeComponentMetadataFacelets = new FaceletCacheMap<DefaultFacelet>(
+                statistics.getMaxWeight(), statistics);
     }
 
     @Override
@@ -93,7 +101,7 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
             {
                 paramsSet = node.getParams();
             }
-            f = getMemberFactory().newInstance(url);
+            f = createFacelet(getMemberFactory(), url);
             if (_refreshPeriod != NO_CACHE_DELAY)
             {
                 //Map<String, FaceletNode> newLoc = new HashMap<String, FaceletNode>(_facelets);
@@ -101,9 +109,13 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
                 //        new FaceletNode(f, paramsSet) : new FaceletNode(f) );
                 //_facelets = newLoc;
                 _facelets.put(key, (paramsSet != null && !paramsSet.isEmpty()) ? 
-                        new FaceletNode(f, paramsSet) : new FaceletNode(f) );
+                        new FaceletNode(f, paramsSet) : new FaceletNode(f), f.getCompilationUnitCount());
             }
         }
+        else
+        {
+            _statistics.recordHit();
+        }
         
         return f;
     }
@@ -143,7 +155,7 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
         if (f == null || this.needsToBeRefreshed(f) || create)
         {
             //f = this._createFacelet(url);
-            f = getMemberFactory().newInstance(url);
+            f = createFacelet(getMemberFactory(), url);
             if (_refreshPeriod != NO_CACHE_DELAY)
             {
                 //Map<String, FaceletNode> newLoc = new HashMap<String, FaceletNode>(_facelets);
@@ -152,16 +164,20 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
                     paramsSet = new HashSet(paramsSet);
                     paramsSet.addAll(knownParameters);
                     //newLoc.put(key, new FaceletNode(f, paramsSet));
-                    _facelets.put(key, new FaceletNode(f, paramsSet));
+                    _facelets.put(key, new FaceletNode(f, paramsSet), f.getCompilationUnitCount());
                 }
                 else
                 {
                     //newLoc.put(key, new FaceletNode(f));
-                    _facelets.put(key, new FaceletNode(f));
+                    _facelets.put(key, new FaceletNode(f), f.getCompilationUnitCount());
                 }
                 //_facelets = newLoc;
             }
         }
+        else
+        {
+            _statistics.recordHit();
+        }
 
         if (!paramsSet.isEmpty())
         {
@@ -196,15 +212,19 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
         if (f == null || this.needsToBeRefreshed(f))
         {
             //f = this._createViewMetadataFacelet(url);
-            f = getMetadataMemberFactory().newInstance(url);
+            f = createFacelet(getMetadataMemberFactory(), url);
             if (_refreshPeriod != NO_CACHE_DELAY)
             {
                 //Map<String, DefaultFacelet> newLoc = new HashMap<String, DefaultFacelet>(_viewMetadataFacelets);
                 //newLoc.put(key, f);
                 //_viewMetadataFacelets = newLoc;
-                _viewMetadataFacelets.put(key, f);
+                _viewMetadataFacelets.put(key, f, f.getCompilationUnitCount());
             }
         }
+        else
+        {
+            _statistics.recordHit();
+        }
         
         return f;
     }
@@ -215,6 +235,15 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
         return _viewMetadataFacelets.containsKey(url.toString());
     }
 
+    private DefaultFacelet createFacelet(MemberFactory<DefaultFacelet> factory, URL url) throws IOException
+    {
+        _statistics.recordMiss();
+        long start = System.nanoTime();
+        DefaultFacelet f = factory.newInstance(url);
+        _statistics.recordCompile(System.nanoTime() - start);
+        return f;
+    }
+
     /**
      * Template method for determining if the Facelet needs to be refreshed.
      * 
@@ -268,16 +297,20 @@ class CacheELFaceletCacheImpl extends AbstractFaceletCache<DefaultFacelet>
 
         if (f == null || this.needsToBeRefreshed(f))
         {
-            f = getCompositeComponentMetadataMemberFactory().newInstance(url);
+            f = createFacelet(getCompositeComponentMetadataMemberFactory(), url);
             if (_refreshPeriod != NO_CACHE_DELAY)
             {
                 //Map<String, DefaultFacelet> newLoc
                 //        = new HashMap<String, DefaultFacelet>(_compositeComponentMetadataFacelets);
                 //newLoc.put(key, f);
                 //_compositeComponentMetadataFacelets = newLoc;
-                _compositeComponentMetadataFacelets.put(key, f);
+                _compositeComponentMetadataFacelets.put(key, f, f.getCompilationUnitCount());
             }
         }
+        else
+        {
+            _statistics.recordHit();
+        }
         return f;
     }
 
@@ -451,6 +451,17 @@ final class DefaultFacelet extends AbstractFacelet
         return _createTime;
     }
 
+    /**
+     * The number of compilation units of the page, used as the weight of this Facelet in the cache.
+     * 
+     * @return number of compilation units, at least 1
+     */
+    public int getCompilationUnitCount()
+    {
+        return _root instanceof EncodingHandler
+                ? Math.max(1, ((EncodingHandler) _root).getCompilationUnitCount()) : 1;
+    }
+
     /**
      * Delegates resolution to DefaultFaceletFactory reference. Also, caches URLs for relative paths.
      * 
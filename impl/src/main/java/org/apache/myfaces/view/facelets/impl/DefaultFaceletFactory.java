@@ -22,8 +22,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -92,9 +92,9 @@ public final class DefaultFaceletFactory extends FaceletFactory
         
         //_viewMetadataFacelets = new HashMap<String, DefaultFacelet>();
         
-        _compositeComponentMetadataFacelets = new HashMap<String, DefaultFacelet>();
+        _compositeComponentMetadataFacelets = new ConcurrentHashMap<String, DefaultFacelet>();
 
-        _relativeLocations = new HashMap<String, URL>();
+        _relativeLocations = new ConcurrentHashMap<String, URL>();
 
         _resolver = resolver;
         if (_resolver instanceof DefaultResourceResolver)
@@ -220,9 +220,7 @@ public final class DefaultFaceletFactory extends FaceletFactory
                 }
                 else
                 {
-                    Map<String, URL> newLoc = new HashMap<String, URL>(_relativeLocations);
-                    newLoc.put(uri, url);
-                    _relativeLocations = newLoc;
+                    _relativeLocations.put(uri, url);
                 }
             }
             else
@@ -482,9 +480,7 @@ public final class DefaultFaceletFactory extends FaceletFactory
                 }
                 else
                 {
-                    Map<String, URL> newLoc = new HashMap<String, URL>(_relativeLocations);
-                    newLoc.put(uri, url);
-                    _relativeLocations = newLoc;
+                    _relativeLocations.put(uri, url);
                 }
             }
             else
@@ -536,9 +532,7 @@ public final class DefaultFaceletFactory extends FaceletFactory
                 }
                 else
                 {
-                    Map<String, URL> newLoc = new HashMap<String, URL>(_relativeLocations);
-                    newLoc.put(uri, url);
-                    _relativeLocations = newLoc;
+                    _relativeLocations.put(uri, url);
                 }
             }
             else
@@ -573,10 +567,7 @@ public final class DefaultFaceletFactory extends FaceletFactory
                 f = this._createCompositeComponentMetadataFacelet(url);
                 if (_refreshPeriod != NO_CACHE_DELAY)
                 {
-                    Map<String, DefaultFacelet> newLoc
-                            = new HashMap<String, DefaultFacelet>(_compositeComponentMetadataFacelets);
-                    newLoc.put(key, f);
-                    _compositeComponentMetadataFacelets = newLoc;
+                    _compositeComponentMetadataFacelets.put(key, f);
                 }
             }
             return f;
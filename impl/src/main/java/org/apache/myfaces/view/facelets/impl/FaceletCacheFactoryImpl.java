@@ -25,6 +25,7 @@ import javax.faces.context.FacesContext;
 import javax.faces.view.facelets.FaceletCache;
 import javax.faces.view.facelets.FaceletCacheFactory;
 
+import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
 import org.apache.myfaces.shared.util.WebConfigParamUtils;
 import org.apache.myfaces.view.facelets.ELExpressionCacheMode;
 import org.apache.myfaces.view.facelets.FaceletViewDeclarationLanguage;
@@ -37,6 +38,24 @@ import org.apache.myfaces.view.facelets.FaceletViewDeclarationLanguage;
  */
 public class FaceletCacheFactoryImpl extends FaceletCacheFactory
 {
+    /**
+     * Maximum weight of the Facelets kept by the cache, for each kind of Facelet (views and templates, view
+     * metadata and composite component metadata). The weight of a Facelet is the number of tags and blocks of
+     * text of its page. When it is reached, the pages used less often are evicted first. By default the cache
+     * is not bounded.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="-1", group="viewhandler", tags="performance")
+    public static final String FACELET_CACHE_MAX_WEIGHT_PARAM = "org.apache.myfaces.FACELET_CACHE_MAX_WEIGHT";
+    public static final long FACELET_CACHE_MAX_WEIGHT_PARAM_DEFAULT = -1;
+
+    /**
+     * Registers the hit, miss, compilation and eviction counters of the Facelet cache in the platform
+     * MBeanServer, as org.apache.myfaces:type=FaceletCache,context=&lt;context path&gt;.
+     */
+    @JSFWebConfigParam(since="3.0.0", defaultValue="false", expectedValues="true, false",
+            group="viewhandler", tags="performance")
+    public static final String FACELET_CACHE_JMX_PARAM = "org.apache.myfaces.FACELET_CACHE_JMX";
+    public static final boolean FACELET_CACHE_JMX_PARAM_DEFAULT = false;
 
     @Override
     public FaceletCache getFaceletCache()
@@ -63,13 +82,21 @@ public class FaceletCacheFactoryImpl extends FaceletCacheFactory
                     FaceletCompositionContextImpl.INIT_PARAM_CACHE_EL_EXPRESSIONS, 
                         ELExpressionCacheMode.noCache.name());
         
+        FaceletCacheStatistics statistics = new FaceletCacheStatistics(WebConfigParamUtils.getLongInitParameter(
+                eContext, FACELET_CACHE_MAX_WEIGHT_PARAM, FACELET_CACHE_MAX_WEIGHT_PARAM_DEFAULT));
+        if (WebConfigParamUtils.getBooleanInitParameter(eContext, FACELET_CACHE_JMX_PARAM,
+                FACELET_CACHE_JMX_PARAM_DEFAULT))
+        {
+            FaceletCacheStatistics.register(eContext, statistics);
+        }
+
         if (ELExpressionCacheMode.alwaysRecompile.toString().equals(elMode))
         {
-            return new CacheELFaceletCacheImpl(refreshPeriod);
+            return new CacheELFaceletCacheImpl(refreshPeriod, statistics);
         }
         else
         {
-            return new FaceletCacheImpl(refreshPeriod);
+            return new FaceletCacheImpl(refreshPeriod, statistics);
         }
     }
 
@@ -22,8 +22,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.faces.view.facelets.FaceletCache;
 import javax.faces.view.facelets.FaceletException;
@@ -54,19 +52,28 @@ class FaceletCacheImpl extends FaceletCache<DefaultFacelet>
     private static final long INFINITE_DELAY = -1;
     private static final long NO_CACHE_DELAY = 0;
     
-    private Map<String, DefaultFacelet> _facelets;
+    private final FaceletCacheMap<DefaultFacelet> _facelets;
     
-    private Map<String, DefaultFacelet> _viewMetadataFacelets;
+    private final FaceletCacheMap<DefaultFacelet> _viewMetadataFacelets;
+
+    private final FaceletCacheStatistics _statistics;
 
     private long _refreshPeriod;
     
     FaceletCacheImpl(long refreshPeriod)
+    {
+        this(refreshPeriod, new FaceletCacheStatistics(-1));
+    }
+
+    FaceletCacheImpl(long refreshPeriod, FaceletCacheStatistics statistics)
     {
         _refreshPeriod = refreshPeriod < 0 ? INFINITE_DELAY : refreshPeriod * 1000;
         
-        _facelets = new HashMap<String, DefaultFacelet>();
+        _statistics = statistics;
+
+        _facelets = new FaceletCacheMap<DefaultFacelet>(statistics.getMaxWeight(), statistics);
         
-        _viewMetadataFacelets = new HashMap<String, DefaultFacelet>();
+        _viewMetadataFacelets = new FaceletCacheMap<DefaultFacelet>(statistics.getMaxWeight(), statistics);
     }
 
     @Override
@@ -81,14 +88,16 @@ class FaceletCacheImpl extends FaceletCache<DefaultFacelet>
         if (f == null || this.needsToBeRefreshed(f))
         {
             //f = this._createFacelet(url);
-            f = getMemberFactory().newInstance(url);
+            f = createFacelet(getMemberFactory(), url);
             if (_refreshPeriod != NO_CACHE_DELAY)
             {
-                Map<String, DefaultFacelet> newLoc = new HashMap<String, DefaultFacelet>(_facelets);
-                newLoc.put(key, f);
-                _facelets = newLoc;
+                _facelets.put(key, f, f.getCompilationUnitCount());
             }
         }
+        else
+        {
+            _statistics.recordHit();
+        }
         
         return f;
     }
@@ -111,14 +120,16 @@ class FaceletCacheImpl extends FaceletCache<DefaultFacelet>
         if (f == null || this.needsToBeRefreshed(f))
         {
             //f = this._createViewMetadataFacelet(url);
-            f = getMetadataMemberFactory().newInstance(url);
+            f = createFacelet(getMetadataMemberFactory(), url);
             if (_refreshPeriod != NO_CACHE_DELAY)
             {
-                Map<String, DefaultFacelet> newLoc = new HashMap<String, DefaultFacelet>(_viewMetadataFacelets);
-                newLoc.put(key, f);
-                _viewMetadataFacelets = newLoc;
+                _viewMetadataFacelets.put(key, f, f.getCompilationUnitCount());
             }
         }
+        else
+        {
+            _statistics.recordHit();
+        }
         
         return f;
     }
@@ -129,6 +140,15 @@ class FaceletCacheImpl extends FaceletCache<DefaultFacelet>
         return _viewMetadataFacelets.containsKey(url.toString());
     }
 
+    private DefaultFacelet createFacelet(MemberFactory<DefaultFacelet> factory, URL url) throws IOException
+    {
+        _statistics.recordMiss();
+        long start = System.nanoTime();
+        DefaultFacelet f = factory.newInstance(url);
+        _statistics.recordCompile(System.nanoTime() - start);
+        return f;
+    }
+
     /**
      * Template method for determining if the Facelet needs to be refreshed.
      * 
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Map of compiled Facelets by URL, optionally bounded by the sum of the weights of its entries. The
+ * weight of a Facelet is the number of compilation units of its page.</p>
+ * 
+ * <p>Lookups do not lock. When the map is bounded, every lookup is also recorded in a frequency
+ * sketch, and the admission follows TinyLFU: to make room for a new Facelet, the oldest entries are
+ * evicted only if they were used less often than the new one. Older entries used more often are moved
+ * to the end instead, and if too many of them are found the new Facelet is not cached at all. That
+ * way, pages included once do not push out the templates every request uses.</p>
+ */
+class FaceletCacheMap<V>
+{
+    /**
+     * How many of the oldest entries are looked at to make room for a new one.
+     */
+    private static final int EVICTION_CANDIDATES = 8;
+
+    private final Map<String, Node<V>> _map = new ConcurrentHashMap<String, Node<V>>();
+
+    private final long _maxWeight;
+
+    private final FaceletCacheStatistics _statistics;
+
+    private final FrequencySketch _sketch;
+
+    private final ReentrantLock _lock;
+
+    /**
+     * Entries from the oldest to the newest, guarded by _lock. Only used when the map is bounded.
+     */
+    private final LinkedHashMap<String, Node<V>> _order;
+
+    private long _weight;
+
+    FaceletCacheMap(long maxWeight, FaceletCacheStatistics statistics)
+    {
+        _maxWeight = maxWeight;
+        _statistics = statistics;
+        if (maxWeight > 0)
+        {
+            _sketch = new FrequencySketch(4096);
+            _lock = new ReentrantLock();
+            _order = new LinkedHashMap<String, Node<V>>();
+        }
+        else
+        {
+            _sketch = null;
+            _lock = null;
+            _order = null;
+        }
+    }
+
+    public V get(String key)
+    {
+        if (_sketch != null)
+        {
+            _sketch.increment(key);
+        }
+        Node<V> node = _map.get(key);
+        return node == null ? null : node.value;
+    }
+
+    public boolean containsKey(String key)
+    {
+        return _map.containsKey(key);
+    }
+
+    public void put(String key, V value, int weight)
+    {
+        Node<V> node = new Node<V>(key, value, weight);
+        if (_order == null)
+        {
+            Node<V> old = _map.put(key, node);
+            _statistics.recordChange(old == null ? 1 : 0, old == null ? weight : weight - old.weight);
+            return;
+        }
+
+        int entries;
+        long weightChange;
+        _lock.lock();
+        try
+        {
+            int size = _order.size();
+            long weightBefore = _weight;
+
+            Node<V> old = _order.remove(key);
+            if (old != null)
+            {
+                _map.remove(key);
+                _weight -= old.weight;
+            }
+
+            if (makeRoom(key, weight))
+            {
+                _order.put(key, node);
+                _map.put(key, node);
+                _weight += weight;
+            }
+            else
+            {
+                _statistics.recordRejection();
+            }
+
+            entries = _order.size() - size;
+            weightChange = _weight - weightBefore;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+        _statistics.recordChange(entries, weightChange);
+    }
+
+    /**
+     * Evicts the oldest entries used less often than the new one until its weight fits. The victims
+     * are only evicted once enough of them were found, so a rejected entry does not empty the cache.
+     * 
+     * @return false if the new entry should not be cached
+     */
+    private boolean makeRoom(String key, int weight)
+    {
+        if (weight > _maxWeight)
+        {
+            return false;
+        }
+        if (_weight + weight <= _maxWeight)
+        {
+            return true;
+        }
+
+        int frequency = _sketch.frequency(key);
+        List<Node<V>> victims = new ArrayList<Node<V>>(EVICTION_CANDIDATES);
+        List<Node<V>> used = null;
+        long victimsWeight = 0;
+        Iterator<Node<V>> it = _order.values().iterator();
+        for (int candidates = 0; _weight - victimsWeight + weight > _maxWeight; candidates++)
+        {
+            if (candidates == EVICTION_CANDIDATES || !it.hasNext())
+            {
+                break;
+            }
+            Node<V> candidate = it.next();
+            if (_sketch.frequency(candidate.key) > frequency)
+            {
+                // used more often than the new entry, give it another round
+                if (used == null)
+                {
+                    used = new ArrayList<Node<V>>(EVICTION_CANDIDATES);
+                }
+                used.add(candidate);
+            }
+            else
+            {
+                victims.add(candidate);
+                victimsWeight += candidate.weight;
+            }
+        }
+
+        if (used != null)
+        {
+            for (Node<V> entry : used)
+            {
+                _order.remove(entry.key);
+                _order.put(entry.key, entry);
+            }
+        }
+        if (_weight - victimsWeight + weight > _maxWeight)
+        {
+            return false;
+        }
+        for (Node<V> victim : victims)
+        {
+            _order.remove(victim.key);
+            _map.remove(victim.key);
+            _weight -= victim.weight;
+            _statistics.recordEviction();
+        }
+        return true;
+    }
+
+    private static final class Node<V>
+    {
+        private final String key;
+        private final V value;
+        private final int weight;
+
+        Node(String key, V value, int weight)
+        {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Count-min sketch of how often each key was looked up, with four 4-bit counters per key. Counters
+     * are halved after a number of lookups, so the frequencies follow the recent use of the pages.
+     * Updates are not synchronized: a lost increment only makes the estimate slightly lower.
+     */
+    private static final class FrequencySketch
+    {
+        private static final int[] SEEDS = {0x97cb3127, 0xb3ab3f49, 0x2f8b3a6b, 0x61c88647};
+        private static final int MAX_COUNT = 15;
+
+        private final byte[] _table;
+        private final int _mask;
+        private final int _sampleSize;
+        private int _size;
+
+        FrequencySketch(int width)
+        {
+            _table = new byte[width];
+            _mask = width - 1;
+            _sampleSize = width * 10;
+        }
+
+        void increment(String key)
+        {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++)
+            {
+                int index = indexOf(hash, i);
+                if (_table[index] < MAX_COUNT)
+                {
+                    _table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++_size >= _sampleSize)
+            {
+                reset();
+            }
+        }
+
+        int frequency(String key)
+        {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++)
+            {
+                frequency = Math.min(frequency, _table[indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int i)
+        {
+            int h = (hash + SEEDS[i]) * SEEDS[i];
+            return (h ^ (h >>> 16)) & _mask;
+        }
+
+        private void reset()
+        {
+            for (int i = 0; i < _table.length; i++)
+            {
+                _table[i] = (byte) (_table[i] >>> 1);
+            }
+            _size /= 2;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.faces.context.ExternalContext;
+
+import org.apache.myfaces.shared.util.MBeanUtils;
+
+/**
+ * Counters of the Facelet cache of an application: hits, misses, compilations, evictions and the
+ * current size. They can be registered in the platform MBeanServer as
+ * <code>org.apache.myfaces:type=FaceletCache,context=&lt;context path&gt;</code>.
+ * 
+ * @since 3.0.0
+ */
+public class FaceletCacheStatistics implements FaceletCacheStatisticsMBean
+{
+    private final long maxWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder compiles = new LongAdder();
+    private final LongAdder compileNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder size = new LongAdder();
+    private final LongAdder weight = new LongAdder();
+
+    public FaceletCacheStatistics(long maxWeight)
+    {
+        this.maxWeight = maxWeight > 0 ? maxWeight : -1;
+    }
+
+    void recordHit()
+    {
+        hits.increment();
+    }
+
+    void recordMiss()
+    {
+        misses.increment();
+    }
+
+    void recordCompile(long nanos)
+    {
+        compiles.increment();
+        compileNanos.add(nanos);
+    }
+
+    void recordEviction()
+    {
+        evictions.increment();
+    }
+
+    void recordRejection()
+    {
+        rejections.increment();
+    }
+
+    void recordChange(int entries, long weight)
+    {
+        this.size.add(entries);
+        this.weight.add(weight);
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio()
+    {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getCompileCount()
+    {
+        return compiles.sum();
+    }
+
+    @Override
+    public long getTotalCompileTimeMillis()
+    {
+        return compileNanos.sum() / 1000000L;
+    }
+
+    @Override
+    public double getAverageCompileTimeMillis()
+    {
+        long count = getCompileCount();
+        return count == 0 ? 0 : compileNanos.sum() / 1000000d / count;
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    @Override
+    public long getRejectionCount()
+    {
+        return rejections.sum();
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size.sum();
+    }
+
+    @Override
+    public long getWeight()
+    {
+        return weight.sum();
+    }
+
+    @Override
+    public long getMaxWeight()
+    {
+        return maxWeight;
+    }
+
+    @Override
+    public void resetCounters()
+    {
+        hits.reset();
+        misses.reset();
+        compiles.reset();
+        compileNanos.reset();
+        evictions.reset();
+        rejections.reset();
+    }
+
+    /**
+     * Registers the statistics in the platform MBeanServer, replacing the ones of a previous
+     * instance of the same application.
+     */
+    public static void register(ExternalContext externalContext, FaceletCacheStatistics statistics)
+    {
+        MBeanUtils.register(externalContext, "FaceletCache", statistics);
+    }
+
+    /**
+     * Unregisters the statistics registered for this application, if any.
+     */
+    public static void unregister(ExternalContext externalContext)
+    {
+        MBeanUtils.unregister(externalContext, "FaceletCache");
+    }
+}
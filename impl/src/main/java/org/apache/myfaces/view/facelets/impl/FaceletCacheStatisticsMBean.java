@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.impl;
+
+/**
+ * Management interface of {@link FaceletCacheStatistics}, registered when
+ * <code>org.apache.myfaces.FACELET_CACHE_JMX</code> is true.
+ * 
+ * @since 3.0.0
+ */
+public interface FaceletCacheStatisticsMBean
+{
+    /**
+     * @return number of requests for a Facelet answered from the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return number of requests for a Facelet that had to compile it, because it was not cached or
+     * its source was modified
+     */
+    long getMissCount();
+
+    double getHitRatio();
+
+    long getCompileCount();
+
+    long getTotalCompileTimeMillis();
+
+    double getAverageCompileTimeMillis();
+
+    /**
+     * @return number of Facelets removed from the cache to make room for others
+     */
+    long getEvictionCount();
+
+    /**
+     * @return number of compiled Facelets not added to the cache, because they are used less often than
+     * the ones that would have to be evicted
+     */
+    long getRejectionCount();
+
+    /**
+     * @return number of Facelets in the cache
+     */
+    long getSize();
+
+    /**
+     * @return sum of the weights (compilation units) of the Facelets in the cache
+     */
+    long getWeight();
+
+    /**
+     * @return maximum weight for each kind of Facelet kept by the cache, or -1 if it is not bounded
+     */
+    long getMaxWeight();
+
+    void resetCounters();
+}
@@ -21,7 +21,12 @@ package org.apache.myfaces.view.facelets.util;
 import java.io.IOException;
 import java.io.Writer;
 
+import org.apache.myfaces.shared.util.CharArrayPool;
+
 /**
+ * Its buffer is taken from the {@link CharArrayPool} of the current thread, and given back by
+ * {@link #release()} once the content is not needed anymore.
+ * 
  * @author Jacob Hookom
  * @version $Id$
  */
@@ -42,7 +47,7 @@ public final class FastWriter extends Writer
         {
             throw new IllegalArgumentException("Initial Size cannot be less than 0");
         }
-        this.buff = new char[initialSize];
+        this.buff = CharArrayPool.acquire(initialSize);
     }
 
     @Override
@@ -59,10 +64,15 @@ public final class FastWriter extends Writer
 
     private void overflow(int len)
     {
+        if (this.buff == null)
+        {
+            this.buff = CharArrayPool.acquire(len);
+        }
         if (this.size + len > this.buff.length)
         {
-            char[] next = new char[(this.size + len) * 2];
+            char[] next = CharArrayPool.acquire((this.size + len) * 2);
             System.arraycopy(this.buff, 0, next, 0, this.size);
+            CharArrayPool.release(this.buff);
             this.buff = next;
         }
     }
@@ -108,9 +118,20 @@ public final class FastWriter extends Writer
         this.size = 0;
     }
 
+    /**
+     * Discards the content and gives the buffer back to the pool. The writer can still be used
+     * afterwards, it takes a new buffer on the next write.
+     */
+    public void release()
+    {
+        CharArrayPool.release(this.buff);
+        this.buff = null;
+        this.size = 0;
+    }
+
     @Override
     public String toString()
     {
-        return new String(this.buff, 0, this.size);
+        return this.size == 0 ? "" : new String(this.buff, 0, this.size);
     }
 }
@@ -18,6 +18,7 @@
  */
 package org.apache.myfaces.webapp;
 
+import org.apache.myfaces.application.viewstate.StateCacheUtils;
 import org.apache.myfaces.buildtools.maven2.plugin.builder.annotation.JSFWebConfigParam;
 import org.apache.myfaces.config.FacesConfigValidator;
 import org.apache.myfaces.config.FacesConfigurator;
@@ -25,7 +26,10 @@ import org.apache.myfaces.config.RuntimeConfig;
 import org.apache.myfaces.context.servlet.StartupFacesContextImpl;
 import org.apache.myfaces.context.servlet.StartupServletExternalContextImpl;
 import org.apache.myfaces.shared.application.FacesServletMappingUtils;
+import org.apache.myfaces.shared.resource.ResourceHandlerCache;
+import org.apache.myfaces.shared.resource.ResourceHandlerCacheStatistics;
 import org.apache.myfaces.context.ExceptionHandlerImpl;
+import org.apache.myfaces.shared.util.CharArrayPoolStatistics;
 import org.apache.myfaces.shared.util.StateUtils;
 import org.apache.myfaces.shared.util.WebConfigParamUtils;
 import org.apache.myfaces.cdi.util.BeanEntry;
@@ -37,6 +41,7 @@ import org.apache.myfaces.spi.ViewScopeProviderFactory;
 import org.apache.myfaces.spi.WebConfigProvider;
 import org.apache.myfaces.spi.WebConfigProviderFactory;
 import org.apache.myfaces.util.ExternalSpecifications;
+import org.apache.myfaces.view.facelets.impl.FaceletCacheStatistics;
 import org.apache.myfaces.view.facelets.tag.MetaRulesetImpl;
 
 import javax.el.ExpressionFactory;
@@ -71,6 +76,7 @@ import org.apache.myfaces.spi.FacesFlowProvider;
 import org.apache.myfaces.spi.FacesFlowProviderFactory;
 import org.apache.myfaces.spi.ServiceProviderFinder;
 import org.apache.myfaces.spi.ServiceProviderFinderFactory;
+import org.apache.myfaces.view.facelets.FaceletsWarmUpProcessor;
 import org.apache.myfaces.view.facelets.ViewPoolProcessor;
 import org.apache.myfaces.context.ReleasableExternalContext;
 
@@ -233,6 +239,17 @@ public abstract class AbstractFacesInitializer implements FacesInitializer
             
             //Start ViewPoolProcessor if necessary
             ViewPoolProcessor.initialize(facesContext);
+
+            if (WebConfigParamUtils.getBooleanInitParameter(externalContext,
+                    CharArrayPoolStatistics.CHAR_ARRAY_POOL_JMX_PARAM,
+                    CharArrayPoolStatistics.CHAR_ARRAY_POOL_JMX_PARAM_DEFAULT))
+            {
+                CharArrayPoolStatistics.register(externalContext);
+            }
+            ResourceHandlerCache.registerStatistics(facesContext);
+
+            //Compile the pages before the first request if necessary
+            FaceletsWarmUpProcessor.warmUp(facesContext, () -> _createFacesContext(servletContext, true));
             
             Boolean automaticExtensionlessMapping = WebConfigParamUtils.getBooleanInitParameter(
                     externalContext, INIT_PARAM_AUTOMATIC_EXTENSIONLESS_MAPPING, 
@@ -357,6 +374,11 @@ public abstract class AbstractFacesInitializer implements FacesInitializer
             WebsocketFacesInit.clearWebsocketSessionLRUCache(facesContext.getExternalContext());
         }
         
+        FaceletCacheStatistics.unregister(facesContext.getExternalContext());
+        CharArrayPoolStatistics.unregister(facesContext.getExternalContext());
+        ResourceHandlerCacheStatistics.unregister(facesContext.getExternalContext());
+        StateCacheUtils.destroy(facesContext.getExternalContext());
+
         // clear UIViewParameter default renderer map
         try
         {
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.faces.component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.faces.context.FacesContext;
+
+import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComponentIndexTest extends AbstractJsfTestCase
+{
+    private final List<UIComponent> invoked = new ArrayList<UIComponent>();
+
+    private final ContextCallback callback = new ContextCallback()
+    {
+        @Override
+        public void invokeContextCallback(FacesContext context, UIComponent target)
+        {
+            Assert.assertSame(target, UIComponent.getCurrentComponent(context));
+            invoked.add(target);
+        }
+    };
+
+    @Override
+    protected void setUpServletObjects() throws Exception
+    {
+        super.setUpServletObjects();
+        servletContext.addInitParameter("org.apache.myfaces.COMPONENT_INDEX_ENABLED", "true");
+    }
+
+    private UIComponent createOutput(UIComponent parent, String id)
+    {
+        UIOutput output = new UIOutput();
+        output.setId(id);
+        parent.getChildren().add(output);
+        return output;
+    }
+
+    private UIComponent createNamingContainer(UIComponent parent, String id)
+    {
+        UINamingContainer container = new UINamingContainer();
+        container.setId(id);
+        parent.getChildren().add(container);
+        return container;
+    }
+
+    private UIComponent invoke(String clientId)
+    {
+        invoked.clear();
+        boolean found = facesContext.getViewRoot().invokeOnComponent(facesContext, clientId, callback);
+        Assert.assertEquals(found, invoked.size() == 1);
+        return found ? invoked.get(0) : null;
+    }
+
+    @Test
+    public void testFindComponent()
+    {
+        UIViewRoot root = facesContext.getViewRoot();
+        UIComponent form = createNamingContainer(root, "form");
+        UIComponent panel = createOutput(form, "panel");
+        UIComponent input = createOutput(panel, "input");
+        UIComponent other = createOutput(form, "other");
+
+        Assert.assertSame(input, root.findComponent("form:input"));
+        Assert.assertSame(input, root.findComponent(":form:input"));
+        Assert.assertSame(other, input.findComponent("other"));
+        Assert.assertNull(root.findComponent("input"));
+        Assert.assertNull(root.findComponent("form:missing"));
+    }
+
+    @Test
+    public void testFindComponentAfterChanges()
+    {
+        UIViewRoot root = facesContext.getViewRoot();
+        UIComponent form = createNamingContainer(root, "form");
+        UIComponent panel = createOutput(form, "panel");
+        UIComponent input = createOutput(panel, "input");
+        Assert.assertSame(input, root.findComponent("form:input"));
+
+        panel.getChildren().remove(input);
+        Assert.assertNull(root.findComponent("form:input"));
+
+        UIComponent form2 = createNamingContainer(root, "form2");
+        form2.getChildren().add(input);
+        Assert.assertNull(root.findComponent("form:input"));
+        Assert.assertSame(input, root.findComponent("form2:input"));
+
+        input.setId("renamed");
+        Assert.assertNull(root.findComponent("form2:input"));
+        Assert.assertSame(input, root.findComponent("form2:renamed"));
+
+        UIComponent added = createOutput(panel, "added");
+        Assert.assertSame(added, root.findComponent("form:added"));
+    }
+
+    @Test
+    public void testInvokeOnComponent()
+    {
+        UIViewRoot root = facesContext.getViewRoot();
+        UIComponent form = createNamingContainer(root, "form");
+        UIComponent panel = createOutput(form, "panel");
+        UIComponent input = createOutput(panel, "input");
+        for (int i = 0; i < 100; i++)
+        {
+            createOutput(form, "output" + i);
+        }
+
+        Assert.assertSame(input, invoke("form:input"));
+        Assert.assertSame(form.getChildren().get(51), invoke("form:output50"));
+        Assert.assertNull(invoke("form:missing"));
+        Assert.assertNull(UIComponent.getCurrentComponent(facesContext));
+
+        panel.getChildren().remove(input);
+        Assert.assertNull(invoke("form:input"));
+
+        input.setId("renamed");
+        panel.getChildren().add(input);
+        Assert.assertSame(input, invoke("form:renamed"));
+
+        UIComponent added = createOutput(panel, "added");
+        Assert.assertSame(added, invoke("form:added"));
+    }
+
+    @Test
+    public void testInvokeOnComponentInsideUIData()
+    {
+        UIViewRoot root = facesContext.getViewRoot();
+        UIComponent form = createNamingContainer(root, "form");
+        UIData table = new UIData();
+        table.setId("table");
+        form.getChildren().add(table);
+        UIColumn column = new UIColumn();
+        column.setId("column");
+        table.getChildren().add(column);
+        createOutput(column, "cell");
+
+        Assert.assertSame(table, invoke("form:table"));
+        // UIData sets up its rows in invokeOnComponent, so the index must not bypass it
+        _ComponentIndex index = root._getComponentIndex(facesContext);
+        Assert.assertNull(index.getComponentByClientId(facesContext, "form:table"));
+        Assert.assertNull(index.getComponentByClientId(facesContext, "form:table:cell"));
+    }
+}
@@ -18,6 +18,9 @@
  */
 package javax.faces.component;
 
+import java.lang.reflect.InvocationTargetException;
+
+import javax.faces.FacesException;
 import javax.faces.component.html.HtmlInputText;
 
 import org.apache.myfaces.test.base.AbstractJsfTestCase;
@@ -51,6 +54,155 @@ public class UIComponentAttributesTest extends AbstractJsfTestCase
     {
         input.getAttributes().put("style", null);
     }
+
+    public void testPropertyThroughMethodHandle()
+    {
+        PropertyComponent component = new PropertyComponent();
+        component.setId("propertyId");
+
+        component.getAttributes().put("count", 3);
+        component.getAttributes().put("label", "first");
+
+        assertEquals(3, component.getCount());
+        assertEquals(3, component.getAttributes().get("count"));
+        assertEquals("first", component.getAttributes().put("label", null));
+        assertNull(component.getLabel());
+    }
+
+    public void testPropertyWidenedByReflection()
+    {
+        PropertyComponent component = new PropertyComponent();
+        component.setId("propertyId");
+
+        // a short is not an Integer, but the reflective call widens it for the int setter
+        component.getAttributes().put("count", (short) 4);
+
+        assertEquals(4, component.getCount());
+    }
+
+    public void testPropertyDeclaredOnPackagePrivateClass()
+    {
+        // the accessors can't be unreflected with the public lookup, they are invoked reflectively
+        HiddenComponent component = new HiddenComponent();
+        component.setId("hiddenId");
+
+        component.getAttributes().put("note", "hidden");
+
+        assertEquals("hidden", component.getNote());
+        assertEquals("hidden", component.getAttributes().get("note"));
+    }
+
+    public void testThrowingGetter()
+    {
+        PropertyComponent component = new PropertyComponent();
+        component.setId("propertyId");
+
+        assertGetFails(component, "broken", IllegalStateException.class);
+        assertGetFails(component, "linkage", NoClassDefFoundError.class);
+    }
+
+    public void testWrongTypeSetterValue()
+    {
+        PropertyComponent component = new PropertyComponent();
+        component.setId("propertyId");
+
+        assertPutFails(component, "count", "three");
+        assertPutFails(component, "label", Boolean.TRUE);
+        assertEquals(0, component.getCount());
+        assertNull(component.getLabel());
+    }
+
+    public void testNullPrimitiveSetterValue()
+    {
+        PropertyComponent component = new PropertyComponent();
+        component.setId("propertyId");
+        component.setCount(5);
+
+        assertPutFails(component, "count", null);
+        assertEquals(5, component.getCount());
+    }
+
+    private static void assertGetFails(UIComponent component, String name, Class<? extends Throwable> causeType)
+    {
+        try
+        {
+            component.getAttributes().get(name);
+            fail("Should have thrown FacesException");
+        }
+        catch (FacesException e)
+        {
+            assertTrue(e.getCause() instanceof InvocationTargetException);
+            assertTrue(causeType.isInstance(e.getCause().getCause()));
+        }
+    }
+
+    private static void assertPutFails(UIComponent component, String name, Object value)
+    {
+        try
+        {
+            component.getAttributes().put(name, value);
+            fail("Should have thrown FacesException");
+        }
+        catch (FacesException e)
+        {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+    }
+
+    public static class PropertyComponent extends UIOutput
+    {
+        private int count;
+        private String label;
+
+        public int getCount()
+        {
+            return count;
+        }
+
+        public void setCount(int count)
+        {
+            this.count = count;
+        }
+
+        public String getLabel()
+        {
+            return label;
+        }
+
+        public void setLabel(String label)
+        {
+            this.label = label;
+        }
+
+        public String getBroken()
+        {
+            throw new IllegalStateException("broken");
+        }
+
+        public String getLinkage()
+        {
+            throw new NoClassDefFoundError("Missing");
+        }
+    }
+
+    static class HiddenBaseComponent extends UIOutput
+    {
+        private String note;
+
+        public String getNote()
+        {
+            return note;
+        }
+
+        public void setNote(String note)
+        {
+            this.note = note;
+        }
+    }
+
+    static class HiddenComponent extends HiddenBaseComponent
+    {
+    }
 /*
     public void testSetNullAttributeOnInvalidProperty()
     {
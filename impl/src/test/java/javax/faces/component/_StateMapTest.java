@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package javax.faces.component;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class _StateMapTest
+{
+    enum Keys
+    {
+        a, b, c, d, e, f, g, h, i, j
+    }
+
+    enum OtherKeys
+    {
+        a, b, c, d
+    }
+
+    private static final Serializable[] KEYS;
+
+    static
+    {
+        KEYS = new Serializable[Keys.values().length + OtherKeys.values().length + 6];
+        int i = 0;
+        for (Keys key : Keys.values())
+        {
+            KEYS[i++] = key;
+        }
+        for (OtherKeys key : OtherKeys.values())
+        {
+            KEYS[i++] = key;
+        }
+        while (i < KEYS.length)
+        {
+            KEYS[i] = "key" + i;
+            i++;
+        }
+    }
+
+    @Test
+    public void testBasicOperations()
+    {
+        _StateMap map = new _StateMap(2);
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.put(Keys.a, "1"));
+        Assert.assertNull(map.put(OtherKeys.a, null));
+        Assert.assertNull(map.put("a", "2"));
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("1", map.get(Keys.a));
+        Assert.assertTrue(map.containsKey(OtherKeys.a));
+        Assert.assertNull(map.get(OtherKeys.a));
+        Assert.assertFalse(map.containsKey(Keys.b));
+        Assert.assertEquals("1", map.put(Keys.a, "3"));
+        Assert.assertEquals("3", map.remove(Keys.a));
+        Assert.assertFalse(map.containsKey(Keys.a));
+        Assert.assertEquals("2", map.get("a"));
+        Assert.assertNull(map.get(null));
+
+        Map<Serializable, Object> expected = new HashMap<Serializable, Object>();
+        expected.put(OtherKeys.a, null);
+        expected.put("a", "2");
+        Assert.assertEquals(expected, map);
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.get("a"));
+    }
+
+    @Test
+    public void testSameContentAsHashMap()
+    {
+        Random random = new Random(42);
+        _StateMap map = new _StateMap();
+        Map<Serializable, Object> expected = new HashMap<Serializable, Object>();
+        for (int n = 0; n < 20000; n++)
+        {
+            Serializable key = KEYS[random.nextInt(KEYS.length)];
+            int operation = random.nextInt(10);
+            if (operation < 5)
+            {
+                Object value = random.nextBoolean() ? null : Integer.valueOf(n);
+                Assert.assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            else if (operation < 9)
+            {
+                Assert.assertEquals(expected.remove(key), map.remove(key));
+            }
+            else if (random.nextInt(50) == 0)
+            {
+                expected.clear();
+                map.clear();
+            }
+            Assert.assertEquals(expected.size(), map.size());
+            Assert.assertEquals(expected.containsKey(key), map.containsKey(key));
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+        Assert.assertEquals(expected, map);
+
+        int found = 0;
+        for (int i = 0; i < map.getCapacity(); i++)
+        {
+            Serializable key = map.getKey(i);
+            if (key != null)
+            {
+                found++;
+                Assert.assertEquals(expected.get(key), map.getValue(i));
+            }
+        }
+        Assert.assertEquals(expected.size(), found);
+    }
+}
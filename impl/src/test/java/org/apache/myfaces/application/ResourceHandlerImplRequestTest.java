@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.faces.application.ResourceHandler;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.myfaces.shared.resource.ResourceImpl;
+import org.apache.myfaces.shared.resource.ResourceLoaderUtils;
+import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
+import org.apache.myfaces.test.mock.MockServletOutputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests how ResourceHandlerImpl.handleResourceRequest sends a resource read from a file: validation
+ * by entity tag, byte ranges and the sendfile support of the container.
+ */
+public class ResourceHandlerImplRequestTest extends AbstractJsfTestCase
+{
+    private static final String RESOURCE_NAME = "testResource.xhtml";
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private ResourceHandlerImpl resourceHandler;
+    private File file;
+    private String etag;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        // the test resource is a .xhtml file, excluded by default
+        servletContext.addInitParameter(ResourceHandler.RESOURCE_EXCLUDES_PARAM_NAME, ".class");
+
+        resourceHandler = new ResourceHandlerImpl();
+        application.setResourceHandler(resourceHandler);
+        request.setPathElements("/ctx", "/faces", "/javax.faces.resource/" + RESOURCE_NAME, null);
+
+        file = ((ResourceImpl) resourceHandler.createResource(RESOURCE_NAME)).getFile();
+        Assert.assertNotNull(file);
+        etag = ResourceLoaderUtils.formatETag(file.length(), file.lastModified());
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        resourceHandler = null;
+        file = null;
+        super.tearDown();
+    }
+
+    private byte[] content() throws Exception
+    {
+        return ((MockServletOutputStream) response.getOutputStream()).content();
+    }
+
+    private void assertWholeFile() throws Exception
+    {
+        Assert.assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+        Assert.assertNull(response.getHeader("Content-Range"));
+        Assert.assertEquals(file.length(), response.getContentLength());
+        Assert.assertArrayEquals(Files.readAllBytes(file.toPath()), content());
+    }
+
+    @Test
+    public void testWholeFile() throws Exception
+    {
+        resourceHandler.handleResourceRequest(facesContext);
+
+        assertWholeFile();
+        Assert.assertEquals(etag, response.getHeader("ETag"));
+        Assert.assertEquals("bytes", response.getHeader("Accept-Ranges"));
+    }
+
+    @Test
+    public void testIfNoneMatch() throws Exception
+    {
+        request.addHeader("If-None-Match", etag);
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        Assert.assertEquals(etag, response.getHeader("ETag"));
+        Assert.assertEquals(0, content().length);
+    }
+
+    @Test
+    public void testRange() throws Exception
+    {
+        request.addHeader("Range", "bytes=10-19");
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        Assert.assertEquals("bytes 10-19/" + file.length(), response.getHeader("Content-Range"));
+        Assert.assertEquals(10, response.getContentLength());
+        Assert.assertArrayEquals(Arrays.copyOfRange(Files.readAllBytes(file.toPath()), 10, 20), content());
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws Exception
+    {
+        request.addHeader("Range", "bytes=" + file.length() + "-");
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+        Assert.assertEquals("bytes */" + file.length(), response.getHeader("Content-Range"));
+        Assert.assertEquals(0, content().length);
+    }
+
+    @Test
+    public void testIfRangeMatchingDate() throws Exception
+    {
+        request.addHeader("Range", "bytes=0-9");
+        request.addHeader("If-Range", ResourceLoaderUtils.formatDateHeader(file.lastModified()));
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        Assert.assertEquals(10, response.getContentLength());
+    }
+
+    @Test
+    public void testIfRangeOtherETag() throws Exception
+    {
+        request.addHeader("Range", "bytes=0-9");
+        request.addHeader("If-Range", "\"other\"");
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        assertWholeFile();
+    }
+
+    @Test
+    public void testIfRangeLaterDate() throws Exception
+    {
+        request.addHeader("Range", "bytes=0-9");
+        request.addHeader("If-Range", ResourceLoaderUtils.formatDateHeader(file.lastModified() + 60000));
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        assertWholeFile();
+    }
+
+    @Test
+    public void testSendfile() throws Exception
+    {
+        servletContext.addInitParameter(ResourceHandlerImpl.INIT_PARAM_RESOURCE_SENDFILE_ENABLED, "true");
+        request.setAttribute(SENDFILE_SUPPORT_ATTR, Boolean.TRUE);
+        request.addHeader("Range", "bytes=10-19");
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+        Assert.assertEquals(10, response.getContentLength());
+        Assert.assertEquals(file.getCanonicalPath(), request.getAttribute(SENDFILE_FILENAME_ATTR));
+        Assert.assertEquals(10L, request.getAttribute(SENDFILE_START_ATTR));
+        Assert.assertEquals(20L, request.getAttribute(SENDFILE_END_ATTR));
+        Assert.assertEquals(0, content().length);
+    }
+
+    @Test
+    public void testSendfileNotEnabled() throws Exception
+    {
+        request.setAttribute(SENDFILE_SUPPORT_ATTR, Boolean.TRUE);
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertNull(request.getAttribute(SENDFILE_FILENAME_ATTR));
+        assertWholeFile();
+    }
+
+    @Test
+    public void testSendfileNotSupported() throws Exception
+    {
+        servletContext.addInitParameter(ResourceHandlerImpl.INIT_PARAM_RESOURCE_SENDFILE_ENABLED, "true");
+
+        resourceHandler.handleResourceRequest(facesContext);
+
+        Assert.assertNull(request.getAttribute(SENDFILE_FILENAME_ATTR));
+        assertWholeFile();
+    }
+}
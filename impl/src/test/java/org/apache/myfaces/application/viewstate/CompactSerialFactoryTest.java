@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.faces.application.ProjectStage;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIViewRoot;
+import javax.faces.component.html.HtmlInputText;
+import javax.faces.component.html.HtmlOutputText;
+import javax.faces.component.html.HtmlPanelGroup;
+import javax.faces.validator.LengthValidator;
+
+import org.apache.myfaces.application.TreeStructureManager;
+import org.apache.myfaces.shared.util.serial.SerialFactory;
+import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
+import org.apache.myfaces.view.facelets.DefaultFaceletsStateManagementStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompactSerialFactoryTest extends AbstractJsfTestCase
+{
+    private final SerialFactory serialFactory = new CompactSerialFactory();
+
+    @Test
+    public void testValues() throws Exception
+    {
+        List<Object> list = new ArrayList<Object>();
+        list.add("a");
+        list.add(null);
+        list.add(Integer.MIN_VALUE);
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("key", Long.MAX_VALUE);
+        map.put(Integer.valueOf(-1), list);
+
+        Object[] state = new Object[] {null, Boolean.TRUE, Boolean.FALSE, 0, -1, 300, Integer.MAX_VALUE,
+            -5L, Long.MIN_VALUE, 1.5d, Double.NaN, "", "text é中", "text é中",
+            new Object[] {"a", new Object[0]}, list, map, ProjectStage.Development, String.class,
+            new Date(1234L), new BigDecimal("1.25"), "after serializable", new Date(5678L), 'c'};
+
+        Object restored = roundTrip(state, false);
+        Assert.assertTrue(Arrays.deepEquals(state, (Object[]) restored));
+
+        restored = roundTrip(state, true);
+        Assert.assertTrue(Arrays.deepEquals(state, (Object[]) restored));
+    }
+
+    @Test
+    public void testSeveralObjectsInOneStream() throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = serialFactory.getObjectOutputStream(baos);
+        out.writeObject("first");
+        // the bytes of a top level object must reach the underlying stream without close()
+        Assert.assertTrue(baos.size() > 0);
+        out.writeObject(new Date(1L));
+        out.writeObject("first");
+        out.close();
+
+        ObjectInputStream in = serialFactory.getObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        Assert.assertEquals("first", in.readObject());
+        Assert.assertEquals(new Date(1L), in.readObject());
+        Assert.assertEquals("first", in.readObject());
+        in.close();
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception
+    {
+        Object[] state = saveView(createView());
+
+        ByteArrayOutputStream compact = new ByteArrayOutputStream();
+        ObjectOutputStream out = serialFactory.getObjectOutputStream(compact);
+        out.writeObject(state);
+        out.close();
+
+        ByteArrayOutputStream java = new ByteArrayOutputStream();
+        out = new DefaultSerialFactory().getObjectOutputStream(java);
+        out.writeObject(state);
+        out.close();
+
+        Assert.assertTrue(compact.size() < java.size());
+    }
+
+    @Test
+    public void testComponentState() throws Exception
+    {
+        Object[] state = (Object[]) roundTrip(saveView(createView()), true);
+
+        UIViewRoot root = new TreeStructureManager().restoreTreeStructure(state[0]);
+        root.processRestoreState(facesContext, state[1]);
+
+        HtmlPanelGroup panel = (HtmlPanelGroup) root.getChildren().get(0);
+        Assert.assertEquals("panel", panel.getId());
+        Assert.assertEquals("panelClass", panel.getStyleClass());
+
+        HtmlInputText input = (HtmlInputText) panel.getChildren().get(0);
+        Assert.assertEquals("input", input.getId());
+        Assert.assertEquals("value", input.getValue());
+        Assert.assertEquals(Integer.valueOf(10), input.getAttributes().get("size"));
+        Assert.assertEquals(1, input.getValidators().length);
+        Assert.assertEquals(3, ((LengthValidator) input.getValidators()[0]).getMaximum());
+
+        UIComponent header = panel.getFacet("header");
+        Assert.assertEquals("header text", ((HtmlOutputText) header).getValue());
+    }
+
+    @Test
+    public void testFaceletsTreeStructComponent() throws Exception
+    {
+        DefaultFaceletsStateManagementStrategy.TreeStructComponent component =
+                new DefaultFaceletsStateManagementStrategy.TreeStructComponent(HtmlPanelGroup.class.getName(), "id");
+        component.setChildren(new DefaultFaceletsStateManagementStrategy.TreeStructComponent[] {
+            new DefaultFaceletsStateManagementStrategy.TreeStructComponent(HtmlOutputText.class.getName(), "child")});
+        component.setFacets(new Object[] {new Object[] {"header",
+            new DefaultFaceletsStateManagementStrategy.TreeStructComponent(HtmlOutputText.class.getName(), "facet")}});
+
+        DefaultFaceletsStateManagementStrategy.TreeStructComponent restored =
+                (DefaultFaceletsStateManagementStrategy.TreeStructComponent) roundTrip(component, false);
+
+        Assert.assertEquals(HtmlPanelGroup.class.getName(), restored.getComponentClass());
+        Assert.assertEquals("id", restored.getComponentId());
+        Assert.assertEquals("child", restored.getChildren()[0].getComponentId());
+        Object[] facet = (Object[]) restored.getFacets()[0];
+        Assert.assertEquals("header", facet[0]);
+        Assert.assertEquals("facet",
+                ((DefaultFaceletsStateManagementStrategy.TreeStructComponent) facet[1]).getComponentId());
+    }
+
+    private UIViewRoot createView()
+    {
+        UIViewRoot root = facesContext.getViewRoot();
+
+        HtmlPanelGroup panel = new HtmlPanelGroup();
+        panel.setId("panel");
+        panel.setStyleClass("panelClass");
+        root.getChildren().add(panel);
+
+        HtmlInputText input = new HtmlInputText();
+        input.setId("input");
+        input.setValue("value");
+        input.setSize(10);
+        input.addValidator(new LengthValidator(3));
+        panel.getChildren().add(input);
+
+        HtmlOutputText header = new HtmlOutputText();
+        header.setId("header");
+        header.setValue("header text");
+        panel.getFacets().put("header", header);
+
+        return root;
+    }
+
+    private Object[] saveView(UIViewRoot root)
+    {
+        return new Object[] {new TreeStructureManager().buildTreeStructureToSave(root),
+            root.processSaveState(facesContext)};
+    }
+
+    private Object roundTrip(Object state, boolean compress) throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = serialFactory.getObjectOutputStream(
+                compress ? new GZIPOutputStream(baos) : baos);
+        out.writeObject(state);
+        out.close();
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+        ObjectInputStream in = serialFactory.getObjectInputStream(
+                compress ? new GZIPInputStream(bais) : bais);
+        try
+        {
+            return in.readObject();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+}
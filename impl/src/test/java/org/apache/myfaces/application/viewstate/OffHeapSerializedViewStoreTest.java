@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffHeapSerializedViewStoreTest
+{
+
+    private static byte[] state(int length, int seed)
+    {
+        byte[] state = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            state[i] = (byte) (i * 31 + seed);
+        }
+        return state;
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        OffHeapSerializedViewStore store = new OffHeapSerializedViewStore(64 * 1024);
+
+        byte[] small = state(10, 1);
+        byte[] big = state(OffHeapSerializedViewStore.BLOCK_SIZE * 3 + 7, 2);
+        OffHeapStateHandle smallHandle = store.put(small);
+        OffHeapStateHandle bigHandle = store.put(big);
+
+        Assert.assertArrayEquals(small, store.get(smallHandle));
+        Assert.assertArrayEquals(big, bigHandle.getState());
+        Assert.assertEquals(2, store.getStateCount());
+        Assert.assertEquals(small.length + big.length, store.getStateBytes());
+        Assert.assertEquals(5 * OffHeapSerializedViewStore.BLOCK_SIZE, store.getUsedBytes());
+
+        store.remove(bigHandle);
+        Assert.assertNull(store.get(bigHandle));
+        Assert.assertArrayEquals(small, store.get(smallHandle));
+        Assert.assertEquals(OffHeapSerializedViewStore.BLOCK_SIZE, store.getUsedBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction()
+    {
+        // a single segment of 4 blocks
+        OffHeapSerializedViewStore store = new OffHeapSerializedViewStore(4 * OffHeapSerializedViewStore.BLOCK_SIZE);
+        Assert.assertEquals(4 * OffHeapSerializedViewStore.BLOCK_SIZE, store.getCapacity());
+
+        OffHeapStateHandle first = store.put(state(OffHeapSerializedViewStore.BLOCK_SIZE, 1));
+        OffHeapStateHandle second = store.put(state(OffHeapSerializedViewStore.BLOCK_SIZE, 2));
+        OffHeapStateHandle third = store.put(state(OffHeapSerializedViewStore.BLOCK_SIZE * 2, 3));
+
+        // first becomes the most recently used one
+        Assert.assertNotNull(store.get(first));
+
+        OffHeapStateHandle fourth = store.put(state(OffHeapSerializedViewStore.BLOCK_SIZE, 4));
+        Assert.assertNull(store.get(second));
+        Assert.assertNotNull(store.get(first));
+        Assert.assertNotNull(store.get(third));
+        Assert.assertArrayEquals(state(OffHeapSerializedViewStore.BLOCK_SIZE, 4), store.get(fourth));
+        Assert.assertEquals(1, store.getEvictionCount());
+
+        // too big for the store
+        Assert.assertNull(store.put(state(OffHeapSerializedViewStore.BLOCK_SIZE * 5, 5)));
+    }
+
+    @Test
+    public void testMappedFile() throws Exception
+    {
+        File file = File.createTempFile("views", ".bin");
+        file.deleteOnExit();
+        OffHeapSerializedViewStore store = new OffHeapSerializedViewStore(64 * 1024, file);
+
+        byte[] state = state(2000, 3);
+        OffHeapStateHandle handle = store.put(state);
+        Assert.assertArrayEquals(state, handle.getState());
+        Assert.assertEquals(64 * 1024, file.length());
+
+        // closing the store discards the states and deletes the file
+        store.close();
+        Assert.assertNull(handle.getState());
+        Assert.assertNull(store.put(state));
+        Assert.assertEquals(0, store.getStateCount());
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testHandleSerialization() throws Exception
+    {
+        OffHeapSerializedViewStore store = new OffHeapSerializedViewStore(64 * 1024);
+        byte[] state = state(100, 4);
+        OffHeapStateHandle handle = store.put(state);
+        OffHeapStateHandle discarded = store.put(state);
+        store.remove(discarded);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(new Object[] {handle, discarded});
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        Object[] restored = (Object[]) in.readObject();
+        in.close();
+
+        // once serialized, the handle becomes the state itself
+        Assert.assertTrue(Arrays.equals(state, (byte[]) restored[0]));
+        Assert.assertNull(((OffHeapStateHandle) restored[1]).getState());
+    }
+}
@@ -16,7 +16,17 @@
 
 package org.apache.myfaces.application.viewstate;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.faces.context.FacesContext;
 import org.apache.myfaces.spi.ViewScopeProvider;
 import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
@@ -267,6 +277,120 @@ public class SerializedViewCollectionTestCase extends AbstractJsfTestCase
         Assert.assertEquals(provider.getDestroyCount(), 5);
     }
     
+    @Test
+    public void testNullAndEmptyStates() throws Exception
+    {
+        SerializedViewCollection collection = new SerializedViewCollection();
+        String viewId = "/test.xhtml";
+        SerializedViewKey key1 = new IntIntSerializedViewKey(viewId.hashCode(), 1);
+        SerializedViewKey key2 = new IntIntSerializedViewKey(viewId.hashCode(), 2);
+
+        collection.put(facesContext, null, key1, null);
+        collection.put(facesContext, new Object[]{null, null}, key2, null);
+        Assert.assertNull(collection.get(key1));
+        Assert.assertArrayEquals(new Object[]{null, null}, (Object[]) collection.get(key2));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+        out.writeObject(collection);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        collection = (SerializedViewCollection) in.readObject();
+        in.close();
+
+        Assert.assertNull(collection.get(key1));
+        Assert.assertArrayEquals(new Object[]{null, null}, (Object[]) collection.get(key2));
+    }
+
+    @Test
+    public void testLastWindowKeys()
+    {
+        servletContext.addInitParameter(ServerSideStateCacheImpl.NUMBER_OF_VIEWS_IN_SESSION_PARAM, "2");
+        servletContext.addInitParameter(ServerSideStateCacheImpl.NUMBER_OF_SEQUENTIAL_VIEWS_IN_SESSION_PARAM, "1");
+
+        SerializedViewCollection collection = new SerializedViewCollection();
+        String viewId = "/test.xhtml";
+        SerializedViewKey key1 = new IntIntSerializedViewKey(viewId.hashCode(), 1);
+        SerializedViewKey key2 = new IntIntSerializedViewKey(viewId.hashCode(), 2);
+        SerializedViewKey key3 = new IntIntSerializedViewKey(viewId.hashCode(), 3);
+        SerializedViewKey key4 = new IntIntSerializedViewKey(viewId.hashCode(), 4);
+
+        // 3 windows are kept, the least recently used one is discarded
+        collection.putLastWindowKey(facesContext, "w1", key1);
+        collection.putLastWindowKey(facesContext, "w2", key2);
+        collection.putLastWindowKey(facesContext, "w3", key3);
+        Assert.assertEquals(key1, collection.getLastWindowKey(facesContext, "w1"));
+        collection.putLastWindowKey(facesContext, "w4", key4);
+
+        Assert.assertEquals(key1, collection.getLastWindowKey(facesContext, "w1"));
+        Assert.assertNull(collection.getLastWindowKey(facesContext, "w2"));
+        Assert.assertEquals(key3, collection.getLastWindowKey(facesContext, "w3"));
+        Assert.assertEquals(key4, collection.getLastWindowKey(facesContext, "w4"));
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception
+    {
+        servletContext.addInitParameter(ServerSideStateCacheImpl.NUMBER_OF_VIEWS_IN_SESSION_PARAM, "5");
+        servletContext.addInitParameter(ServerSideStateCacheImpl.NUMBER_OF_SEQUENTIAL_VIEWS_IN_SESSION_PARAM, "2");
+
+        final SerializedViewCollection collection = new SerializedViewCollection();
+        final int threads = 4;
+        final int views = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threads; t++)
+            {
+                final String viewId = "/test" + t + ".xhtml";
+                results.add(executor.submit(new Callable<Integer>()
+                {
+                    public Integer call()
+                    {
+                        SerializedViewKey previous = null;
+                        int restored = 0;
+                        for (int i = 0; i < views; i++)
+                        {
+                            SerializedViewKey key = new IntIntSerializedViewKey(viewId.hashCode(), i);
+                            collection.put(facesContext, new Object[]{viewId, i}, key, previous);
+                            if (collection.get(key) != null)
+                            {
+                                restored++;
+                            }
+                            previous = key;
+                        }
+                        return restored;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results)
+            {
+                Assert.assertTrue(result.get() > 0);
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        // The last view of every thread may have been discarded by the other threads, but
+        // never more than NUMBER_OF_VIEWS_IN_SESSION views are kept.
+        int kept = 0;
+        for (int t = 0; t < threads; t++)
+        {
+            String viewId = "/test" + t + ".xhtml";
+            for (int i = 0; i < views; i++)
+            {
+                if (collection.get(new IntIntSerializedViewKey(viewId.hashCode(), i)) != null)
+                {
+                    kept++;
+                }
+            }
+        }
+        Assert.assertEquals(5, kept);
+    }
+
     private static class TestViewScopeProvider extends ViewScopeProvider
     {
         private int destroyCount = 0;
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.application.viewstate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SerializedViewDeltaTest
+{
+
+    private static byte[] state(int length, long seed)
+    {
+        byte[] state = new byte[length];
+        new Random(seed).nextBytes(state);
+        return state;
+    }
+
+    private static byte[] fullState(byte[] bytes, boolean compressed) throws Exception
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (compressed)
+        {
+            baos.write(ServerSideStateCacheImpl.COMPRESSED_FLAG);
+            GZIPOutputStream os = new GZIPOutputStream(baos);
+            os.write(bytes);
+            os.close();
+        }
+        else
+        {
+            baos.write(ServerSideStateCacheImpl.UNCOMPRESSED_FLAG);
+            baos.write(bytes);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testDiffPatch() throws Exception
+    {
+        byte[] base = state(10000, 1);
+        byte[] target = base.clone();
+        // a few local changes, an insertion and a removal
+        target[10] = 7;
+        target[5000] = 8;
+        target[9999] = 9;
+        byte[] inserted = new byte[target.length + 3];
+        System.arraycopy(target, 0, inserted, 0, 3000);
+        System.arraycopy(target, 3000, inserted, 3003, target.length - 3000);
+        byte[] removed = new byte[inserted.length - 100];
+        System.arraycopy(inserted, 0, removed, 0, 7000);
+        System.arraycopy(inserted, 7100, removed, 7000, inserted.length - 7100);
+
+        byte[] delta = SerializedViewDelta.diff(base, removed, Integer.MAX_VALUE);
+        Assert.assertTrue("delta too big: " + delta.length, delta.length < 200);
+        Assert.assertArrayEquals(removed, SerializedViewDelta.patch(base, delta));
+
+        byte[] empty = new byte[0];
+        Assert.assertArrayEquals(empty, SerializedViewDelta.patch(base,
+                SerializedViewDelta.diff(base, empty, Integer.MAX_VALUE)));
+        Assert.assertArrayEquals(base, SerializedViewDelta.patch(empty,
+                SerializedViewDelta.diff(empty, base, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testUnrelatedStates() throws Exception
+    {
+        byte[] base = state(4096, 1);
+        byte[] target = state(4096, 2);
+
+        Assert.assertNull(SerializedViewDelta.diff(base, target, target.length / 4));
+        Assert.assertNull(SerializedViewDelta.create(fullState(base, false), target, 8));
+        Assert.assertArrayEquals(target, SerializedViewDelta.patch(base,
+                SerializedViewDelta.diff(base, target, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testChain() throws Exception
+    {
+        byte[] bytes = state(4096, 1);
+        Object state = fullState(bytes, true);
+        for (int i = 1; i <= 3; i++)
+        {
+            bytes = bytes.clone();
+            bytes[i * 100] = (byte) i;
+            SerializedViewDelta delta = SerializedViewDelta.create(state, bytes, 3);
+            Assert.assertNotNull(delta);
+            Assert.assertEquals(i, delta.getDepth());
+            Assert.assertArrayEquals(bytes, SerializedViewDelta.getSerializedBytes(delta));
+            state = delta;
+        }
+
+        // the chain is too long, a full state must be stored
+        Assert.assertNull(SerializedViewDelta.create(state, bytes, 3));
+    }
+}
@@ -22,11 +22,16 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import javax.faces.application.ProjectStage;
 import javax.faces.application.StateManager;
 
 import org.apache.myfaces.application.StateCache;
+import org.apache.myfaces.shared.renderkit.RendererUtils;
+import org.apache.myfaces.shared.util.StateUtils;
 import org.apache.myfaces.test.base.junit4.AbstractJsfConfigurableMultipleRequestsTestCase;
 import org.junit.Assert;
 import org.junit.Test;
@@ -110,6 +115,297 @@ public class ServerSideStateCacheTest extends AbstractJsfConfigurableMultipleReq
         }
     }
     
+    @Test
+    public void testSerializeStateInSessionWithSerialFactory() throws Exception
+    {
+        servletContext.addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME, StateManager.STATE_SAVING_METHOD_SERVER);
+        servletContext.addInitParameter(StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME, "true");
+        servletContext.setAttribute(StateUtils.SERIAL_FACTORY, new CompactSerialFactory());
+
+        // Initialization
+        setupRequest();
+        StateCache stateCache = new ServerSideStateCacheImpl();
+        tearDownRequest();
+
+        Object savedToken;
+        Object[] state = new Object[] {"state", 1, new Object[] {ProjectStage.Production, null}};
+
+        try
+        {
+            setupRequest();
+
+            facesContext.getViewRoot().setViewId("/view1.xhtml");
+            savedToken = stateCache.saveSerializedView(facesContext, state);
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+
+        try
+        {
+            setupRequest();
+
+            Object value = stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedToken);
+
+            Assert.assertTrue(Arrays.deepEquals(state, (Object[]) value));
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+    }
+
+    @Test
+    public void testOffHeapSerializedViewStore() throws Exception
+    {
+        servletContext.addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME, StateManager.STATE_SAVING_METHOD_SERVER);
+        servletContext.addInitParameter(StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME, "true");
+        servletContext.addInitParameter("org.apache.myfaces.NUMBER_OF_VIEWS_IN_SESSION", "2");
+        servletContext.addInitParameter(ServerSideStateCacheImpl.SERIALIZED_VIEW_STORE_PARAM,
+                ServerSideStateCacheImpl.SERIALIZED_VIEW_STORE_OFF_HEAP);
+        servletContext.addInitParameter(ServerSideStateCacheImpl.SERIALIZED_VIEW_STORE_CAPACITY_PARAM, "65536");
+
+        // Initialization
+        setupRequest();
+        StateCache stateCache = new ServerSideStateCacheImpl();
+        tearDownRequest();
+
+        Object[] savedTokens = new Object[3];
+        for (int i = 0; i < savedTokens.length; i++)
+        {
+            try
+            {
+                setupRequest();
+
+                facesContext.getViewRoot().setViewId("/view1.xhtml");
+                savedTokens[i] = stateCache.saveSerializedView(facesContext, i);
+            }
+            finally
+            {
+                tearDownRequest();
+            }
+        }
+
+        try
+        {
+            setupRequest();
+
+            Assert.assertTrue(externalContext.getSessionMap().get(
+                    ServerSideStateCacheImpl.SERIALIZED_VIEW_SESSION_ATTR) instanceof OffHeapSerializedViewCollection);
+            Assert.assertEquals(2, stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedTokens[2]));
+
+            // the oldest view was discarded from the session and released from the store
+            OffHeapSerializedViewStore store = OffHeapSerializedViewStore.getCurrentInstance(externalContext);
+            Assert.assertEquals(2, store.getStateCount());
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+
+        try
+        {
+            setupRequest();
+
+            Assert.assertNull(stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedTokens[0]));
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+    }
+
+    @Test
+    public void testSerializedViewDelta() throws Exception
+    {
+        servletContext.addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME, StateManager.STATE_SAVING_METHOD_SERVER);
+        servletContext.addInitParameter(StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME, "true");
+        servletContext.addInitParameter(ServerSideStateCacheImpl.SERIALIZED_VIEW_DELTA_PARAM, "true");
+
+        // Initialization
+        setupRequest();
+        StateCache stateCache = new ServerSideStateCacheImpl();
+        tearDownRequest();
+
+        Object[] state = new Object[200];
+        for (int i = 0; i < state.length; i++)
+        {
+            state[i] = new Object[] {"component" + i, i, Boolean.TRUE};
+        }
+
+        Object savedToken;
+        try
+        {
+            setupRequest();
+
+            facesContext.getViewRoot().setViewId("/view1.xhtml");
+            savedToken = stateCache.saveSerializedView(facesContext, state);
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+
+        // postbacks that change a value of the view
+        for (int i = 0; i < 3; i++)
+        {
+            try
+            {
+                setupRequest();
+
+                facesContext.getViewRoot().setViewId("/view1.xhtml");
+                Object value = stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedToken);
+                Assert.assertTrue(Arrays.deepEquals(state, (Object[]) value));
+
+                state = (Object[]) value;
+                ((Object[]) state[100 + i])[1] = -i;
+                savedToken = stateCache.saveSerializedView(facesContext, state);
+
+                SerializedViewCollection viewCollection = (SerializedViewCollection) externalContext
+                        .getSessionMap().get(ServerSideStateCacheImpl.SERIALIZED_VIEW_SESSION_ATTR);
+                Object stored = viewCollection.get(new IntByteArraySerializedViewKey(
+                        "/view1.xhtml".hashCode(), (byte[]) facesContext.getAttributes().get(RendererUtils.SEQUENCE_PARAM)));
+                Assert.assertTrue(stored instanceof SerializedViewDelta);
+                Assert.assertEquals(i + 1, ((SerializedViewDelta) stored).getDepth());
+            }
+            finally
+            {
+                tearDownRequest();
+            }
+        }
+
+        try
+        {
+            setupRequest();
+
+            Object value = stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedToken);
+            Assert.assertTrue(Arrays.deepEquals(state, (Object[]) value));
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+    }
+
+    @Test
+    public void testAsyncSerializeStateInSession() throws Exception
+    {
+        servletContext.addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME, StateManager.STATE_SAVING_METHOD_SERVER);
+        servletContext.addInitParameter(StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME, "true");
+        servletContext.addInitParameter(ServerSideStateCacheImpl.ASYNC_SERIALIZE_SERVER_STATE_PARAM, "true");
+
+        // Initialization
+        setupRequest();
+        StateCache stateCache = new ServerSideStateCacheImpl();
+        tearDownRequest();
+
+        Object[] savedTokens = new Object[5];
+        for (int i = 0; i < savedTokens.length; i++)
+        {
+            try
+            {
+                setupRequest();
+
+                facesContext.getViewRoot().setViewId("/view1.xhtml");
+                savedTokens[i] = stateCache.saveSerializedView(facesContext, new Object[] {"state", i});
+            }
+            finally
+            {
+                tearDownRequest();
+            }
+        }
+
+        for (int i = 0; i < savedTokens.length; i++)
+        {
+            try
+            {
+                setupRequest();
+
+                Object value = stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedTokens[i]);
+                Assert.assertTrue(Arrays.deepEquals(new Object[] {"state", i}, (Object[]) value));
+            }
+            finally
+            {
+                tearDownRequest();
+            }
+        }
+
+        try
+        {
+            setupRequest();
+
+            // the pending views are replaced by their serialized state when the session is serialized
+            SerializedViewCollection viewCollection = (SerializedViewCollection) externalContext
+                    .getSessionMap().get(ServerSideStateCacheImpl.SERIALIZED_VIEW_SESSION_ATTR);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.writeObject(viewCollection);
+            oos.close();
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+            externalContext.getSessionMap().put(ServerSideStateCacheImpl.SERIALIZED_VIEW_SESSION_ATTR,
+                    ois.readObject());
+            ois.close();
+
+            Object value = stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedTokens[4]);
+            Assert.assertTrue(Arrays.deepEquals(new Object[] {"state", 4}, (Object[]) value));
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+    }
+
+    @Test
+    public void testAsyncSerializeStateIsSnapshot() throws Exception
+    {
+        servletContext.addInitParameter(StateManager.STATE_SAVING_METHOD_PARAM_NAME, StateManager.STATE_SAVING_METHOD_SERVER);
+        servletContext.addInitParameter(StateManager.SERIALIZE_SERVER_STATE_PARAM_NAME, "true");
+        servletContext.addInitParameter(ServerSideStateCacheImpl.ASYNC_SERIALIZE_SERVER_STATE_PARAM, "true");
+
+        // Initialization
+        setupRequest();
+        StateCache stateCache = new ServerSideStateCacheImpl();
+        tearDownRequest();
+
+        Object savedToken;
+        Object savedTokenAfterShutdown;
+        try
+        {
+            setupRequest();
+
+            facesContext.getViewRoot().setViewId("/view1.xhtml");
+            List<String> values = new ArrayList<String>();
+            values.add("rendered");
+            savedToken = stateCache.saveSerializedView(facesContext, new Object[] {"state", values});
+            // changes after the view was saved are not part of its state
+            values.set(0, "changed");
+
+            ServerSideStateCacheImpl.shutdownAsyncSerialization(externalContext);
+            facesContext.getAttributes().remove(RendererUtils.SEQUENCE_PARAM);
+            savedTokenAfterShutdown = stateCache.saveSerializedView(facesContext, new Object[] {"state", 1});
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+
+        try
+        {
+            setupRequest();
+
+            Object[] value = (Object[]) stateCache.restoreSerializedView(facesContext, "/view1.xhtml", savedToken);
+            Assert.assertEquals(Arrays.asList("rendered"), value[1]);
+            value = (Object[]) stateCache.restoreSerializedView(facesContext, "/view1.xhtml",
+                    savedTokenAfterShutdown);
+            Assert.assertTrue(Arrays.deepEquals(new Object[] {"state", 1}, value));
+        }
+        finally
+        {
+            tearDownRequest();
+        }
+    }
+
     @Test
     public void testSaveRestoreStateWrongViewId() throws Exception
     {
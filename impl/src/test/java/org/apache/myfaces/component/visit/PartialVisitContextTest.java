@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.component.visit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+
+import javax.faces.component.UIColumn;
+import javax.faces.component.UIComponent;
+import javax.faces.component.UIData;
+import javax.faces.component.UINamingContainer;
+import javax.faces.component.UIOutput;
+import javax.faces.component.visit.VisitCallback;
+import javax.faces.component.visit.VisitContext;
+import javax.faces.component.visit.VisitHint;
+import javax.faces.component.visit.VisitResult;
+
+import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PartialVisitContextTest extends AbstractJsfTestCase
+{
+    private int _visitTreeCount;
+
+    private UIData _table;
+
+    private UIComponent createOutput(String id)
+    {
+        UIOutput output = new UIOutput()
+        {
+            @Override
+            public boolean visitTree(VisitContext context, VisitCallback callback)
+            {
+                _visitTreeCount++;
+                return super.visitTree(context, callback);
+            }
+        };
+        output.setId(id);
+        return output;
+    }
+
+    private UINamingContainer createNamingContainer(String id)
+    {
+        UINamingContainer namingContainer = new UINamingContainer();
+        namingContainer.setId(id);
+        return namingContainer;
+    }
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        UINamingContainer form = createNamingContainer("form");
+        facesContext.getViewRoot().getChildren().add(form);
+
+        _table = new UIData();
+        _table.setId("t");
+        _table.setVar("v");
+        _table.setValue(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10));
+        form.getChildren().add(_table);
+        UIColumn column = new UIColumn();
+        column.setId("col");
+        _table.getChildren().add(column);
+        column.getChildren().add(createOutput("cell"));
+
+        for (int i = 0; i < 50; i++)
+        {
+            form.getChildren().add(createOutput("o" + i));
+        }
+
+        UINamingContainer other = createNamingContainer("other");
+        facesContext.getViewRoot().getChildren().add(other);
+        for (int i = 0; i < 50; i++)
+        {
+            other.getChildren().add(createOutput("p" + i));
+        }
+    }
+
+    private List<String> visit(final VisitResult result, String... clientIds)
+    {
+        final List<String> visited = new ArrayList<String>();
+        _visitTreeCount = 0;
+        VisitContext context = new PartialVisitContext(facesContext, Arrays.asList(clientIds),
+                EnumSet.of(VisitHint.SKIP_UNRENDERED));
+        facesContext.getViewRoot().visitTree(context, new VisitCallback()
+        {
+            public VisitResult visit(VisitContext context, UIComponent target)
+            {
+                visited.add(target.getClientId(context.getFacesContext()));
+                return result;
+            }
+        });
+        return visited;
+    }
+
+    @Test
+    public void testRowIterationStopsAfterLastTarget()
+    {
+        Assert.assertEquals(Arrays.asList("form:t:1:cell"), visit(VisitResult.ACCEPT, "form:t:1:cell"));
+        Assert.assertEquals(2, _visitTreeCount);
+
+        Assert.assertEquals(Arrays.asList("form:t:2:cell", "form:t:9:cell"),
+                visit(VisitResult.ACCEPT, "form:t:9:cell", "form:t:2:cell"));
+        Assert.assertEquals(10, _visitTreeCount);
+        Assert.assertEquals(-1, _table.getRowIndex());
+    }
+
+    @Test
+    public void testChildIterationStopsAfterLastTarget()
+    {
+        Assert.assertEquals(Arrays.asList("form:t:1:cell", "form:o3", "other:p0"),
+                visit(VisitResult.ACCEPT, "form:t:1:cell", "form:o3", "other:p0"));
+        // two rows of the table, the first four children of form and the first child of other
+        Assert.assertEquals(7, _visitTreeCount);
+    }
+
+    @Test
+    public void testRejectedSubtreeIsNotWaitedFor()
+    {
+        Assert.assertEquals(Arrays.asList("form", "other:p2"),
+                visit(VisitResult.REJECT, "form", "form:t:4:cell", "other:p2"));
+        Assert.assertEquals(3, _visitTreeCount);
+    }
+
+    @Test
+    public void testSubtreeIdsToVisitShrink()
+    {
+        UIComponent form = facesContext.getViewRoot().findComponent("form");
+        PartialVisitContext context = new PartialVisitContext(facesContext,
+                Arrays.asList("form:o1", "form:o2", "other:p1"));
+        Collection<String> subtreeIds = context.getSubtreeIdsToVisit(form);
+        Assert.assertEquals(2, subtreeIds.size());
+        Assert.assertSame(subtreeIds, context.getSubtreeIdsToVisit(form));
+
+        VisitCallback callback = new VisitCallback()
+        {
+            public VisitResult visit(VisitContext context, UIComponent target)
+            {
+                return VisitResult.ACCEPT;
+            }
+        };
+        Assert.assertEquals(VisitResult.ACCEPT, context.invokeVisitCallback(form.findComponent("o1"), callback));
+        Assert.assertEquals(1, subtreeIds.size());
+        Assert.assertEquals(3, context.getIdsToVisit().size());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.faces.application.Resource;
+import javax.faces.context.FacesContext;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EncodedResourceCacheTest
+{
+    @Test
+    public void testAcceptEncoding()
+    {
+        Assert.assertTrue(EncodedResourceCache.isAccepted("gzip, deflate, br", "gzip"));
+        Assert.assertTrue(EncodedResourceCache.isAccepted("br;q=1.0, GZIP;q=0.5", "gzip"));
+        Assert.assertTrue(EncodedResourceCache.isAccepted("*", "gzip"));
+        Assert.assertFalse(EncodedResourceCache.isAccepted("gzip;q=0, *", "gzip"));
+        Assert.assertFalse(EncodedResourceCache.isAccepted("*;q=0.0", "gzip"));
+        Assert.assertFalse(EncodedResourceCache.isAccepted("identity", "gzip"));
+        Assert.assertFalse(EncodedResourceCache.isAccepted("", "gzip"));
+    }
+
+    @Test
+    public void testEncodedContentIsCachedAndBounded() throws IOException
+    {
+        EncodedResourceCache cache = new EncodedResourceCache(
+                Arrays.<ResourceContentEncoder>asList(new GzipResourceContentEncoder()),
+                Collections.singleton("text/css"), 50);
+
+        Assert.assertTrue(cache.isEncoded("text/css;charset=UTF-8"));
+        Assert.assertFalse(cache.isEncoded("image/png"));
+        Assert.assertNull(cache.getEncoder("br"));
+        ResourceContentEncoder encoder = cache.getEncoder("br, gzip");
+        Assert.assertEquals("gzip", encoder.getContentEncoding());
+
+        String css = ".a{color:red}";
+        byte[] content = cache.getEncodedContent("a.css", encoder, new TestResource(css));
+        Assert.assertEquals(css, gunzip(content));
+        Assert.assertSame(content, cache.getEncodedContent("a.css", encoder, new TestResource(css)));
+
+        // each variant weighs more than half of the cache, so the first one is evicted
+        byte[] other = cache.getEncodedContent("b.css", encoder, new TestResource(".b{color:blue}"));
+        Assert.assertTrue(content.length + other.length > 50);
+        Assert.assertNotSame(content, cache.getEncodedContent("a.css", encoder, new TestResource(css)));
+    }
+
+    @Test
+    public void testTooLargeContentIsNotEncodedAgain() throws IOException
+    {
+        EncodedResourceCache cache = new EncodedResourceCache(
+                Arrays.<ResourceContentEncoder>asList(new GzipResourceContentEncoder()),
+                Collections.singleton("text/css"), 10);
+        ResourceContentEncoder encoder = cache.getEncoder("gzip");
+
+        Assert.assertTrue(cache.isEncodable("a.css", encoder));
+        String css = ".a{color:red}";
+        Assert.assertEquals(css, gunzip(cache.getEncodedContent("a.css", encoder, new TestResource(css))));
+        Assert.assertFalse(cache.isEncodable("a.css", encoder));
+        Assert.assertTrue(cache.isEncodable("b.css", encoder));
+    }
+
+    private static String gunzip(byte[] content) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content)))
+        {
+            byte[] buffer = new byte[256];
+            int length;
+            while ((length = in.read(buffer)) >= 0)
+            {
+                out.write(buffer, 0, length);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static class TestResource extends Resource
+    {
+        private final String content;
+
+        TestResource(String content)
+        {
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException
+        {
+            return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Map<String, String> getResponseHeaders()
+        {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public String getRequestPath()
+        {
+            return null;
+        }
+
+        @Override
+        public URL getURL()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean userAgentNeedsUpdate(FacesContext context)
+        {
+            return true;
+        }
+    }
+}
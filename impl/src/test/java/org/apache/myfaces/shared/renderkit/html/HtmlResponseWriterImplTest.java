@@ -18,12 +18,15 @@
  */
 package org.apache.myfaces.shared.renderkit.html;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.lang.reflect.Field;
 
 import org.apache.myfaces.shared.util.CommentUtils;
 import org.apache.myfaces.shared.renderkit.html.util.HTML;
+import org.apache.myfaces.shared.renderkit.html.util.PreEncodedText;
+import org.apache.myfaces.shared.renderkit.html.util.Utf8ResponseOutputWriter;
 import org.apache.myfaces.test.base.AbstractJsfTestCase;
 
 /**
@@ -369,4 +372,59 @@ public class HtmlResponseWriterImplTest extends AbstractJsfTestCase
         assertTrue(output.contains("<BR>"));
         assertTrue(output.contains("</BR>"));
     }
-}
\ No newline at end of file
+
+    /**
+     * Pre encoded text must render the same as the text given to writeText or write,
+     * including inside script elements and for encodings other than UTF-8.
+     */
+    public void testWritePreEncoded() throws IOException
+    {
+        PreEncodedText escaped = new PreEncodedText("a < b & \"\u00e9\"", true);
+        PreEncodedText markup = new PreEncodedText("<hr/>\u00e9", false);
+
+        for (String encoding : new String[] {"UTF-8", "ISO-8859-1"})
+        {
+            StringWriter expected = new StringWriter();
+            renderText(new HtmlResponseWriterImpl(expected, "text/html", encoding), escaped, markup, false);
+
+            StringWriter actual = new StringWriter();
+            renderText(new HtmlResponseWriterImpl(actual, "text/html", encoding), escaped, markup, true);
+            assertEquals(expected.toString(), actual.toString());
+        }
+
+        StringWriter expected = new StringWriter();
+        renderText(new HtmlResponseWriterImpl(expected, "text/html", "UTF-8"), escaped, markup, false);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Utf8ResponseOutputWriter utf8Writer = new Utf8ResponseOutputWriter(bytes);
+        renderText(new HtmlResponseWriterImpl(utf8Writer, "text/html", "UTF-8"), escaped, markup, true);
+        utf8Writer.release();
+        assertEquals(expected.toString(), new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    private void renderText(HtmlResponseWriterImpl writer, PreEncodedText escaped, PreEncodedText markup,
+            boolean preEncoded) throws IOException
+    {
+        writer.startDocument();
+        writer.startElement("div", null);
+        writer.writeAttribute("id", "a", null);
+        for (String element : new String[] {"span", "script"})
+        {
+            writer.startElement(element, null);
+            if (preEncoded)
+            {
+                writer.writePreEncoded(escaped);
+                writer.writePreEncoded(markup);
+            }
+            else
+            {
+                writer.writeText(escaped.getText(), null);
+                writer.write(markup.getText());
+            }
+            writer.endElement(element);
+        }
+        writer.endElement("div");
+        writer.endDocument();
+        writer.flush();
+    }
+}
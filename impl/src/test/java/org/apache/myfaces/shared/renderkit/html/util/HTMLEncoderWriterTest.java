@@ -97,6 +97,22 @@ public class HTMLEncoderWriterTest extends AbstractJsfTestCase {
     assertEquals("", sw.toString());
   }
 
+  public void testEncodeStringSubsequentBlanks() throws Exception {
+    HTMLEncoder.encode(sw, " a  b ", false, true, true);
+    assertEquals("&#160;a &#160;b ", sw.toString());
+  }
+
+  public void testEncodeStringControlCharsAndNonLatin() throws Exception {
+    HTMLEncoder.encode(sw, "a\u0001\tb\u00E9\u20AC\u0100", false, false, true);
+    assertEquals("a\tb&#233;&euro;&#256;", sw.toString());
+  }
+
+  public void testEncodeStringNonLatinNotEncoded() throws Exception {
+    String value = "caf\u00E9 \u20AC";
+    HTMLEncoder.encode(sw, value, false, false, false);
+    assertEquals(value, sw.toString());
+  }
+
   public void testEncodeArrayNoSpecialChars() throws Exception {
     try {
       CharArrayWriter writer = new CharArrayWriter();
@@ -54,5 +54,13 @@ public class UnicodeEncoderTest extends AbstractJsfTestCase
         UnicodeEncoder.encode(sw, "hello h"+(char)0xE1+"aaa <p></p>");
         Assert.assertEquals("hello h&#225;aaa <p></p>", sw.toString());
     }
+    
+    @Test
+    public void testUnicodeEncoderOffset() throws Exception
+    {
+        StringWriter sw = new StringWriter(40);
+        UnicodeEncoder.encode(sw, "ab\u00E1c\u20ACd".toCharArray(), 1, 4);
+        Assert.assertEquals("b&#225;c&#8364;", sw.toString());
+    }
 
 }
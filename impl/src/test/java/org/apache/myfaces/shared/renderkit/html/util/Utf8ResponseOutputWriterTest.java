@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.renderkit.html.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.apache.myfaces.shared.renderkit.html.HtmlResponseWriterImpl;
+import org.apache.myfaces.test.base.AbstractJsfTestCase;
+import org.apache.myfaces.view.facelets.StateWriter;
+
+/**
+ * Tests <code>org.apache.myfaces.shared.renderkit.html.util.Utf8ResponseOutputWriter</code>.
+ */
+public class Utf8ResponseOutputWriterTest extends AbstractJsfTestCase
+{
+    private static final String TEXT = "Hell\u00F6 & <\"w\u00F6rld\"> \u20AC \uD83D\uDE00 \u0001\t\n end";
+
+    private ByteArrayOutputStream _bytes;
+    private Utf8ResponseOutputWriter _writer;
+
+    public Utf8ResponseOutputWriterTest(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _bytes = new ByteArrayOutputStream();
+        _writer = new Utf8ResponseOutputWriter(_bytes);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        _writer = null;
+        _bytes = null;
+        super.tearDown();
+    }
+
+    public void testEncodesLikeTheJdk() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 20000)
+        {
+            text.append(TEXT);
+        }
+        _writer.write(text.toString());
+        _writer.write(TEXT.toCharArray(), 3, 20);
+        _writer.write('x');
+        _writer.release();
+
+        String expected = text + TEXT.substring(3, 23) + "x";
+        assertTrue(Arrays.equals(expected.getBytes("UTF-8"), _bytes.toByteArray()));
+    }
+
+    public void testSurrogatePairSplitAcrossWrites() throws Exception
+    {
+        _writer.write('\uD83D');
+        _writer.write("\uDE00a\uD83D");
+        _writer.write("b\uDE00");
+        _writer.release();
+
+        assertEquals("\uD83D\uDE00a?b?", new String(_bytes.toByteArray(), "UTF-8"));
+    }
+
+    public void testEscapesLikeHtmlEncoder() throws Exception
+    {
+        StringWriter expected = new StringWriter();
+        HTMLEncoder.encode(expected, TEXT, false, false, false);
+
+        _writer.writeHtmlEscaped(TEXT);
+        _writer.writeHtmlEscaped(TEXT.toCharArray(), 0, TEXT.length());
+        _writer.release();
+
+        assertEquals(expected.toString() + expected.toString(), new String(_bytes.toByteArray(), "UTF-8"));
+    }
+
+    public void testBufferReusedAfterRelease() throws Exception
+    {
+        _writer.write("first");
+        _writer.release();
+        assertEquals("first", new String(_bytes.toByteArray(), "UTF-8"));
+
+        _writer.write(" second");
+        _writer.reset();
+        _writer.write(" third");
+        _writer.flush();
+        assertEquals("first third", new String(_bytes.toByteArray(), "UTF-8"));
+    }
+
+    public void testHtmlResponseWriterOutputUnchanged() throws Exception
+    {
+        StringWriter expected = new StringWriter();
+        render(new HtmlResponseWriterImpl(expected, "text/html", "UTF-8"));
+
+        render(new HtmlResponseWriterImpl(_writer, "text/html", "UTF-8"));
+        _writer.release();
+        assertEquals(expected.toString(), new String(_bytes.toByteArray(), "UTF-8"));
+
+        _bytes.reset();
+        StateWriter stateWriter = new StateWriter(_writer, 1024);
+        try
+        {
+            render(new HtmlResponseWriterImpl(stateWriter, "text/html", "UTF-8"));
+            _writer.release();
+            assertEquals(expected.toString(), new String(_bytes.toByteArray(), "UTF-8"));
+        }
+        finally
+        {
+            stateWriter.release();
+        }
+    }
+
+    private void render(HtmlResponseWriterImpl writer) throws IOException
+    {
+        writer.startDocument();
+        writer.startElement("div", null);
+        writer.writeAttribute("class", TEXT, null);
+        writer.writeAttribute("hidden", Boolean.TRUE, null);
+        writer.writeURIAttribute("href", "/page.jsf?a=1&b=\u00F6", null);
+        writer.writeText(TEXT, null);
+        writer.startElement("textarea", null);
+        writer.writeText(TEXT.toCharArray(), 0, TEXT.length());
+        writer.endElement("textarea");
+        writer.startElement("script", null);
+        writer.writeText("if (a < b && c) {}", null);
+        writer.endElement("script");
+        writer.startElement("br", null);
+        writer.endElement("br");
+        writer.write(TEXT);
+        writer.endElement("div");
+        writer.endDocument();
+        writer.flush();
+    }
+
+    public void testGetUtf8Writer() throws Exception
+    {
+        assertSame(_writer, Utf8ResponseOutputWriter.getUtf8Writer(_writer));
+        assertNull(Utf8ResponseOutputWriter.getUtf8Writer(new StringWriter()));
+
+        StateWriter stateWriter = new StateWriter(_writer, 1024);
+        try
+        {
+            Writer writer = stateWriter;
+            assertSame(_writer, Utf8ResponseOutputWriter.getUtf8Writer(writer));
+            stateWriter.writingState();
+            assertNull(Utf8ResponseOutputWriter.getUtf8Writer(writer));
+        }
+        finally
+        {
+            stateWriter.release();
+        }
+    }
+}
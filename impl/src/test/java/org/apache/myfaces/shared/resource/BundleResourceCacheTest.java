@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BundleResourceCacheTest
+{
+    @Test
+    public void testBundleableStylesheet()
+    {
+        Assert.assertTrue(isBundleable("body { color: red; }"));
+        Assert.assertTrue(isBundleable(".a { background: url(/ctx/javax.faces.resource/a.png.xhtml?ln=img); }"));
+        Assert.assertTrue(isBundleable(".a { background: URL( \"https://cdn.example.org/a.png\" ); }"));
+        Assert.assertTrue(isBundleable(".a { background: url('data:image/png;base64,AAAA'); }"));
+        Assert.assertTrue(isBundleable(".a { fill: url(#gradient); }"));
+
+        Assert.assertFalse(isBundleable(".a { background: url(images/a.png); }"));
+        Assert.assertFalse(isBundleable(".a { background: url('../a.png'); }"));
+        Assert.assertFalse(isBundleable(".a { background: url(:a.png); }"));
+        Assert.assertFalse(isBundleable("@import url(/ctx/other.css);"));
+        Assert.assertFalse(isBundleable("@charset \"UTF-8\"; body { color: red; }"));
+    }
+
+    @Test
+    public void testHash()
+    {
+        byte[] content = "alert(1);".getBytes(StandardCharsets.US_ASCII);
+        String hash = BundleResourceCache.hash(content);
+
+        Assert.assertEquals(20, hash.length());
+        Assert.assertTrue(ResourceValidationUtils.isValidResourceName(hash + ".js"));
+        Assert.assertEquals(hash, BundleResourceCache.hash(content.clone()));
+        Assert.assertFalse(hash.equals(BundleResourceCache.hash("alert(2);".getBytes(StandardCharsets.US_ASCII))));
+    }
+
+    private static boolean isBundleable(String css)
+    {
+        return BundleResourceCache.isBundleableStylesheet(css.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
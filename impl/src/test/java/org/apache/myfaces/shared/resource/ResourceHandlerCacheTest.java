@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+import javax.faces.application.ProjectStage;
+
+import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceHandlerCacheTest extends AbstractJsfTestCase
+{
+    @Override
+    protected void setUpServletObjects() throws Exception
+    {
+        super.setUpServletObjects();
+        servletContext.addInitParameter(ProjectStage.PROJECT_STAGE_PARAM_NAME, ProjectStage.Production.toString());
+        servletContext.addInitParameter("org.apache.myfaces.RESOURCE_HANDLER_CACHE_SIZE", "10");
+    }
+
+    @Test
+    public void testPutAndGet()
+    {
+        ResourceHandlerCache cache = new ResourceHandlerCache();
+        ResourceMeta meta = new ResourceMetaImpl(null, "lib", null, "a.js", null);
+        ResourceMeta contractMeta = new ResourceMetaImpl(null, "lib", null, "a.js", null, "blue");
+
+        Assert.assertNull(cache.getResource("a.js", "lib", "text/javascript", null));
+
+        cache.putResource("a.js", "lib", "text/javascript", null, null, meta, null, null);
+        cache.putResource("a.js", "lib", "text/javascript", null, "blue", contractMeta, null, null);
+
+        Assert.assertSame(meta, cache.getResource("a.js", "lib", "text/javascript", null).getResourceMeta());
+        Assert.assertSame(contractMeta,
+                cache.getResource("a.js", "lib", "text/javascript", null, "blue").getResourceMeta());
+        Assert.assertNull(cache.getResource("a.js", "lib", "text/javascript", null, "red"));
+        Assert.assertNull(cache.getResource("a.js", "other", "text/javascript", null));
+        Assert.assertNull(cache.getResource("a.js", "lib", "text/javascript", "de"));
+        Assert.assertTrue(cache.containsResource("a.js", "lib", "text/javascript", null, "blue"));
+
+        cache.putResource("lib/a.js", meta, null, null);
+        Assert.assertSame(meta, cache.getResource("lib/a.js").getResourceMeta());
+        Assert.assertNull(cache.getResource("lib/a.js", "blue"));
+
+        ResourceHandlerCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(3, statistics.getHitCount());
+        // lookups with a contract are not misses, they are followed by one without contract
+        Assert.assertEquals(3, statistics.getMissCount());
+        Assert.assertEquals(3, statistics.getSize());
+    }
+
+    @Test
+    public void testNotFound()
+    {
+        ResourceHandlerCache cache = new ResourceHandlerCache();
+
+        Assert.assertFalse(cache.isResourceNotFound("b.js", null, "text/javascript", null));
+        cache.putResourceNotFound("b.js", null, "text/javascript", null);
+        Assert.assertNull(cache.getResource("b.js", null, "text/javascript", null));
+        Assert.assertTrue(cache.isResourceNotFound("b.js", null, "text/javascript", null));
+        Assert.assertFalse(cache.isResourceNotFound("b.js", "lib", "text/javascript", null));
+        Assert.assertFalse(cache.containsResource("b.js", null, "text/javascript", null));
+
+        ResourceMeta meta = new ResourceMetaImpl(null, null, null, "b.js", null);
+        cache.putResource("b.js", null, "text/javascript", null, null, meta, null, null);
+        Assert.assertFalse(cache.isResourceNotFound("b.js", null, "text/javascript", null));
+        Assert.assertSame(meta, cache.getResource("b.js", null, "text/javascript", null).getResourceMeta());
+
+        cache.putViewResourceNotFound("/missing.xhtml", "application/xhtml+xml", null);
+        Assert.assertTrue(cache.isViewResourceNotFound("/missing.xhtml", "application/xhtml+xml", null));
+        Assert.assertFalse(cache.isResourceNotFound("/missing.xhtml", null, "application/xhtml+xml", null));
+
+        Assert.assertEquals(2, cache.getStatistics().getNotFoundHitCount());
+        Assert.assertEquals(2, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        ResourceHandlerCache cache = new ResourceHandlerCache();
+        ResourceMeta used = new ResourceMetaImpl(null, null, null, "used.js", null);
+        cache.putResource("used.js", null, "text/javascript", null, null, used, null, null);
+
+        for (int i = 0; i < 30; i++)
+        {
+            Assert.assertNotNull(cache.getResource("used.js", null, "text/javascript", null));
+            cache.putResource(i + ".js", null, "text/javascript", null, null,
+                    new ResourceMetaImpl(null, null, null, i + ".js", null), null, null);
+        }
+
+        ResourceHandlerCacheStatistics statistics = cache.getStatistics();
+        Assert.assertEquals(10, statistics.getSize());
+        Assert.assertEquals(21, statistics.getEvictionCount());
+        Assert.assertNotNull(cache.getResource("used.js", null, "text/javascript", null));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResourceLoaderUtilsTest
+{
+    @Test
+    public void testParseByteRange()
+    {
+        Assert.assertArrayEquals(new long[] {0, 99}, ResourceLoaderUtils.parseByteRange("bytes=0-99", 1000));
+        Assert.assertArrayEquals(new long[] {500, 999}, ResourceLoaderUtils.parseByteRange("bytes=500-", 1000));
+        Assert.assertArrayEquals(new long[] {900, 999}, ResourceLoaderUtils.parseByteRange("bytes=-100", 1000));
+        Assert.assertArrayEquals(new long[] {0, 999}, ResourceLoaderUtils.parseByteRange("bytes=-5000", 1000));
+        Assert.assertArrayEquals(new long[] {990, 999}, ResourceLoaderUtils.parseByteRange("bytes=990-2000", 1000));
+
+        Assert.assertSame(ResourceLoaderUtils.UNSATISFIABLE_BYTE_RANGE,
+                ResourceLoaderUtils.parseByteRange("bytes=1000-", 1000));
+        Assert.assertSame(ResourceLoaderUtils.UNSATISFIABLE_BYTE_RANGE,
+                ResourceLoaderUtils.parseByteRange("bytes=-0", 1000));
+
+        Assert.assertNull(ResourceLoaderUtils.parseByteRange("bytes=0-10,20-30", 1000));
+        Assert.assertNull(ResourceLoaderUtils.parseByteRange("bytes=10-5", 1000));
+        Assert.assertNull(ResourceLoaderUtils.parseByteRange("bytes=a-b", 1000));
+        Assert.assertNull(ResourceLoaderUtils.parseByteRange("items=0-10", 1000));
+    }
+
+    @Test
+    public void testETagMatching()
+    {
+        String etag = ResourceLoaderUtils.formatETag(1024, 1500000000000L);
+
+        Assert.assertTrue(ResourceLoaderUtils.isETagMatching(etag, etag));
+        Assert.assertTrue(ResourceLoaderUtils.isETagMatching("W/" + etag, etag));
+        Assert.assertTrue(ResourceLoaderUtils.isETagMatching("\"abc\", " + etag, etag));
+        Assert.assertTrue(ResourceLoaderUtils.isETagMatching("*", etag));
+
+        Assert.assertFalse(ResourceLoaderUtils.isETagMatching("\"abc\"", etag));
+        Assert.assertFalse(ResourceLoaderUtils.isETagMatching(ResourceLoaderUtils.formatETag(1025, 1500000000000L),
+                etag));
+    }
+
+    @Test
+    public void testComputeContentHash() throws IOException
+    {
+        byte[] content = "body { color: red; }".getBytes(StandardCharsets.US_ASCII);
+        String hash = ResourceLoaderUtils.computeContentHash(content);
+
+        Assert.assertEquals(20, hash.length());
+        Assert.assertEquals(hash, ResourceLoaderUtils.computeContentHash(new ByteArrayInputStream(content)));
+        Assert.assertFalse(hash.equals(ResourceLoaderUtils.computeContentHash(
+                "body { color: blue; }".getBytes(StandardCharsets.US_ASCII))));
+    }
+}
@@ -24,6 +24,7 @@ import org.apache.myfaces.shared.util.serial.DefaultSerialFactory;
 import org.apache.myfaces.test.base.AbstractJsfTestCase;
 
 import java.io.Serializable;
+import java.io.StringWriter;
 import java.util.Arrays;
 
 public abstract class AbstractStateUtilsTest extends AbstractJsfTestCase implements Serializable
@@ -80,6 +81,61 @@ public abstract class AbstractStateUtilsTest extends AbstractJsfTestCase impleme
         assertTrue(TEST_DATA.equals(object));
     }
 
+    public void testStreamingConstruction() throws Exception
+    {
+        Object state = createLargeState();
+
+        StringWriter writer = new StringWriter();
+        StateUtils.construct(state, externalContext, writer);
+        String constructed = writer.toString();
+
+        // same result as the byte array pipeline
+        byte[] bytes = StateUtils.getAsByteArray(state, externalContext);
+        if (StateUtils.enableCompression(externalContext))
+        {
+            bytes = StateUtils.compress(bytes);
+        }
+        if (StateUtils.isSecure(externalContext))
+        {
+            bytes = StateUtils.encrypt(bytes, externalContext);
+        }
+        String expected = new String(StateUtils.encode(bytes), StateUtils.ZIP_CHARSET);
+        assertEquals(expected, constructed);
+        assertEquals(expected, StateUtils.construct(state, externalContext));
+
+        assertTrue(Arrays.deepEquals((Object[]) state,
+                (Object[]) StateUtils.reconstruct(constructed, externalContext)));
+    }
+
+    public void testStreamingConstructionCompressed() throws Exception
+    {
+        servletContext.addInitParameter(StateUtils.COMPRESS_STATE_IN_CLIENT, "true");
+        testStreamingConstruction();
+    }
+
+    public void testStreamingReconstructionNegative()
+    {
+        String constructed = StateUtils.construct(createLargeState(), externalContext);
+        char[] chars = constructed.toCharArray();
+        chars[chars.length / 2] = chars[chars.length / 2] == 'A' ? 'B' : 'A';
+        Object object = StateUtils.reconstruct(new String(chars), externalContext);
+        if (StateUtils.isSecure(externalContext))
+        {
+            assertNull(object);
+        }
+        assertNull(StateUtils.reconstruct(constructed.substring(0, constructed.length() - 8), externalContext));
+    }
+
+    private Object createLargeState()
+    {
+        Object[] state = new Object[2000];
+        for (int i = 0; i < state.length; i++)
+        {
+            state[i] = new Object[] {"component" + i, i, i % 3 == 0 ? null : sensitiveString};
+        }
+        return state;
+    }
+
     public void testSerialization()
     {
         byte[] bytes = StateUtils.getAsByteArray(TEST_DATA, externalContext);
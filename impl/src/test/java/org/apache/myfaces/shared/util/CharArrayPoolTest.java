@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CharArrayPoolTest
+{
+    @Test
+    public void testAcquireRoundsUpToPooledLength()
+    {
+        Assert.assertEquals(256, CharArrayPool.acquire(0).length);
+        Assert.assertEquals(256, CharArrayPool.acquire(256).length);
+        Assert.assertEquals(512, CharArrayPool.acquire(257).length);
+        Assert.assertEquals(4096, CharArrayPool.acquire(3000).length);
+    }
+
+    @Test
+    public void testReleasedArrayIsReused()
+    {
+        char[] array = CharArrayPool.acquire(20000);
+        CharArrayPool.release(array);
+        CharArrayPool.release(array);
+
+        Assert.assertSame(array, CharArrayPool.acquire(17000));
+        Assert.assertNotSame(array, CharArrayPool.acquire(17000));
+    }
+
+    @Test
+    public void testArraysOfOtherLengthsAreNotPooled()
+    {
+        char[] array = new char[300];
+        CharArrayPool.release(array);
+
+        Assert.assertNotSame(array, CharArrayPool.acquire(300));
+    }
+
+    @Test
+    public void testPooledStreamCharBufferReusesChunks() throws IOException
+    {
+        StreamCharBuffer buffer = new StreamCharBuffer(256, 100, true);
+        String content = createContent(5000);
+        for (int i = 0; i < 3; i++)
+        {
+            for (int j = 0; j < content.length(); j += 100)
+            {
+                buffer.getWriter().write(content, j, Math.min(100, content.length() - j));
+            }
+            Assert.assertEquals(content, buffer.toString());
+            buffer.getWriter().write("abc");
+            Assert.assertEquals(content + "abc", buffer.toString());
+            buffer.reset();
+            Assert.assertEquals("", buffer.toString());
+        }
+
+        buffer.release();
+        long allocations = CharArrayPool.getStatistics().getAllocationCount();
+        buffer.getWriter().write(content);
+        buffer.getWriter().write(content.substring(0, 400));
+        Assert.assertEquals(content + content.substring(0, 400), buffer.toString());
+        buffer.release();
+        Assert.assertEquals(allocations, CharArrayPool.getStatistics().getAllocationCount());
+    }
+
+    private static String createContent(int length)
+    {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append((char) ('a' + i % 26));
+        }
+        return sb.toString();
+    }
+}
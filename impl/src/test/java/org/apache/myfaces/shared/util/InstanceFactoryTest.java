@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.shared.util;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class InstanceFactoryTest
+{
+    public static class ClassArgument
+    {
+        private final Class<?> type;
+
+        public ClassArgument(Class<?> type)
+        {
+            this.type = type;
+        }
+
+        public Class<?> getType()
+        {
+            return type;
+        }
+    }
+
+    public static class Failing
+    {
+        public Failing()
+        {
+            throw new IllegalStateException("failing");
+        }
+    }
+
+    static class NotPublic
+    {
+    }
+
+    @Test
+    public void testNewInstance() throws Exception
+    {
+        Object first = InstanceFactory.newInstance(ArrayList.class);
+        Object second = InstanceFactory.newInstance(ArrayList.class);
+        Assert.assertTrue(first instanceof ArrayList);
+        Assert.assertNotSame(first, second);
+        Assert.assertTrue(InstanceFactory.newInstance(NotPublic.class) instanceof NotPublic);
+    }
+
+    @Test(expected = InstantiationException.class)
+    public void testNewInstanceWithoutNoArgConstructor() throws Exception
+    {
+        InstanceFactory.newInstance(ClassArgument.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNewInstancePropagatesConstructorException() throws Exception
+    {
+        InstanceFactory.newInstance(Failing.class);
+    }
+
+    @Test
+    public void testClassArgumentFactory()
+    {
+        Function<Class<?>, ClassArgument> factory = InstanceFactory.getClassArgumentFactory(ClassArgument.class);
+        Assert.assertNotNull(factory);
+        Assert.assertEquals(Integer.class, factory.apply(Integer.class).getType());
+        Assert.assertSame(factory, InstanceFactory.getClassArgumentFactory(ClassArgument.class));
+        Assert.assertNull(InstanceFactory.getClassArgumentFactory(ArrayList.class));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.apache.myfaces.test.base.junit4.AbstractJsfTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StateWriterTest extends AbstractJsfTestCase
+{
+    @Test
+    public void testFlushChunks() throws Exception
+    {
+        FlushCountingWriter out = new FlushCountingWriter();
+        StateWriter stateWriter = new StateWriter(out, 1024, facesContext);
+        try
+        {
+            stateWriter.setFlushChunkSize(10);
+            stateWriter.write("12345");
+            Assert.assertEquals(0, out.flushes);
+            stateWriter.write("67890");
+            Assert.assertEquals(1, out.flushes);
+            stateWriter.write("1234567890abc".toCharArray(), 0, 12);
+            Assert.assertEquals(2, out.flushes);
+
+            // An explicit flush, e.g. at the end of the head, starts a new chunk
+            stateWriter.write("123");
+            stateWriter.flush();
+            Assert.assertEquals(3, out.flushes);
+            stateWriter.write("1234567");
+            Assert.assertEquals(3, out.flushes);
+        }
+        finally
+        {
+            stateWriter.release(facesContext);
+        }
+    }
+
+    @Test
+    public void testNoFlushAfterState() throws Exception
+    {
+        FlushCountingWriter out = new FlushCountingWriter();
+        StateWriter stateWriter = new StateWriter(out, 1024, facesContext);
+        try
+        {
+            stateWriter.setFlushChunkSize(10);
+            stateWriter.write("<form>");
+            stateWriter.writingState();
+            stateWriter.write("<!--@@JSF_FORM_STATE_MARKER@@--></form>");
+            stateWriter.flush();
+            Assert.assertEquals(0, out.flushes);
+            Assert.assertEquals("<form>", out.toString());
+            Assert.assertEquals("<!--@@JSF_FORM_STATE_MARKER@@--></form>", stateWriter.getAndResetBuffer());
+        }
+        finally
+        {
+            stateWriter.release(facesContext);
+        }
+    }
+
+    private static class FlushCountingWriter extends StringWriter
+    {
+        private int flushes;
+
+        @Override
+        public void flush()
+        {
+            flushes++;
+            super.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            // do nothing
+        }
+    }
+}
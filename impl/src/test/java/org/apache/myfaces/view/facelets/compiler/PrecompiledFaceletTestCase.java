@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.compiler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+
+import javax.faces.component.UIOutput;
+import javax.faces.component.UIPanel;
+import javax.faces.component.UIViewRoot;
+import javax.faces.component.html.HtmlOutputText;
+import javax.faces.component.html.HtmlPanelGrid;
+
+import org.apache.myfaces.config.RuntimeConfig;
+import org.apache.myfaces.config.impl.digester.elements.FaceletsProcessingImpl;
+import org.apache.myfaces.renderkit.html.HtmlGridRenderer;
+import org.apache.myfaces.renderkit.html.HtmlTextRenderer;
+import org.apache.myfaces.test.mock.MockResponseWriter;
+import org.apache.myfaces.view.facelets.FaceletTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PrecompiledFaceletTestCase extends FaceletTestCase
+{
+    private File precompiledDirectory;
+
+    @Override
+    protected void setUpServletObjects() throws Exception
+    {
+        super.setUpServletObjects();
+        servletContext.addInitParameter(FaceletsCompilerSupport.PRECOMPILED_FACELETS_PATH_PARAM, "/precompiled");
+        precompiledDirectory = new File(new File(getContext()), "precompiled");
+    }
+
+    @Override
+    protected void setUpExternalContext() throws Exception
+    {
+        super.setUpExternalContext();
+
+        FaceletsProcessingImpl item = new FaceletsProcessingImpl();
+        item.setFileExtension(".xhtml");
+        item.setProcessAs(FaceletsProcessingImpl.PROCESS_AS_XHTML);
+        RuntimeConfig.getCurrentInstance(externalContext).addFaceletProcessingConfiguration(
+            FaceletsProcessingImpl.PROCESS_AS_XHTML, item);
+    }
+
+    @Override
+    protected void setupComponents() throws Exception
+    {
+        application.addComponent(UIViewRoot.COMPONENT_TYPE, UIViewRoot.class.getName());
+        application.addComponent(HtmlPanelGrid.COMPONENT_TYPE, HtmlPanelGrid.class.getName());
+        application.addComponent(HtmlOutputText.COMPONENT_TYPE, HtmlOutputText.class.getName());
+    }
+
+    @Override
+    protected void setupRenderers() throws Exception
+    {
+        renderKit.addRenderer(UIOutput.COMPONENT_FAMILY, "javax.faces.Text", new HtmlTextRenderer());
+        renderKit.addRenderer(UIPanel.COMPONENT_FAMILY, "javax.faces.Grid", new HtmlGridRenderer());
+    }
+
+    @After
+    public void deletePrecompiledFacelets()
+    {
+        File[] files = precompiledDirectory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        precompiledDirectory.delete();
+    }
+
+    private String render(String viewId) throws Exception
+    {
+        facesContext.getExternalContext().getRequestMap().put("rquote", "\"");
+
+        UIViewRoot root = facesContext.getViewRoot();
+        vdl.buildView(facesContext, root, viewId);
+
+        StringWriter sw = new StringWriter();
+        facesContext.setResponseWriter(new MockResponseWriter(sw));
+        root.encodeAll(facesContext);
+        return sw.toString();
+    }
+
+    private File writePrecompiledForm(File page, String viewId) throws Exception
+    {
+        File precompiled = new File(precompiledDirectory, viewId + PrecompiledFacelet.SUFFIX);
+        precompiled.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(precompiled);
+        try
+        {
+            out.write(FaceletsPrecompiler.precompile(page.toURI().toURL()));
+        }
+        finally
+        {
+            out.close();
+        }
+        return precompiled;
+    }
+
+    private File createPage(String body) throws Exception
+    {
+        File page = File.createTempFile("precompiled", ".xhtml");
+        page.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(page), "UTF-8");
+        try
+        {
+            writer.write("<html xmlns=\"http://www.w3.org/1999/xhtml\" xmlns:h=\"http://java.sun.com/jsf/html\">"
+                    + "<body><h:outputText value=\"" + body + "\"/></body></html>");
+        }
+        finally
+        {
+            writer.close();
+        }
+        return page;
+    }
+
+    @Test
+    public void testPrecompiledFaceletRendersLikeParsedOne() throws Exception
+    {
+        File source = new File(getContext());
+        int failures = FaceletsPrecompiler.precompile(source, precompiledDirectory,
+                Collections.singletonList("testXHTMLProcessing1.xhtml"));
+        Assert.assertEquals(0, failures);
+        Assert.assertTrue(new File(precompiledDirectory, "testXHTMLProcessing1.xhtml.fcl").isFile());
+
+        String resp = render("testXHTMLProcessing1.xhtml");
+
+        Assert.assertTrue("Response contains DOCTYPE declaration", resp.contains("<!DOCTYPE"));
+        Assert.assertTrue("Response contains xml declaration", resp.contains("<?xml"));
+        Assert.assertTrue("Response contains xml processing instructions", resp.contains("<?name"));
+        Assert.assertTrue("Response contains cdata section", resp.contains("<![CDATA["));
+        Assert.assertTrue("Response contains cdata section", resp.contains("cdata not consumed"));
+        Assert.assertTrue("Response does not escape characters",
+                resp.contains("In this mode, if you put a double quote, it will be replaced by &quot; : &quot"));
+        Assert.assertTrue("Response contains comments", resp.contains("<!--"));
+        Assert.assertTrue("Response should escape EL and markup", resp.contains("Check EL Escaping &quot; : &quot;"));
+    }
+
+    @Test
+    public void testPrecompiledFaceletIsNotParsed() throws Exception
+    {
+        writePrecompiledForm(createPage("from precompiled form"), "testXHTMLProcessing1.xhtml");
+
+        String resp = render("testXHTMLProcessing1.xhtml");
+
+        Assert.assertTrue(resp.contains("from precompiled form"));
+        Assert.assertFalse(resp.contains("cdata not consumed"));
+    }
+
+    @Test
+    public void testPageNewerThanPrecompiledFormIsParsed() throws Exception
+    {
+        File precompiled = writePrecompiledForm(createPage("from precompiled form"), "testXHTMLProcessing1.xhtml");
+        File page = new File(new File(getContext()), "testXHTMLProcessing1.xhtml");
+        precompiled.setLastModified(page.lastModified() - 60000);
+
+        String resp = render("testXHTMLProcessing1.xhtml");
+
+        Assert.assertFalse(resp.contains("from precompiled form"));
+        Assert.assertTrue(resp.contains("cdata not consumed"));
+    }
+}
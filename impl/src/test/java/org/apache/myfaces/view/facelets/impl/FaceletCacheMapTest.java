@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FaceletCacheMapTest
+{
+
+    /**
+     * Looks up the key like the cache does before compiling and putting the Facelet.
+     */
+    private static void compile(FaceletCacheMap<String> map, String key, int weight)
+    {
+        Assert.assertNull(map.get(key));
+        map.put(key, key, weight);
+    }
+
+    @Test
+    public void testUnbounded()
+    {
+        FaceletCacheStatistics statistics = new FaceletCacheStatistics(-1);
+        FaceletCacheMap<String> map = new FaceletCacheMap<String>(statistics.getMaxWeight(), statistics);
+
+        for (int i = 0; i < 100; i++)
+        {
+            compile(map, "page" + i, 10);
+        }
+        map.put("page0", "page0", 5);
+
+        Assert.assertEquals("page50", map.get("page50"));
+        Assert.assertEquals(100, statistics.getSize());
+        Assert.assertEquals(995, statistics.getWeight());
+        Assert.assertEquals(-1, statistics.getMaxWeight());
+    }
+
+    @Test
+    public void testEvictLessUsed()
+    {
+        FaceletCacheStatistics statistics = new FaceletCacheStatistics(10);
+        FaceletCacheMap<String> map = new FaceletCacheMap<String>(statistics.getMaxWeight(), statistics);
+
+        compile(map, "template", 5);
+        compile(map, "include", 5);
+        for (int i = 0; i < 5; i++)
+        {
+            Assert.assertEquals("template", map.get("template"));
+        }
+
+        // the template is the oldest entry, but it is used more often than the new page
+        compile(map, "page", 5);
+
+        Assert.assertTrue(map.containsKey("template"));
+        Assert.assertFalse(map.containsKey("include"));
+        Assert.assertTrue(map.containsKey("page"));
+        Assert.assertEquals(1, statistics.getEvictionCount());
+        Assert.assertEquals(2, statistics.getSize());
+        Assert.assertEquals(10, statistics.getWeight());
+    }
+
+    @Test
+    public void testRejectLessUsed()
+    {
+        FaceletCacheStatistics statistics = new FaceletCacheStatistics(10);
+        FaceletCacheMap<String> map = new FaceletCacheMap<String>(statistics.getMaxWeight(), statistics);
+
+        compile(map, "template1", 5);
+        compile(map, "template2", 5);
+        for (int i = 0; i < 3; i++)
+        {
+            map.get("template1");
+            map.get("template2");
+        }
+
+        // used once, it does not push out the templates
+        compile(map, "include", 5);
+        // too heavy for the cache
+        compile(map, "huge", 11);
+
+        Assert.assertTrue(map.containsKey("template1"));
+        Assert.assertTrue(map.containsKey("template2"));
+        Assert.assertFalse(map.containsKey("include"));
+        Assert.assertFalse(map.containsKey("huge"));
+        Assert.assertEquals(0, statistics.getEvictionCount());
+        Assert.assertEquals(2, statistics.getRejectionCount());
+        Assert.assertEquals(10, statistics.getWeight());
+
+        // once it is used often enough, it is admitted
+        for (int i = 0; i < 6; i++)
+        {
+            map.get("include");
+        }
+        map.put("include", "include", 5);
+        Assert.assertTrue(map.containsKey("include"));
+        Assert.assertEquals(1, statistics.getEvictionCount());
+        Assert.assertEquals(2, statistics.getSize());
+    }
+
+    @Test
+    public void testRejectedPutKeepsEntries()
+    {
+        FaceletCacheStatistics statistics = new FaceletCacheStatistics(10);
+        FaceletCacheMap<String> map = new FaceletCacheMap<String>(statistics.getMaxWeight(), statistics);
+
+        for (int i = 0; i < 10; i++)
+        {
+            compile(map, "page" + i, 1);
+        }
+
+        // room for it needs more victims than the candidates looked at, so it is rejected
+        compile(map, "template", 10);
+
+        Assert.assertFalse(map.containsKey("template"));
+        for (int i = 0; i < 10; i++)
+        {
+            Assert.assertTrue(map.containsKey("page" + i));
+        }
+        Assert.assertEquals(0, statistics.getEvictionCount());
+        Assert.assertEquals(1, statistics.getRejectionCount());
+        Assert.assertEquals(10, statistics.getSize());
+        Assert.assertEquals(10, statistics.getWeight());
+    }
+
+    @Test
+    public void testReplace()
+    {
+        FaceletCacheStatistics statistics = new FaceletCacheStatistics(10);
+        FaceletCacheMap<String> map = new FaceletCacheMap<String>(statistics.getMaxWeight(), statistics);
+
+        compile(map, "page", 4);
+        // refreshed, the page changed
+        map.put("page", "page2", 8);
+
+        Assert.assertEquals("page2", map.get("page"));
+        Assert.assertEquals(1, statistics.getSize());
+        Assert.assertEquals(8, statistics.getWeight());
+        Assert.assertEquals(0, statistics.getEvictionCount());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.myfaces.view.facelets.impl;
+
+import javax.faces.application.ViewHandler;
+import javax.faces.context.FacesContext;
+import javax.faces.view.facelets.Facelet;
+
+import org.apache.myfaces.test.mock.MockFacesContext22;
+import org.apache.myfaces.view.facelets.FaceletFactory;
+import org.apache.myfaces.view.facelets.FaceletTestCase;
+import org.apache.myfaces.view.facelets.FaceletsWarmUpProcessor;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FaceletsWarmUpProcessorTest extends FaceletTestCase
+{
+    @Override
+    protected String getDirectory()
+    {
+        return "org/apache/myfaces/view/facelets/tag/composite/";
+    }
+
+    @Override
+    protected void setUpServletObjects() throws Exception
+    {
+        super.setUpServletObjects();
+        servletContext.addInitParameter(FaceletsWarmUpProcessor.WARM_UP_PARAM, "true");
+        servletContext.addInitParameter(FaceletsWarmUpProcessor.WARM_UP_PARALLELISM_PARAM, "4");
+        servletContext.addInitParameter(ViewHandler.FACELETS_REFRESH_PERIOD_PARAM_NAME, "-1");
+    }
+
+    private FacesContext createWorkerContext()
+    {
+        MockFacesContext22 context = new MockFacesContext22(externalContext, lifecycle);
+        context.setApplication(application);
+        return context;
+    }
+
+    @Test
+    public void testWarmUpCompilesPagesIntoTheFaceletCache() throws Exception
+    {
+        int compiled = FaceletsWarmUpProcessor.warmUp(facesContext, this::createWorkerContext);
+        long afterWarmUp = System.currentTimeMillis();
+        Thread.sleep(10);
+
+        Assert.assertTrue("only " + compiled + " pages compiled", compiled > 50);
+        // the workers do not leave their context behind, the startup one is still the current one
+        Assert.assertSame(facesContext, FacesContext.getCurrentInstance());
+
+        FaceletFactory factory = vdl.getFaceletFactory();
+        assertCompiledBefore(afterWarmUp, factory.getFacelet(facesContext, "/testCConInclude1.xhtml"));
+        assertCompiledBefore(afterWarmUp, factory.getViewMetadataFacelet(facesContext, "/testCConInclude1.xhtml"));
+        assertCompiledBefore(afterWarmUp, factory.getCompositeComponentMetadataFacelet(facesContext,
+                "/resources/testComposite/ccOnInclude1.xhtml"));
+    }
+
+    private static void assertCompiledBefore(long time, Facelet facelet)
+    {
+        Assert.assertTrue(((DefaultFacelet) facelet).getCreateTime() <= time);
+    }
+
+    @Test
+    public void testWarmUpDisabled() throws Exception
+    {
+        servletContext.addInitParameter(FaceletsWarmUpProcessor.WARM_UP_PARAM, "false");
+        Assert.assertEquals(0, FaceletsWarmUpProcessor.warmUp(facesContext, this::createWorkerContext));
+    }
+}
@@ -105,6 +105,14 @@ public class MockHttpServletResponse implements HttpServletResponse
         return this.status;
     }
 
+    /**
+     * <p>Return the content length that was set.</p>
+     */
+    public long getContentLength()
+    {
+        return this.contentLength;
+    }
+
     /**
      * <p>Set the <code>ServletOutputStream</code> to be returned by a call to
      * <code>getOutputStream()</code>.</p>
@@ -474,7 +482,7 @@ public class MockHttpServletResponse implements HttpServletResponse
     @Override
     public void setContentLengthLong(long l)
     {
-        throw new UnsupportedOperationException("Not supported yet.");
+        this.contentLength = l;
     }
 
 }